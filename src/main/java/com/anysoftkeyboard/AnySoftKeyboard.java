@@ -90,6 +90,7 @@ import com.anysoftkeyboard.receivers.SoundPreferencesChangedReceiver.SoundPrefer
 import com.anysoftkeyboard.theme.KeyboardTheme;
 import com.anysoftkeyboard.theme.KeyboardThemeFactory;
 import com.anysoftkeyboard.ui.dev.DeveloperUtils;
+import com.anysoftkeyboard.ui.dev.TypingLatency;
 import com.anysoftkeyboard.ui.settings.MainSettingsActivity;
 import com.anysoftkeyboard.ui.tutorials.TipLayoutsSupport;
 import com.anysoftkeyboard.ui.tutorials.TutorialsProvider;
@@ -138,6 +139,11 @@ public class AnySoftKeyboard extends InputMethodService implements
     private long mLastDictionaryRefresh = -1;
     private int mMinimumWordCorrectionLength = 2;
     private Suggest mSuggest;
+    private SuggestionsWorker mSuggestionsWorker;
+    private int mShownSuggestionsSequence = 0;
+    //typing latency probes of the pending suggestions update, zero when there is none
+    private long mSuggestionsPostedNanos = 0;
+    private long mSuggestionsRequestedNanos = 0;
     private CompletionInfo[] mCompletions;
 
     private AlertDialog mOptionsDialog;
@@ -154,6 +160,13 @@ public class AnySoftKeyboard extends InputMethodService implements
     private AutoDictionary mAutoDictionary;
 
     private WordComposer mWord = new WordComposer();
+    private final CachedInputConnection mCachedInputConnection = new CachedInputConnection();
+    private final WordLocator mWordLocator = new WordLocator(new WordLocator.Separators() {
+        @Override
+        public boolean isWordSeparator(int code) {
+            return AnySoftKeyboard.this.isWordSeparator(code);
+        }
+    });
 
     private int mOrientation = Configuration.ORIENTATION_PORTRAIT;
 
@@ -311,8 +324,10 @@ public class AnySoftKeyboard extends InputMethodService implements
 
     private void initSuggest() {
         mSuggest = new Suggest(this);
+        mSuggestionsWorker = new SuggestionsWorker(mSuggest, mHandler, KeyboardUIStateHanlder.MSG_SUGGESTIONS_READY);
         mSuggest.setCorrectionMode(mQuickFixes, mShowSuggestions);
         mSuggest.setMinimumWordLengthForCorrection(mMinimumWordCorrectionLength);
+        mSuggest.setParallelDictionaryLookups(mConfig.useParallelDictionaryLookups());
         setDictionariesForCurrentKeyboard();
     }
 
@@ -335,10 +350,13 @@ public class AnySoftKeyboard extends InputMethodService implements
 
         mKeyboardSwitcher.setInputView(null);
 
+        mSuggestionsWorker.shutdown();
         mSuggest.setAutoDictionary(null);
         mSuggest.setContactsDictionary(getApplicationContext(), false);
         mSuggest.setMainDictionary(getApplicationContext(), null);
+        mSuggest.getDictionaryFactory().closeIdleDictionaries();
         mSuggest.setUserDictionary(null);
+        mSuggest.close();
 
         if (DeveloperUtils.hasTracingStarted()) {
             DeveloperUtils.stopTracing();
@@ -498,6 +516,43 @@ public class AnySoftKeyboard extends InputMethodService implements
         return candidateViewContainer;
     }
 
+    /**
+     * The editor's connection, wrapped with a local mirror of the text around the cursor, so most of the text
+     * reads do not need a round-trip to the editor. Only the keyboard's own code goes through the mirror;
+     * the framework (and {@link #getCurrentInputConnection()}) still talks to the editor directly.
+     */
+    /*package*/ InputConnection getCachedInputConnection() {
+        final InputConnection ic = getCurrentInputConnection();
+        if (ic == null) return null;
+        return mCachedInputConnection.wrap(ic);
+    }
+
+    @Override
+    public void sendKeyChar(char charCode) {
+        //the framework sends this through the editor's connection, so the mirror can not follow it.
+        mCachedInputConnection.invalidate();
+        super.sendKeyChar(charCode);
+    }
+
+    @Override
+    public void sendDownUpKeyEvents(int keyEventCode) {
+        mCachedInputConnection.invalidate();
+        super.sendDownUpKeyEvents(keyEventCode);
+    }
+
+    @Override
+    public boolean sendDefaultEditorAction(boolean fromEnterKey) {
+        mCachedInputConnection.invalidate();
+        return super.sendDefaultEditorAction(fromEnterKey);
+    }
+
+    @Override
+    public void onUpdateExtractedText(int token, ExtractedText text) {
+        super.onUpdateExtractedText(token, text);
+        //the editor changed its text
+        mCachedInputConnection.invalidate();
+    }
+
     @Override
     public void onStartInput(EditorInfo attribute, boolean restarting) {
         Log.d(TAG, "onStartInput(EditorInfo:" + attribute.imeOptions + ","
@@ -505,6 +560,8 @@ public class AnySoftKeyboard extends InputMethodService implements
 
         super.onStartInput(attribute, restarting);
 
+        mCachedInputConnection.onStartInput(attribute.initialSelStart, attribute.initialSelEnd, restarting);
+
         abortCorrection(true, false);
 
         if (!restarting) {
@@ -732,16 +789,17 @@ public class AnySoftKeyboard extends InputMethodService implements
         super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd,
                 candidatesStart, candidatesEnd);
 
-        Log.d(TAG, "onUpdateSelection: oss=" + oldSelStart + ", ose="
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "onUpdateSelection: oss=" + oldSelStart + ", ose="
                     + oldSelEnd + ", nss=" + newSelStart + ", nse=" + newSelEnd
                     + ", cs=" + candidatesStart + ", ce=" + candidatesEnd);
 
         mWord.setGlobalCursorPosition(newSelEnd);
+        mCachedInputConnection.onUpdateSelection(newSelStart, newSelEnd, candidatesStart, candidatesEnd);
 
         if (!isPredictionOn()/* || mInputView == null || !mInputView.isShown() */)
             return;// not relevant if no prediction is needed.
 
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;// well, I can't do anything without this connection
 
@@ -875,33 +933,10 @@ public class AnySoftKeyboard extends InputMethodService implements
             abortCorrection(true, false);
 
             // locating the word
-            CharSequence toLeft = "";
-            CharSequence toRight = "";
-            while (true) {
-                Log.d(TAG, "Checking left offset " + toLeft.length()
-                        + ". Currently have '" + toLeft + "'");
-                CharSequence newToLeft = ic.getTextBeforeCursor(
-                        toLeft.length() + 1, 0);
-                if (TextUtils.isEmpty(newToLeft)
-                        || isWordSeparator(newToLeft.charAt(0))
-                        || newToLeft.length() == toLeft.length()) {
-                    break;
-                }
-                toLeft = newToLeft;
-            }
-            while (true) {
-                Log.d(TAG, "Checking right offset " + toRight.length()
-                            + ". Currently have '" + toRight + "'");
-                CharSequence newToRight = ic.getTextAfterCursor(
-                        toRight.length() + 1, 0);
-                if (TextUtils.isEmpty(newToRight)
-                        || isWordSeparator(newToRight.charAt(newToRight
-                        .length() - 1))
-                        || newToRight.length() == toRight.length()) {
-                    break;
-                }
-                toRight = newToRight;
-            }
+            mWordLocator.locate(ic);
+            final CharSequence toLeft = mWordLocator.getLeft();
+            final CharSequence toRight = mWordLocator.getRight();
+            Log.d(TAG, "Located word around the cursor using " + mWordLocator.getLastIpcCalls() + " input-connection calls.");
             CharSequence word = toLeft.toString() + toRight.toString();
             Log.d(TAG, "Starting new prediction on word '" + word + "'.");
             mPredicting = word.length() > 0;
@@ -1074,7 +1109,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             onPhysicalKeyboardKeyPressed();
         mHardKeyboardAction.initializeAction(event, mMetaState);
 
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         Log.d(TAG,
                 "Event: Key:"
                         + event.getKeyCode()
@@ -1092,7 +1127,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             case KeyEvent.KEYCODE_CAMERA:
                 if (shouldTranslateSpecialKeys
                         && mConfig.useCameraKeyForBackspaceBackword()) {
-                    handleBackword(getCurrentInputConnection());
+                    handleBackword(getCachedInputConnection());
                     return true;
                 }
                 // DO NOT DELAY CAMERA KEY with unneeded checks in default mark
@@ -1331,7 +1366,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                             event.getRepeatCount(), event.getDeviceId(),
                             event.getScanCode(), KeyEvent.META_SHIFT_LEFT_ON
                             | KeyEvent.META_SHIFT_ON);
-                    InputConnection ic = getCurrentInputConnection();
+                    InputConnection ic = getCachedInputConnection();
                     if (ic != null)
                         ic.sendKeyEvent(event);
 
@@ -1370,7 +1405,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void setInputConnectionMetaStateAsCurrentMetaKeyKeyListenerState() {
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic != null) {
             int clearStatesFlags = 0;
             if (MyMetaKeyKeyListener.getMetaState(mMetaState,
@@ -1468,7 +1503,7 @@ public class AnySoftKeyboard extends InputMethodService implements
 
     public void updateShiftKeyState(EditorInfo attr) {
         mHandler.removeMessages(KeyboardUIStateHanlder.MSG_UPDATE_SHIFT_STATE);
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic != null && attr != null && mKeyboardSwitcher.isAlphabetMode()
                 && (mInputView != null)) {
             final boolean inputSaysCaps = getCursorCapsMode(ic, attr) != 0;
@@ -1490,7 +1525,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void swapPunctuationAndSpace() {
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         if (!mConfig.shouldswapPunctuationAndSpace())
@@ -1500,7 +1535,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             String seps = "";
             for (Character c : mSentenceSeparators)
                 seps += c;
-            Log.d(TAG, "swapPunctuationAndSpace: lastTwo: '" + lastTwo
+            if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "swapPunctuationAndSpace: lastTwo: '" + lastTwo
                     + "', mSentenceSeparators " + mSentenceSeparators.size()
                     + " '" + seps + "'");
         }
@@ -1518,7 +1553,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void reswapPeriodAndSpace() {
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         CharSequence lastThree = ic.getTextBeforeCursor(3, 0);
@@ -1538,7 +1573,7 @@ public class AnySoftKeyboard extends InputMethodService implements
         // if (!mAutoPunctuate) return;
         if (!mConfig.isDoubleSpaceChangesToPeriod())
             return;
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         CharSequence lastThree = ic.getTextBeforeCursor(3, 0);
@@ -1556,7 +1591,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void removeTrailingSpace() {
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
 
@@ -1599,7 +1634,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     public void onMultiTapStarted() {
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic != null)
             ic.beginBatchEdit();
         handleDeleteLastCharacter(true);
@@ -1608,16 +1643,17 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     public void onMultiTapEndeded() {
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic != null)
             ic.endBatchEdit();
     }
 
     public void onKey(int primaryCode, Key key, int multiTapIndex,
                       int[] nearByKeyCodes, boolean fromUI) {
-        Log.d(TAG, "onKey " + primaryCode);
+        final long probe = TypingLatency.start();
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "onKey " + primaryCode);
         // Thread.dumpStack();
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
 
         switch (primaryCode) {
             case KeyCodes.DELETE_WORD:
@@ -1878,6 +1914,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                 }
                 break;
         }
+        TypingLatency.end(TypingLatency.STAGE_ON_KEY, probe);
     }
 
     private boolean isConnectbot() {
@@ -1889,7 +1926,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void sendTab() {
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         boolean tabHack = isConnectbot() && mConnectbotTabHack;
@@ -1912,7 +1949,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void sendEscape() {
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         if (isConnectbot()) {
@@ -1982,8 +2019,8 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     public void onText(CharSequence text) {
-        Log.d(TAG, "onText: '" + text + "'");
-        InputConnection ic = getCurrentInputConnection();
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "onText: '" + text + "'");
+        InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return;
         ic.beginBatchEdit();
@@ -2100,7 +2137,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private void handleDeleteLastCharacter(boolean forMultitap) {
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
 
         if (!forMultitap && performOnTextDeletion(ic))
             return;
@@ -2253,7 +2290,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             mHandler.removeMessages(KeyboardUIStateHanlder.MSG_UPDATE_SUGGESTIONS);
             mHandler.removeMessages(KeyboardUIStateHanlder.MSG_RESTART_NEW_WORD_SUGGESTIONS);
 
-            final InputConnection ic = getCurrentInputConnection();
+            final InputConnection ic = getCachedInputConnection();
             if (ic != null)
                 ic.finishComposingText();
 
@@ -2277,7 +2314,8 @@ public class AnySoftKeyboard extends InputMethodService implements
 
     private void handleCharacter(final int primaryCode, Key key,
                                  int multiTapIndex, int[] nearByKeyCodes) {
-        Log.d(TAG, "handleCharacter: " + primaryCode + ", isPredictionOn:"
+        final long probe = TypingLatency.start();
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "handleCharacter: " + primaryCode + ", isPredictionOn:"
                     + isPredictionOn() + ", mPredicting:" + mPredicting);
         if (!mPredicting && isPredictionOn() && isAlphabet(primaryCode)
                 && !isCursorTouchingWord()) {
@@ -2319,7 +2357,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                 mWord.setFirstCharCapitalized(true);
             }
 
-            final InputConnection ic = getCurrentInputConnection();
+            final InputConnection ic = getCachedInputConnection();
             if (mWord.add(primaryCodeForShow, nearByKeyCodes)) {
                 Toast note = Toast
                         .makeText(
@@ -2346,6 +2384,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                 startActivity(easterEgg);
             }
             if (ic != null) {
+                final long icProbe = TypingLatency.start();
                 final int cursorPosition;
                 if (mWord.cursorPosition() != mWord.length()) {
                     Log.d(TAG,
@@ -2363,6 +2402,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                     ic.setSelection(cursorPosition + 1, cursorPosition + 1);
                     ic.endBatchEdit();
                 }
+                TypingLatency.end(TypingLatency.STAGE_INPUT_CONNECTION, icProbe);
             }
             // this should be done ONLY if the key is a letter, and not a inner
             // character (like ').
@@ -2374,15 +2414,18 @@ public class AnySoftKeyboard extends InputMethodService implements
                     mCandidateView.replaceTypedWord(mWord.getTypedWord());
             }
         } else {
+            final long icProbe = TypingLatency.start();
             sendKeyChar((char) primaryCodeForShow);
+            TypingLatency.end(TypingLatency.STAGE_INPUT_CONNECTION, icProbe);
         }
         // updateShiftKeyState(getCurrentInputEditorInfo());
         // measureCps();
         TextEntryState.typedCharacter((char) primaryCodeForShow, false);
+        TypingLatency.end(TypingLatency.STAGE_HANDLE_CHARACTER, probe);
     }
 
     private void handleSeparator(int primaryCode) {
-        Log.d(TAG, "handleSeparator: " + primaryCode);
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "handleSeparator: " + primaryCode);
 
         // Should dismiss the "Touch again to save" message when handling
         // separator
@@ -2393,7 +2436,7 @@ public class AnySoftKeyboard extends InputMethodService implements
 
         boolean pickedDefault = false;
         // Handle separator
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic != null) {
             ic.beginBatchEdit();
         }
@@ -2470,7 +2513,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             closeSelf = mInputView.closing();
 
         if (closeSelf) {
-            commitTyped(getCurrentInputConnection());
+            commitTyped(getCachedInputConnection());
             requestHideSelf(0);
             abortCorrection(true, true);
             TextEntryState.endSession();
@@ -2501,12 +2544,13 @@ public class AnySoftKeyboard extends InputMethodService implements
      */
     private void postUpdateSuggestions(long delay) {
         mHandler.removeMessages(KeyboardUIStateHanlder.MSG_UPDATE_SUGGESTIONS);
+        mSuggestionsPostedNanos = delay >= 0 ? TypingLatency.start() : 0;
         if (delay > 0)
             mHandler.sendMessageDelayed(mHandler.obtainMessage(KeyboardUIStateHanlder.MSG_UPDATE_SUGGESTIONS), delay);
         else if (delay == 0)
             mHandler.sendMessage(mHandler.obtainMessage(KeyboardUIStateHanlder.MSG_UPDATE_SUGGESTIONS));
         else
-            performUpdateSuggestions();
+            performUpdateSuggestionsNow();
     }
 
     private boolean isPredictionOn() {
@@ -2520,7 +2564,34 @@ public class AnySoftKeyboard extends InputMethodService implements
         return mShowSuggestions && onEvaluateInputViewShown();
     }
 
+    /**
+     * Requests suggestions for the current word. They are computed on a background thread,
+     * and will be shown when ready (see {@link #onSuggestionsReady(SuggestionsWorker.Result, int)}).
+     */
     /*package*/ void performUpdateSuggestions() {
+        if (mSuggestionsPostedNanos != 0) {
+            TypingLatency.end(TypingLatency.STAGE_SUGGESTIONS_DELAY, mSuggestionsPostedNanos);
+            mSuggestionsPostedNanos = 0;
+        }
+        if (!prepareSuggestionsUpdate()) return;
+        mSuggestionsRequestedNanos = TypingLatency.start();
+        mSuggestionsWorker.requestSuggestions(mWord);
+    }
+
+    /**
+     * Computes and shows the suggestions for the current word, on the calling thread.
+     */
+    private void performUpdateSuggestionsNow() {
+        if (!prepareSuggestionsUpdate()) return;
+        final long probe = TypingLatency.start();
+        if (showSuggestions(mSuggestionsWorker.computeNow(mWord)))
+            TypingLatency.end(TypingLatency.STAGE_SUGGESTIONS_SHOWN, probe);
+    }
+
+    /**
+     * @return true if suggestions should be computed for the current word.
+     */
+    private boolean prepareSuggestionsUpdate() {
         Log.d(TAG, "performUpdateSuggestions: has mSuggest:"
                 + (mSuggest != null) + ", isPredictionOn:"
                 + isPredictionOn() + ", mPredicting:" + mPredicting
@@ -2528,7 +2599,7 @@ public class AnySoftKeyboard extends InputMethodService implements
                 + mShowSuggestions);
         // Check if we have a suggestion engine attached.
         if (mSuggest == null) {
-            return;
+            return false;
         }
 
         // final boolean showSuggestions = (mCandidateView != null &&
@@ -2539,19 +2610,53 @@ public class AnySoftKeyboard extends InputMethodService implements
             mCandidateCloseText.setVisibility(View.GONE);
 
         if (!mPredicting) {
+            mSuggestionsWorker.cancel();
             if (mCandidateView != null)
                 mCandidateView.setSuggestions(null, false, false, false);
-            return;
+            return false;
         }
+        return true;
+    }
 
-        List<CharSequence> stringList = mSuggest.getSuggestions(/* mInputView, */mWord, false);
-        boolean correctionAvailable = mSuggest.hasMinimalCorrection();
+    /*package*/ void onSuggestionsReady(SuggestionsWorker.Result result, int sequence) {
+        if (mSuggestionsWorker == null) return;
+        result = mSuggestionsWorker.takeDeliveredResult(result, sequence);
+        if (result == null) return;
+        if (showSuggestions(result) && mSuggestionsRequestedNanos != 0) {
+            TypingLatency.end(TypingLatency.STAGE_SUGGESTIONS_SHOWN, mSuggestionsRequestedNanos);
+            mSuggestionsRequestedNanos = 0;
+        }
+    }
+
+    /**
+     * Shows the suggestions of a result taken from the worker, and hands the result back to it.
+     *
+     * @return true if the suggestions were of the current word.
+     */
+    private boolean showSuggestions(SuggestionsWorker.Result result) {
+        final boolean shown = applySuggestions(result);
+        mSuggestionsWorker.onResultApplied(result, shown);
+        return shown;
+    }
+
+    /**
+     * Shows the suggestions, if they are still relevant to the current word.
+     *
+     * @return true if the suggestions were of the current word.
+     */
+    private boolean applySuggestions(SuggestionsWorker.Result result) {
+        if (!mPredicting || mCandidateView == null || !TextUtils.equals(result.mTypedWord, mWord.getTypedWord()))
+            return false;
+        if (result.mSequence == mShownSuggestionsSequence)
+            return true;//already showing these
+        mShownSuggestionsSequence = result.mSequence;
+
+        List<CharSequence> stringList = result.mSuggestions;
+        boolean correctionAvailable = result.mHaveMinimalCorrection;
         // || mCorrectionMode == mSuggest.CORRECTION_FULL;
         CharSequence typedWord = mWord.getTypedWord();
         // If we're in basic correct
-        boolean typedWordValid = mSuggest.isValidWord(typedWord);/*
-                || (preferCapitalization() && mSuggest.isValidWord(typedWord
-                .toString().toLowerCase()));*/
+        boolean typedWordValid = result.mTypedWordValid;
 
         if (mShowSuggestions || mQuickFixes) {
             correctionAvailable |= typedWordValid;
@@ -2573,6 +2678,7 @@ public class AnySoftKeyboard extends InputMethodService implements
             mWord.setPreferredWord(null);
         }
         setCandidatesViewShown(shouldCandidatesStripBeShown() || mCompletionOn);
+        return true;
     }
 
     private boolean pickDefaultSuggestion() {
@@ -2580,10 +2686,17 @@ public class AnySoftKeyboard extends InputMethodService implements
         // Complete any pending candidate query first
         if (mHandler.hasMessages(KeyboardUIStateHanlder.MSG_UPDATE_SUGGESTIONS)) {
             postUpdateSuggestions(-1);
+        } else if (mPredicting && mSuggestionsWorker != null) {
+            //the preferred word depends on the suggestions of the typed word. If the worker is computing them
+            //right now, we'll wait for it. Otherwise, they are computed here (making the queued request stale),
+            //so there is only one wait.
+            SuggestionsWorker.Result result = mSuggestionsWorker.takeLatestResult();
+            if (result == null || !showSuggestions(result))
+                postUpdateSuggestions(-1);
         }
 
         final CharSequence bestWord = mWord.getPreferredWord();
-        Log.d(TAG, "pickDefaultSuggestion: bestWord:" + bestWord);
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "pickDefaultSuggestion: bestWord:" + bestWord);
         
         if (!TextUtils.isEmpty(bestWord)) {
             final CharSequence typedWord = mWord.getTypedWord();
@@ -2603,7 +2716,7 @@ public class AnySoftKeyboard extends InputMethodService implements
         Log.d(TAG, "pickSuggestionManually: index " + index
                 + " suggestion " + suggestion);
         final boolean correcting = TextEntryState.isCorrecting();
-        final InputConnection ic = getCurrentInputConnection();
+        final InputConnection ic = getCachedInputConnection();
         if (ic != null) {
             ic.beginBatchEdit();
         }
@@ -2689,7 +2802,7 @@ public class AnySoftKeyboard extends InputMethodService implements
         }
 
         mWord.setPreferredWord(suggestion);
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic != null) {
             if (correcting) {
                 AnyApplication.getDeviceSpecific()
@@ -2716,7 +2829,7 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     private boolean isCursorTouchingWord() {
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic == null)
             return false;
 
@@ -2747,7 +2860,7 @@ public class AnySoftKeyboard extends InputMethodService implements
         final int length = mWord.length();// mComposing.length();
         if (!mPredicting && length > 0) {
             final CharSequence typedWord = mWord.getTypedWord();
-            final InputConnection ic = getCurrentInputConnection();
+            final InputConnection ic = getCachedInputConnection();
             mPredicting = true;
             mUndoCommitCursorPosition = -2;
             ic.beginBatchEdit();
@@ -2957,8 +3070,8 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     public void onPress(int primaryCode) {
-        InputConnection ic = getCurrentInputConnection();
-        Log.d(TAG, "onPress:" + primaryCode);
+        InputConnection ic = getCachedInputConnection();
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "onPress:" + primaryCode);
         if (mVibrationDuration > 0 && primaryCode != 0) {
             mVibrator.vibrate(mVibrationDuration);
         }
@@ -3018,7 +3131,7 @@ public class AnySoftKeyboard extends InputMethodService implements
 
             }
 
-            Log.d(TAG, "Sound on key-pressed. Sound ID:" + keyFX
+            if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "Sound on key-pressed. Sound ID:" + keyFX
                     + " with volume " + fxVolume);
 
             mAudioManager.playSoundEffect(keyFX, fxVolume);
@@ -3026,8 +3139,8 @@ public class AnySoftKeyboard extends InputMethodService implements
     }
 
     public void onRelease(int primaryCode) {
-        InputConnection ic = getCurrentInputConnection();
-        Log.d(TAG, "onRelease:" + primaryCode);
+        InputConnection ic = getCachedInputConnection();
+        if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "onRelease:" + primaryCode);
         if (mDistinctMultiTouch && primaryCode == KeyCodes.SHIFT) {
             if (mShiftKeyState.isMomentary())
                 handleShift(true);
@@ -3148,8 +3261,10 @@ public class AnySoftKeyboard extends InputMethodService implements
         mMinimumWordCorrectionLength = sp
                 .getInt(getString(R.string.settings_key_min_length_for_word_correction__),
                         2);
-        if (mSuggest != null)
+        if (mSuggest != null) {
             mSuggest.setMinimumWordLengthForCorrection(mMinimumWordCorrectionLength);
+            mSuggest.setParallelDictionaryLookups(mConfig.useParallelDictionaryLookups());
+        }
 
         setInitialCondensedState(getResources().getConfiguration());
     }
@@ -3373,7 +3488,7 @@ public class AnySoftKeyboard extends InputMethodService implements
 
             setInitialCondensedState(newConfig);
 
-            commitTyped(getCurrentInputConnection());
+            commitTyped(getCachedInputConnection());
             mOrientation = newConfig.orientation;
 
             mKeyboardSwitcher.makeKeyboards(true);
@@ -3486,7 +3601,7 @@ public class AnySoftKeyboard extends InputMethodService implements
         } else {
             shouldDeleteUsingCompletion = false;
         }
-        InputConnection ic = getCurrentInputConnection();
+        InputConnection ic = getCachedInputConnection();
         if (ic != null) {
             if (mPredictionOn && shouldDeleteUsingCompletion) {
                 ic.setComposingText(mWord.getTypedWord()/* mComposing */, 1);
@@ -3515,7 +3630,9 @@ public class AnySoftKeyboard extends InputMethodService implements
         Log.w(TAG,
                 "The OS has reported that it is low on memory!. I'll try to clear some cache.");
         mKeyboardSwitcher.onLowMemory();
-        // DictionaryFactory.getInstance().onLowMemory(mSuggest.getMainDictionary());
+        if (mInputView != null)
+            mInputView.onLowMemory();
+        mSuggest.getDictionaryFactory().closeIdleDictionaries();
         super.onLowMemory();
     }
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard;
+
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+import com.anysoftkeyboard.utils.Log;
+
+/**
+ * Wraps the editor's {@link InputConnection}, and mirrors a window of the text around the cursor, so
+ * most text reads could be answered locally, without a round-trip to the editor's process.
+ * <p/>
+ * The mirror is built from the text the editor returned, and is updated by the edits done through this connection.
+ * It is only maintained while the selection is collapsed, and while the composing text (if any) ends at the cursor.
+ * Every edit records where the cursor is expected to be, and {@link #onUpdateSelection(int, int, int, int)} matches
+ * the editor's reports against these. Any report which was not expected (the user moved the cursor, or the
+ * editor changed, filtered or rejected the text) drops the mirror, and it is re-read on the next request.
+ * Until all the edits are confirmed by the editor's reports, reads go to the editor.
+ */
+class CachedInputConnection extends InputConnectionWrapper {
+    private static final String TAG = "ASK CachedIC";
+
+    static final int MAX_MIRRORED_LENGTH = 2048;
+    private static final int MAX_EXPECTED_POSITIONS = 32;
+    private static final int UNKNOWN = -1;
+
+    private InputConnection mTarget;
+
+    //the text before the cursor, including the composing text.
+    private final StringBuilder mBefore = new StringBuilder(64);
+    private boolean mBeforeComplete;
+    private final StringBuilder mAfter = new StringBuilder(64);
+    private boolean mAfterComplete;
+    private int mComposingLength = UNKNOWN;
+    private int mCursor = UNKNOWN;
+
+    private final int[] mExpectedPositions = new int[MAX_EXPECTED_POSITIONS];
+    private int mExpectedPositionsCount;
+
+    private int mHits;
+    private int mMisses;
+
+    CachedInputConnection() {
+        super(null, true);
+    }
+
+    /**
+     * Makes sure this connection wraps the given one. Switching to another connection drops the mirror.
+     */
+    InputConnection wrap(InputConnection target) {
+        if (target != mTarget) {
+            mTarget = target;
+            setTarget(target);
+            invalidate();
+        }
+        return this;
+    }
+
+    /**
+     * Should be called when the input starts (or restarts), with the editor's initial selection.
+     */
+    void onStartInput(int initialSelStart, int initialSelEnd, boolean restarting) {
+        invalidate();
+        if (initialSelStart == initialSelEnd && initialSelStart >= 0)
+            mCursor = initialSelEnd;
+        //a restarting editor may still have a composing region
+        if (!restarting) mComposingLength = 0;
+    }
+
+    /**
+     * Reconciles the mirror with the editor's selection report.
+     */
+    void onUpdateSelection(int newSelStart, int newSelEnd, int candidatesStart, int candidatesEnd) {
+        if (newSelStart != newSelEnd) {
+            invalidate();
+            return;
+        }
+        for (int i = 0; i < mExpectedPositionsCount; i++) {
+            if (mExpectedPositions[i] == newSelEnd) {
+                //this is one of ours. Any earlier expectation was reported (or merged into a batch).
+                System.arraycopy(mExpectedPositions, i + 1, mExpectedPositions, 0, mExpectedPositionsCount - i - 1);
+                mExpectedPositionsCount -= i + 1;
+                return;
+            }
+        }
+        if (mCursor == newSelEnd) {
+            mExpectedPositionsCount = 0;
+            return;
+        }
+
+        Log.d(TAG, "Unexpected selection update to " + newSelEnd + " (expected " + mCursor + "). Dropping mirror.");
+        invalidate();
+        mCursor = newSelEnd;
+        if (candidatesStart < 0 || candidatesEnd < 0)
+            mComposingLength = 0;
+        else if (candidatesEnd == newSelEnd)
+            mComposingLength = candidatesEnd - candidatesStart;
+    }
+
+    int getHits() {
+        return mHits;
+    }
+
+    int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Drops the mirror. Should be called when the editor's text may have changed without this connection knowing.
+     */
+    void invalidate() {
+        clearText();
+        mComposingLength = UNKNOWN;
+        mCursor = UNKNOWN;
+        mExpectedPositionsCount = 0;
+    }
+
+    private void clearText() {
+        mBefore.setLength(0);
+        mBeforeComplete = false;
+        mAfter.setLength(0);
+        mAfterComplete = false;
+    }
+
+    private void moveCursorBy(int delta) {
+        if (mCursor == UNKNOWN) {
+            //the editor's report could not be matched, so the edit could never be confirmed.
+            clearText();
+            return;
+        }
+        mCursor += delta;
+        if (mExpectedPositionsCount == MAX_EXPECTED_POSITIONS) {
+            System.arraycopy(mExpectedPositions, 1, mExpectedPositions, 0, MAX_EXPECTED_POSITIONS - 1);
+            mExpectedPositionsCount--;
+        }
+        mExpectedPositions[mExpectedPositionsCount++] = mCursor;
+    }
+
+    private void replaceComposing(CharSequence text, int newCursorPosition, int newComposingLength) {
+        if (mComposingLength == UNKNOWN || newCursorPosition != 1 || text == null) {
+            invalidate();
+            return;
+        }
+        if (mBefore.length() >= mComposingLength) {
+            mBefore.setLength(mBefore.length() - mComposingLength);
+        } else {
+            mBefore.setLength(0);
+            mBeforeComplete = false;
+        }
+        mBefore.append(text);
+        trimBefore();
+        moveCursorBy(text.length() - mComposingLength);
+        mComposingLength = newComposingLength;
+    }
+
+    private void trimBefore() {
+        if (mBefore.length() > MAX_MIRRORED_LENGTH) {
+            mBefore.delete(0, mBefore.length() - MAX_MIRRORED_LENGTH);
+            mBeforeComplete = false;
+        }
+    }
+
+    /**
+     * @return true if the editor reported all the edits done through this connection.
+     */
+    private boolean areEditsConfirmed() {
+        return mExpectedPositionsCount == 0;
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        if (flags == 0 && areEditsConfirmed() && (mBefore.length() >= n || mBeforeComplete)) {
+            mHits++;
+            final int length = mBefore.length();
+            return mBefore.substring(length - Math.min(n, length));
+        }
+        mMisses++;
+        final CharSequence text = super.getTextBeforeCursor(n, flags);
+        //some editors return more than requested. That can not be trusted.
+        if (flags == 0 && text != null && text.length() <= n) {
+            mBefore.setLength(0);
+            mBefore.append(text);
+            mBeforeComplete = text.length() < n;
+            trimBefore();
+        }
+        return text;
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        if (flags == 0 && areEditsConfirmed() && (mAfter.length() >= n || mAfterComplete)) {
+            mHits++;
+            return mAfter.substring(0, Math.min(n, mAfter.length()));
+        }
+        mMisses++;
+        final CharSequence text = super.getTextAfterCursor(n, flags);
+        if (flags == 0 && text != null && text.length() <= n) {
+            mAfter.setLength(0);
+            mAfter.append(text);
+            mAfterComplete = text.length() < n;
+            if (mAfter.length() > MAX_MIRRORED_LENGTH) {
+                mAfter.setLength(MAX_MIRRORED_LENGTH);
+                mAfterComplete = false;
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        replaceComposing(text, newCursorPosition, 0);
+        return super.commitText(text, newCursorPosition);
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        replaceComposing(text, newCursorPosition, text == null ? 0 : text.length());
+        return super.setComposingText(text, newCursorPosition);
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        //the text stays as it is, but the editor will report the change in the composing region.
+        if (mComposingLength != UNKNOWN) mComposingLength = 0;
+        moveCursorBy(0);
+        return super.finishComposingText();
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+        if (mComposingLength != 0) {
+            //the deleted text may overlap the composing region, which the editor handles in its own way.
+            invalidate();
+        } else if (mBefore.length() >= beforeLength || mBeforeComplete) {
+            final int deleted = Math.min(beforeLength, mBefore.length());
+            mBefore.setLength(mBefore.length() - deleted);
+            if (mAfter.length() >= afterLength) {
+                mAfter.delete(0, afterLength);
+            } else {
+                mAfter.setLength(0);
+                //if the text was complete, it is now empty (and still complete)
+            }
+            moveCursorBy(-deleted);
+        } else {
+            //not sure how many characters the editor will actually delete
+            invalidate();
+        }
+        return super.deleteSurroundingText(beforeLength, afterLength);
+    }
+
+    @Override
+    public boolean sendKeyEvent(KeyEvent event) {
+        if (event.getAction() == KeyEvent.ACTION_DOWN) {
+            if (event.getKeyCode() == KeyEvent.KEYCODE_DEL && mComposingLength == 0
+                    && (mBefore.length() > 0 || mBeforeComplete)
+                    && (mBefore.length() == 0 || !Character.isLowSurrogate(mBefore.charAt(mBefore.length() - 1)))) {
+                if (mBefore.length() > 0) {
+                    mBefore.setLength(mBefore.length() - 1);
+                    moveCursorBy(-1);
+                }
+            } else {
+                invalidate();
+            }
+        }
+        return super.sendKeyEvent(event);
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        invalidate();
+        return super.setSelection(start, end);
+    }
+
+    @Override
+    public boolean setComposingRegion(int start, int end) {
+        invalidate();
+        return super.setComposingRegion(start, end);
+    }
+
+    @Override
+    public boolean commitCompletion(CompletionInfo text) {
+        invalidate();
+        return super.commitCompletion(text);
+    }
+
+    @Override
+    public boolean performEditorAction(int editorAction) {
+        invalidate();
+        return super.performEditorAction(editorAction);
+    }
+
+    @Override
+    public boolean performContextMenuAction(int id) {
+        invalidate();
+        return super.performContextMenuAction(id);
+    }
+}
@@ -22,6 +22,8 @@ public interface Configuration {
 
     boolean alwaysUseFallBackUserDictionary();
 
+    boolean useParallelDictionaryLookups();
+
     boolean hasNotificationAnimated(String notificationKey);
 
     void setNotificationAnimated(String notificationKey);
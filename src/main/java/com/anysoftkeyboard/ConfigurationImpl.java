@@ -108,6 +108,8 @@ public class ConfigurationImpl implements Configuration, OnSharedPreferenceChang
 
     private boolean mAlwaysUseFallBackUserDictionary = false;
 
+    private boolean mUseParallelDictionaryLookups = false;
+
     private final int mCurrentAppVersion;
     private long mFirstTimeAppInstalled;
     private long mFirstTimeCurrentVersionInstalled;
@@ -555,6 +557,10 @@ public class ConfigurationImpl implements Configuration, OnSharedPreferenceChang
                 mContext.getResources().getBoolean(R.bool.settings_default_always_use_fallback_user_dictionary));
         Log.d(TAG, "** mAlwaysUseFallBackUserDictionary: " + mAlwaysUseFallBackUserDictionary);
 
+        mUseParallelDictionaryLookups = sp.getBoolean(mContext.getString(R.string.settings_key_use_parallel_dictionary_lookups),
+                mContext.getResources().getBoolean(R.bool.settings_default_use_parallel_dictionary_lookups));
+        Log.d(TAG, "** mUseParallelDictionaryLookups: " + mUseParallelDictionaryLookups);
+
         //Some preferences cause rebuild of the keyboard, hence changing the listeners list
         final LinkedList<OnSharedPreferenceChangeListener> disconnectedList = new LinkedList<SharedPreferences.OnSharedPreferenceChangeListener>(mPreferencesChangedListeners);
         for (OnSharedPreferenceChangeListener listener : disconnectedList) {
@@ -876,6 +882,11 @@ public class ConfigurationImpl implements Configuration, OnSharedPreferenceChang
         return mAlwaysUseFallBackUserDictionary;
     }
 
+    @Override
+    public boolean useParallelDictionaryLookups() {
+        return mUseParallelDictionaryLookups;
+    }
+
     @Override
     public boolean hasNotificationAnimated(String notificationKey) {
         return mInstanceStorage.get(NOTIFICATION_ANIMATION_KEY_PREFIX+notificationKey) != null;
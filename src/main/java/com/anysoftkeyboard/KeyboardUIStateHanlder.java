@@ -18,6 +18,7 @@ final class KeyboardUIStateHanlder extends Handler {
     public static final int MSG_RESTART_NEW_WORD_SUGGESTIONS = 1;
     public static final int MSG_UPDATE_SHIFT_STATE = 3;
     public static final int MSG_REMOVE_CLOSE_SUGGESTIONS_HINT = 4;
+    public static final int MSG_SUGGESTIONS_READY = 5;
 
     private static final class CloseTextAnimationListener implements Animation.AnimationListener {
         private View closeText;
@@ -56,8 +57,11 @@ final class KeyboardUIStateHanlder extends Handler {
             case MSG_UPDATE_SUGGESTIONS:
                 ask.performUpdateSuggestions();
                 break;
+            case MSG_SUGGESTIONS_READY:
+                ask.onSuggestionsReady((SuggestionsWorker.Result) msg.obj, msg.arg1);
+                break;
             case MSG_RESTART_NEW_WORD_SUGGESTIONS:
-                final InputConnection ic = ask.getCurrentInputConnection();
+                final InputConnection ic = ask.getCachedInputConnection();
                 ask.performRestartWordSuggestion(ic);
                 break;
             // case MSG_UPDATE_OLD_SUGGESTIONS:
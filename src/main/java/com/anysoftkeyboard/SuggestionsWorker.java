@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard;
+
+import android.os.Handler;
+
+import com.anysoftkeyboard.dictionaries.Suggest;
+import com.anysoftkeyboard.utils.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Computes suggestions on a background thread.
+ * <p/>
+ * Each request is tagged with a sequence number. A request which was superseded by a newer one before it started
+ * is not computed at all, and only the result of the newest request is delivered to the UI thread.
+ * <p/>
+ * There are two {@link Result}s, which are re-used: one is held by the UI (it is what the UI shows), and the other is
+ * written by the next computation. A result is handed back once the UI shows a newer one
+ * (see {@link #onResultApplied(Result, boolean)}), so no garbage is created per request.
+ */
+class SuggestionsWorker {
+    private static final String TAG = "ASK SuggestionsWorker";
+
+    static final class Result {
+        //zero while the result is being written
+        int mSequence;
+        final StringBuilder mTypedWord = new StringBuilder(32);
+        final List<CharSequence> mSuggestions = new ArrayList<>();
+        boolean mHaveMinimalCorrection;
+        boolean mTypedWordValid;
+
+        private final List<StringBuilder> mSlots = new ArrayList<>();
+        //guarded by the worker's result lock
+        private boolean mHeldByUi;
+        private boolean mWriting;
+
+        private void setSuggestions(List<CharSequence> suggestions) {
+            mSuggestions.clear();
+            final int count = suggestions.size();
+            for (int i = 0; i < count; i++) {
+                if (mSlots.size() == i) mSlots.add(new StringBuilder(32));
+                final StringBuilder slot = mSlots.get(i);
+                slot.setLength(0);
+                slot.append(suggestions.get(i));
+                mSuggestions.add(slot);
+            }
+        }
+    }
+
+    private final Suggest mSuggest;
+    private final Handler mUiHandler;
+    private final int mResultMessage;
+    private final ExecutorService mExecutor;
+    private final Object mResultLock = new Object();
+    //guarded by mResultLock
+    private final Result[] mResults = new Result[]{new Result(), new Result()};
+    private Result mShownResult = null;
+    private Result mLatestResult = null;
+    private int mLatestRequest = 0;
+    private int mComputingRequest = 0;
+
+    /**
+     * @param uiHandler     results will be delivered to this handler.
+     * @param resultMessage the message's <code>what</code> to use when delivering results. The message's object will be
+     *                      the {@link Result}, and its <code>arg1</code> the request's sequence number.
+     */
+    SuggestionsWorker(Suggest suggest, Handler uiHandler, int resultMessage) {
+        mSuggest = suggest;
+        mUiHandler = uiHandler;
+        mResultMessage = resultMessage;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ASK suggestions");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Requests suggestions for the current state of the given composer. Any earlier request is now stale.
+     *
+     * @return the request's sequence number.
+     */
+    int requestSuggestions(WordComposer wordComposer) {
+        //the composer will keep changing on the UI thread, so the request works on a copy.
+        final WordComposer snapshot = wordComposer.snapshot();
+        final int sequence;
+        synchronized (mResultLock) {
+            sequence = ++mLatestRequest;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                computeInBackground(sequence, snapshot);
+            }
+        });
+        return sequence;
+    }
+
+    /**
+     * Computes suggestions for the given composer on the calling (UI) thread. The result becomes the latest one,
+     * and any pending request is now stale.
+     * The result is held by the UI until it is passed to {@link #onResultApplied(Result, boolean)}.
+     */
+    Result computeNow(WordComposer wordComposer) {
+        final int sequence;
+        final Result result;
+        synchronized (mResultLock) {
+            sequence = ++mLatestRequest;
+            //the worker may be writing one of the results. In that case, the UI re-uses the one it holds.
+            if (isFree(mResults[0])) result = mResults[0];
+            else if (isFree(mResults[1])) result = mResults[1];
+            else result = mResults[0].mWriting ? mResults[1] : mResults[0];
+            result.mHeldByUi = true;
+            result.mSequence = 0;
+        }
+        compute(wordComposer, result);
+        synchronized (mResultLock) {
+            result.mSequence = sequence;
+            mLatestResult = result;
+        }
+        return result;
+    }
+
+    /**
+     * Takes the newest request's result, for the UI. If the newest request is being computed right now, this will
+     * block until it is done, but it never waits for a request which was not started yet.
+     * The result is held by the UI until it is passed to {@link #onResultApplied(Result, boolean)}.
+     *
+     * @return the newest request's result, or null if it is not available. In that case, the caller should
+     * use {@link #computeNow(WordComposer)}.
+     */
+    Result takeLatestResult() {
+        synchronized (mResultLock) {
+            final int sequence = mLatestRequest;
+            while (mComputingRequest == sequence && sequence != 0) {
+                try {
+                    mResultLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return takeResult(mLatestResult, sequence);
+        }
+    }
+
+    /**
+     * Takes a result which was delivered to the UI thread.
+     * The result is held by the UI until it is passed to {@link #onResultApplied(Result, boolean)}.
+     *
+     * @param sequence the delivered message's <code>arg1</code>.
+     * @return the result, or null if it is not of the newest request anymore.
+     */
+    Result takeDeliveredResult(Result result, int sequence) {
+        synchronized (mResultLock) {
+            return takeResult(result, sequence);
+        }
+    }
+
+    private Result takeResult(Result result, int sequence) {
+        if (result == null || result.mWriting || result.mSequence != sequence || sequence != mLatestRequest)
+            return null;
+        result.mHeldByUi = true;
+        return result;
+    }
+
+    /**
+     * Should be called by the UI once it is done with a taken result.
+     *
+     * @param shown true if the UI now shows this result (and not the one it showed before), false if it was dropped.
+     */
+    void onResultApplied(Result result, boolean shown) {
+        synchronized (mResultLock) {
+            if (shown) {
+                if (mShownResult != null && mShownResult != result) mShownResult.mHeldByUi = false;
+                mShownResult = result;
+            } else if (result != mShownResult) {
+                result.mHeldByUi = false;
+            }
+            mResultLock.notifyAll();
+        }
+    }
+
+    /**
+     * Makes all the requests made so far stale.
+     */
+    void cancel() {
+        synchronized (mResultLock) {
+            ++mLatestRequest;
+            mResultLock.notifyAll();
+        }
+    }
+
+    void shutdown() {
+        cancel();
+        mExecutor.shutdown();
+    }
+
+    private boolean isStale(int sequence) {
+        synchronized (mResultLock) {
+            return sequence != mLatestRequest;
+        }
+    }
+
+    private static boolean isFree(Result result) {
+        return !result.mHeldByUi && !result.mWriting;
+    }
+
+    private void computeInBackground(int sequence, WordComposer wordComposer) {
+        final Result result;
+        synchronized (mResultLock) {
+            Result free = null;
+            while (free == null) {
+                if (sequence != mLatestRequest) return;
+                free = isFree(mResults[0]) ? mResults[0] : isFree(mResults[1]) ? mResults[1] : null;
+                if (free == null) {
+                    //the UI is switching between its results, and will hand one back very soon.
+                    try {
+                        mResultLock.wait();
+                    } catch (InterruptedException e) {
+                        Log.w(TAG, "Interrupted while waiting for a free result! Request " + sequence + " will be dropped.");
+                        return;
+                    }
+                }
+            }
+            result = free;
+            result.mWriting = true;
+            result.mSequence = 0;
+            mComputingRequest = sequence;
+        }
+        boolean computed = false;
+        try {
+            compute(wordComposer, result);
+            computed = true;
+        } finally {
+            publish(result, sequence, computed);
+        }
+    }
+
+    private void compute(WordComposer wordComposer, Result result) {
+        //Suggest is not thread-safe, and its dictionaries may be replaced on the UI thread.
+        synchronized (mSuggest) {
+            final List<CharSequence> suggestions = mSuggest.getSuggestions(wordComposer, false);
+            result.mHaveMinimalCorrection = mSuggest.hasMinimalCorrection();
+            result.mTypedWord.setLength(0);
+            result.mTypedWord.append(wordComposer.getTypedWord());
+            result.mTypedWordValid = mSuggest.isValidWord(result.mTypedWord);
+            //Suggest re-uses its list (and the list's items), so the result holds a copy.
+            result.setSuggestions(suggestions);
+        }
+    }
+
+    private void publish(Result result, int sequence, boolean computed) {
+        final boolean deliver;
+        synchronized (mResultLock) {
+            result.mWriting = false;
+            mComputingRequest = 0;
+            deliver = computed && !isStale(sequence);
+            if (deliver) {
+                result.mSequence = sequence;
+                mLatestResult = result;
+            }
+            mResultLock.notifyAll();
+        }
+        if (deliver) mUiHandler.sendMessage(mUiHandler.obtainMessage(mResultMessage, sequence, 0, result));
+    }
+}
@@ -21,32 +21,40 @@ import com.anysoftkeyboard.keyboards.views.AnyKeyboardBaseView;
 import com.anysoftkeyboard.utils.Log;
 import com.menny.android.anysoftkeyboard.FeaturesSet;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * A place to store the currently composing word with information such as adjacent key codes as well
+ * <p/>
+ * The codes are stored in one flat array: position <code>i</code> in the word owns the <code>MAX_ALTERNATIVES</code>
+ * slots starting at <code>i * MAX_ALTERNATIVES</code>, the pressed key first and then the near-by keys, padded with
+ * <code>NOT_A_KEY</code>. This is the layout the native dictionaries expect, so it can be handed to them as is.
  */
 public class WordComposer {
     private static final String CHEWBACCAONTHEDRUMS = "chewbacca";
     private static final String TAG = "ASK _WC";
+
+    /**
+     * The number of codes (pressed key and near-by keys) stored for each position in the word.
+     */
+    public static final int MAX_ALTERNATIVES = 16;
     /**
-     * The list of unicode values for each keystroke (including surrounding keys)
+     * The initial capacity, in positions. Longer words will grow the buffer.
      */
-    private final ArrayList<int[]> mCodes = new ArrayList<>(AndroidUserDictionary.MAX_WORD_LENGTH);
+    public static final int MAX_WORD_LENGTH = AndroidUserDictionary.MAX_WORD_LENGTH;
 
     /**
-     * This holds arrays for reuse. Will not exceed AndroidUserDictionary.MAX_WORD_LENGTH
+     * The unicode values for each keystroke (including surrounding keys)
      */
-    private final List<int[]> mArraysToReuse = new ArrayList<>(AndroidUserDictionary.MAX_WORD_LENGTH);
+    private int[] mCodes;
+    private int[] mCodesCount;
 
     /**
      * The word chosen from the candidate list, until it is committed.
      */
     private CharSequence mPreferredWord;
 
-    private final StringBuilder mTypedWord = new StringBuilder(AndroidUserDictionary.MAX_WORD_LENGTH);
+    private final StringBuilder mTypedWord;
 
     private int mCursorPosition;
     private int mGlobalCursorPosition;
@@ -60,28 +68,61 @@ public class WordComposer {
      */
     private boolean mIsFirstCharCapitalized;
 
+    private final boolean mReadOnly;
+
     public WordComposer() {
+        this(MAX_WORD_LENGTH, false);
     }
-/*
-    WordComposer(WordComposer copy) {
-        mCodes = new ArrayList<int[]>(copy.mCodes);
+
+    private WordComposer(int capacity, boolean readOnly) {
+        mCodes = new int[capacity * MAX_ALTERNATIVES];
+        Arrays.fill(mCodes, AnyKeyboardBaseView.NOT_A_KEY);
+        mCodesCount = new int[capacity];
+        mTypedWord = new StringBuilder(capacity);
+        mReadOnly = readOnly;
+    }
+
+    /**
+     * Creates a copy of the given composer. Changes to the source will not be reflected in the copy.
+     */
+    public WordComposer(WordComposer copy) {
+        this(Math.max(MAX_WORD_LENGTH, copy.length()), false);
+        copyFrom(copy);
+    }
+
+    /**
+     * @return an immutable copy of this composer, sized to the current word. Useful for handing the word
+     * to another thread, while this one keeps changing.
+     */
+    public WordComposer snapshot() {
+        WordComposer snapshot = new WordComposer(Math.max(1, length()), true);
+        snapshot.copyFrom(this);
+        return snapshot;
+    }
+
+    private void copyFrom(WordComposer copy) {
+        final int length = copy.length();
+        System.arraycopy(copy.mCodes, 0, mCodes, 0, length * MAX_ALTERNATIVES);
+        System.arraycopy(copy.mCodesCount, 0, mCodesCount, 0, length);
         mPreferredWord = copy.mPreferredWord;
-        mTypedWord = new StringBuilder(copy.mTypedWord);
+        mTypedWord.append(copy.mTypedWord);
+        mCursorPosition = copy.mCursorPosition;
+        mGlobalCursorPosition = copy.mGlobalCursorPosition;
         mCapsCount = copy.mCapsCount;
         mAutoCapitalized = copy.mAutoCapitalized;
         mIsFirstCharCapitalized = copy.mIsFirstCharCapitalized;
     }
-*/
+
+    private void ensureMutable() {
+        if (mReadOnly) throw new UnsupportedOperationException("This is a read-only snapshot of a WordComposer");
+    }
 
     /**
      * Clear out the keys registered so far.
      */
     public void reset() {
-        //moving arrays back to re-use list
-        for (int[] array : mCodes) {
-            mArraysToReuse.add(array);
-        }
-        mCodes.clear();
+        ensureMutable();
+        Arrays.fill(mCodes, 0, length() * MAX_ALTERNATIVES, AnyKeyboardBaseView.NOT_A_KEY);
         mIsFirstCharCapitalized = false;
         mPreferredWord = null;
         mTypedWord.setLength(0);
@@ -111,10 +152,12 @@ public class WordComposer {
     }
 
     public void setGlobalCursorPosition(int position) {
+        ensureMutable();
         mGlobalCursorPosition = position;
     }
 
     public boolean setCursorPostion(int position/*, int candidatesStartPosition*/) {
+        ensureMutable();
         if (position < 0 || position > length())//note: the cursor can be AFTER the word, so it can be equal to size()
         {
             Log.w(TAG, "New cursor position is invalid! It is outside the word (size " + length() + ", new position " + position + ". Disregarding!!!!");
@@ -146,13 +189,19 @@ public class WordComposer {
 	*/
 
     /**
-     * Returns the codes at a particular position in the word.
-     *
-     * @param index the position in the word
-     * @return the unicode for the pressed and surrounding keys
+     * Returns all the codes of the word, in the flat layout: the codes of position <code>i</code> start at
+     * <code>i * MAX_ALTERNATIVES</code>, and are padded with <code>NOT_A_KEY</code>.
+     * The returned array is owned by this composer, and must not be changed.
      */
-    public int[] getCodesAt(int index) {
-        return mCodes.get(index);
+    public int[] getCodes() {
+        return mCodes;
+    }
+
+    /**
+     * @return the number of codes (pressed key and near-by keys) stored for the given position in the word.
+     */
+    public int getCodesCountAt(int index) {
+        return mCodesCount[index];
     }
 
     /**
@@ -162,6 +211,9 @@ public class WordComposer {
      * @param codes the array of unicode values
      */
     public boolean add(int primaryCode, int[] codes) {
+        ensureMutable();
+        final int length = length();
+        if (length == mCodesCount.length) grow();
 
         mTypedWord.insert(mCursorPosition, (char) primaryCode);
         /*if (codes != null)
@@ -173,9 +225,19 @@ public class WordComposer {
         }*/
 
         correctPrimaryJuxtapos(primaryCode, codes);
-        //this will return a copy of the codes array, stored in an array with sufficent storage 
-        int[] reusableArray = getReusableArray(codes);
-        mCodes.add(mCursorPosition, reusableArray);
+        final int offset = mCursorPosition * MAX_ALTERNATIVES;
+        if (mCursorPosition < length) {
+            //making room in the middle of the word
+            System.arraycopy(mCodes, offset, mCodes, offset + MAX_ALTERNATIVES, (length - mCursorPosition) * MAX_ALTERNATIVES);
+            System.arraycopy(mCodesCount, mCursorPosition, mCodesCount, mCursorPosition + 1, length - mCursorPosition);
+        }
+        //only the codes up to the first NOT_A_KEY are used
+        int count = 0;
+        while (count < codes.length && count < MAX_ALTERNATIVES && codes[count] != AnyKeyboardBaseView.NOT_A_KEY)
+            count++;
+        System.arraycopy(codes, 0, mCodes, offset, count);
+        Arrays.fill(mCodes, offset + count, offset + MAX_ALTERNATIVES, AnyKeyboardBaseView.NOT_A_KEY);
+        mCodesCount[mCursorPosition] = count;
         mCursorPosition++;
         if (Character.isUpperCase((char) primaryCode)) mCapsCount++;
 
@@ -188,23 +250,16 @@ public class WordComposer {
         return false;
     }
 
-    private int[] getReusableArray(int[] codes) {
-        while (mArraysToReuse.size() > 0) {
-            int[] possibleArray = mArraysToReuse.remove(0);
-            //is it usable in this situation?
-            if (possibleArray.length >= codes.length) {
-                System.arraycopy(codes, 0, possibleArray, 0, codes.length);
-                if (possibleArray.length > codes.length)
-                    Arrays.fill(possibleArray, codes.length, possibleArray.length, AnyKeyboardBaseView.NOT_A_KEY);
-                Log.d(TAG, "Found an array to reuse with length " + possibleArray.length);
-                return possibleArray;
-            }
-        }
-        //if I got here, it means that the reusableArray does not contain a long enough array
-        Log.d(TAG, "Creating a new array with length " + codes.length);
-        int[] newArray = new int[codes.length];
-        mArraysToReuse.add(newArray);
-        return getReusableArray(codes);
+    private void grow() {
+        final int capacity = mCodesCount.length * 2;
+        Log.d(TAG, "Growing codes buffer to " + capacity + " positions");
+        int[] codes = new int[capacity * MAX_ALTERNATIVES];
+        System.arraycopy(mCodes, 0, codes, 0, mCodes.length);
+        Arrays.fill(codes, mCodes.length, codes.length, AnyKeyboardBaseView.NOT_A_KEY);
+        mCodes = codes;
+        int[] codesCount = new int[capacity];
+        System.arraycopy(mCodesCount, 0, codesCount, 0, mCodesCount.length);
+        mCodesCount = codesCount;
     }
 
     /**
@@ -241,9 +296,14 @@ public class WordComposer {
      * Delete the last keystroke as a result of hitting backspace.
      */
     public void deleteLast() {
+        ensureMutable();
         if (mCursorPosition > 0) {
-            //removing from the codes list, and taking it back to the reusable list
-            mArraysToReuse.add(mCodes.remove(mCursorPosition - 1));
+            final int length = length();
+            final int offset = (mCursorPosition - 1) * MAX_ALTERNATIVES;
+            //closing the gap in the codes
+            System.arraycopy(mCodes, offset + MAX_ALTERNATIVES, mCodes, offset, (length - mCursorPosition) * MAX_ALTERNATIVES);
+            System.arraycopy(mCodesCount, mCursorPosition, mCodesCount, mCursorPosition - 1, length - mCursorPosition);
+            Arrays.fill(mCodes, (length - 1) * MAX_ALTERNATIVES, length * MAX_ALTERNATIVES, AnyKeyboardBaseView.NOT_A_KEY);
             //final int lastPos = mTypedWord.length() - 1;
             char last = mTypedWord.charAt(mCursorPosition - 1);
             mTypedWord.deleteCharAt(mCursorPosition - 1);
@@ -258,14 +318,14 @@ public class WordComposer {
      * @return the word that was typed so far
      */
     public CharSequence getTypedWord() {
-        int wordSize = mCodes.size();
-        if (wordSize == 0) {
+        if (length() == 0) {
             return "";
         }
         return mTypedWord;
     }
 
     public void setFirstCharCapitalized(boolean capitalized) {
+        ensureMutable();
         mIsFirstCharCapitalized = capitalized;
     }
 
@@ -293,6 +353,7 @@ public class WordComposer {
      * @param preferred
      */
     public void setPreferredWord(CharSequence preferred) {
+        ensureMutable();
         mPreferredWord = preferred;
     }
 
@@ -314,6 +375,7 @@ public class WordComposer {
      * @param auto whether it was an automatic capitalization due to start of sentence
      */
     public void setAutoCapitalized(boolean auto) {
+        ensureMutable();
         mAutoCapitalized = auto;
     }
 
@@ -329,11 +391,10 @@ public class WordComposer {
     public void logCodes() {
         if (!FeaturesSet.DEBUG_LOG) return;
         Log.d(TAG, "Word: " + mTypedWord + ", prefered word:" + mPreferredWord);
-        int i = 0;
-        for (int[] codes : mCodes) {
+        for (int i = 0; i < length(); i++) {
             String codesString = "Codes #" + i + ": ";
-            for (int c : codes) {
-                codesString += "" + c + ",";
+            for (int c = 0; c < mCodesCount[i]; c++) {
+                codesString += "" + mCodes[i * MAX_ALTERNATIVES + c] + ",";
             }
             Log.d(TAG, codesString);
         }
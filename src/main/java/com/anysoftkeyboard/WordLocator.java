@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard;
+
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Locates the word around the cursor.
+ * <p/>
+ * Every call to the {@link InputConnection} is a round-trip to the editor's process, so the text is fetched in windows:
+ * a single call per side, unless the word is longer than the window, in which case the window is doubled and
+ * fetched again. The word boundaries are found locally.
+ */
+class WordLocator {
+    interface Separators {
+        boolean isWordSeparator(int code);
+    }
+
+    static final int INITIAL_WINDOW = 32;
+    static final int MAX_WINDOW = 1024;
+
+    private final Separators mSeparators;
+    private CharSequence mLeft = "";
+    private CharSequence mRight = "";
+    private int mLastIpcCalls;
+    private int mTotalIpcCalls;
+
+    WordLocator(Separators separators) {
+        mSeparators = separators;
+    }
+
+    /**
+     * Locates the word around the cursor. The parts of it are available at {@link #getLeft()} and {@link #getRight()}.
+     */
+    void locate(InputConnection ic) {
+        mLastIpcCalls = 0;
+        mLeft = locateLeft(ic);
+        mRight = locateRight(ic);
+        mTotalIpcCalls += mLastIpcCalls;
+    }
+
+    /**
+     * @return the part of the word which is before the cursor.
+     */
+    CharSequence getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * @return the part of the word which is after the cursor.
+     */
+    CharSequence getRight() {
+        return mRight;
+    }
+
+    /**
+     * @return the number of calls to the input-connection the last {@link #locate(InputConnection)} made.
+     */
+    int getLastIpcCalls() {
+        return mLastIpcCalls;
+    }
+
+    int getTotalIpcCalls() {
+        return mTotalIpcCalls;
+    }
+
+    private CharSequence locateLeft(InputConnection ic) {
+        int window = INITIAL_WINDOW;
+        while (true) {
+            mLastIpcCalls++;
+            final CharSequence text = ic.getTextBeforeCursor(window, 0);
+            if (text == null) return "";
+            final int length = text.length();
+            int start = length;
+            while (start > 0 && !mSeparators.isWordSeparator(text.charAt(start - 1))) start--;
+            //some editors return the entire text, even if less was requested.
+            if (start > 0 || length != window || window >= MAX_WINDOW)
+                return text.subSequence(start, length).toString();
+            window *= 2;
+        }
+    }
+
+    private CharSequence locateRight(InputConnection ic) {
+        int window = INITIAL_WINDOW;
+        while (true) {
+            mLastIpcCalls++;
+            final CharSequence text = ic.getTextAfterCursor(window, 0);
+            if (text == null) return "";
+            final int length = text.length();
+            int end = 0;
+            while (end < length && !mSeparators.isWordSeparator(text.charAt(end))) end++;
+            if (end < length || length != window || window >= MAX_WINDOW)
+                return text.subSequence(0, end).toString();
+            window *= 2;
+        }
+    }
+}
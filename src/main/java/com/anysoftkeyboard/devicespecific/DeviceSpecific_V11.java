@@ -42,6 +42,6 @@ public class DeviceSpecific_V11 extends DeviceSpecific_V8 {
 
     @Override
     public boolean isHardwareAcceleratedCanvas(Canvas canvas) {
-        return canvas != null || canvas.isHardwareAccelerated();
+        return canvas != null && canvas.isHardwareAccelerated();
     }
 }
@@ -120,10 +120,22 @@ public class AutoText {
     }
 
     public String lookup(CharSequence src, final int start, final int end) {
+        return lookup(src, start, end, false);
+    }
+
+    /**
+     * Same as {@link #lookup(CharSequence, int, int)}, but the source is lower-cased while it is
+     * being walked, so there is no need to create a lower-cased copy of it.
+     */
+    public String lookupLowerCase(CharSequence src, final int start, final int end) {
+        return lookup(src, start, end, true);
+    }
+
+    private String lookup(CharSequence src, final int start, final int end, final boolean lowerCase) {
         int here = mTrie[TRIE_ROOT];
 
         for (int i = start; i < end; i++) {
-            char c = src.charAt(i);
+            char c = lowerCase ? Character.toLowerCase(src.charAt(i)) : src.charAt(i);
 
             for (; here != TRIE_NULL; here = mTrie[here + TRIE_NEXT]) {
                 if (c == mTrie[here + TRIE_C]) {
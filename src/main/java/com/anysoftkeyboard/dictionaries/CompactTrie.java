@@ -0,0 +1,580 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.WordComposer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A trie which is stored in a few parallel primitive arrays, instead of an object per node.
+ * Node 0 is the root. Each node's children are stored as a contiguous segment in {@link #mChildren},
+ * sorted by character code, so exact lookups (add, delete, frequency) binary-search each level.
+ * <p/>
+ * When a node's children segment is full, it is moved to the end of the children pool, leaving a hole.
+ * Deleted nodes are not reused either. Once the holes take more space than the live data, the
+ * whole structure is re-packed.
+ * <p/>
+ * Words are usually typed one character at a time, so each search keeps its frontier: the nodes (and their
+ * accumulated weight) which matched all the typed codes. If the next search is for the same codes plus one,
+ * it continues from that frontier instead of walking the whole prefix again. Anything else (a deleted character,
+ * a cursor jump, a changed structure) falls back to a full search.
+ */
+class CompactTrie extends WordsTrie {
+    private static final int ROOT = 0;
+    private static final int INITIAL_NODES_CAPACITY = 256;
+    private static final int INITIAL_ROOT_CAPACITY = 26/*number of letters in the English Alphabet*/;
+    private static final int MIN_CHILDREN_CAPACITY = 2;
+    private static final int MIN_WASTE_BEFORE_COMPACTING = 1024;
+
+    private char[] mCodes;
+    private char[] mLowerCodes;
+    private int[] mFrequencies;
+    private boolean[] mTerminals;
+    private int[] mChildrenStart;
+    private int[] mChildrenCount;
+    private int[] mChildrenCapacity;
+    private int mNodesCount;
+    private int mDeletedNodesCount;
+
+    private int[] mChildren;
+    private int mChildrenPoolSize;
+    private int mWastedChildrenSlots;
+
+    private int mMaxDepth;
+    private int mInputLength;
+    private final char[] mWordBuilder = new char[BTreeDictionary.MAX_WORD_LENGTH];
+
+    //the codes the frontier was built for. Zero means there is no usable frontier.
+    private int mFrontierInputLength;
+    private final int[] mFrontierCodes = new int[BTreeDictionary.MAX_WORD_LENGTH * WordComposer.MAX_ALTERNATIVES];
+    private boolean mFrontierBroken;
+    private SearchFrontier mFrontier = new SearchFrontier();
+    private SearchFrontier mNextFrontier = new SearchFrontier();
+
+    CompactTrie() {
+        clear();
+    }
+
+    @Override
+    void clear() {
+        mCodes = new char[INITIAL_NODES_CAPACITY];
+        mLowerCodes = new char[INITIAL_NODES_CAPACITY];
+        mFrequencies = new int[INITIAL_NODES_CAPACITY];
+        mTerminals = new boolean[INITIAL_NODES_CAPACITY];
+        mChildrenStart = new int[INITIAL_NODES_CAPACITY];
+        mChildrenCount = new int[INITIAL_NODES_CAPACITY];
+        mChildrenCapacity = new int[INITIAL_NODES_CAPACITY];
+        mNodesCount = 0;
+        mDeletedNodesCount = 0;
+
+        mChildren = new int[INITIAL_NODES_CAPACITY];
+        mChildrenPoolSize = 0;
+        mWastedChildrenSlots = 0;
+
+        final int root = createNode((char) 0);
+        allocateChildren(root, INITIAL_ROOT_CAPACITY);
+        mFrontierInputLength = 0;
+    }
+
+    /**
+     * @return the number of live nodes in the structure (not including the root).
+     */
+    int getNodesCount() {
+        return mNodesCount - mDeletedNodesCount - 1;
+    }
+
+    @Override
+    void addWord(CharSequence word, int frequency) {
+        if (word.length() == 0) return;
+        final int node = getOrCreateNode(word);
+        mTerminals[node] = true;
+        mFrequencies[node] = frequency;
+        mFrontierInputLength = 0;
+
+        compactIfNeeded();
+    }
+
+    @Override
+    int incrementWordFrequency(CharSequence word, int delta) {
+        if (word.length() == 0) return 0;
+        final int node = getOrCreateNode(word);
+        final int frequency = (mTerminals[node] ? mFrequencies[node] : 0) + delta;
+        mTerminals[node] = true;
+        mFrequencies[node] = frequency;
+        mFrontierInputLength = 0;
+
+        compactIfNeeded();
+        return frequency;
+    }
+
+    private int getOrCreateNode(CharSequence word) {
+        final int length = word.length();
+        int node = ROOT;
+        for (int i = 0; i < length; i++) {
+            final char c = word.charAt(i);
+            final int slot = findChildSlot(node, c);
+            if (slot >= 0) {
+                node = mChildren[slot];
+            } else {
+                node = insertChild(node, -(slot + 1), c);
+            }
+        }
+        return node;
+    }
+
+    @Override
+    void deleteWord(CharSequence word) {
+        final int length = word.length();
+        if (length == 0) return;
+        //keeping the path, so we could prune it afterwards
+        final int[] path = new int[length + 1];
+        path[0] = ROOT;
+        for (int i = 0; i < length; i++) {
+            final int slot = findChildSlot(path[i], word.charAt(i));
+            if (slot < 0) return;//no such word
+            path[i + 1] = mChildren[slot];
+        }
+        final int wordNode = path[length];
+        if (!mTerminals[wordNode]) return;
+
+        mTerminals[wordNode] = false;
+        mFrequencies[wordNode] = 0;
+        //removing all the nodes which are not needed anymore: not terminal and without children.
+        for (int i = length; i > 0; i--) {
+            final int node = path[i];
+            if (mTerminals[node] || mChildrenCount[node] > 0) break;
+            removeChild(path[i - 1], node);
+        }
+        mFrontierInputLength = 0;
+
+        compactIfNeeded();
+    }
+
+    @Override
+    int getWordFrequency(CharSequence word) {
+        final int length = word.length();
+        if (length == 0) return 0;
+        int node = ROOT;
+        for (int i = 0; i < length; i++) {
+            final int slot = findChildSlot(node, word.charAt(i));
+            if (slot < 0) return 0;
+            node = mChildren[slot];
+        }
+        return mTerminals[node] ? mFrequencies[node] : 0;
+    }
+
+    @Override
+    void getWords(final WordComposer codes, final Dictionary.WordCallback callback, final Dictionary from) {
+        mInputLength = codes.length();
+        mMaxDepth = mInputLength * 2;
+        //swapping, so the frontier of this search will be collected into a clean one
+        final SearchFrontier previousFrontier = mNextFrontier;
+        mNextFrontier = mFrontier;
+        mFrontier = previousFrontier;
+        mNextFrontier.clear();
+        mFrontierBroken = false;
+
+        if (canContinueFromFrontier(codes)) {
+            final int prefixLength = mFrontierInputLength;
+            for (int i = 0; i < previousFrontier.mCount; i++) {
+                System.arraycopy(previousFrontier.mWords, i * prefixLength, mWordBuilder, 0, prefixLength);
+                getWordsRec(previousFrontier.mNodes[i], codes, mWordBuilder, prefixLength, false, previousFrontier.mSnrs[i], prefixLength, callback, from);
+            }
+        } else {
+            getWordsRec(ROOT, codes, mWordBuilder, 0, false, 1.0f, 0, callback, from);
+        }
+
+        storeFrontierCodes(codes);
+    }
+
+    /**
+     * The frontier can be used only if the search is for exactly one more code than the previous one.
+     * Also, when the previous search skipped an apostrophe while matching, the depth and the input position
+     * got out of sync, and the matching decisions made on the prefix may change with the longer input.
+     */
+    private boolean canContinueFromFrontier(final WordComposer codes) {
+        if (mFrontierInputLength == 0 || mFrontierInputLength + 1 != mInputLength) return false;
+        //the codes are padded with -1, so comparing the whole slots is the same as comparing up to the first -1
+        final int[] allCodes = codes.getCodes();
+        final int codesLength = mFrontierInputLength * WordComposer.MAX_ALTERNATIVES;
+        for (int i = 0; i < codesLength; i++) {
+            if (mFrontierCodes[i] != allCodes[i]) return false;
+        }
+        return true;
+    }
+
+    private void storeFrontierCodes(final WordComposer codes) {
+        if (mFrontierBroken || mInputLength == 0 || mInputLength >= BTreeDictionary.MAX_WORD_LENGTH) {
+            mFrontierInputLength = 0;
+            return;
+        }
+        System.arraycopy(codes.getCodes(), 0, mFrontierCodes, 0, mInputLength * WordComposer.MAX_ALTERNATIVES);
+        mFrontierInputLength = mInputLength;
+    }
+
+    /**
+     * Same traversal as {@link NodeArrayTrie}, but walking the primitive arrays.
+     * Since the fuzzy match compares each child against several alternatives (and their base-characters),
+     * every child is visited - but in sequential memory, and with the lower-case code pre-calculated.
+     */
+    private void getWordsRec(final int parent, final WordComposer codes, final char[] word, final int depth, boolean completion, float snr, int inputIndex, Dictionary.WordCallback callback, Dictionary from) {
+        // Optimization: Prune out words that are too long compared to how much
+        // was typed.
+        if (depth > mMaxDepth) {
+            return;
+        }
+        int[] currentChars = null;
+        int codesOffset = 0;
+        if (mInputLength <= inputIndex) {
+            completion = true;
+        } else {
+            currentChars = codes.getCodes();
+            codesOffset = inputIndex * WordComposer.MAX_ALTERNATIVES;
+        }
+
+        final int start = mChildrenStart[parent];
+        final int end = start + mChildrenCount[parent];
+        for (int slot = start; slot < end; slot++) {
+            final int node = mChildren[slot];
+            final char c = mCodes[node];
+            final boolean hasChildren = mChildrenCount[node] > 0;
+            if (completion) {
+                word[depth] = c;
+                if (mTerminals[node]) {
+                    if (!callback.addWord(word, 0, depth + 1, (int) (mFrequencies[node] * snr), from)) {
+                        //the rest of this level was not searched, so the frontier may be partial
+                        mFrontierBroken = true;
+                        return;
+                    }
+                }
+                if (hasChildren) {
+                    getWordsRec(node, codes, word, depth + 1, completion, snr, inputIndex, callback, from);
+                }
+            } else if (c == QUOTE && currentChars[codesOffset] != QUOTE) {
+                // Skip the ' and continue deeper
+                word[depth] = QUOTE;
+                mFrontierBroken = true;
+                if (hasChildren) {
+                    getWordsRec(node, codes, word, depth + 1, completion, snr, inputIndex, callback, from);
+                }
+            } else {
+                final char lowerC = mLowerCodes[node];
+                for (int j = 0; j < WordComposer.MAX_ALTERNATIVES; j++) {
+                    final int currentChar = currentChars[codesOffset + j];
+                    if (currentChar == -1) {
+                        break;
+                    }
+                    if (currentChar == lowerC || currentChar == c) {
+                        final float addedAttenuation = (j > 0 ? 1f : 3f);
+                        word[depth] = c;
+
+                        if (mInputLength == depth + 1) {
+                            if (mTerminals[node]) {
+                                if (Dictionary.INCLUDE_TYPED_WORD_IF_VALID || !Dictionary.same(word, depth + 1, codes.getTypedWord())) {
+                                    callback.addWord(word, 0, depth + 1, (int) (mFrequencies[node] * snr * addedAttenuation * Dictionary.FULL_WORD_FREQ_MULTIPLIER), from);
+                                }
+                            }
+                            if (hasChildren) {
+                                if (inputIndex == depth) {
+                                    //matched all the typed codes. The next search may continue from here.
+                                    mNextFrontier.add(node, snr * addedAttenuation, word, depth + 1);
+                                }
+                                getWordsRec(node, codes, word, depth + 1, true, snr * addedAttenuation, inputIndex + 1, callback, from);
+                            }
+                        } else if (hasChildren) {
+                            getWordsRec(node, codes, word, depth + 1, false, snr * addedAttenuation, inputIndex + 1, callback, from);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary-searches the node's children for the given character.
+     *
+     * @return the slot (in {@link #mChildren}) of the matching child, or <code>-(insertion slot) - 1</code>.
+     */
+    private int findChildSlot(final int node, final char c) {
+        int low = mChildrenStart[node];
+        int high = low + mChildrenCount[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midCode = mCodes[mChildren[mid]];
+            if (midCode < c) {
+                low = mid + 1;
+            } else if (midCode > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int insertChild(final int parent, int insertionSlot, final char c) {
+        final int count = mChildrenCount[parent];
+        if (count == mChildrenCapacity[parent]) {
+            //no more room. Moving the segment to the end of the pool
+            final int oldStart = mChildrenStart[parent];
+            mWastedChildrenSlots += mChildrenCapacity[parent];
+            allocateChildren(parent, Math.max(MIN_CHILDREN_CAPACITY, count * 2));
+            System.arraycopy(mChildren, oldStart, mChildren, mChildrenStart[parent], count);
+            insertionSlot = insertionSlot - oldStart + mChildrenStart[parent];
+        }
+        final int child = createNode(c);
+        final int end = mChildrenStart[parent] + count;
+        System.arraycopy(mChildren, insertionSlot, mChildren, insertionSlot + 1, end - insertionSlot);
+        mChildren[insertionSlot] = child;
+        mChildrenCount[parent] = count + 1;
+        return child;
+    }
+
+    private void removeChild(final int parent, final int child) {
+        final int slot = findChildSlot(parent, mCodes[child]);
+        final int end = mChildrenStart[parent] + mChildrenCount[parent];
+        System.arraycopy(mChildren, slot + 1, mChildren, slot, end - slot - 1);
+        mChildrenCount[parent]--;
+        //the child's own segment is lost with it
+        mWastedChildrenSlots += mChildrenCapacity[child];
+        mChildrenCapacity[child] = 0;
+        mDeletedNodesCount++;
+    }
+
+    private int createNode(final char c) {
+        if (mNodesCount == mCodes.length) {
+            growNodes(mCodes.length * 2);
+        }
+        final int node = mNodesCount;
+        mNodesCount++;
+        mCodes[node] = c;
+        mLowerCodes[node] = BTreeDictionary.toLowerCase(c);
+        mFrequencies[node] = 0;
+        mTerminals[node] = false;
+        mChildrenStart[node] = 0;
+        mChildrenCount[node] = 0;
+        mChildrenCapacity[node] = 0;
+        return node;
+    }
+
+    private void allocateChildren(final int node, final int capacity) {
+        if (mChildrenPoolSize + capacity > mChildren.length) {
+            final int[] newChildren = new int[Math.max(mChildren.length * 2, mChildrenPoolSize + capacity)];
+            System.arraycopy(mChildren, 0, newChildren, 0, mChildrenPoolSize);
+            mChildren = newChildren;
+        }
+        mChildrenStart[node] = mChildrenPoolSize;
+        mChildrenCapacity[node] = capacity;
+        mChildrenPoolSize += capacity;
+    }
+
+    private void growNodes(final int newCapacity) {
+        mCodes = growArray(mCodes, newCapacity, mNodesCount);
+        mLowerCodes = growArray(mLowerCodes, newCapacity, mNodesCount);
+        mFrequencies = growArray(mFrequencies, newCapacity, mNodesCount);
+        mTerminals = growArray(mTerminals, newCapacity, mNodesCount);
+        mChildrenStart = growArray(mChildrenStart, newCapacity, mNodesCount);
+        mChildrenCount = growArray(mChildrenCount, newCapacity, mNodesCount);
+        mChildrenCapacity = growArray(mChildrenCapacity, newCapacity, mNodesCount);
+    }
+
+    private void compactIfNeeded() {
+        final boolean tooManyHoles = mWastedChildrenSlots > MIN_WASTE_BEFORE_COMPACTING && mWastedChildrenSlots > (mChildrenPoolSize - mWastedChildrenSlots);
+        final boolean tooManyDeleted = mDeletedNodesCount > MIN_WASTE_BEFORE_COMPACTING && mDeletedNodesCount > (mNodesCount - mDeletedNodesCount);
+        if (tooManyHoles || tooManyDeleted) compact();
+    }
+
+    /**
+     * Re-packs the structure in breadth-first order, without holes or deleted nodes.
+     */
+    void compact() {
+        final int liveNodes = mNodesCount - mDeletedNodesCount;
+        final char[] codes = new char[liveNodes];
+        final char[] lowerCodes = new char[liveNodes];
+        final int[] frequencies = new int[liveNodes];
+        final boolean[] terminals = new boolean[liveNodes];
+        final int[] childrenStart = new int[liveNodes];
+        final int[] childrenCount = new int[liveNodes];
+        final int[] childrenCapacity = new int[liveNodes];
+        //the root's children are not counted as nodes, but all other nodes sit in some children segment.
+        final int[] children = new int[Math.max(INITIAL_ROOT_CAPACITY, liveNodes - 1)];
+        //BFS queue: the new index of a node is its position in the queue
+        final int[] oldIndices = new int[liveNodes];
+        oldIndices[0] = ROOT;
+        int queueTail = 1;
+        int childrenPoolSize = 0;
+        for (int newNode = 0; newNode < queueTail; newNode++) {
+            final int oldNode = oldIndices[newNode];
+            codes[newNode] = mCodes[oldNode];
+            lowerCodes[newNode] = mLowerCodes[oldNode];
+            frequencies[newNode] = mFrequencies[oldNode];
+            terminals[newNode] = mTerminals[oldNode];
+            final int count = mChildrenCount[oldNode];
+            childrenStart[newNode] = childrenPoolSize;
+            childrenCount[newNode] = count;
+            childrenCapacity[newNode] = count;
+            final int oldStart = mChildrenStart[oldNode];
+            for (int i = 0; i < count; i++) {
+                oldIndices[queueTail] = mChildren[oldStart + i];
+                children[childrenPoolSize] = queueTail;
+                queueTail++;
+                childrenPoolSize++;
+            }
+        }
+        if (childrenCount[ROOT] == 0) {
+            //an empty structure gets a reasonable roots segment
+            childrenCapacity[ROOT] = INITIAL_ROOT_CAPACITY;
+            childrenPoolSize = INITIAL_ROOT_CAPACITY;
+        }
+
+        mCodes = codes;
+        mLowerCodes = lowerCodes;
+        mFrequencies = frequencies;
+        mTerminals = terminals;
+        mChildrenStart = childrenStart;
+        mChildrenCount = childrenCount;
+        mChildrenCapacity = childrenCapacity;
+        mNodesCount = queueTail;
+        mDeletedNodesCount = 0;
+        mChildren = children;
+        mChildrenPoolSize = childrenPoolSize;
+        mWastedChildrenSlots = 0;
+        mFrontierInputLength = 0;
+    }
+
+    /**
+     * Writes the (compacted) arrays, so they could be read back with {@link #readFrom(ByteBuffer)}
+     * without re-inserting the words.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        compact();
+        final int nodesCount = mNodesCount;
+        out.writeInt(nodesCount);
+        out.writeInt(mChildrenPoolSize);
+        for (int i = 0; i < nodesCount; i++) out.writeChar(mCodes[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeChar(mLowerCodes[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeInt(mFrequencies[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeBoolean(mTerminals[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeInt(mChildrenStart[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeInt(mChildrenCount[i]);
+        for (int i = 0; i < nodesCount; i++) out.writeInt(mChildrenCapacity[i]);
+        for (int i = 0; i < mChildrenPoolSize; i++) out.writeInt(mChildren[i]);
+    }
+
+    /**
+     * Replaces the structure with the one stored by {@link #writeTo(DataOutputStream)}.
+     * If the data is invalid, the structure is not changed.
+     */
+    void readFrom(ByteBuffer in) throws IOException {
+        final int nodesCount = in.getInt();
+        final int childrenPoolSize = in.getInt();
+        if (nodesCount < 1 || childrenPoolSize < 0 || childrenPoolSize > nodesCount + INITIAL_ROOT_CAPACITY)
+            throw new IOException("Invalid structure size " + nodesCount + "/" + childrenPoolSize);
+        final char[] codes = new char[nodesCount];
+        in.asCharBuffer().get(codes);
+        in.position(in.position() + nodesCount * 2);
+        final char[] lowerCodes = new char[nodesCount];
+        in.asCharBuffer().get(lowerCodes);
+        in.position(in.position() + nodesCount * 2);
+        final int[] frequencies = readInts(in, nodesCount);
+        final boolean[] terminals = new boolean[nodesCount];
+        for (int i = 0; i < nodesCount; i++) terminals[i] = in.get() != 0;
+        final int[] childrenStart = readInts(in, nodesCount);
+        final int[] childrenCount = readInts(in, nodesCount);
+        final int[] childrenCapacity = readInts(in, nodesCount);
+        final int[] children = readInts(in, childrenPoolSize);
+        for (int i = 0; i < nodesCount; i++) {
+            if (childrenStart[i] < 0 || childrenCount[i] < 0 || childrenCount[i] > childrenCapacity[i] || childrenStart[i] + childrenCapacity[i] > childrenPoolSize)
+                throw new IOException("Invalid children segment for node " + i);
+        }
+
+        mCodes = codes;
+        mLowerCodes = lowerCodes;
+        mFrequencies = frequencies;
+        mTerminals = terminals;
+        mChildrenStart = childrenStart;
+        mChildrenCount = childrenCount;
+        mChildrenCapacity = childrenCapacity;
+        mNodesCount = nodesCount;
+        mDeletedNodesCount = 0;
+        mChildren = children;
+        mChildrenPoolSize = childrenPoolSize;
+        mWastedChildrenSlots = 0;
+        mFrontierInputLength = 0;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        final int[] ints = new int[count];
+        in.asIntBuffer().get(ints);
+        in.position(in.position() + count * 4);
+        return ints;
+    }
+
+    private static char[] growArray(char[] array, int newCapacity, int used) {
+        char[] newArray = new char[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, used);
+        return newArray;
+    }
+
+    private static int[] growArray(int[] array, int newCapacity, int used) {
+        int[] newArray = new int[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, used);
+        return newArray;
+    }
+
+    private static boolean[] growArray(boolean[] array, int newCapacity, int used) {
+        boolean[] newArray = new boolean[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, used);
+        return newArray;
+    }
+
+    /**
+     * The nodes which matched all the typed codes, in the order the search reached them,
+     * with their accumulated weight and the characters which lead to them.
+     */
+    private static class SearchFrontier {
+        private int[] mNodes = new int[16];
+        private float[] mSnrs = new float[16];
+        private char[] mWords = new char[16 * 4];
+        private int mCount;
+
+        void clear() {
+            mCount = 0;
+        }
+
+        void add(final int node, final float snr, final char[] word, final int wordLength) {
+            if (mCount == mNodes.length) {
+                mNodes = growArray(mNodes, mCount * 2, mCount);
+                float[] snrs = new float[mCount * 2];
+                System.arraycopy(mSnrs, 0, snrs, 0, mCount);
+                mSnrs = snrs;
+            }
+            //all the words in the frontier have the same length
+            final int wordsOffset = mCount * wordLength;
+            if (wordsOffset + wordLength > mWords.length) {
+                mWords = growArray(mWords, Math.max(mWords.length * 2, wordsOffset + wordLength), wordsOffset);
+            }
+            System.arraycopy(word, 0, mWords, wordsOffset, wordLength);
+            mNodes[mCount] = node;
+            mSnrs[mCount] = snr;
+            mCount++;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.anysoftkeyboard.dictionaries;
 
 import com.anysoftkeyboard.WordComposer;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Abstract base class for a dictionary that can do a fuzzy search for words based on a set of key
  * strokes.
@@ -66,6 +68,7 @@ abstract public class Dictionary {
     protected final Object mResourceMonitor = new Object();
     private final String mDictionaryName;
     private volatile boolean mClosed = false;
+    private final AtomicInteger mVersion = new AtomicInteger(0);
 
     protected Dictionary(String dictionaryName) {
         mDictionaryName = dictionaryName;
@@ -75,6 +78,20 @@ abstract public class Dictionary {
         return mLoadingResources;
     }
 
+    /**
+     * @return a number which grows whenever the words in this dictionary change (loaded, edited, cleared or closed).
+     */
+    public int getVersion() {
+        return mVersion.get();
+    }
+
+    /**
+     * Should be called whenever the words in this dictionary change, so cached results could be dropped.
+     */
+    protected final void onWordsChanged() {
+        mVersion.incrementAndGet();
+    }
+
     /**
      * Searches for words in the dictionary that match the characters in the composer. Matched
      * words are added through the callback object.
@@ -121,6 +138,7 @@ abstract public class Dictionary {
         synchronized (mResourceMonitor) {
             closeAllResources();
         }
+        onWordsChanged();
     }
 
     public final boolean isClosed() {
@@ -140,12 +158,20 @@ abstract public class Dictionary {
                 loadAllResources();
             } finally {
                 mLoadingResources = false;
+                onWordsChanged();
             }
         }
     }
 
     protected abstract void loadAllResources();
 
+    /**
+     * @return an estimation of the memory held by this dictionary's words, in bytes. Zero if unknown.
+     */
+    public int getSizeInBytes() {
+        return 0;
+    }
+
     public final String getDictionaryName() {
         return mDictionaryName;
     }
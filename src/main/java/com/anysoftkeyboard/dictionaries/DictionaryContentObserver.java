@@ -17,6 +17,8 @@
 package com.anysoftkeyboard.dictionaries;
 
 import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
 import com.anysoftkeyboard.utils.Log;
 import net.evendanan.frankenrobot.Diagram;
 
@@ -41,7 +43,18 @@ public class DictionaryContentObserver extends ContentObserver {
     }
 
     private final static String TAG = "DictionaryContentObserver";
+    //bulk changes (like restoring a backup) notify for every word, but the dictionary is reloaded once they are done
+    private static final long RELOAD_DELAY_MS = 1000;
     private final WeakReference<BTreeDictionary> mDictionary;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReloadTask = new Runnable() {
+        @Override
+        public void run() {
+            BTreeDictionary dictionary = mDictionary.get();
+            if (dictionary == null) return;
+            dictionary.onStorageChanged();
+        }
+    };
 
     public DictionaryContentObserver(DictionaryContentObserverDiagram diagram) {
         super(null);
@@ -57,6 +70,7 @@ public class DictionaryContentObserver extends ContentObserver {
             return;
         }
 
-        dictionary.onStorageChanged();
+        mHandler.removeCallbacks(mReloadTask);
+        mHandler.postDelayed(mReloadTask, RELOAD_DELAY_MS);
     }
 }
@@ -26,6 +26,10 @@ import com.menny.android.anysoftkeyboard.AnyApplication;
 public class DictionaryFactory {
 
     private static final String TAG = "ASK DictFactory";
+    private static final int MAX_IDLE_MAIN_DICTIONARIES = 2;
+    private static final long MAX_IDLE_MAIN_DICTIONARIES_BYTES = 12 * 1024 * 1024;
+
+    private final MainDictionariesPool mMainDictionariesPool = new MainDictionariesPool(MAX_IDLE_MAIN_DICTIONARIES, MAX_IDLE_MAIN_DICTIONARIES_BYTES);
     private AutoDictionary mAutoDictionary = null;
     private String mUserDictionaryLocale = null;
     private EditableDictionary mUserDictionary = null;
@@ -57,6 +61,35 @@ public class DictionaryFactory {
         return mUserDictionary;
     }
 
+    /**
+     * Returns the main dictionary of the given add-on. A recently released one is re-used, if it is still loaded.
+     */
+    public Dictionary createMainDictionary(DictionaryAddOnAndBuilder dictionaryBuilder) throws Exception {
+        Dictionary dictionary = mMainDictionariesPool.acquire(dictionaryBuilder.getId());
+        if (dictionary == null) {
+            Log.d(TAG, "Creating main dictionary " + dictionaryBuilder.getId());
+            dictionary = dictionaryBuilder.createDictionary();
+            DictionaryASyncLoader loader = new DictionaryASyncLoader(null);
+            loader.execute(dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Keeps a main dictionary, which is not used anymore, loaded for a while, so it could be re-used by
+     * {@link #createMainDictionary(DictionaryAddOnAndBuilder)}.
+     */
+    public void releaseMainDictionary(DictionaryAddOnAndBuilder dictionaryBuilder, Dictionary dictionary) {
+        mMainDictionariesPool.release(dictionaryBuilder.getId(), dictionary);
+    }
+
+    /**
+     * Closes all the main dictionaries which are not in use.
+     */
+    public void closeIdleDictionaries() {
+        mMainDictionariesPool.closeAll();
+    }
+
     public synchronized Dictionary createContactsDictionary(Context context) {
         return new ContactsDictionary(context.getApplicationContext());
     }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.utils.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of a loaded {@link BTreeDictionary}, so the next load could be a single sequential
+ * file read, instead of iterating over the whole storage and re-building the in-memory structure.
+ * <p/>
+ * File layout: magic, format version, storage version, payload length, payload, CRC32 of the payload.
+ * The snapshot is used only if all of these match, otherwise the dictionary is loaded from its storage.
+ */
+public final class DictionarySnapshot {
+    private static final String TAG = "ASK DictSnapshot";
+
+    private static final int MAGIC = 0x41534B53;//ASKS
+    /**
+     * Bump this whenever the layout of any payload changes.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int TRAILER_SIZE = 8;
+
+    private DictionarySnapshot() {
+    }
+
+    /**
+     * Loads the snapshot into the dictionary.
+     *
+     * @param storageVersion the current version of the dictionary's storage. A snapshot taken from another version is stale.
+     * @return true if the snapshot was valid, and the dictionary read its payload.
+     */
+    static boolean load(File snapshotFile, long storageVersion, BTreeDictionary dictionary) {
+        if (!snapshotFile.exists()) return false;
+        final long startTime = System.currentTimeMillis();
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(readFile(snapshotFile));
+            if (buffer.remaining() < HEADER_SIZE + TRAILER_SIZE) return false;
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                Log.d(TAG, "Snapshot " + snapshotFile + " is of a different format.");
+                return false;
+            }
+            if (buffer.getLong() != storageVersion) {
+                Log.d(TAG, "Snapshot " + snapshotFile + " is stale.");
+                return false;
+            }
+            final int payloadLength = buffer.getInt();
+            if (payloadLength < 0 || payloadLength != buffer.remaining() - TRAILER_SIZE) return false;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER_SIZE, payloadLength);
+            if (crc.getValue() != buffer.getLong(HEADER_SIZE + payloadLength)) {
+                Log.w(TAG, "Snapshot " + snapshotFile + " is corrupted.");
+                return false;
+            }
+            buffer.limit(HEADER_SIZE + payloadLength);
+            dictionary.readSnapshotPayload(buffer);
+            Log.d(TAG, "Loaded " + dictionary + " from snapshot (" + payloadLength + " bytes) in " + (System.currentTimeMillis() - startTime) + "ms");
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read snapshot " + snapshotFile + ": " + e.getMessage());
+            return false;
+        } catch (BufferUnderflowException e) {
+            Log.w(TAG, "Snapshot " + snapshotFile + " is truncated.");
+            return false;
+        }
+    }
+
+    /**
+     * Writes the dictionary's payload into a snapshot file. The file is replaced atomically.
+     *
+     * @return true if the snapshot was written.
+     */
+    static boolean store(File snapshotFile, long storageVersion, BTreeDictionary dictionary) {
+        final long startTime = System.currentTimeMillis();
+        final File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(4096);
+            DataOutputStream payload = new DataOutputStream(payloadBytes);
+            dictionary.writeSnapshotPayload(payload);
+            payload.flush();
+            final byte[] payloadArray = payloadBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payloadArray, 0, payloadArray.length);
+
+            FileOutputStream fileStream = new FileOutputStream(tempFile);
+            try {
+                DataOutputStream out = new DataOutputStream(fileStream);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(storageVersion);
+                out.writeInt(payloadArray.length);
+                out.write(payloadArray);
+                out.writeLong(crc.getValue());
+                out.flush();
+                fileStream.getFD().sync();
+            } finally {
+                fileStream.close();
+            }
+            if (!tempFile.renameTo(snapshotFile)) {
+                Log.w(TAG, "Failed to rename snapshot into " + snapshotFile);
+                tempFile.delete();
+                return false;
+            }
+            Log.d(TAG, "Stored snapshot of " + dictionary + " (" + payloadArray.length + " bytes) in " + (System.currentTimeMillis() - startTime) + "ms");
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write snapshot " + snapshotFile + ": " + e.getMessage());
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final long length = file.length();
+        if (length > Integer.MAX_VALUE) throw new IOException("Snapshot is too large");
+        final byte[] data = new byte[(int) length];
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                final int read = inputStream.read(data, offset, data.length - offset);
+                if (read < 0) throw new IOException("Unexpected end of snapshot");
+                offset += read;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return data;
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final char[] chars = new char[length];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + length * 2);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.utils.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used main dictionaries loaded after they were replaced, so switching back to a
+ * recently used language does not reload the dictionary from scratch.
+ * <p/>
+ * Idle dictionaries are kept in least-recently-used order, and are closed once there are too many of them,
+ * or once their (estimated) total size is over the budget.
+ */
+class MainDictionariesPool {
+    private static final String TAG = "ASK MainDictsPool";
+    /**
+     * Used for dictionaries which do not know their size.
+     */
+    static final int UNKNOWN_SIZE_ESTIMATE = 1024 * 1024;
+
+    private final int mMaxIdleDictionaries;
+    private final long mMaxIdleBytes;
+    private final LinkedHashMap<String, Dictionary> mIdleDictionaries = new LinkedHashMap<>(4, 0.75f, true/*access order*/);
+
+    MainDictionariesPool(int maxIdleDictionaries, long maxIdleBytes) {
+        mMaxIdleDictionaries = maxIdleDictionaries;
+        mMaxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * Takes an idle dictionary out of the pool.
+     *
+     * @return the dictionary created for the given id, or null if there is no such usable dictionary in the pool.
+     */
+    synchronized Dictionary acquire(String id) {
+        final Dictionary dictionary = mIdleDictionaries.remove(id);
+        if (dictionary == null || dictionary.isClosed()) return null;
+        Log.d(TAG, "Re-using idle dictionary " + id);
+        return dictionary;
+    }
+
+    /**
+     * Puts a dictionary, which is not used anymore, into the pool. Older idle dictionaries may be closed.
+     */
+    synchronized void release(String id, Dictionary dictionary) {
+        if (dictionary.isClosed()) return;
+        final Dictionary previous = mIdleDictionaries.put(id, dictionary);
+        if (previous != null && previous != dictionary) previous.close();
+        trim();
+    }
+
+    /**
+     * Closes all idle dictionaries.
+     */
+    synchronized void closeAll() {
+        for (Dictionary dictionary : mIdleDictionaries.values())
+            dictionary.close();
+        mIdleDictionaries.clear();
+    }
+
+    synchronized int getIdleCount() {
+        return mIdleDictionaries.size();
+    }
+
+    private void trim() {
+        long totalBytes = 0;
+        for (Dictionary dictionary : mIdleDictionaries.values())
+            totalBytes += getSizeEstimate(dictionary);
+
+        //eldest first
+        Iterator<Map.Entry<String, Dictionary>> iterator = mIdleDictionaries.entrySet().iterator();
+        while (iterator.hasNext() && (mIdleDictionaries.size() > mMaxIdleDictionaries || totalBytes > mMaxIdleBytes)) {
+            final Map.Entry<String, Dictionary> eldest = iterator.next();
+            final Dictionary dictionary = eldest.getValue();
+            Log.d(TAG, "Closing idle dictionary " + eldest.getKey());
+            totalBytes -= getSizeEstimate(dictionary);
+            iterator.remove();
+            dictionary.close();
+        }
+    }
+
+    private static long getSizeEstimate(Dictionary dictionary) {
+        final int size = dictionary.getSizeInBytes();
+        return size > 0 ? size : UNKNOWN_SIZE_ESTIMATE;
+    }
+}
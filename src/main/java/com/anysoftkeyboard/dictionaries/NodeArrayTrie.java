@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.WordComposer;
+
+/**
+ * The original, object-per-node, trie. Each level is scanned linearly.
+ */
+class NodeArrayTrie extends WordsTrie {
+    private static final int INITIAL_ROOT_CAPACITY = 26/*number of letters in the English Alphabet. Why bother with auto-increment, when we can start at roughly the right final size..*/;
+
+    private NodeArray mRoots;
+    private int mMaxDepth;
+    private int mInputLength;
+    private final char[] mWordBuilder = new char[BTreeDictionary.MAX_WORD_LENGTH];
+
+    NodeArrayTrie() {
+        clear();
+    }
+
+    @Override
+    void clear() {
+        mRoots = new NodeArray(INITIAL_ROOT_CAPACITY);
+    }
+
+    @Override
+    void addWord(CharSequence word, int frequency) {
+        if (word.length() == 0) return;
+        addWordRec(mRoots, word, 0, frequency);
+    }
+
+    @Override
+    void deleteWord(CharSequence word) {
+        if (word.length() == 0) return;
+        deleteWordRec(mRoots, word, 0, word.length());
+    }
+
+    @Override
+    int getWordFrequency(CharSequence word) {
+        if (word.length() == 0) return 0;
+        return getWordFrequencyRec(mRoots, word, 0, word.length());
+    }
+
+    @Override
+    void getWords(final WordComposer codes, final Dictionary.WordCallback callback, final Dictionary from) {
+        mInputLength = codes.length();
+        mMaxDepth = mInputLength * 2;
+        getWordsRec(mRoots, codes, mWordBuilder, 0, false, 1.0f, 0, callback, from);
+    }
+
+    private boolean deleteWordRec(final NodeArray children, final CharSequence word, final int offset, final int length) {
+        final int count = children.length;
+        final char currentChar = word.charAt(offset);
+        for (int j = 0; j < count; j++) {
+            final Node node = children.data[j];
+            if (node.code == currentChar) {
+                if (offset == length - 1) {//last character in the word to delete
+                    //we need to delete this node. But only if it terminal
+                    if (node.terminal) {
+                        if (node.children == null || node.children.length == 0) {
+                            //terminal node, with no children - can be safely removed
+                            children.deleteNode(j);
+                        } else {
+                            //terminal node with children. So, it is no longer terminal
+                            node.terminal = false;
+                        }
+                        //let's tell that we deleted a node
+                        return true;
+                    } else {
+                        //it is not terminal, and the word to delete is longer
+                        //let's tell that we didn't delete
+                        return false;
+                    }
+                } else if (node.terminal &&//a terminal node
+                        (node.children == null || node.children.length == 0)) {//has no children
+                    //this is not the last character, but this is a terminal node with no children! Nothing to delete here.
+                    return false;
+                } else {
+                    //not the last character in the word to delete, and not a terminal node.
+                    //but if the node forward was deleted, then this one might also need to be deleted.
+                    final boolean aChildNodeWasDeleted = deleteWordRec(node.children, word, offset + 1, length);
+                    if (aChildNodeWasDeleted) {//something was deleted in my children
+                        if (node.children.length == 0 && !node.terminal) {
+                            //this node just deleted its last child, and it is not a terminal character.
+                            //it is not necessary anymore.
+                            children.deleteNode(j);
+                            //let's tell that we deleted.
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return false;//nothing to delete here, move along.
+    }
+
+    private int getWordFrequencyRec(final NodeArray children, final CharSequence word, final int offset, final int length) {
+        final int count = children.length;
+        char currentChar = word.charAt(offset);
+        for (int j = 0; j < count; j++) {
+            final Node node = children.data[j];
+            if (node.code == currentChar) {
+                if (offset == length - 1) {
+                    if (node.terminal) {
+                        return node.frequency;
+                    }
+                } else {
+                    if (node.children != null) {
+                        int frequency = getWordFrequencyRec(node.children, word, offset + 1, length);
+                        if (frequency > 0)
+                            return frequency;
+                    }
+                }
+            }
+        }
+        //no luck, can't find the word
+        return 0;
+    }
+
+    /**
+     * Recursively traverse the tree for words that match the input. Input
+     * consists of a list of arrays. Each item in the list is one input
+     * character position. An input character is actually an array of multiple
+     * possible candidates. This function is not optimized for speed, assuming
+     * that the user dictionary will only be a few hundred words in size.
+     *
+     * @param roots      node whose children have to be search for matches
+     * @param codes      the input character codes
+     * @param word       the word being composed as a possible match
+     * @param depth      the depth of traversal - the length of the word being composed
+     *                   thus far
+     * @param completion whether the traversal is now in completion mode - meaning that
+     *                   we've exhausted the input and we're looking for all possible
+     *                   suffixes.
+     * @param snr        current weight of the word being formed
+     * @param inputIndex position in the input characters. This can be off from the
+     *                   depth in case we skip over some punctuations such as
+     *                   apostrophe in the traversal. That is, if you type "wouldve",
+     *                   it could be matching "would've", so the depth will be one more
+     *                   than the inputIndex
+     * @param callback   the callback class for adding a word
+     * @param from       the dictionary to report as the words' source
+     */
+    private void getWordsRec(NodeArray roots, final WordComposer codes, final char[] word, final int depth, boolean completion, float snr, int inputIndex, Dictionary.WordCallback callback, Dictionary from) {
+        final int count = roots.length;
+        final int codeSize = mInputLength;
+        // Optimization: Prune out words that are too long compared to how much
+        // was typed.
+        if (depth > mMaxDepth) {
+            return;
+        }
+        int[] currentChars = null;
+        int codesOffset = 0;
+        if (codeSize <= inputIndex) {
+            completion = true;
+        } else {
+            currentChars = codes.getCodes();
+            codesOffset = inputIndex * WordComposer.MAX_ALTERNATIVES;
+        }
+
+        for (int i = 0; i < count; i++) {
+            final Node node = roots.data[i];
+            final char c = node.code;
+            final char lowerC = BTreeDictionary.toLowerCase(c);
+            boolean terminal = node.terminal;
+            NodeArray children = node.children;
+            int freq = node.frequency;
+            if (completion) {
+                word[depth] = c;
+                if (terminal) {
+                    if (!callback.addWord(word, 0, depth + 1, (int) (freq * snr), from)) {
+                        return;
+                    }
+                }
+                if (children != null) {
+                    getWordsRec(children, codes, word, depth + 1, completion, snr, inputIndex, callback, from);
+                }
+            } else if (c == QUOTE && currentChars[codesOffset] != QUOTE) {
+                // Skip the ' and continue deeper
+                word[depth] = QUOTE;
+                if (children != null) {
+                    getWordsRec(children, codes, word, depth + 1, completion, snr, inputIndex, callback, from);
+                }
+            } else {
+                for (int j = 0; j < WordComposer.MAX_ALTERNATIVES; j++) {
+                    float addedAttenuation = (j > 0 ? 1f : 3f);
+                    if (currentChars[codesOffset + j] == -1) {
+                        break;
+                    }
+                    if (currentChars[codesOffset + j] == lowerC || currentChars[codesOffset + j] == c) {
+                        word[depth] = c;
+
+                        if (codes.length() == depth + 1) {
+                            if (terminal) {
+                                if (Dictionary.INCLUDE_TYPED_WORD_IF_VALID || !Dictionary.same(word, depth + 1, codes.getTypedWord())) {
+                                    callback.addWord(word, 0, depth + 1, (int) (freq * snr * addedAttenuation * Dictionary.FULL_WORD_FREQ_MULTIPLIER), from);
+                                }
+                            }
+                            if (children != null) {
+                                getWordsRec(children, codes, word, depth + 1, true, snr * addedAttenuation, inputIndex + 1, callback, from);
+                            }
+                        } else if (children != null) {
+                            getWordsRec(children, codes, word, depth + 1, false, snr * addedAttenuation, inputIndex + 1, callback, from);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addWordRec(NodeArray children, final CharSequence word, final int depth, final int frequency) {
+        final int wordLength = word.length();
+        final char c = word.charAt(depth);
+        // Does children have the current character?
+        final int childrenLength = children.length;
+        Node childNode = null;
+        boolean found = false;
+        for (int i = 0; i < childrenLength; i++) {
+            childNode = children.data[i];
+            if (childNode.code == c) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            childNode = new Node();
+            childNode.code = c;
+            children.add(childNode);
+        }
+        if (wordLength == depth + 1) {
+            // Terminate this word
+            childNode.terminal = true;
+            childNode.frequency = frequency;
+            // words
+            return;
+        }
+        if (childNode.children == null) {
+            childNode.children = new NodeArray();
+        }
+        addWordRec(childNode.children, word, depth + 1, frequency);
+    }
+
+    /**
+     * For tests: the first level of the trie.
+     */
+    NodeArray getRoots() {
+        return mRoots;
+    }
+
+    static class Node {
+        char code;
+        int frequency;
+        boolean terminal;
+        NodeArray children;
+    }
+
+    static class NodeArray {
+        private static final int INCREMENT = 2;
+        Node[] data;
+        int length = 0;
+
+        NodeArray(int initialCapacity) {
+            data = new Node[initialCapacity];
+        }
+
+        NodeArray() {
+            this(INCREMENT);
+        }
+
+        void add(Node n) {
+            length++;
+            if (length > data.length) {
+                Node[] tempData = new Node[length + INCREMENT];
+                System.arraycopy(data, 0, tempData, 0, data.length);
+                data = tempData;
+            }
+            data[length - 1] = n;
+        }
+
+        public void deleteNode(int nodeIndexToDelete) {
+            assert length >= 0;
+
+            length--;
+            if (length > 0) {
+                for (int i = nodeIndexToDelete; i < length; i++) {
+                    data[i] = data[i + 1];
+                }
+            }
+        }
+    }
+}
@@ -23,21 +23,30 @@ import com.anysoftkeyboard.WordComposer;
 import com.anysoftkeyboard.dictionaries.sqlite.AbbreviationsDictionary;
 import com.anysoftkeyboard.utils.IMEUtil;
 import com.anysoftkeyboard.utils.Log;
+import com.menny.android.anysoftkeyboard.FeaturesSet;
 import com.menny.android.anysoftkeyboard.R;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class loads a dictionary and provides a list of suggestions for a given
  * sequence of characters. This includes corrections and completions.
+ * The public methods are synchronized on the instance, so suggestions could be computed on a
+ * background thread while the dictionaries are replaced on the UI thread.
  */
 public class Suggest implements Dictionary.WordCallback {
 
     private static final String TAG = "ASK Suggest";
 
     private Dictionary mMainDict;
+    private DictionaryAddOnAndBuilder mMainDictionaryBuilder;
     private AutoText mAutoText;
 
     private int mMinimumWordSizeToStartCorrecting = 2;
@@ -57,15 +66,17 @@ public class Suggest implements Dictionary.WordCallback {
     private final List<CharSequence> mDefaultInitialSuggestions;
     private List<CharSequence> mInitialSuggestions = new ArrayList<>();
 
-    private int[] mPriorities = new int[mPrefMaxSuggestions];
+    private final TopSuggestions mTopSuggestions = new TopSuggestions(mPrefMaxSuggestions);
     private List<CharSequence> mSuggestions = new ArrayList<>();
     // private boolean mIncludeTypedWordIfValid;
     private List<CharSequence> mStringPool = new ArrayList<>();
+    //room for the typed word, AutoText corrections and exploded abbreviations, on top of the suggestions.
+    private static final int MAX_POOL_EXTRA = 8;
     // private Context mContext;
     private boolean mHaveCorrection;
-    private CharSequence mOriginalWord;
-    private final List<String> mExplodedAbbreviations = new ArrayList<>();
-    private String mLowerOriginalWord;
+    private final StringBuilder mOriginalWord = new StringBuilder(32);
+    private final List<CharSequence> mExplodedAbbreviations = new ArrayList<>();
+    private final StringBuilder mLowerOriginalWord = new StringBuilder(32);
 
     // TODO: Remove these member variables by passing more context to addWord()
     // callback method
@@ -76,6 +87,19 @@ public class Suggest implements Dictionary.WordCallback {
     private boolean mAutoTextEnabled = true;
     private boolean mMainDictionaryEnabled = true;
 
+    private boolean mParallelDictionaryLookups = false;
+    private ExecutorService mLookupsExecutor;
+    private final DictionaryLookup mContactsLookup = new DictionaryLookup();
+    private final DictionaryLookup mUserLookup = new DictionaryLookup();
+    private final DictionaryLookup mMainLookup = new DictionaryLookup();
+    private final DictionaryLookup mAbbreviationLookup = new DictionaryLookup();
+
+    private static final int SUGGESTIONS_CACHE_SIZE = 32;
+    private final SuggestionsCache mSuggestionsCache = new SuggestionsCache(SUGGESTIONS_CACHE_SIZE);
+    //changes whenever the dictionaries or the correction settings are changed.
+    private int mConfigurationGeneration = 0;
+    private final int[] mDictionariesState = new int[5];
+
     public Suggest(Context context) {
         mDictionaryFactory = new DictionaryFactory();
         for (int i = 0; i < mPrefMaxSuggestions; i++) {
@@ -95,30 +119,58 @@ public class Suggest implements Dictionary.WordCallback {
         }
     }
 
-    public void setCorrectionMode(boolean autoText, boolean mainDictionary) {
+    public synchronized void setCorrectionMode(boolean autoText, boolean mainDictionary) {
+        mConfigurationGeneration++;
         mAutoTextEnabled = autoText;
         mMainDictionaryEnabled = mainDictionary;
     }
 
+    /**
+     * When enabled, each dictionary is queried on its own thread (into its own buffer), and the
+     * results are merged afterwards. The merged list is the same as the one created by querying
+     * the dictionaries one after another.
+     */
+    public synchronized void setParallelDictionaryLookups(boolean enabled) {
+        mParallelDictionaryLookups = enabled;
+        if (!enabled && mLookupsExecutor != null) {
+            mLookupsExecutor.shutdown();
+            mLookupsExecutor = null;
+        }
+    }
+
+    /**
+     * Stops the parallel lookups threads. Call when the owner of this instance is destroyed.
+     */
+    public synchronized void close() {
+        if (mLookupsExecutor != null) {
+            mLookupsExecutor.shutdown();
+            mLookupsExecutor = null;
+        }
+    }
+
     /**
      * Sets an optional user dictionary resource to be loaded. The user
      * dictionary is consulted before the main dictionary, if set.
      */
-    public void setUserDictionary(Dictionary userDictionary) {
+    public synchronized void setUserDictionary(Dictionary userDictionary) {
+        mConfigurationGeneration++;
         if (mUserDictionary != userDictionary && mUserDictionary != null)
             mUserDictionary.close();
 
         mUserDictionary = userDictionary;
     }
 
-    public void setMainDictionary(Context askContext, DictionaryAddOnAndBuilder dictionaryBuilder) {
+    public synchronized void setMainDictionary(Context askContext, DictionaryAddOnAndBuilder dictionaryBuilder) {
+        mConfigurationGeneration++;
         Log.d(TAG,
                 "Suggest: Got main dictionary! Type: "
                         + ((dictionaryBuilder == null) ? "NULL"
                         : dictionaryBuilder.getName()));
         if (mMainDict != null) {
-            mMainDict.close();
+            //keeping it loaded, in case the user switches back to it soon
+            mDictionaryFactory.releaseMainDictionary(mMainDictionaryBuilder, mMainDict);
             mMainDict = null;
+            mMainDictionaryBuilder = null;
         }
 
         if (mAbbreviationDictionary != null) {
@@ -133,11 +185,8 @@ public class Suggest implements Dictionary.WordCallback {
             mInitialSuggestions = mDefaultInitialSuggestions;
         } else {
             try {
-                System.gc();
-
-                mMainDict = dictionaryBuilder.createDictionary();
-                DictionaryASyncLoader loader = new DictionaryASyncLoader(null);
-                loader.execute(mMainDict);
+                mMainDict = mDictionaryFactory.createMainDictionary(dictionaryBuilder);
+                mMainDictionaryBuilder = dictionaryBuilder;
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -155,7 +204,8 @@ public class Suggest implements Dictionary.WordCallback {
     /**
      * Sets an optional contacts dictionary resource to be loaded.
      */
-    public void setContactsDictionary(Context context, boolean enabled) {
+    public synchronized void setContactsDictionary(Context context, boolean enabled) {
+        mConfigurationGeneration++;
         if (!enabled && mContactsDictionary != null) {
             // had one, but now config says it should be off
             Log.i(TAG,
@@ -172,7 +222,7 @@ public class Suggest implements Dictionary.WordCallback {
         }
     }
 
-    public void setAutoDictionary(Dictionary autoDictionary) {
+    public synchronized void setAutoDictionary(Dictionary autoDictionary) {
         if (mAutoDictionary != autoDictionary && mAutoDictionary != null)
             mAutoDictionary.close();
         mAutoDictionary = autoDictionary;
@@ -185,13 +235,14 @@ public class Suggest implements Dictionary.WordCallback {
      * @param maxSuggestions
      * @throws IllegalArgumentException if the number is out of range
      */
-    public void setMaxSuggestions(int maxSuggestions) {
+    public synchronized void setMaxSuggestions(int maxSuggestions) {
+        mConfigurationGeneration++;
         if (maxSuggestions < 1 || maxSuggestions > 100) {
             throw new IllegalArgumentException(
                     "maxSuggestions must be between 1 and 100");
         }
         mPrefMaxSuggestions = maxSuggestions;
-        mPriorities = new int[mPrefMaxSuggestions];
+        mTopSuggestions.setMaxSize(mPrefMaxSuggestions);
         collectGarbage();
         while (mStringPool.size() < mPrefMaxSuggestions) {
             StringBuilder sb = new StringBuilder(32);
@@ -199,7 +250,7 @@ public class Suggest implements Dictionary.WordCallback {
         }
     }
 
-    private boolean haveSufficientCommonality(String original,
+    private boolean haveSufficientCommonality(CharSequence original,
                                               CharSequence suggestion) {
         final int originalLength = original.length();
         final int suggestionLength = suggestion.length();
@@ -224,7 +275,7 @@ public class Suggest implements Dictionary.WordCallback {
      *
      * @return list of suggestions.
      */
-    public List<CharSequence> getSuggestions(
+    public synchronized List<CharSequence> getSuggestions(
             /* View view, */WordComposer wordComposer,
             boolean includeTypedWordIfValid) {
 	    mExplodedAbbreviations.clear();
@@ -232,20 +283,32 @@ public class Suggest implements Dictionary.WordCallback {
         mIsFirstCharCapitalized = wordComposer.isFirstCharCapitalized();
         mIsAllUpperCase = wordComposer.isAllUpperCase();
         collectGarbage();
-        Arrays.fill(mPriorities, 0);
+        mTopSuggestions.reset();
         // mIncludeTypedWordIfValid = includeTypedWordIfValid;
 
         // Save a lowercase version of the original word
-        mOriginalWord = wordComposer.getTypedWord();
-        if (mOriginalWord.length() > 0) {
-            mOriginalWord = mOriginalWord.toString();
-            mLowerOriginalWord = mOriginalWord.toString().toLowerCase();
-        } else {
-            mLowerOriginalWord = "";
+        mOriginalWord.setLength(0);
+        mOriginalWord.append(wordComposer.getTypedWord());
+        mLowerOriginalWord.setLength(0);
+        appendLowerCase(mLowerOriginalWord, mOriginalWord);
+        updateDictionariesState();
+        final SuggestionsCache.Entry cachedSuggestions = mSuggestionsCache.get(wordComposer);
+        if (cachedSuggestions != null) {
+            //copying, since the suggestions list is recycled into the pool.
+            final int count = cachedSuggestions.getSuggestionsCount();
+            for (int i = 0; i < count; i++) {
+                final StringBuilder sb = obtainStringBuilder();
+                sb.append(cachedSuggestions.getSuggestion(i));
+                mSuggestions.add(sb);
+            }
+            mHaveCorrection = cachedSuggestions.mHaveCorrection;
+            return mSuggestions;
         }
         // Search the dictionary only if there are at least 2 (configurable)
         // characters
-        if (wordComposer.length() >= mMinimumWordSizeToStartCorrecting) {
+        if (wordComposer.length() >= mMinimumWordSizeToStartCorrecting && mParallelDictionaryLookups) {
+            getSuggestionsInParallel(wordComposer);
+        } else if (wordComposer.length() >= mMinimumWordSizeToStartCorrecting) {
             if (mContactsDictionary != null) {
                 Log.v(TAG, "getSuggestions from contacts-dictionary");
                 mContactsDictionary.getWords(wordComposer, this);
@@ -256,7 +319,7 @@ public class Suggest implements Dictionary.WordCallback {
                 mUserDictionary.getWords(wordComposer, this);
             }
 
-            if (mSuggestions.size() > 0 && isValidWord(mOriginalWord)) {
+            if (mTopSuggestions.size() > 0 && isValidWord(mOriginalWord)) {
                 mHaveCorrection = true;
             }
 
@@ -270,18 +333,17 @@ public class Suggest implements Dictionary.WordCallback {
                 mAbbreviationDictionary.getWords(wordComposer, this);
             }
 
-            if (/*mMainDictionaryEnabled &&*/ mSuggestions.size() > 0) {
+            if (/*mMainDictionaryEnabled &&*/ mTopSuggestions.size() > 0) {
                 mHaveCorrection = true;
             }
         }
+        fillSuggestionsFromTop();
 
-        if (mOriginalWord != null) {
-            mSuggestions.add(0, mOriginalWord.toString());
-        }
+        mSuggestions.add(0, obtainStringBuilder().append(mOriginalWord));
         if (mExplodedAbbreviations.size() > 0) {
             //typed at zero, exploded at 1 index.
-	        for(String explodedWord : mExplodedAbbreviations)
-                mSuggestions.add(1, explodedWord);
+	        for(int i = 0; i < mExplodedAbbreviations.size(); i++)
+                mSuggestions.add(1, mExplodedAbbreviations.get(i));
 
             mHaveCorrection = true;//so the exploded text will be auto-committed.
         }
@@ -300,10 +362,10 @@ public class Suggest implements Dictionary.WordCallback {
         if (!mMainDictionaryEnabled && mAutoTextEnabled)
             max = 1;
         while (i < mSuggestions.size() && i < max) {
-            String suggestedWord = mSuggestions.get(i).toString().toLowerCase();
+            CharSequence suggestedWord = mSuggestions.get(i);
 
             CharSequence autoText = mAutoTextEnabled && mAutoText != null ? mAutoText
-                    .lookup(suggestedWord, 0, suggestedWord.length()) : null;
+                    .lookupLowerCase(suggestedWord, 0, suggestedWord.length()) : null;
             // Is there an AutoText correction?
             boolean canAdd = autoText != null;
             // Is that correction already the current prediction (or original
@@ -321,15 +383,148 @@ public class Suggest implements Dictionary.WordCallback {
             i++;
         }
 
+        mSuggestionsCache.put(wordComposer, mSuggestions, mHaveCorrection);
         return mSuggestions;
     }
 
-    public boolean hasMinimalCorrection() {
+    private void updateDictionariesState() {
+        final int[] state = mDictionariesState;
+        state[0] = mConfigurationGeneration;
+        state[1] = getDictionaryVersion(mMainDict);
+        state[2] = getDictionaryVersion(mUserDictionary);
+        state[3] = getDictionaryVersion(mContactsDictionary);
+        state[4] = getDictionaryVersion(mAbbreviationDictionary);
+        mSuggestionsCache.setState(state, state.length);
+    }
+
+    private static int getDictionaryVersion(Dictionary dictionary) {
+        return dictionary == null ? -1 : dictionary.getVersion();
+    }
+
+    /**
+     * Drops all the cached suggestions lists.
+     */
+    public synchronized void invalidateSuggestionsCache() {
+        mSuggestionsCache.invalidate();
+    }
+
+    public synchronized int getSuggestionsCacheHits() {
+        return mSuggestionsCache.getHits();
+    }
+
+    public synchronized int getSuggestionsCacheMisses() {
+        return mSuggestionsCache.getMisses();
+    }
+
+    /**
+     * Queries all the dictionaries at the same time, and then replays their words into {@link #addWord(char[], int, int, int, Dictionary)}
+     * in the same order the sequential path would have. This way, the result is exactly the same, but takes
+     * about as long as the slowest dictionary.
+     */
+    private void getSuggestionsInParallel(WordComposer wordComposer) {
+        if (mLookupsExecutor == null) {
+            mLookupsExecutor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+                private int mThreadsCount = 0;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ASK Suggest lookup #" + (++mThreadsCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        mContactsLookup.prepare(mContactsDictionary, wordComposer, mLowerOriginalWord, mPrefMaxSuggestions);
+        mUserLookup.prepare(mUserDictionary, wordComposer, mLowerOriginalWord, mPrefMaxSuggestions);
+        mMainLookup.prepare(mMainDict, wordComposer, mLowerOriginalWord, mPrefMaxSuggestions);
+        //exploded abbreviations are not ranked, so all of them are kept.
+        mAbbreviationLookup.prepare(mAutoTextEnabled ? mAbbreviationDictionary : null, wordComposer, mLowerOriginalWord, 0);
+
+        Future<?> contactsFuture = mContactsLookup.submit(mLookupsExecutor);
+        Future<?> userFuture = mUserLookup.submit(mLookupsExecutor);
+        Future<?> abbreviationsFuture = mAbbreviationLookup.submit(mLookupsExecutor);
+        //the calling thread is not going to just wait.
+        mMainLookup.run();
+
+        final boolean contactsReady = waitForLookup(contactsFuture);
+        final boolean userReady = waitForLookup(userFuture);
+        final boolean abbreviationsReady = waitForLookup(abbreviationsFuture);
+
+        //replaying in the same order as the sequential path
+        if (contactsReady) mContactsLookup.replayInto(this);
+        if (userReady) mUserLookup.replayInto(this);
+
+        if (mTopSuggestions.size() > 0 && isValidWord(mOriginalWord)) {
+            mHaveCorrection = true;
+        }
+
+        mMainLookup.replayInto(this);
+        if (abbreviationsReady) mAbbreviationLookup.replayInto(this);
+
+        if (mTopSuggestions.size() > 0) {
+            mHaveCorrection = true;
+        }
+    }
+
+    private static boolean waitForLookup(Future<?> future) {
+        if (future == null) return false;
+        try {
+            future.get();
+            return true;
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for dictionary lookup! Will not use its words.");
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Dictionary lookup failed! Will not use its words.", e.getCause());
+            return false;
+        }
+    }
+
+    private static class DictionaryLookup implements Runnable {
+        private final SuggestionsBuffer mBuffer = new SuggestionsBuffer();
+        private Dictionary mDictionary;
+        private WordComposer mWordComposer;
+
+        void prepare(Dictionary dictionary, WordComposer wordComposer, CharSequence lowerOriginalWord, int maxWords) {
+            mDictionary = dictionary;
+            mWordComposer = wordComposer;
+            mBuffer.reset(lowerOriginalWord, maxWords);
+        }
+
+        Future<?> submit(ExecutorService executor) {
+            if (mDictionary == null) return null;
+            return executor.submit(this);
+        }
+
+        @Override
+        public void run() {
+            if (mDictionary != null) mDictionary.getWords(mWordComposer, mBuffer);
+        }
+
+        void replayInto(Suggest suggest) {
+            if (mDictionary == null) return;
+            if (mBuffer.hasDroppedWords() && !suggest.arePrioritiesOrdered()) {
+                //the typed word was forced into the list, and now the dropped words may get into it.
+                //This is rare, so we'll just ask the dictionary again.
+                mDictionary.getWords(mWordComposer, suggest);
+            } else {
+                mBuffer.replayInto(suggest, mDictionary);
+            }
+        }
+    }
+
+    private boolean arePrioritiesOrdered() {
+        return mTopSuggestions.arePrioritiesOrdered();
+    }
+
+    public synchronized boolean hasMinimalCorrection() {
         return mHaveCorrection;
     }
 
-    private static boolean compareCaseInsensitive(
-            final String lowerOriginalWord, final char[] word,
+    static boolean compareCaseInsensitive(
+            final CharSequence lowerOriginalWord, final char[] word,
             final int offset, final int length) {
         final int originalLength = lowerOriginalWord.length();
 
@@ -347,68 +542,107 @@ public class Suggest implements Dictionary.WordCallback {
 
     public boolean addWord(final char[] word, final int offset,
                            final int length, final int freq, final Dictionary from) {
-        Log.v(TAG, "Suggest::addWord");
-        if (from == mAbbreviationDictionary) {
-	        mExplodedAbbreviations.add(new String(word, offset, length));
+        if (from != null && from == mAbbreviationDictionary) {
+	        mExplodedAbbreviations.add(obtainStringBuilder().append(word, offset, length));
             return true;
         }
-        int pos = 0;
-        final int[] priorities = mPriorities;
-        final int prefMaxSuggestions = mPrefMaxSuggestions;
         // Check if it's the same word, only caps are different
-        if (compareCaseInsensitive(mLowerOriginalWord, word, offset, length)) {
-            Log.v(TAG, "Suggest::addWord - forced at position 0.");
-            pos = 0;
-        } else {
-            // Check the last one's priority and bail
-            if (priorities[prefMaxSuggestions - 1] >= freq)
-                return true;
-            while (pos < prefMaxSuggestions) {
-                if (priorities[pos] < freq
-                        || (priorities[pos] == freq && length < mSuggestions
-                        .get(pos).length())) {
-                    break;
+        final boolean forced = compareCaseInsensitive(mLowerOriginalWord, word, offset, length);
+        if (forced) Log.v(TAG, "Suggest::addWord - forced at position 0.");
+        mTopSuggestions.add(word, offset, length, freq, forced);
+        return true;
+    }
+
+    /**
+     * Creates the suggestions list (with the required capitalization) from the collected top words.
+     */
+    private void fillSuggestionsFromTop() {
+        final int count = mTopSuggestions.size();
+        for (int i = 0; i < count; i++) {
+            final char[] word = mTopSuggestions.getWord(i);
+            final int length = mTopSuggestions.getWordLength(i);
+            final StringBuilder sb = obtainStringBuilder();
+            if (mIsAllUpperCase) {
+                appendUpperCase(sb, word, length);
+            } else if (mIsFirstCharCapitalized) {
+                sb.append(Character.toUpperCase(word[0]));
+                if (length > 1) {
+                    sb.append(word, 1, length - 1);
                 }
-                pos++;
+            } else {
+                sb.append(word, 0, length);
             }
+            mSuggestions.add(sb);
         }
+    }
 
-        if (pos >= prefMaxSuggestions) {
-            return true;
-        }
-        System.arraycopy(priorities, pos, priorities, pos + 1,
-                prefMaxSuggestions - pos - 1);
-        priorities[pos] = freq;
-        int poolSize = mStringPool.size();
-        StringBuilder sb = poolSize > 0 ? (StringBuilder) mStringPool
+    /**
+     * @return an empty StringBuilder from the pool, or a new one if the pool is empty.
+     */
+    private StringBuilder obtainStringBuilder() {
+        final int poolSize = mStringPool.size();
+        final StringBuilder sb = poolSize > 0 ? (StringBuilder) mStringPool
                 .remove(poolSize - 1) : new StringBuilder(32);
         sb.setLength(0);
-        if (mIsAllUpperCase) {
-            sb.append(new String(word, offset, length).toUpperCase());
-        } else if (mIsFirstCharCapitalized) {
-            sb.append(Character.toUpperCase(word[offset]));
-            if (length > 1) {
-                sb.append(word, offset + 1, length - 1);
+        return sb;
+    }
+
+    /**
+     * Appends the upper-cased word, without creating intermediate strings. Falls back to {@link String#toUpperCase()}
+     * for characters which do not have a single-character upper-case form (like the German sharp s), and for
+     * locales with special casing rules.
+     */
+    static void appendUpperCase(StringBuilder sb, char[] word, int length) {
+        final int start = sb.length();
+        if (!hasLocaleSpecificCasing()) {
+            for (int i = 0; i < length; i++) {
+                final char c = word[i];
+                final char upper = Character.toUpperCase(c);
+                if (upper == c && Character.isLowerCase(c)) {
+                    //there is no simple upper-case form for this character
+                    sb.setLength(start);
+                    break;
+                }
+                sb.append(upper);
             }
-        } else {
-            sb.append(word, offset, length);
+            if (sb.length() - start == length) return;
         }
-        mSuggestions.add(pos, sb);
-        if (mSuggestions.size() > prefMaxSuggestions) {
-            CharSequence garbage = mSuggestions.remove(prefMaxSuggestions);
-            if (garbage instanceof StringBuilder) {
-                mStringPool.add(garbage);
+        sb.append(new String(word, 0, length).toUpperCase());
+    }
+
+    /**
+     * Appends the lower-cased word, without creating intermediate strings. Falls back to {@link String#toLowerCase()}
+     * for characters which are lower-cased differently within a word (like the Greek capital sigma, or the dotted I),
+     * and for locales with special casing rules.
+     */
+    static void appendLowerCase(StringBuilder sb, CharSequence word) {
+        final int start = sb.length();
+        final int length = word.length();
+        if (!hasLocaleSpecificCasing()) {
+            for (int i = 0; i < length; i++) {
+                final char c = word.charAt(i);
+                if (c == '\u03A3' || c == '\u0130' || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                    sb.setLength(start);
+                    break;
+                }
+                sb.append(Character.toLowerCase(c));
             }
+            if (sb.length() - start == length) return;
         }
-        return true;
+        sb.append(word.toString().toLowerCase());
+    }
+
+    private static boolean hasLocaleSpecificCasing() {
+        final String language = Locale.getDefault().getLanguage();
+        return "tr".equals(language) || "az".equals(language) || "lt".equals(language);
     }
 
-    public boolean isValidWord(final CharSequence word) {
+    public synchronized boolean isValidWord(final CharSequence word) {
         if (word == null || word.length() == 0) {
             return false;
         }
 
-        Log.v(TAG, "Suggest::isValidWord(%s) mMainDictionaryEnabled:%s mAutoTextEnabled: %s user-dictionary-enabled: %s contacts-dictionary-enabled: %s",
+        if (FeaturesSet.DEBUG_LOG) Log.v(TAG, "Suggest::isValidWord(%s) mMainDictionaryEnabled:%s mAutoTextEnabled: %s user-dictionary-enabled: %s contacts-dictionary-enabled: %s",
                 word, mMainDictionaryEnabled, mAutoTextEnabled, mUserDictionary != null, mContactsDictionary != null);
 
         if (mMainDictionaryEnabled || mAutoTextEnabled) {
@@ -416,7 +650,7 @@ public class Suggest implements Dictionary.WordCallback {
             final boolean validFromUser = (mUserDictionary != null && mUserDictionary.isValidWord(word));
             final boolean validFromContacts = (mContactsDictionary != null && mContactsDictionary.isValidWord(word));
 
-            Log.v(TAG, "Suggest::isValidWord(%s)validFromMain: %s validFromUser: %s validFromContacts: %s",
+            if (FeaturesSet.DEBUG_LOG) Log.v(TAG, "Suggest::isValidWord(%s)validFromMain: %s validFromUser: %s validFromContacts: %s",
                     word, validFromMain, validFromUser, validFromContacts);
             return validFromMain || validFromUser
                     || /* validFromAuto || */validFromContacts;
@@ -428,7 +662,7 @@ public class Suggest implements Dictionary.WordCallback {
     private void collectGarbage() {
         int poolSize = mStringPool.size();
         int garbageSize = mSuggestions.size();
-        while (poolSize < mPrefMaxSuggestions && garbageSize > 0) {
+        while (poolSize < mPrefMaxSuggestions + MAX_POOL_EXTRA && garbageSize > 0) {
             CharSequence garbage = mSuggestions.get(garbageSize - 1);
             if (garbage != null && garbage instanceof StringBuilder) {
                 mStringPool.add(garbage);
@@ -436,13 +670,14 @@ public class Suggest implements Dictionary.WordCallback {
             }
             garbageSize--;
         }
-        if (poolSize == mPrefMaxSuggestions + 1) {
+        if (poolSize == mPrefMaxSuggestions + MAX_POOL_EXTRA + 1) {
             Log.w(TAG, "String pool got too big: " + poolSize);
         }
         mSuggestions.clear();
     }
 
-    public void setMinimumWordLengthForCorrection(int minLength) {
+    public synchronized void setMinimumWordLengthForCorrection(int minLength) {
+        mConfigurationGeneration++;
         // making sure it is not negative or zero
         mMinimumWordSizeToStartCorrecting = Math.max(1, minLength);
     }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+/**
+ * Collects the words a single dictionary reports, so that dictionary could be queried on its own thread.
+ * The words are later replayed (in the same order they were reported) into {@link Suggest}.
+ * <p/>
+ * Words which can never make it into the final suggestions list are dropped on arrival: a word is dropped
+ * if this dictionary already reported <code>maxWords</code> words with a strictly higher frequency.
+ * That only holds while Suggest's list is ordered by frequency, which is not the case once the typed word
+ * itself was forced to the top of the list. So, nothing is dropped after the typed word was reported, and
+ * the caller should check {@link #hasDroppedWords()} before replaying into a list which holds a forced word.
+ */
+class SuggestionsBuffer implements Dictionary.WordCallback {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private char[] mChars = new char[INITIAL_CAPACITY * 8];
+    private int mCharsLength;
+    private int[] mOffsets = new int[INITIAL_CAPACITY];
+    private int[] mLengths = new int[INITIAL_CAPACITY];
+    private int[] mFrequencies = new int[INITIAL_CAPACITY];
+    private int mCount;
+
+    private int[] mTopFrequencies = new int[0];
+    private int mTopCount;
+    private int mMaxWords;
+    private boolean mDroppedWords;
+    private CharSequence mLowerOriginalWord = "";
+
+    /**
+     * Prepares the buffer for a new lookup.
+     *
+     * @param lowerOriginalWord the lower-cased typed word.
+     * @param maxWords          the maximum number of suggestions Suggest keeps. If zero or less, all reported words are kept.
+     */
+    void reset(CharSequence lowerOriginalWord, int maxWords) {
+        mLowerOriginalWord = lowerOriginalWord;
+        mMaxWords = maxWords;
+        if (mTopFrequencies.length < maxWords) mTopFrequencies = new int[maxWords];
+        mTopCount = 0;
+        mDroppedWords = false;
+        mCount = 0;
+        mCharsLength = 0;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * @return true if any of the reported words was not stored.
+     */
+    boolean hasDroppedWords() {
+        return mDroppedWords;
+    }
+
+    @Override
+    public boolean addWord(char[] word, int wordOffset, int wordLength, int frequency, Dictionary from) {
+        if (mMaxWords > 0) {
+            if (Suggest.compareCaseInsensitive(mLowerOriginalWord, word, wordOffset, wordLength)) {
+                //this one will be forced to the top of the list, and the list will not be ordered anymore.
+                mMaxWords = 0;
+            } else if (mTopCount == mMaxWords && mTopFrequencies[mTopCount - 1] > frequency) {
+                //there are already enough better words.
+                mDroppedWords = true;
+                return true;
+            } else {
+                insertTopFrequency(frequency);
+            }
+        }
+        storeWord(word, wordOffset, wordLength, frequency);
+        return true;
+    }
+
+    /**
+     * Reports all the stored words, in the order they were collected.
+     *
+     * @param target where to report the words to.
+     * @param from   the dictionary which originally reported the words.
+     */
+    void replayInto(Dictionary.WordCallback target, Dictionary from) {
+        for (int i = 0; i < mCount; i++) {
+            target.addWord(mChars, mOffsets[i], mLengths[i], mFrequencies[i], from);
+        }
+    }
+
+    private void insertTopFrequency(int frequency) {
+        //descending order
+        int pos = mTopCount;
+        while (pos > 0 && mTopFrequencies[pos - 1] < frequency) pos--;
+        if (pos >= mMaxWords) return;
+        final int toMove = Math.min(mTopCount, mMaxWords - 1) - pos;
+        if (toMove > 0) System.arraycopy(mTopFrequencies, pos, mTopFrequencies, pos + 1, toMove);
+        mTopFrequencies[pos] = frequency;
+        if (mTopCount < mMaxWords) mTopCount++;
+    }
+
+    private void storeWord(char[] word, int wordOffset, int wordLength, int frequency) {
+        if (mCount == mOffsets.length) {
+            final int newCapacity = mCount * 2;
+            mOffsets = growArray(mOffsets, newCapacity, mCount);
+            mLengths = growArray(mLengths, newCapacity, mCount);
+            mFrequencies = growArray(mFrequencies, newCapacity, mCount);
+        }
+        if (mCharsLength + wordLength > mChars.length) {
+            char[] newChars = new char[Math.max(mChars.length * 2, mCharsLength + wordLength)];
+            System.arraycopy(mChars, 0, newChars, 0, mCharsLength);
+            mChars = newChars;
+        }
+        System.arraycopy(word, wordOffset, mChars, mCharsLength, wordLength);
+        mOffsets[mCount] = mCharsLength;
+        mLengths[mCount] = wordLength;
+        mFrequencies[mCount] = frequency;
+        mCharsLength += wordLength;
+        mCount++;
+    }
+
+    private static int[] growArray(int[] array, int newCapacity, int used) {
+        int[] newArray = new int[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, used);
+        return newArray;
+    }
+}
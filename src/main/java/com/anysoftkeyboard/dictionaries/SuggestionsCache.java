@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.WordComposer;
+
+import java.util.List;
+
+/**
+ * A bounded, least-recently-used cache of suggestions lists, keyed by the typed codes and capitalization.
+ * The cache is bound to a state of the dictionaries (which dictionaries are used, and their versions),
+ * and all the entries are dropped when that state changes.
+ * <p/>
+ * Entries are allocated once, and re-used: an entry holds its own copy of the key (compared after a hash match)
+ * and of the suggestions, so looking up and storing a list does not allocate, once the entries have grown
+ * to the words' sizes.
+ */
+class SuggestionsCache {
+    static final class Entry {
+        private int mHash;
+        private boolean mFirstCharCapitalized;
+        private boolean mAllUpperCase;
+        private char[] mTypedWord = new char[WordComposer.MAX_WORD_LENGTH];
+        private int mTypedWordLength;
+        //each position's codes count, followed by its codes
+        private int[] mCodes = new int[WordComposer.MAX_WORD_LENGTH * 4];
+        private int mCodesLength;
+        private StringBuilder[] mSuggestions = new StringBuilder[0];
+        private int mSuggestionsCount;
+        boolean mHaveCorrection;
+        //for finding the least recently used entry
+        private long mLastUsed;
+        private boolean mUsed;
+
+        int getSuggestionsCount() {
+            return mSuggestionsCount;
+        }
+
+        CharSequence getSuggestion(int index) {
+            return mSuggestions[index];
+        }
+
+        private boolean isKeyOf(WordComposer composer, int hash) {
+            if (!mUsed || mHash != hash) return false;
+            if (mFirstCharCapitalized != composer.isFirstCharCapitalized() || mAllUpperCase != composer.isAllUpperCase())
+                return false;
+            final CharSequence typedWord = composer.getTypedWord();
+            if (mTypedWordLength != typedWord.length()) return false;
+            for (int i = 0; i < mTypedWordLength; i++) {
+                if (mTypedWord[i] != typedWord.charAt(i)) return false;
+            }
+            final int length = composer.length();
+            final int[] codes = composer.getCodes();
+            int keyIndex = 0;
+            for (int i = 0; i < length; i++) {
+                final int count = composer.getCodesCountAt(i);
+                if (keyIndex >= mCodesLength || mCodes[keyIndex++] != count) return false;
+                final int offset = i * WordComposer.MAX_ALTERNATIVES;
+                for (int j = offset; j < offset + count; j++) {
+                    if (keyIndex >= mCodesLength || mCodes[keyIndex++] != codes[j]) return false;
+                }
+            }
+            return keyIndex == mCodesLength;
+        }
+
+        private void setKey(WordComposer composer, int hash) {
+            mHash = hash;
+            mFirstCharCapitalized = composer.isFirstCharCapitalized();
+            mAllUpperCase = composer.isAllUpperCase();
+            final CharSequence typedWord = composer.getTypedWord();
+            mTypedWordLength = typedWord.length();
+            if (mTypedWord.length < mTypedWordLength) mTypedWord = new char[mTypedWordLength];
+            for (int i = 0; i < mTypedWordLength; i++) {
+                mTypedWord[i] = typedWord.charAt(i);
+            }
+            final int length = composer.length();
+            final int[] codes = composer.getCodes();
+            int codesLength = length;
+            for (int i = 0; i < length; i++) {
+                codesLength += composer.getCodesCountAt(i);
+            }
+            if (mCodes.length < codesLength) mCodes = new int[codesLength];
+            mCodesLength = 0;
+            for (int i = 0; i < length; i++) {
+                final int count = composer.getCodesCountAt(i);
+                mCodes[mCodesLength++] = count;
+                final int offset = i * WordComposer.MAX_ALTERNATIVES;
+                for (int j = offset; j < offset + count; j++) {
+                    mCodes[mCodesLength++] = codes[j];
+                }
+            }
+        }
+
+        private void setSuggestions(List<CharSequence> suggestions, boolean haveCorrection) {
+            mSuggestionsCount = suggestions.size();
+            if (mSuggestions.length < mSuggestionsCount) {
+                StringBuilder[] grown = new StringBuilder[mSuggestionsCount];
+                System.arraycopy(mSuggestions, 0, grown, 0, mSuggestions.length);
+                mSuggestions = grown;
+            }
+            //the list's items may be re-used, so a copy is stored.
+            for (int i = 0; i < mSuggestionsCount; i++) {
+                if (mSuggestions[i] == null) mSuggestions[i] = new StringBuilder(32);
+                mSuggestions[i].setLength(0);
+                mSuggestions[i].append(suggestions.get(i));
+            }
+            mHaveCorrection = haveCorrection;
+        }
+    }
+
+    private final Entry[] mEntries;
+    private long mUsesCount = 0;
+    private int[] mState = new int[0];
+    private int mHits;
+    private int mMisses;
+
+    SuggestionsCache(final int maxEntries) {
+        mEntries = new Entry[maxEntries];
+        for (int i = 0; i < maxEntries; i++) {
+            mEntries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Binds the cache to the given dictionaries state. If it differs from the current one, all entries are dropped.
+     */
+    void setState(int[] state, int stateLength) {
+        boolean same = mState.length == stateLength;
+        for (int i = 0; same && i < stateLength; i++) {
+            same = mState[i] == state[i];
+        }
+        if (same) return;
+
+        if (mState.length != stateLength) mState = new int[stateLength];
+        System.arraycopy(state, 0, mState, 0, stateLength);
+        clearEntries();
+    }
+
+    void invalidate() {
+        mState = new int[0];
+        clearEntries();
+    }
+
+    private void clearEntries() {
+        for (Entry entry : mEntries) {
+            entry.mUsed = false;
+        }
+    }
+
+    /**
+     * @return a hash of the composer's typed codes and capitalization.
+     */
+    static int hashKey(WordComposer composer) {
+        int hash = (composer.isFirstCharCapitalized() ? 1 : 0) + (composer.isAllUpperCase() ? 2 : 0);
+        final CharSequence typedWord = composer.getTypedWord();
+        final int typedWordLength = typedWord.length();
+        for (int i = 0; i < typedWordLength; i++) {
+            hash = 31 * hash + typedWord.charAt(i);
+        }
+        final int length = composer.length();
+        final int[] codes = composer.getCodes();
+        for (int i = 0; i < length; i++) {
+            final int count = composer.getCodesCountAt(i);
+            hash = 31 * hash + count;
+            final int offset = i * WordComposer.MAX_ALTERNATIVES;
+            for (int j = offset; j < offset + count; j++) {
+                hash = 31 * hash + codes[j];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the suggestions of the composer's typed codes and capitalization, or null if they are not cached.
+     * The entry is valid until the next call to {@link #put(WordComposer, List, boolean)}.
+     */
+    Entry get(WordComposer composer) {
+        final int hash = hashKey(composer);
+        for (Entry entry : mEntries) {
+            if (entry.isKeyOf(composer, hash)) {
+                entry.mLastUsed = ++mUsesCount;
+                mHits++;
+                return entry;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Stores a copy of the suggestions, in place of the least recently used entry.
+     */
+    void put(WordComposer composer, List<CharSequence> suggestions, boolean haveCorrection) {
+        final int hash = hashKey(composer);
+        Entry target = null;
+        for (Entry entry : mEntries) {
+            if (entry.isKeyOf(composer, hash)) {
+                target = entry;
+                break;
+            }
+            if (target == null || (target.mUsed && (!entry.mUsed || entry.mLastUsed < target.mLastUsed)))
+                target = entry;
+        }
+        if (target == null) return;
+        target.setKey(composer, hash);
+        target.setSuggestions(suggestions, haveCorrection);
+        target.mLastUsed = ++mUsesCount;
+        target.mUsed = true;
+    }
+
+    int getHits() {
+        return mHits;
+    }
+
+    int getMisses() {
+        return mMisses;
+    }
+}
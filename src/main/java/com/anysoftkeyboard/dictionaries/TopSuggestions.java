@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import java.util.Arrays;
+
+/**
+ * The best suggestions reported by the dictionaries, ordered by descending frequency (shorter word first, on ties).
+ * Backed by primitive arrays, so adding a word does not allocate: the words' characters are copied into
+ * a fixed set of buffers, and only buffer indices are moved around.
+ * <p/>
+ * A forced word (the typed word itself) is always placed at the top, regardless of its frequency. Since that
+ * may break the order, the insertion position is binary-searched only while the list is known to be ordered.
+ */
+class TopSuggestions {
+    private static final int INITIAL_WORD_CAPACITY = 32;
+
+    private int mMaxSize;
+    //by position. Positions past the end are zero.
+    private int[] mPriorities;
+    private int[] mLengths;
+    //the buffer index each position uses
+    private int[] mBuffers;
+    private char[][] mWords;
+    private int mCount;
+    private boolean mOrdered;
+
+    TopSuggestions(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        mPriorities = new int[maxSize];
+        mLengths = new int[maxSize];
+        mBuffers = new int[maxSize];
+        mWords = new char[maxSize][INITIAL_WORD_CAPACITY];
+        reset();
+    }
+
+    void reset() {
+        Arrays.fill(mPriorities, 0);
+        mCount = 0;
+        mOrdered = true;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    char[] getWord(int position) {
+        return mWords[mBuffers[position]];
+    }
+
+    int getWordLength(int position) {
+        return mLengths[position];
+    }
+
+    /**
+     * Adds the word, if it is good enough.
+     *
+     * @param forced if true, the word is placed at the top of the list.
+     */
+    void add(final char[] word, final int offset, final int length, final int frequency, final boolean forced) {
+        final int pos;
+        if (forced) {
+            pos = 0;
+        } else {
+            // Check the last one's priority and bail
+            if (mPriorities[mMaxSize - 1] >= frequency) return;
+            pos = mOrdered ? findPositionInOrdered(frequency, length) : findPosition(frequency, length);
+            if (pos >= mMaxSize) return;
+        }
+
+        final int buffer = mCount == mMaxSize ? mBuffers[mMaxSize - 1] : mCount;
+        final int toMove = Math.min(mCount, mMaxSize - 1) - pos;
+        if (toMove > 0) {
+            System.arraycopy(mLengths, pos, mLengths, pos + 1, toMove);
+            System.arraycopy(mBuffers, pos, mBuffers, pos + 1, toMove);
+        }
+        System.arraycopy(mPriorities, pos, mPriorities, pos + 1, mMaxSize - pos - 1);
+        mPriorities[pos] = frequency;
+        mLengths[pos] = length;
+        mBuffers[pos] = buffer;
+        if (mWords[buffer].length < length) mWords[buffer] = new char[length];
+        System.arraycopy(word, offset, mWords[buffer], 0, length);
+        if (mCount < mMaxSize) mCount++;
+
+        if (forced && mOrdered && mCount > 1) {
+            mOrdered = !isBefore(mPriorities[1], mLengths[1], frequency, length);
+        }
+    }
+
+    /**
+     * @return true if a word with the given priority and length goes before a word at the given position.
+     */
+    private static boolean isBefore(int frequency, int length, int positionPriority, int positionLength) {
+        return positionPriority < frequency || (positionPriority == frequency && length < positionLength);
+    }
+
+    private int findPosition(final int frequency, final int length) {
+        for (int pos = 0; pos < mCount; pos++) {
+            if (isBefore(frequency, length, mPriorities[pos], mLengths[pos])) return pos;
+        }
+        return mCount;
+    }
+
+    private int findPositionInOrdered(final int frequency, final int length) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (isBefore(frequency, length, mPriorities[middle], mLengths[middle])) high = middle;
+            else low = middle + 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the priorities (including the empty positions) are in descending order.
+     */
+    boolean arePrioritiesOrdered() {
+        final int[] priorities = mPriorities;
+        for (int i = 1; i < mMaxSize; i++) {
+            if (priorities[i] > priorities[i - 1]) return false;
+        }
+        return true;
+    }
+}
@@ -37,6 +37,26 @@ public class UserDictionary extends EditableDictionary {
         mContext = context;
     }
 
+    /**
+     * Picks the storage of the user's words, the same way a loaded UserDictionary would, but without loading
+     * any word into memory. The returned dictionary is good only for accessing the storage directly, through
+     * {@link BTreeDictionary#getWordsCursor()} and {@link BTreeDictionary#replaceWordsInStorage(java.util.Map)},
+     * and should be closed when done.
+     */
+    public static BTreeDictionary openStorage(Context context, String locale) {
+        if (!AnyApplication.getConfig().alwaysUseFallBackUserDictionary()) {
+            AndroidUserDictionary androidBuiltIn = new AndroidUserDictionary(context, locale);
+            try {
+                androidBuiltIn.getWordsCursor().close();
+                return androidBuiltIn;
+            } catch (Exception e) {
+                Log.w(TAG, "Can not access Android's built-in user dictionary (since '" + e.getMessage() + "'). Using FallbackUserDictionary.");
+                androidBuiltIn.close();
+            }
+        }
+        return new FallbackUserDictionary(context, locale);
+    }
+
     @Override
     public final void getWords(WordComposer composer,
                                       WordCallback callback) {
@@ -52,6 +72,13 @@ public class UserDictionary extends EditableDictionary {
             return false;
     }
 
+    @Override
+    public int getVersion() {
+        //the actual dictionary may reload by itself, when its storage changes
+        final BTreeDictionary actualDictionary = mActualDictionary;
+        return super.getVersion() + (actualDictionary != null ? actualDictionary.getVersion() : 0);
+    }
+
     @Override
     protected final void closeAllResources() {
         if (mActualDictionary != null)
@@ -17,7 +17,6 @@
 package com.anysoftkeyboard.dictionaries;
 
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 
 public class WordsCursor {
     private final Cursor mCursor;
@@ -44,20 +43,4 @@ public class WordsCursor {
     public int getCurrentWordFrequency() {
         return mCursor.getInt(2);
     }
-
-    public static class SqliteWordsCursor extends WordsCursor {
-        private final SQLiteDatabase mDb;
-
-        public SqliteWordsCursor(SQLiteDatabase db, Cursor cursor) {
-            super(cursor);
-            mDb = db;
-        }
-
-        @Override
-        public void close() {
-            super.close();
-            if (mDb.isOpen())
-                mDb.close();
-        }
-    }
 }
\ No newline at end of file
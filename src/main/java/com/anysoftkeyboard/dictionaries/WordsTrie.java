@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.WordComposer;
+
+/**
+ * The in-memory words structure behind {@link BTreeDictionary}.
+ * Implementations are not thread-safe: mutations are guarded by the owning dictionary's resource monitor.
+ */
+abstract class WordsTrie {
+
+    protected static final char QUOTE = '\'';
+
+    /**
+     * Removes all the words from the structure.
+     */
+    abstract void clear();
+
+    /**
+     * Adds the word (or updates its frequency if it already exists).
+     */
+    abstract void addWord(CharSequence word, int frequency);
+
+    /**
+     * Removes the word from the structure. Does nothing if the word does not exist.
+     */
+    abstract void deleteWord(CharSequence word);
+
+    /**
+     * Adds the delta to the word's frequency. If the word does not exist, it is added with the delta as its frequency.
+     *
+     * @return the word's new frequency.
+     */
+    int incrementWordFrequency(CharSequence word, int delta) {
+        final int frequency = getWordFrequency(word) + delta;
+        addWord(word, frequency);
+        return frequency;
+    }
+
+    /**
+     * @return the frequency of the given word, or 0 if it does not exist.
+     */
+    abstract int getWordFrequency(CharSequence word);
+
+    /**
+     * Fuzzy-searches the structure for words matching the typed codes, and reports them through the callback.
+     *
+     * @param codes    the typed key codes.
+     * @param callback where to report matched words.
+     * @param from     the dictionary to report as the words' source.
+     */
+    abstract void getWords(WordComposer codes, Dictionary.WordCallback callback, Dictionary from);
+}
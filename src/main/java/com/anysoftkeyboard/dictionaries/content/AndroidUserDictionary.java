@@ -16,6 +16,7 @@
 
 package com.anysoftkeyboard.dictionaries.content;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -28,13 +29,18 @@ import com.anysoftkeyboard.dictionaries.BTreeDictionary;
 import com.anysoftkeyboard.dictionaries.WordsCursor;
 import com.anysoftkeyboard.utils.Log;
 
+import java.util.ArrayList;
+import java.util.Map;
+
 public class AndroidUserDictionary extends BTreeDictionary {
 
     private static final String[] PROJECTION = {Words._ID, Words.WORD, Words.FREQUENCY};
+    //each batch is a single IPC, which has to fit in the binder's buffer
+    private static final int MAX_WORDS_PER_BATCH = 200;
     private final String mLocale;
 
     public AndroidUserDictionary(Context context, String locale) {
-        super("AndroidUserDictionary", context);
+        super("AndroidUserDictionary", context, true);
         mLocale = locale;
     }
 
@@ -59,6 +65,11 @@ public class AndroidUserDictionary extends BTreeDictionary {
             return;
         }
 
+        Uri result = mContext.getContentResolver().insert(Words.CONTENT_URI, createWordValues(word, frequency));
+        Log.i(TAG, "Added the word '" + word + "' at locale " + mLocale + " into Android's user dictionary. Result " + result);
+    }
+
+    private ContentValues createWordValues(String word, int frequency) {
         if (frequency < 1) frequency = 1;
         if (frequency > 255) frequency = 255;
 
@@ -67,9 +78,35 @@ public class AndroidUserDictionary extends BTreeDictionary {
         values.put(Words.FREQUENCY, frequency);
         values.put(Words.LOCALE, mLocale);
         values.put(Words.APP_ID, 0); // TODO: Get App UID
+        return values;
+    }
 
-        Uri result = mContext.getContentResolver().insert(Words.CONTENT_URI, values);
-        Log.i(TAG, "Added the word '" + word + "' at locale " + mLocale + " into Android's user dictionary. Result " + result);
+    /**
+     * Android's user dictionary has no transactions, so the words are written in a few batches of
+     * operations, each applied with a single call to the provider.
+     */
+    @Override
+    public void replaceWordsInStorage(Map<String, Integer> words) {
+        final String authority = Words.CONTENT_URI.getAuthority();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(2 * MAX_WORDS_PER_BATCH);
+        try {
+            for (Map.Entry<String, Integer> word : words.entrySet()) {
+                if (TextUtils.isEmpty(word.getKey())) continue;
+                operations.add(ContentProviderOperation.newDelete(Words.CONTENT_URI)
+                        .withSelection(Words.WORD + "=?", new String[]{word.getKey()}).build());
+                operations.add(ContentProviderOperation.newInsert(Words.CONTENT_URI)
+                        .withValues(createWordValues(word.getKey(), word.getValue())).build());
+                if (operations.size() >= 2 * MAX_WORDS_PER_BATCH) {
+                    mContext.getContentResolver().applyBatch(authority, operations);
+                    operations.clear();
+                }
+            }
+            if (!operations.isEmpty())
+                mContext.getContentResolver().applyBatch(authority, operations);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to write words to Android's user dictionary: " + e.getMessage(), e);
+        }
+        Log.d(TAG, "Wrote %d words at locale %s into Android's user dictionary.", words.size(), mLocale);
     }
 
     @Override
@@ -65,7 +65,7 @@ public class ContactsDictionary extends BTreeDictionary {
     private static final int INDEX_TIMES = 3;
 
     public ContactsDictionary(Context context) {
-        super("ContactsDictionary", context);
+        super("ContactsDictionary", context, true);
     }
 
     @Override
@@ -22,6 +22,7 @@ import com.anysoftkeyboard.dictionaries.Dictionary;
 import com.anysoftkeyboard.utils.Log;
 
 import java.io.FileDescriptor;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -30,14 +31,26 @@ import java.util.Arrays;
 public class BinaryDictionary extends Dictionary {
     public static final int MAX_WORD_LENGTH = 20;
     private static final String TAG = "ASK_BinaryDictionary";
-    private static final int MAX_ALTERNATIVES = 16;
+    private static final int MAX_ALTERNATIVES = WordComposer.MAX_ALTERNATIVES;
     private static final int MAX_WORDS = 16;
     private static final boolean ENABLE_MISSED_CHARACTERS = true;
+    /**
+     * Lookups with fewer results than this will be repeated, allowing a missing character at each position.
+     */
+    private static final int MISSED_CHARACTERS_THRESHOLD = ENABLE_MISSED_CHARACTERS ? 5 : 0;
+    /**
+     * Bit flags of the optional native entry points. Keep in sync with the native library.
+     */
+    private static final int NATIVE_FEATURE_BUFFERS_BRIDGE = 2;
+    //the features of the loaded native library, or -1 if it was not asked yet
+    private static int msNativeFeatures = -1;
     private final AssetFileDescriptor mAfd;
     private volatile int mNativeDict;
-    private int[] mInputCodes = new int[MAX_WORD_LENGTH * MAX_ALTERNATIVES];
+    //older native libraries do not have the buffers bridge. Decided when the dictionary is loaded.
+    private volatile boolean mUseBuffersBridge;
     private char[] mOutputChars = new char[MAX_WORD_LENGTH * MAX_WORDS];
     private int[] mFrequencies = new int[MAX_WORDS];
+    private final NativeSuggestionsBuffers mBuffers = new NativeSuggestionsBuffers(MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES);
 
     static {
         try {
@@ -63,6 +76,7 @@ public class BinaryDictionary extends Dictionary {
         //The try-catch is for issue 878: http://code.google.com/p/softkeyboard/issues/detail?id=878
         try {
             mNativeDict = 0;
+            mUseBuffersBridge = hasNativeFeature(NATIVE_FEATURE_BUFFERS_BRIDGE);
             long startTime = System.currentTimeMillis();
             mNativeDict = openNative(mAfd.getFileDescriptor(), mAfd.getStartOffset(), mAfd.getLength(), TYPED_LETTER_MULTIPLIER, FULL_WORD_FREQ_MULTIPLIER);
             Log.d(TAG, "Loaded dictionary in " + (System.currentTimeMillis() - startTime) + "ms");
@@ -71,12 +85,33 @@ public class BinaryDictionary extends Dictionary {
         }
     }
 
+    /**
+     * Asks the native library once whether it has the given optional entry point. Libraries which predate
+     * this query have none.
+     */
+    private static synchronized boolean hasNativeFeature(int feature) {
+        if (msNativeFeatures < 0) {
+            try {
+                msNativeFeatures = getNativeFeaturesNative();
+            } catch (UnsatisfiedLinkError e) {
+                Log.w(TAG, "Native dictionary library has no optional features. Error: " + e.getMessage());
+                msNativeFeatures = 0;
+            }
+            Log.d(TAG, "Native dictionary library features: " + msNativeFeatures);
+        }
+        return (msNativeFeatures & feature) != 0;
+    }
+
+    private static native int getNativeFeaturesNative();
+
     private native int openNative(FileDescriptor fd, long offset, long length, int typedLetterMultiplier, int fullWordMultiplier);
 
     private native void closeNative(int dict);
 
     private native boolean isValidWordNative(int nativeData, char[] word, int wordLength);
 
+    private native int getSuggestionsFromBuffersNative(int dict, ByteBuffer inputCodes, int codesSize, ByteBuffer outputChars, ByteBuffer frequencies, int maxWordLength, int maxWords, int maxAlternatives, int missedCharactersThreshold);
+
     private native int getSuggestionsNative(int dict, int[] inputCodes, int codesSize, char[] outputChars, int[] frequencies, int maxWordLength, int maxWords, int maxAlternatives, int skipPos);
 
     @Override
@@ -86,26 +121,11 @@ public class BinaryDictionary extends Dictionary {
         // Wont deal with really long words.
         if (codesSize > MAX_WORD_LENGTH - 1) return;
 
-        Arrays.fill(mInputCodes, -1);
-        for (int i = 0; i < codesSize; i++) {
-            int[] alternatives = codes.getCodesAt(i);
-            System.arraycopy(alternatives, 0, mInputCodes, i * MAX_ALTERNATIVES, Math.min(alternatives.length, MAX_ALTERNATIVES));
-        }
-        Arrays.fill(mOutputChars, (char) 0);
-        Arrays.fill(mFrequencies, 0);
-
-        int count = getSuggestionsNative(mNativeDict, mInputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, -1);
-
-        // If there aren't sufficient suggestions, search for words by allowing wild cards at
-        // the different character positions. This feature is not ready for prime-time as we need
-        // to figure out the best ranking for such words compared to proximity corrections and
-        // completions.
-        if (ENABLE_MISSED_CHARACTERS && count < 5) {
-            for (int skip = 0; skip < codesSize; skip++) {
-                int tempCount = getSuggestionsNative(mNativeDict, mInputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, skip);
-                count = Math.max(count, tempCount);
-                if (tempCount > 0) break;
-            }
+        final int count;
+        if (mUseBuffersBridge) {
+            count = getSuggestionsFromBuffers(codes, codesSize);
+        } else {
+            count = getSuggestionsFromArrays(codes, codesSize);
         }
 
         boolean requestContinue = true;
@@ -124,6 +144,38 @@ public class BinaryDictionary extends Dictionary {
         }
     }
 
+    /**
+     * A single native call, which does the missing-characters lookups too.
+     */
+    private int getSuggestionsFromBuffers(WordComposer codes, int codesSize) {
+        mBuffers.setInput(codes, codesSize);
+        final int count = getSuggestionsFromBuffersNative(mNativeDict, mBuffers.mInputBuffer, codesSize, mBuffers.mOutputCharsBuffer, mBuffers.mFrequenciesBuffer, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, MISSED_CHARACTERS_THRESHOLD);
+        mBuffers.getOutput(count, MAX_WORD_LENGTH, mOutputChars, mFrequencies);
+        return count;
+    }
+
+    private int getSuggestionsFromArrays(WordComposer codes, int codesSize) {
+        //the composer's codes are already in the layout the native code expects (padded with -1).
+        final int[] inputCodes = codes.getCodes();
+        Arrays.fill(mOutputChars, (char) 0);
+        Arrays.fill(mFrequencies, 0);
+
+        int count = getSuggestionsNative(mNativeDict, inputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, -1);
+
+        // If there aren't sufficient suggestions, search for words by allowing wild cards at
+        // the different character positions. This feature is not ready for prime-time as we need
+        // to figure out the best ranking for such words compared to proximity corrections and
+        // completions.
+        if (count < MISSED_CHARACTERS_THRESHOLD) {
+            for (int skip = 0; skip < codesSize; skip++) {
+                int tempCount = getSuggestionsNative(mNativeDict, inputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, skip);
+                count = Math.max(count, tempCount);
+                if (tempCount > 0) break;
+            }
+        }
+        return count;
+    }
+
     @Override
     public boolean isValidWord(CharSequence word) {
         if (word == null || mNativeDict == 0 || isClosed()) return false;
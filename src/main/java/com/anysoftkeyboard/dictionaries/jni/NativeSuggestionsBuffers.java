@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.dictionaries.jni;
+
+import com.anysoftkeyboard.WordComposer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Direct buffers shared with a native dictionary, so a suggestions lookup does not pin (or copy) Java arrays.
+ * The native side reads the typed codes from {@link #mInputBuffer}, and writes the suggested words and their
+ * frequencies into {@link #mOutputCharsBuffer} and {@link #mFrequenciesBuffer}. It also resets the slots it
+ * populated in the previous lookup, so the Java side does not need to clear the buffers.
+ */
+class NativeSuggestionsBuffers {
+    final ByteBuffer mInputBuffer;
+    final ByteBuffer mOutputCharsBuffer;
+    final ByteBuffer mFrequenciesBuffer;
+
+    private final IntBuffer mInputCodes;
+    private final CharBuffer mOutputChars;
+    private final IntBuffer mFrequencies;
+
+    NativeSuggestionsBuffers(int maxWordLength, int maxWords, int maxAlternatives) {
+        mInputBuffer = ByteBuffer.allocateDirect(maxWordLength * maxAlternatives * 4).order(ByteOrder.nativeOrder());
+        mOutputCharsBuffer = ByteBuffer.allocateDirect(maxWordLength * maxWords * 2).order(ByteOrder.nativeOrder());
+        mFrequenciesBuffer = ByteBuffer.allocateDirect(maxWords * 4).order(ByteOrder.nativeOrder());
+        mInputCodes = mInputBuffer.asIntBuffer();
+        mOutputChars = mOutputCharsBuffer.asCharBuffer();
+        mFrequencies = mFrequenciesBuffer.asIntBuffer();
+    }
+
+    /**
+     * Copies the typed codes into the input buffer, in a single bulk copy.
+     */
+    void setInput(WordComposer codes, int codesSize) {
+        mInputCodes.clear();
+        mInputCodes.put(codes.getCodes(), 0, codesSize * WordComposer.MAX_ALTERNATIVES);
+    }
+
+    /**
+     * Copies the first <code>count</code> suggestions (and their frequencies) out of the output buffers.
+     */
+    void getOutput(int count, int maxWordLength, char[] outputChars, int[] frequencies) {
+        mOutputChars.clear();
+        mOutputChars.get(outputChars, 0, count * maxWordLength);
+        mFrequencies.clear();
+        mFrequencies.get(frequencies, 0, count);
+    }
+}
@@ -17,6 +17,7 @@
 package com.anysoftkeyboard.dictionaries.jni;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 
@@ -26,11 +27,14 @@ import com.anysoftkeyboard.utils.IMEUtil.GCUtils;
 import com.anysoftkeyboard.utils.IMEUtil.GCUtils.MemRelatedOperation;
 import com.anysoftkeyboard.utils.Log;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
@@ -46,16 +50,29 @@ public class ResourceBinaryDictionary extends Dictionary {
      */
     private static final int MAX_WORD_LENGTH = 48;
     private static final String TAG = "ASK_ResBinDict";
-    private static final int MAX_ALTERNATIVES = 16;
+    private static final int MAX_ALTERNATIVES = WordComposer.MAX_ALTERNATIVES;
     private static final int MAX_WORDS = 18;
     private static final boolean ENABLE_MISSED_CHARACTERS = true;
+    /**
+     * Lookups with fewer results than this will be repeated, allowing a missing character at each position.
+     */
+    private static final int MISSED_CHARACTERS_THRESHOLD = ENABLE_MISSED_CHARACTERS ? 5 : 0;
+    /**
+     * Bit flags of the optional native entry points. Keep in sync with the native library.
+     */
+    private static final int NATIVE_FEATURE_MAPPED_SPLIT_DICTIONARY = 1;
+    private static final int NATIVE_FEATURE_BUFFERS_BRIDGE = 2;
+    //the features of the loaded native library, or -1 if it was not asked yet
+    private static int msNativeFeatures = -1;
     private final Context mAppContext;
     private final int mDictResId;
     private volatile int mNativeDict;
+    //older native libraries do not have the buffers bridge. Decided when the dictionary is loaded.
+    private volatile boolean mUseBuffersBridge;
     private int mDictLength;
-    private final int[] mInputCodes = new int[MAX_WORD_LENGTH * MAX_ALTERNATIVES];
     private final char[] mOutputChars = new char[MAX_WORD_LENGTH * MAX_WORDS];
     private final int[] mFrequencies = new int[MAX_WORDS];
+    private final NativeSuggestionsBuffers mBuffers = new NativeSuggestionsBuffers(MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES);
 
     /** NOTE!
      * Keep a reference to the native dict direct buffer in Java to avoid
@@ -88,12 +105,18 @@ public class ResourceBinaryDictionary extends Dictionary {
         mDictResId = resId;
     }
 
+    private static native int getNativeFeaturesNative();
+
     private native int openNative(ByteBuffer bb, int typedLetterMultiplier, int fullWordMultiplier);
 
+    private native int openNativeMapped(FileDescriptor[] fds, long[] offsets, long[] lengths, int typedLetterMultiplier, int fullWordMultiplier);
+
     private native void closeNative(int dict);
 
     private native boolean isValidWordNative(int nativeData, char[] word, int wordLength);
 
+    private native int getSuggestionsFromBuffersNative(int dict, ByteBuffer inputCodes, int codesSize, ByteBuffer outputChars, ByteBuffer frequencies, int maxWordLength, int maxWords, int maxAlternatives, int missedCharactersThreshold);
+
     private native int getSuggestionsNative(int dict, int[] inputCodes, int codesSize, char[] outputChars, int[] frequencies, int maxWordLength, int maxWords, int maxAlternatives, int skipPos, int[] nextLettersFrequencies, int nextLettersSize);
 
     @Override
@@ -120,7 +143,9 @@ public class ResourceBinaryDictionary extends Dictionary {
                 // http://code.google.com/p/softkeyboard/issues/detail?id=878
                 try {
                     mNativeDict = 0;
-                    loadDictionaryFromResource(resId);
+                    mUseBuffersBridge = hasNativeFeature(NATIVE_FEATURE_BUFFERS_BRIDGE);
+                    if (!loadDictionaryFromMappedResource(resId))
+                        loadDictionaryFromResource(resId);
                 } catch (UnsatisfiedLinkError ex) {
                     Log.w(TAG, "Failed to load binary JNI connection! Error: " + ex.getMessage());
                 }
@@ -128,6 +153,92 @@ public class ResourceBinaryDictionary extends Dictionary {
         }, false);
     }
 
+    /**
+     * Asks the native library once whether it has the given optional entry point. Libraries which predate
+     * this query have none.
+     */
+    private static synchronized boolean hasNativeFeature(int feature) {
+        if (msNativeFeatures < 0) {
+            try {
+                msNativeFeatures = getNativeFeaturesNative();
+            } catch (UnsatisfiedLinkError e) {
+                Log.w(TAG, "Native dictionary library has no optional features. Error: " + e.getMessage());
+                msNativeFeatures = 0;
+            }
+            Log.d(TAG, "Native dictionary library features: " + msNativeFeatures);
+        }
+        return (msNativeFeatures & feature) != 0;
+    }
+
+    /**
+     * Maps the dictionary directly from the APK, so its pages are read on demand (and shared with the page-cache)
+     * instead of being copied into a direct buffer.
+     * This is only possible if all the resource parts are stored uncompressed in the add-on package.
+     *
+     * @return true if the dictionary was loaded.
+     */
+    private boolean loadDictionaryFromMappedResource(int[] resId) {
+        if (resId.length > 1 && !hasNativeFeature(NATIVE_FEATURE_MAPPED_SPLIT_DICTIONARY)) {
+            Log.d(TAG, "Native dictionary library can not map split dictionaries. Will copy it.");
+            return false;
+        }
+        final long startTime = System.currentTimeMillis();
+        final AssetFileDescriptor[] afds = new AssetFileDescriptor[resId.length];
+        try {
+            for (int i = 0; i < resId.length; i++) {
+                afds[i] = mAppContext.getResources().openRawResourceFd(resId[i]);
+                if (afds[i] == null) return false;
+            }
+            long total = 0;
+            if (afds.length == 1) {
+                FileInputStream inputStream = new FileInputStream(afds[0].getFileDescriptor());
+                try {
+                    total = afds[0].getLength();
+                    //the mapping stays valid after the channel is closed
+                    mNativeDictDirectBuffer = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, afds[0].getStartOffset(), total);
+                } finally {
+                    inputStream.close();
+                }
+                mNativeDict = openNative(mNativeDictDirectBuffer, TYPED_LETTER_MULTIPLIER, FULL_WORD_FREQ_MULTIPLIER);
+            } else {
+                //a split dictionary is stitched in native code, part by part.
+                final FileDescriptor[] fds = new FileDescriptor[afds.length];
+                final long[] offsets = new long[afds.length];
+                final long[] lengths = new long[afds.length];
+                for (int i = 0; i < afds.length; i++) {
+                    fds[i] = afds[i].getFileDescriptor();
+                    offsets[i] = afds[i].getStartOffset();
+                    lengths[i] = afds[i].getLength();
+                    total += lengths[i];
+                }
+                mNativeDict = openNativeMapped(fds, offsets, lengths, TYPED_LETTER_MULTIPLIER, FULL_WORD_FREQ_MULTIPLIER);
+            }
+            if (mNativeDict == 0) {
+                mNativeDictDirectBuffer = null;
+                return false;
+            }
+            mDictLength = (int) total;
+            Log.d(TAG, "Mapped a resource dictionary of " + total + " bytes (in " + resId.length + " parts) in " + (System.currentTimeMillis() - startTime) + "ms");
+            return true;
+        } catch (Resources.NotFoundException e) {
+            Log.d(TAG, "Resource dictionary is compressed, and can not be mapped. Will copy it.");
+            return false;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to map resource dictionary! Will copy it. Error: " + e.getMessage());
+            mNativeDictDirectBuffer = null;
+            return false;
+        } finally {
+            for (AssetFileDescriptor afd : afds) {
+                if (afd == null) continue;
+                try {
+                    afd.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close asset file descriptor");
+                }
+            }
+        }
+    }
+
     private void loadDictionaryFromResource(int[] resId) {
         InputStream[] is = null;
         try {
@@ -177,17 +288,46 @@ public class ResourceBinaryDictionary extends Dictionary {
         // Won't deal with really long words.
         if (codesSize > MAX_WORD_LENGTH - 1) return;
 
-        Arrays.fill(mInputCodes, -1);
-        for (int i = 0; i < codesSize; i++) {
-            int[] alternatives = codes.getCodesAt(i);
-            System.arraycopy(alternatives, 0, mInputCodes, i * MAX_ALTERNATIVES, Math.min(alternatives.length, MAX_ALTERNATIVES));
+        final int count;
+        if (mUseBuffersBridge) {
+            count = getSuggestionsFromBuffers(codes, codesSize);
+        } else {
+            count = getSuggestionsFromArrays(codes, codesSize);
         }
+
+        boolean requestContinue = true;
+        for (int j = 0; j < count && requestContinue; j++) {
+            if (mFrequencies[j] < 1) break;
+            int start = j * MAX_WORD_LENGTH;
+            int len = 0;
+            while (mOutputChars[start + len] != 0) {
+                len++;
+            }
+            if (len > 0) {
+                requestContinue = callback.addWord(mOutputChars, start, len, mFrequencies[j]/*, mDicTypeId, DataType.UNIGRAM*/, this);
+            }
+        }
+    }
+
+    /**
+     * A single native call, which does the missing-characters lookups too.
+     */
+    private int getSuggestionsFromBuffers(WordComposer codes, int codesSize) {
+        mBuffers.setInput(codes, codesSize);
+        final int count = getSuggestionsFromBuffersNative(mNativeDict, mBuffers.mInputBuffer, codesSize, mBuffers.mOutputCharsBuffer, mBuffers.mFrequenciesBuffer, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, MISSED_CHARACTERS_THRESHOLD);
+        mBuffers.getOutput(count, MAX_WORD_LENGTH, mOutputChars, mFrequencies);
+        return count;
+    }
+
+    private int getSuggestionsFromArrays(WordComposer codes, int codesSize) {
+        //the composer's codes are already in the layout the native code expects (padded with -1).
+        final int[] inputCodes = codes.getCodes();
         Arrays.fill(mOutputChars, (char) 0);
         Arrays.fill(mFrequencies, 0);
 
         int[] nextLettersFrequencies = null;
 
-        int count = getSuggestionsNative(mNativeDict, mInputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, -1, nextLettersFrequencies, nextLettersFrequencies != null ? nextLettersFrequencies.length : 0);
+        int count = getSuggestionsNative(mNativeDict, inputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, -1, nextLettersFrequencies, nextLettersFrequencies != null ? nextLettersFrequencies.length : 0);
 
         // If there aren't sufficient suggestions, search for words by allowing
         // wild cards at
@@ -196,26 +336,14 @@ public class ResourceBinaryDictionary extends Dictionary {
         // to figure out the best ranking for such words compared to proximity
         // corrections and
         // completions.
-        if (ENABLE_MISSED_CHARACTERS && count < 5) {
+        if (count < MISSED_CHARACTERS_THRESHOLD) {
             for (int skip = 0; skip < codesSize; skip++) {
-                int tempCount = getSuggestionsNative(mNativeDict, mInputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, skip, null, 0);
+                int tempCount = getSuggestionsNative(mNativeDict, inputCodes, codesSize, mOutputChars, mFrequencies, MAX_WORD_LENGTH, MAX_WORDS, MAX_ALTERNATIVES, skip, null, 0);
                 count = Math.max(count, tempCount);
                 if (tempCount > 0) break;
             }
         }
-
-        boolean requestContinue = true;
-        for (int j = 0; j < count && requestContinue; j++) {
-            if (mFrequencies[j] < 1) break;
-            int start = j * MAX_WORD_LENGTH;
-            int len = 0;
-            while (mOutputChars[start + len] != 0) {
-                len++;
-            }
-            if (len > 0) {
-                requestContinue = callback.addWord(mOutputChars, start, len, mFrequencies[j]/*, mDicTypeId, DataType.UNIGRAM*/, this);
-            }
-        }
+        return count;
     }
 
     @Override
@@ -229,6 +357,11 @@ public class ResourceBinaryDictionary extends Dictionary {
         return mDictLength; // This value is initialized on the call to
     }
 
+    @Override
+    public int getSizeInBytes() {
+        return mDictLength;
+    }
+
     protected void closeAllResources() {
         if (mNativeDict != 0) {
             closeNative(mNativeDict);
@@ -21,8 +21,11 @@ import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
 import com.anysoftkeyboard.WordComposer;
-import com.anysoftkeyboard.dictionaries.Dictionary;
+import com.anysoftkeyboard.dictionaries.DictionarySnapshot;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +37,8 @@ public class AbbreviationsDictionary extends SQLiteUserDictionaryBase {
 	private static final int ABBR_MAX_WORD_LENGTH = 2048;
 
     private final Map<CharSequence, List<String>> mAbbreviationsMap = new HashMap<>();
+    private final LookupKey mLookupKey = new LookupKey();
+    private char[] mExplodedStringBuffer = new char[32];
 
     public AbbreviationsDictionary(Context context, String locale) {
         super("AbbreviationsDictionary", context, locale);
@@ -53,23 +58,89 @@ public class AbbreviationsDictionary extends SQLiteUserDictionaryBase {
     public void getWords(WordComposer codes, WordCallback callback) {
         if (isClosed() || isLoading()) return;
 
-        String word = codes.getTypedWord().toString();
-		reportExplodedWords(callback, word);
+        final CharSequence word = codes.getTypedWord();
+        if (word.length() == 0) return;
+        mLookupKey.set(word, false);
+		reportExplodedWords(callback);
 
 		if (codes.isFirstCharCapitalized()) {
-			String nonCapitalizedWord = toLowerCase(word.charAt(0))+(word.length() > 1? word.substring(1) : "");
-			reportExplodedWords(callback, nonCapitalizedWord);
+			mLookupKey.set(word, true);
+			reportExplodedWords(callback);
 		}
     }
 
-	private void reportExplodedWords(WordCallback callback, String word) {
-		List<String> explodedStringsList = mAbbreviationsMap.get(word);
+	private void reportExplodedWords(WordCallback callback) {
+		List<String> explodedStringsList = mAbbreviationsMap.get(mLookupKey);
 		if (explodedStringsList != null) {
-			for(String explodedString : explodedStringsList)
-				callback.addWord(explodedString.toCharArray(), 0, explodedString.length(), MAX_WORD_FREQUENCY, this);
+			for(String explodedString : explodedStringsList) {
+				final int length = explodedString.length();
+				if (mExplodedStringBuffer.length < length) mExplodedStringBuffer = new char[length];
+				explodedString.getChars(0, length, mExplodedStringBuffer, 0);
+				callback.addWord(mExplodedStringBuffer, 0, length, MAX_WORD_FREQUENCY, this);
+			}
 		}
 	}
 
+    /**
+     * A re-usable key for looking up the typed word in the abbreviations map, without creating a String for it.
+     * It has the same hash-code as a String with the same characters, and equals any such String; the map
+     * calls the looked-up key's equals method.
+     */
+    private static final class LookupKey implements CharSequence {
+        private char[] mChars = new char[32];
+        private int mLength;
+        private int mHashCode;
+
+        void set(CharSequence word, boolean lowerFirstChar) {
+            mLength = word.length();
+            if (mChars.length < mLength) mChars = new char[mLength];
+            int hashCode = 0;
+            for (int i = 0; i < mLength; i++) {
+                final char c = (i == 0 && lowerFirstChar) ? toLowerCase(word.charAt(0)) : word.charAt(i);
+                mChars[i] = c;
+                hashCode = 31 * hashCode + c;
+            }
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CharSequence)) return false;
+            final CharSequence other = (CharSequence) o;
+            if (other.length() != mLength) return false;
+            for (int i = 0; i < mLength; i++) {
+                if (other.charAt(i) != mChars[i]) return false;
+            }
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mLength);
+        }
+    }
+
 	@Override
     protected void addWordFromStorage(String word, int frequency) {
         //not double storing the words in memory, so I'm not calling the super method
@@ -84,6 +155,45 @@ public class AbbreviationsDictionary extends SQLiteUserDictionaryBase {
 	    }
     }
 
+    @Override
+    protected void deleteWordFromMemory(String word) {
+        //the same word may be stored with any abbreviation length, and all of them are deleted from the storage.
+        for (int abbreviationLength = 1; abbreviationLength <= word.length(); abbreviationLength++) {
+            final String key = getAbbreviation(word, abbreviationLength);
+            final List<String> explodedStringsList = mAbbreviationsMap.get(key);
+            if (explodedStringsList != null && explodedStringsList.remove(getExplodedSentence(word, abbreviationLength)) && explodedStringsList.isEmpty()) {
+                mAbbreviationsMap.remove(key);
+            }
+        }
+    }
+
+    @Override
+    protected void writeSnapshotPayload(DataOutputStream out) throws IOException {
+        out.writeInt(mAbbreviationsMap.size());
+        for (Map.Entry<CharSequence, List<String>> entry : mAbbreviationsMap.entrySet()) {
+            DictionarySnapshot.writeString(out, entry.getKey().toString());
+            out.writeInt(entry.getValue().size());
+            for (String explodedString : entry.getValue())
+                DictionarySnapshot.writeString(out, explodedString);
+        }
+    }
+
+    @Override
+    protected void readSnapshotPayload(ByteBuffer in) throws IOException {
+        final int keysCount = in.getInt();
+        final Map<CharSequence, List<String>> abbreviations = new HashMap<>(Math.max(0, keysCount) * 2);
+        for (int keyIndex = 0; keyIndex < keysCount; keyIndex++) {
+            final String key = DictionarySnapshot.readString(in);
+            final int valuesCount = in.getInt();
+            final List<String> explodedStringsList = new ArrayList<>(Math.max(1, valuesCount));
+            for (int valueIndex = 0; valueIndex < valuesCount; valueIndex++)
+                explodedStringsList.add(DictionarySnapshot.readString(in));
+            abbreviations.put(key, explodedStringsList);
+        }
+        mAbbreviationsMap.clear();
+        mAbbreviationsMap.putAll(abbreviations);
+    }
+
     public static String getAbbreviation(@NonNull String word, int frequency) {
         return word.substring(0, frequency);
     }
@@ -88,21 +88,19 @@ public class AutoDictionary extends SQLiteUserDictionaryBase {
                 // Remove caps before adding
                 wordToAdd = Character.toLowerCase(wordToAdd.charAt(0)) + wordToAdd.substring(1);
             }
-            int freq = getWordFrequency(wordToAdd);
             final int frequencyDelta = type.equals(AdditionType.Picked)? FREQUENCY_FOR_PICKED: FREQUENCY_FOR_TYPED;
-
-            freq = freq < 0 ? frequencyDelta : freq + frequencyDelta;
-            boolean added;
+            //a single walk, and a single (queued) storage change
+            final int freq = incrementWordFrequency(wordToAdd, frequencyDelta);
             if (freq >= AnyApplication.getConfig().getAutoDictionaryInsertionThreshold()) {
                 Log.i(TAG, "Promoting the word " + word + " (freq " + freq
                         + ") to the user dictionary. It earned it.");
-                added = callingIme.promoteToUserDictionary(wordToAdd, AUTO_ADDED_WORDS_FREQUENCY);
+                final boolean added = callingIme.promoteToUserDictionary(wordToAdd, AUTO_ADDED_WORDS_FREQUENCY);
+                //the storage coalesces this deletion with the increment above.
                 deleteWord(wordToAdd);
+                return added;
             } else {
-                super.addWord(wordToAdd, freq);
-                added = false;//this means that the word was not promoted.
+                return false;//this means that the word was not promoted.
             }
-            return added;
         }
     }
 
@@ -20,10 +20,16 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.text.TextUtils;
+
 import com.anysoftkeyboard.dictionaries.BTreeDictionary;
 import com.anysoftkeyboard.dictionaries.WordsCursor;
 import com.anysoftkeyboard.utils.Log;
 
+import java.io.File;
+import java.util.Map;
+
 public abstract class SQLiteUserDictionaryBase extends BTreeDictionary {
     private static final String TAG = "SQLiteUserDictionaryBase";
 
@@ -31,7 +37,7 @@ public abstract class SQLiteUserDictionaryBase extends BTreeDictionary {
     private final String mLocale;
 
     protected SQLiteUserDictionaryBase(String dictionaryName, Context context, String locale) {
-        super(dictionaryName, context);
+        super(dictionaryName, context, true);
         mLocale = locale;
         Log.d(TAG, "Created instance of %s for locale %s.", dictionaryName, locale);
     }
@@ -43,10 +49,7 @@ public abstract class SQLiteUserDictionaryBase extends BTreeDictionary {
     @Override
     public final WordsCursor getWordsCursor() {
         try {
-            if (mStorage == null)
-                mStorage = createStorage(mLocale);
-
-            return mStorage.getWordsCursor();
+            return getStorage().getWordsCursor();
         } catch (SQLiteException e) {
             e.printStackTrace();
             final String dbFile = mStorage.getDbFilename();
@@ -69,6 +72,32 @@ public abstract class SQLiteUserDictionaryBase extends BTreeDictionary {
 
     protected abstract WordsSQLiteConnection createStorage(String locale);
 
+    private WordsSQLiteConnection getStorage() {
+        //when loading from a snapshot, the storage is not touched, but it is still needed for later changes.
+        if (mStorage == null)
+            mStorage = createStorage(mLocale);
+        return mStorage;
+    }
+
+    @Override
+    protected File getSnapshotFile() {
+        final String locale = TextUtils.isEmpty(mLocale) ? "none" : mLocale;
+        return new File(mContext.getCacheDir(), getStorage().getDbFilename() + "-" + locale + ".snapshot");
+    }
+
+    /**
+     * The database file's modification time and size. Changes made through this instance
+     * also remove the snapshot, since the file's time resolution may be too coarse.
+     */
+    @Override
+    protected long getStorageVersion() {
+        //the file should hold all the changes before its version is taken
+        getStorage().flushPendingWrites();
+        final File dbFile = mContext.getDatabasePath(getStorage().getDbFilename());
+        if (dbFile == null || !dbFile.exists()) return 0;
+        return (dbFile.lastModified() << 20) ^ dbFile.length();
+    }
+
     @Override
     protected final void AddWordToStorage(String word, int frequency) {
         if (mStorage != null)
@@ -81,9 +110,21 @@ public abstract class SQLiteUserDictionaryBase extends BTreeDictionary {
             mStorage.deleteWord(word);
     }
 
+    @Override
+    public final void replaceWordsInStorage(Map<String, Integer> words) {
+        getStorage().replaceWords(words);
+        //other instances of this storage (say, the one the keyboard is using) should reload
+        mContext.getContentResolver().notifyChange(getStorageUri(), null);
+    }
+
     @Override
     protected final void registerObserver(ContentObserver dictionaryContentObserver, ContentResolver contentResolver) {
-        //nothing to do here, the storage is internal and cannot be changed from the outside.
+        //the storage is internal, and is changed from the outside only by replaceWordsInStorage.
+        contentResolver.registerContentObserver(getStorageUri(), false, dictionaryContentObserver);
+    }
+
+    private Uri getStorageUri() {
+        return Uri.parse("content://" + mContext.getPackageName() + ".dictionaries/" + getStorage().getDbFilename());
     }
 
     @Override
@@ -20,13 +20,40 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.text.TextUtils;
 import com.anysoftkeyboard.dictionaries.WordsCursor;
 import com.anysoftkeyboard.utils.Log;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Changes are not written immediately: they are queued, coalesced per word, and written
+ * by a background writer in one transaction per batch. A batch is written a short while after
+ * the first change was queued, or as soon as enough changes were queued.
+ * Reading the words, or closing the connection, writes all pending changes first.
+ * A batch which failed to be written is queued again, and retried later. Changes queued after the
+ * connection was closed are rejected.
+ */
 public class WordsSQLiteConnection extends SQLiteOpenHelper {
     private static final String TAG = "ASK SqliteCnnt";
+    private static final long WRITE_DELAY_MS = 2 * 1000;
+    private static final int MAX_PENDING_WRITES = 64;
+    //failed writes are retried after WRITE_DELAY_MS, doubled with each failure, up to this many times.
+    private static final int MAX_RETRY_DELAY_SHIFT = 5;
+    //marks a pending deletion in the pending-writes map
+    private static final Integer DELETE_WORD = null;
+
+    //a single writer for all connections, so IO is done serially
+    private static ScheduledExecutorService msWriter;
+
     private final static String TABLE_NAME = "WORDS";//was FALL_BACK_USER_DICTIONARY;
     protected final Context mContext;
     private final String mCurrentLocale;
@@ -34,6 +61,20 @@ public class WordsSQLiteConnection extends SQLiteOpenHelper {
     //sqlite file. Hence, reducing SQL file corruption errors. Hopefully.
     private final static String mDbCreationMonitor = "GLOBAL LOCK FOR IO";
     private final String mDbName;
+    //word -> the frequency to store, or DELETE_WORD. Guarded by itself.
+    private final Map<String, Integer> mPendingWrites = new LinkedHashMap<>();
+    private boolean mWriteScheduled = false;
+    //an immediate flush was submitted to the writer, and did not start yet
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean(false);
+    //guarded by mPendingWrites
+    private int mFailedWrites = 0;
+    private boolean mClosed = false;
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingWrites();
+        }
+    };
 
     public WordsSQLiteConnection(Context context, String DbFilename, String currentLocale) {
         super(context, DbFilename, null, 7);
@@ -83,36 +124,165 @@ public class WordsSQLiteConnection extends SQLiteOpenHelper {
         }
     }
 
-    public synchronized void addWord(String word, int freq) {
+    public void addWord(String word, int freq) {
+        queueWrite(word, freq);
+    }
+
+    public void deleteWord(String word) {
+        queueWrite(word, DELETE_WORD);
+    }
+
+    private void queueWrite(String word, Integer freq) {
+        synchronized (mPendingWrites) {
+            if (mClosed) {
+                Log.w(TAG, "Rejecting a change of '" + word + "' to the closed SQLite storage (" + mCurrentLocale + "@" + mDbName + ")!");
+                return;
+            }
+            //removing first, so the word will be written in the order of its last change
+            mPendingWrites.remove(word);
+            mPendingWrites.put(word, freq);
+            if (mPendingWrites.size() >= MAX_PENDING_WRITES && mFailedWrites == 0) {
+                if (mFlushScheduled.compareAndSet(false, true))
+                    getWriter().execute(mWriteTask);
+            } else if (!mWriteScheduled) {
+                scheduleWrite();
+            }
+        }
+    }
+
+    //call while holding mPendingWrites
+    private void scheduleWrite() {
+        final long delay = WRITE_DELAY_MS << Math.min(mFailedWrites, MAX_RETRY_DELAY_SHIFT);
+        getWriter().schedule(mWriteTask, delay, TimeUnit.MILLISECONDS);
+        mWriteScheduled = true;
+    }
+
+    /**
+     * Writes the words (after all the pending changes) in a single transaction, on the calling thread.
+     * Any stored entry of the same word is replaced.
+     */
+    public void replaceWords(Map<String, Integer> words) {
+        synchronized (mDbName) {
+            synchronized (mPendingWrites) {
+                if (mClosed) {
+                    Log.w(TAG, "Rejecting " + words.size() + " words to the closed SQLite storage (" + mCurrentLocale + "@" + mDbName + ")!");
+                    return;
+                }
+            }
+            flushPendingWrites();
+            writeBatch(words);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (msWriter == null) {
+            msWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ASK words writer");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return msWriter;
+    }
+
+    /**
+     * Writes all the pending changes, in a single transaction, on the calling thread.
+     */
+    public void flushPendingWrites() {
         synchronized (mDbName) {
-            SQLiteDatabase db = getWritableDatabase();
+            final Map<String, Integer> batch;
+            synchronized (mPendingWrites) {
+                mWriteScheduled = false;
+                mFlushScheduled.set(false);
+                if (mPendingWrites.isEmpty()) return;
+                batch = new LinkedHashMap<>(mPendingWrites);
+                mPendingWrites.clear();
+            }
+            try {
+                writeBatch(batch);
+                synchronized (mPendingWrites) {
+                    mFailedWrites = 0;
+                }
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Failed to write " + batch.size() + " changes to SQLite storage (" + mCurrentLocale + "@" + mDbName + ")! Will retry. Error: " + e.getMessage());
+                requeueFailedBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * Puts the batch back in front of the pending changes. Changes which were queued since take precedence.
+     */
+    private void requeueFailedBatch(Map<String, Integer> batch) {
+        synchronized (mPendingWrites) {
+            final Map<String, Integer> pending = new LinkedHashMap<>(batch);
+            for (Map.Entry<String, Integer> change : mPendingWrites.entrySet()) {
+                pending.remove(change.getKey());
+                pending.put(change.getKey(), change.getValue());
+            }
+            mPendingWrites.clear();
+            mPendingWrites.putAll(pending);
+            mFailedWrites++;
+            if (mClosed) {
+                //there will be no more flushes, and a retry would re-open the database.
+                Log.e(TAG, "SQLite storage (" + mCurrentLocale + "@" + mDbName + ") was closed. " + mPendingWrites.size() + " changes were not written!");
+                mPendingWrites.clear();
+            } else if (!mWriteScheduled) {
+                scheduleWrite();
+            }
+        }
+    }
 
+    private void writeBatch(Map<String, Integer> batch) {
+        final long startTime = System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final String[] whereArgs = new String[1];
             ContentValues values = new ContentValues();
-            values.put(Words._ID, word.hashCode());// ensuring that any word is inserted once
-            values.put(Words.WORD, word);
-            values.put(Words.FREQUENCY, freq);
-            values.put(Words.LOCALE, mCurrentLocale);
-            long res = db.insert(TABLE_NAME, null, values);
-            if (res < 0) {
-                Log.e(TAG, "Unable to insert '" + word + "' to SQLite storage (" + mCurrentLocale + "@" + mDbName + ")! Result:" + res);
-            } else {
-                Log.d(TAG, "Inserted '" + word + "' to SQLite storage (" + mCurrentLocale + "@" + mDbName + "). Id:" + res);
+            for (Map.Entry<String, Integer> change : batch.entrySet()) {
+                final String word = change.getKey();
+                whereArgs[0] = word;
+                db.delete(TABLE_NAME, Words.WORD + "=?", whereArgs);
+                final Integer freq = change.getValue();
+                if (freq == DELETE_WORD) continue;
+
+                values.put(Words._ID, word.hashCode());// ensuring that any word is inserted once
+                values.put(Words.WORD, word);
+                values.put(Words.FREQUENCY, freq);
+                values.put(Words.LOCALE, mCurrentLocale);
+                long res = db.insert(TABLE_NAME, null, values);
+                if (res < 0) {
+                    Log.e(TAG, "Unable to insert '" + word + "' to SQLite storage (" + mCurrentLocale + "@" + mDbName + ")! Result:" + res);
+                }
             }
-            db.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        Log.d(TAG, "Wrote " + batch.size() + " changes to SQLite storage (" + mCurrentLocale + "@" + mDbName + ") in " + (System.currentTimeMillis() - startTime) + "ms");
     }
 
-    public synchronized void deleteWord(String word) {
+    @Override
+    public void close() {
         synchronized (mDbName) {
-            SQLiteDatabase db = getWritableDatabase();
-
-            db.delete(TABLE_NAME, Words.WORD + "=?", new String[]{word});
-            db.close();
+            synchronized (mPendingWrites) {
+                mClosed = true;
+            }
+            flushPendingWrites();
+            super.close();
         }
     }
 
     public WordsCursor getWordsCursor() {
         synchronized (mDbName) {
+            //reading what was written
+            flushPendingWrites();
+            //the database is kept open, it will be closed with this connection.
             SQLiteDatabase db = getReadableDatabase();
             Cursor c;
             if (TextUtils.isEmpty(mCurrentLocale)) {
@@ -122,7 +292,7 @@ public class WordsSQLiteConnection extends SQLiteOpenHelper {
                 c = db.query(TABLE_NAME, new String[]{Words._ID, Words.WORD, Words.FREQUENCY}, "(" + Words.LOCALE + " IS NULL) or (" + Words.LOCALE + "=?)", new String[]{mCurrentLocale}, null, null, null);
             }
 
-            return new WordsCursor.SqliteWordsCursor(db, c);
+            return new WordsCursor(c);
         }
     }
 
@@ -18,12 +18,8 @@ package com.anysoftkeyboard.keyboards;
 
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
 import android.text.TextUtils;
-import android.util.SparseIntArray;
-import android.util.Xml;
 import android.view.inputmethod.EditorInfo;
 
 import com.anysoftkeyboard.AnySoftKeyboard;
@@ -38,9 +34,6 @@ import com.anysoftkeyboard.utils.Workarounds;
 import com.menny.android.anysoftkeyboard.AnyApplication;
 import com.menny.android.anysoftkeyboard.R;
 
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
 
@@ -66,9 +59,6 @@ public abstract class AnyKeyboard extends Keyboard {
                                         AnySoftKeyboard ime);
     }
 
-    private static final String TAG_ROW = "Row";
-    private static final String TAG_KEY = "Key";
-
     private static class KeyboardMetadata {
         public int keysCount = 0;
         public int rowHeight = 0;
@@ -317,12 +307,8 @@ public abstract class AnyKeyboard extends Keyboard {
 
     private KeyboardMetadata addKeyboardRow(Context context, int rowResId,
                                             int mode, final KeyboardDimens keyboardDimens) {
-        XmlResourceParser parser = context.getResources().getXml(rowResId);
+        final ParsedLayout layout = ParsedLayoutCache.getLayout(this, mASKContext, context, rowResId);
         List<Key> keys = getKeys();
-        boolean inKey = false;
-        boolean inRow = false;
-        // boolean leftMostKey = false;
-        boolean skipRow = false;
 
         final float keyHorizontalGap = keyboardDimens.getKeyHorizontalGap();
         final float rowVerticalGap = keyboardDimens.getRowVerticalGap();
@@ -336,20 +322,15 @@ public abstract class AnyKeyboard extends Keyboard {
         KeyboardMetadata m = new KeyboardMetadata();
 
         try {
-            int event;
-            while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
-                if (event == XmlResourceParser.START_TAG) {
-                    String tag = parser.getName();
-                    if (TAG_ROW.equals(tag)) {
-                        inRow = true;
+            final int elementsCount = layout.getElementsCount();
+            for (int elementIndex = 0; elementIndex < elementsCount; elementIndex++) {
+                switch (layout.getElement(elementIndex)) {
+                    case ParsedLayout.ELEMENT_ROW:
                         x = 0;
-                        currentRow = createRowFromXml(mASKContext, res, parser);
-                        skipRow = currentRow.mode != 0
-                                && currentRow.mode != mode;
-                        if (skipRow) {
+                        currentRow = createRowFromXml(mASKContext, res, layout.getAttributes(elementIndex));
+                        if (currentRow.mode != 0 && currentRow.mode != mode) {
                             currentRow = null;
-                            skipToEndOfRow(parser);
-                            inRow = false;
+                            elementIndex = layout.getEndOfRow(elementIndex);
                         } else {
                             m.isTopRow = currentRow.rowEdgeFlags == Keyboard.EDGE_TOP;
                             if (!m.isTopRow) {
@@ -367,11 +348,11 @@ public abstract class AnyKeyboard extends Keyboard {
                             m.rowHeight = 0;
                             m.verticalGap = currentRow.verticalGap;
                         }
-                    } else if (TAG_KEY.equals(tag)) {
-                        inKey = true;
+                        break;
+                    case ParsedLayout.ELEMENT_KEY:
                         x += (keyHorizontalGap / 2);
                         key = createKeyFromXml(mASKContext, context, currentRow,
-                                keyboardDimens, (int) x, (int) y, parser);
+                                keyboardDimens, (int) x, (int) y, layout.getAttributes(elementIndex));
                         key.width -= keyHorizontalGap;// the gap is on both
                         // sides
                         if (m.isTopRow)
@@ -381,10 +362,8 @@ public abstract class AnyKeyboard extends Keyboard {
                         m.keysCount++;
 
                         m.rowHeight = Math.max(key.height, m.rowHeight);
-                    }
-                } else if (event == XmlResourceParser.END_TAG) {
-                    if (inKey) {
-                        inKey = false;
+                        break;
+                    case ParsedLayout.ELEMENT_KEY_END:
                         x += (key.gap + key.width);
                         x += (keyHorizontalGap / 2);
                         if (x > m.rowWidth) {
@@ -393,15 +372,13 @@ public abstract class AnyKeyboard extends Keyboard {
                             mMaxGenericRowsWidth = Math.max(
                                     mMaxGenericRowsWidth, m.rowWidth);
                         }
-                    } else if (inRow) {
-                        inRow = false;
+                        break;
+                    case ParsedLayout.ELEMENT_ROW_END:
                         y += currentRow.verticalGap;
                         y += m.rowHeight;
                         y += rowVerticalGap;
                         row++;
-                    } else {
-                        // TODO: error or extend?
-                    }
+                        break;
                 }
             }
         } catch (Exception e) {
@@ -412,17 +389,6 @@ public abstract class AnyKeyboard extends Keyboard {
         return m;
     }
 
-    private void skipToEndOfRow(XmlResourceParser parser)
-            throws XmlPullParserException, IOException {
-        int event;
-        while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
-            if (event == XmlResourceParser.END_TAG
-                    && parser.getName().equals(TAG_ROW)) {
-                break;
-            }
-        }
-    }
-
 	/* required overrides */
 
     @Override
@@ -469,9 +435,9 @@ public abstract class AnyKeyboard extends Keyboard {
     @Override
     protected Key createKeyFromXml(Context askContext, Context keyboardContext,
                                    Row parent, KeyboardDimens keyboardDimens, int x, int y,
-                                   XmlResourceParser parser) {
+                                   ParsedLayout.Attributes attributes) {
         AnyKey key = new AnyKey(askContext, keyboardContext, parent, keyboardDimens, x, y,
-                parser);
+                attributes);
 
         if ((key.codes != null) && (key.codes.length > 0)) {
             final int primaryCode = key.codes[0];
@@ -483,7 +449,7 @@ public abstract class AnyKeyboard extends Keyboard {
                     break;
                 case KeyCodes.ENTER:// enter
                     key = mEnterKey = new EnterKey(mASKContext, keyboardContext, parent,
-                            keyboardDimens, x, y, parser);
+                            keyboardDimens, x, y, attributes);
                     break;
                 case KeyCodes.SHIFT:
                     mShiftKey = key;// I want the reference used by the super.
@@ -505,8 +471,8 @@ public abstract class AnyKeyboard extends Keyboard {
 
     @Override
     protected Row createRowFromXml(Context askContext, Resources res,
-                                   XmlResourceParser parser) {
-        Row aRow = super.createRowFromXml(askContext, res, parser);
+                                   ParsedLayout.Attributes attributes) {
+        Row aRow = super.createRowFromXml(askContext, res, attributes);
         if (aRow.mode > 0)
             aRow.mode = res.getInteger(aRow.mode);// switching to the mode!
 
@@ -685,8 +651,8 @@ public abstract class AnyKeyboard extends Keyboard {
 
         public AnyKey(Context askContext, Context keyboardContext, Keyboard.Row parent,
                       KeyboardDimens keyboardDimens, int x, int y,
-                      XmlResourceParser parser) {
-            super(askContext, keyboardContext, parent, keyboardDimens, x, y, parser);
+                      ParsedLayout.Attributes attributes) {
+            super(askContext, keyboardContext, parent, keyboardDimens, x, y, attributes);
             //setting up some defaults
             mEnabled = true;
             mFunctionalKey = false;
@@ -695,37 +661,30 @@ public abstract class AnyKeyboard extends Keyboard {
             shiftedKeyLabel = null;
             hintLabel = null;
 
-            Keyboard parentKeyboard = parent.parent;
-            SparseIntArray attributeIdMap = parentKeyboard.attributeIdMap;
-            int[] remoteKeyboardKeyLayoutStyleable = parentKeyboard.remoteKeyboardKeyLayoutStyleable;
-            TypedArray a = keyboardContext.obtainStyledAttributes(Xml.asAttributeSet(parser), remoteKeyboardKeyLayoutStyleable);
-            int n = a.getIndexCount();
+            final int n = attributes.size();
             for (int i = 0; i < n; i++) {
-                final int remoteIndex = a.getIndex(i);
-                final int localAttrId = attributeIdMap.get(remoteKeyboardKeyLayoutStyleable[remoteIndex]);
                 try {
-                    switch (localAttrId) {
+                    switch (attributes.getAttrId(i)) {
                         case R.attr.shiftedCodes:
-                            shiftedCodes = KeyboardSupport.getKeyCodesFromTypedArray(a, remoteIndex);
+                            shiftedCodes = attributes.getKeyCodes(i);
                             break;
                         case R.attr.longPressCode:
-                            longPressCode = a.getInt(remoteIndex, 0);
+                            longPressCode = attributes.getInt(i, 0);
                             break;
                         case R.attr.isFunctional:
-                            mFunctionalKey = a.getBoolean(remoteIndex, false);
+                            mFunctionalKey = attributes.getBoolean(i, false);
                             break;
                         case R.attr.shiftedKeyLabel:
-                            shiftedKeyLabel = a.getString(remoteIndex);
+                            shiftedKeyLabel = attributes.getString(i);
                             break;
                         case R.attr.hintLabel:
-                            hintLabel = a.getString(remoteIndex);
+                            hintLabel = attributes.getString(i);
                             break;
                     }
                 } catch (Exception e) {
                     Log.w(TAG, "Failed to set data from XML!", e);
                 }
             }
-            a.recycle();
 
             // ensuring codes and shiftedCodes are the same size
             if (shiftedCodes != null && shiftedCodes.length != codes.length) {
@@ -791,8 +750,8 @@ public abstract class AnyKeyboard extends Keyboard {
 
         public EnterKey(Context askContext, Context keyboardContext, Row parent,
                         KeyboardDimens keyboardDimens, int x, int y,
-                        XmlResourceParser parser) {
-            super(askContext, keyboardContext, parent, keyboardDimens, x, y, parser);
+                        ParsedLayout.Attributes attributes) {
+            super(askContext, keyboardContext, parent, keyboardDimens, x, y, attributes);
             mOriginalHeight = this.height;
         }
 
@@ -33,8 +33,11 @@ import com.menny.android.anysoftkeyboard.BuildConfig;
 
 import org.xmlpull.v1.XmlPullParser;
 
+import java.io.File;
 import java.text.ParseException;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ExternalAnyKeyboard extends AnyKeyboard implements
 		HardKeyboardTranslator {
@@ -54,6 +57,28 @@ public class ExternalAnyKeyboard extends AnyKeyboard implements
 	private static final String XML_MULTITAP_CHARACTERS_ATTRIBUTE = "characters";
 	private static final String XML_ALT_ATTRIBUTE = "altModifier";
 	private static final String XML_SHIFT_ATTRIBUTE = "shiftModifier";
+	/**
+	 * Compiled physical translations, so re-creating a keyboard does not parse and compile them again.
+	 * Keyed by package and resource, and holds only the latest version of the add-on's APK.
+	 */
+	private static final int MAX_COMPILED_TRANSLATIONS = 8;
+	private static final Map<String, CompiledTranslation> msCompiledTranslations = new LinkedHashMap<String, CompiledTranslation>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Entry<String, CompiledTranslation> eldest) {
+			return size() > MAX_COMPILED_TRANSLATIONS;
+		}
+	};
+
+	private static class CompiledTranslation {
+		final long mApkModified;
+		final KeyEventStateMachine.Table mTable;
+
+		CompiledTranslation(long apkModified, KeyEventStateMachine.Table table) {
+			mApkModified = apkModified;
+			mTable = table;
+		}
+	}
+
 	private final String mPrefId;
 	private final String mName;
 	private final int mIconId;
@@ -79,7 +104,7 @@ public class ExternalAnyKeyboard extends AnyKeyboard implements
 		mDefaultDictionary = defaultDictionary;
 		if (qwertyTranslationId != AddOn.INVALID_RES_ID) {
 			Log.d(TAG, "Creating qwerty mapping:" + qwertyTranslationId);
-			mHardKeyboardTranslator = createPhysicalTranslatorFromResourceId(
+			mHardKeyboardTranslator = getPhysicalTranslator(
 					context, qwertyTranslationId);
 		} else {
 			mHardKeyboardTranslator = null;
@@ -114,6 +139,25 @@ public class ExternalAnyKeyboard extends AnyKeyboard implements
 		return mExtensionLayout;
 	}
 
+	private HardKeyboardSequenceHandler getPhysicalTranslator(Context context, int qwertyTranslationId) {
+		final String key = context.getPackageName() + "_" + qwertyTranslationId;
+		//an updated add-on is parsed again, and replaces the previous version's translation
+		final long apkModified = new File(context.getPackageResourcePath()).lastModified();
+		synchronized (msCompiledTranslations) {
+			CompiledTranslation cached = msCompiledTranslations.get(key);
+			if (cached != null && cached.mApkModified == apkModified)
+				return new HardKeyboardSequenceHandler(cached.mTable);
+		}
+
+		HardKeyboardSequenceHandler translator = createPhysicalTranslatorFromResourceId(context, qwertyTranslationId);
+		final KeyEventStateMachine.Table compiledTranslation = translator.compile();
+		Log.d(TAG, "Compiled qwerty mapping %s into %d states.", key, compiledTranslation.getStatesCount());
+		synchronized (msCompiledTranslations) {
+			msCompiledTranslations.put(key, new CompiledTranslation(apkModified, compiledTranslation));
+		}
+		return translator;
+	}
+
 	private HardKeyboardSequenceHandler createPhysicalTranslatorFromResourceId(
 			Context context, int qwertyTranslationId) {
 		HardKeyboardSequenceHandler translator = new HardKeyboardSequenceHandler();
@@ -34,13 +34,43 @@ public class HardKeyboardSequenceHandler {
     //See 'getSequenceCharacter' function for usage for msSequenceLivingTime and mLastTypedKeyEventTime.
     //private static final long msSequenceLivingTime = 600;
     private long mLastTypedKeyEventTime;
-    private final KeyEventStateMachine mCurrentSequence;
+    //sequences are added to the builder, until they are compiled into mCurrentSequence
+    private KeyEventStateMachine.Builder mSequencesBuilder;
+    private KeyEventStateMachine mCurrentSequence;
 
     public HardKeyboardSequenceHandler() {
-        mCurrentSequence = new KeyEventStateMachine();
+        mSequencesBuilder = new KeyEventStateMachine.Builder();
         mLastTypedKeyEventTime = System.currentTimeMillis();
     }
 
+    /**
+     * Creates a handler for already compiled sequences (see {@link #compile()}).
+     */
+    public HardKeyboardSequenceHandler(KeyEventStateMachine.Table compiledSequences) {
+        mCurrentSequence = new KeyEventStateMachine(compiledSequences);
+        mLastTypedKeyEventTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Compiles the added sequences. No sequences can be added after this call.
+     * This happens with the first key, if it was not called before.
+     *
+     * @return the compiled sequences, which can be shared with other handlers.
+     */
+    public KeyEventStateMachine.Table compile() {
+        if (mCurrentSequence == null) {
+            mCurrentSequence = new KeyEventStateMachine(mSequencesBuilder.build());
+            mSequencesBuilder = null;
+        }
+        return mCurrentSequence.getTable();
+    }
+
+    private KeyEventStateMachine.Builder getSequencesBuilder() {
+        if (mSequencesBuilder == null)
+            throw new IllegalStateException("Sequences can not be added after they were compiled.");
+        return mSequencesBuilder;
+    }
+
     public void addQwertyTranslation(String targetCharacters) {
         if (msQwerty.length != targetCharacters.length())
             throw new InvalidParameterException("'targetCharacters' should be the same length as the latin QWERTY keys strings: " + msQwerty);
@@ -55,19 +85,21 @@ public class HardKeyboardSequenceHandler {
     }
 
     public void addSequence(int[] sequence, int result) {
-        this.mCurrentSequence.addSequence(sequence, result);
+        getSequencesBuilder().addSequence(sequence, result);
     }
 
     public void addShiftSequence(int[] sequence, int result) {
-        this.mCurrentSequence.addSpecialKeySequence(sequence, KeyCodes.SHIFT, result);
+        getSequencesBuilder().addSpecialKeySequence(sequence, KeyCodes.SHIFT, result);
     }
 
     public void addAltSequence(int[] sequence, int result) {
-        this.mCurrentSequence.addSpecialKeySequence(sequence, KeyCodes.ALT, result);
+        getSequencesBuilder().addSpecialKeySequence(sequence, KeyCodes.ALT, result);
     }
 
 
     private State addNewKey(int currentKeyEvent) {
+        if (mCurrentSequence == null)
+            compile();
         //sequence does not live forever!
         //I say, let it live for msSequenceLivingTime milliseconds.
         long currentTime = System.currentTimeMillis();
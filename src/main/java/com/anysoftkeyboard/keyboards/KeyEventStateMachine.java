@@ -16,12 +16,22 @@
 
 package com.anysoftkeyboard.keyboards;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 
+/**
+ * Matches sequences of key events. The sequences are added to a {@link Builder}, which compiles them into an
+ * immutable {@link Table}, and the machine steps through the table without allocating.
+ * A table can be shared by any number of machines.
+ */
 public class KeyEventStateMachine {
 
     public static final int KEYCODE_FIRST_CHAR = -4097;
 
+    private static final int START_STATE = 0;
+    private static final int NO_STATE = -1;
+
     private static final class KeyEventTransition {
 
         private KeyEventState next;
@@ -70,14 +80,143 @@ public class KeyEventStateMachine {
 
     }
 
+    /**
+     * Collects the sequences into a tree of states, which is compiled into a {@link Table}.
+     */
+    public static class Builder {
+        private final KeyEventState start = new KeyEventState();
+
+        private static KeyEventState addNextState(KeyEventState current, int keyCode) {
+            KeyEventState next = current.getNext(keyCode);
+            if (next != null)
+                return next;
+            next = new KeyEventState();
+            current.addNextState(keyCode, next);
+            return next;
+        }
+
+        public void addSequence(int[] sequence, int result) {
+            addSpecialKeySequence(sequence, 0/*no special key*/, result);
+        }
+
+        public void addSpecialKeySequence(int[] sequence, int specialKey, int result) {
+            KeyEventState c = this.start;
+
+            for (int i = 0; i < sequence.length; i++) {
+                if (specialKey != 0) {
+                    //special key first
+                    c = addNextState(c, specialKey);
+                }
+                //the sequence second
+                c = addNextState(c, sequence[i]);
+            }
+            c.setCharacter(result);
+        }
+
+        /**
+         * Numbers the states (the start state is zero) and lays their transitions in a table.
+         */
+        public Table build() {
+            ArrayList<KeyEventState> states = new ArrayList<>();
+            states.add(this.start);
+            int[] keyCodes = new int[16];
+            int keyCodesCount = 0;
+            int statesWithTransitions = 0;
+            //breadth-first, so every state is numbered before its transitions are read
+            for (int i = 0; i < states.size(); i++) {
+                final KeyEventState state = states.get(i);
+                if (!state.hasNext()) continue;
+                statesWithTransitions++;
+                for (KeyEventTransition transition : state.transitions) {
+                    states.add(transition.next);
+                    if (Arrays.binarySearch(keyCodes, 0, keyCodesCount, transition.keyCode) < 0) {
+                        if (keyCodesCount == keyCodes.length)
+                            keyCodes = Arrays.copyOf(keyCodes, keyCodesCount * 2);
+                        keyCodes[keyCodesCount++] = transition.keyCode;
+                        Arrays.sort(keyCodes, 0, keyCodesCount);
+                    }
+                }
+            }
+            keyCodes = Arrays.copyOf(keyCodes, keyCodesCount);
+
+            final int statesCount = states.size();
+            final int[] rows = new int[statesCount];
+            final int[] results = new int[statesCount];
+            final int[] transitions = new int[statesWithTransitions * keyCodesCount];
+            Arrays.fill(transitions, NO_STATE);
+            //the states were added in the order of their ids, so the next state of the
+            //n-th transition (over all states) is the state with id n+1.
+            int nextStateId = 1;
+            int row = 0;
+            for (int stateId = 0; stateId < statesCount; stateId++) {
+                final KeyEventState state = states.get(stateId);
+                results[stateId] = state.result;
+                if (!state.hasNext()) {
+                    rows[stateId] = NO_STATE;
+                    continue;
+                }
+                rows[stateId] = row;
+                for (KeyEventTransition transition : state.transitions) {
+                    transitions[row + Arrays.binarySearch(keyCodes, transition.keyCode)] = nextStateId;
+                    nextStateId++;
+                }
+                row += keyCodesCount;
+            }
+            return new Table(keyCodes, rows, transitions, results);
+        }
+    }
 
-    private KeyEventState start;
+    /**
+     * The compiled, immutable, states of a {@link Builder}. Each state with transitions has a row
+     * in the transitions table, with a column for each of the key codes used in any sequence.
+     */
+    public static final class Table {
+        private final int[] mKeyCodes;
+        private final int[] mRows;
+        private final int[] mTransitions;
+        private final int[] mResults;
+
+        private Table(int[] keyCodes, int[] rows, int[] transitions, int[] results) {
+            mKeyCodes = keyCodes;
+            mRows = rows;
+            mTransitions = transitions;
+            mResults = results;
+        }
+
+        /**
+         * @return the column of the key code in the transitions table, or a negative value if no sequence uses it.
+         */
+        int getKeyCodeIndex(int keyCode) {
+            return Arrays.binarySearch(mKeyCodes, keyCode);
+        }
+
+        int getNext(int state, int keyCodeIndex) {
+            final int row = mRows[state];
+            if (row == NO_STATE || keyCodeIndex < 0)
+                return NO_STATE;
+            return mTransitions[row + keyCodeIndex];
+        }
+
+        boolean hasNext(int state) {
+            return mRows[state] != NO_STATE;
+        }
+
+        int getResult(int state) {
+            return mResults[state];
+        }
+
+        public int getStatesCount() {
+            return mRows.length;
+        }
+    }
+
+    private final Table table;
 
     public static enum State {RESET, REWIND, NO_MATCH, PART_MATCH, FULL_MATCH}
 
 	private class NFAPart {
 
-        KeyEventState state;
+        int state;
         int iVisibleSequenceLength;
         int iSequenceLength;
         private int resultChar;
@@ -89,7 +228,7 @@ public class KeyEventStateMachine {
         }
 
         void reset() {
-            this.state = KeyEventStateMachine.this.start;
+            this.state = START_STATE;
             this.iSequenceLength = 0;
             this.iVisibleSequenceLength = 0;
         }
@@ -102,15 +241,15 @@ public class KeyEventStateMachine {
 
 
         private void returnToFirst(int keyCode) {
-            this.state = KeyEventStateMachine.this.start;
+            this.state = START_STATE;
             if (keyCode > 0)
                 this.iVisibleSequenceLength--;
             this.iSequenceLength--;
         }
 
-        private State addKeyCode(int keyCode) {
-            this.state = this.state.getNext(keyCode);
-            if (this.state == null) {
+        private State addKeyCode(int keyCode, int keyCodeIndex) {
+            this.state = KeyEventStateMachine.this.table.getNext(this.state, keyCodeIndex);
+            if (this.state == NO_STATE) {
                 this.reset();
                 return State.RESET;
             }
@@ -118,8 +257,9 @@ public class KeyEventStateMachine {
                 this.iVisibleSequenceLength++;
             this.iSequenceLength++;
 
-            if (this.state.result != 0) {
-                this.resultChar = this.state.result;
+            final int result = KeyEventStateMachine.this.table.getResult(this.state);
+            if (result != 0) {
+                this.resultChar = result;
                 this.sequenceLength = this.iSequenceLength;
                 this.visibleSequenceLength = this.iVisibleSequenceLength;
 
@@ -127,7 +267,7 @@ public class KeyEventStateMachine {
                     return State.REWIND;
                 }
 
-                if (!this.state.hasNext()) {
+                if (!KeyEventStateMachine.this.table.hasNext(this.state)) {
                     this.reset();
                     return State.FULL_MATCH;
                 }
@@ -188,8 +328,8 @@ public class KeyEventStateMachine {
     private int sequenceLength;
     private int resultChar;
 
-    public KeyEventStateMachine() {
-        this.start = new KeyEventState();
+    public KeyEventStateMachine(Table table) {
+        this.table = table;
         this.walker = new RingBuffer();
         this.walker.putItem(new NFAPart());
 
@@ -200,36 +340,15 @@ public class KeyEventStateMachine {
         this.walkerhelper = new RingBuffer();
     }
 
-    private static KeyEventState addNextState(KeyEventState current, int keyCode) {
-        KeyEventState next = current.getNext(keyCode);
-        if (next != null)
-            return next;
-        next = new KeyEventState();
-        current.addNextState(keyCode, next);
-        return next;
-    }
-
-    public void addSequence(int[] sequence, int result) {
-	    addSpecialKeySequence(sequence, 0/*no special key*/, result);
-    }
-
-    public void addSpecialKeySequence(int[] sequence, int specialKey, int result) {
-	    KeyEventState c = this.start;
-
-        for (int i = 0; i < sequence.length; i++) {
-	        if (specialKey != 0) {
-		        //special key first
-		        c = addNextState(c, specialKey);
-	        }
-	        //the sequence second
-	        c = addNextState(c, sequence[i]);
-        }
-        c.setCharacter(result);
+    public Table getTable() {
+        return this.table;
     }
 
     public State addKeyCode(int keyCode) {
         this.sequenceLength = 0;
         this.resultChar = 0;
+        //looked up once, for all the walkers
+        final int keyCodeIndex = this.table.getKeyCodeIndex(keyCode);
 
         NFAPart found = null;
         State resultstate = State.RESET;
@@ -243,7 +362,7 @@ public class KeyEventStateMachine {
         while (this.walker.hasItem()) {
             NFAPart cWalker = this.walker.getItem();
 
-            State result = cWalker.addKeyCode(keyCode);
+            State result = cWalker.addKeyCode(keyCode, keyCodeIndex);
             if (result == State.REWIND) {
                 if (this.walkerunused.hasItem()) {
                     NFAPart newwalker = this.walkerunused.getItem();
@@ -251,7 +370,7 @@ public class KeyEventStateMachine {
                     this.walkerhelper.putItem(newwalker);
                 }
                 cWalker.returnToFirst(keyCode);
-                result = cWalker.addKeyCode(keyCode);
+                result = cWalker.addKeyCode(keyCode, keyCodeIndex);
             }
 
             if (result == State.FULL_MATCH) {
@@ -20,22 +20,16 @@ package com.anysoftkeyboard.keyboards;
 
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
 import android.text.TextUtils;
 import android.util.SparseIntArray;
 import android.util.TypedValue;
-import android.util.Xml;
 
 import com.anysoftkeyboard.api.KeyCodes;
 import com.anysoftkeyboard.keyboards.views.KeyDrawableStateProvider;
 import com.anysoftkeyboard.utils.Log;
 import com.menny.android.anysoftkeyboard.R;
 
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -164,12 +158,7 @@ public abstract class Keyboard {
 
     // Variables for pre-computing nearest keys.
 
-    private static final int GRID_WIDTH = 10;
-    private static final int GRID_HEIGHT = 5;
-    private static final int GRID_SIZE = GRID_WIDTH * GRID_HEIGHT;
-    private int mCellWidth;
-    private int mCellHeight;
-    private int[][] mGridNeighbors;
+    private ProximityGrid mProximityGrid;
     private int mProximityThreshold;
     /**
      * Number of key widths from current touch point to search for nearest keys.
@@ -233,60 +222,40 @@ public abstract class Keyboard {
         }
 
         public Row(Context askContext, Resources res, Keyboard parent,
-                   XmlResourceParser parser) {
+                   ParsedLayout.Attributes attributes) {
             this.parent = parent;
             //some defaults
             defaultWidth = parent.mDefaultWidth;
             defaultHeightCode = parent.mDefaultHeightCode;
             defaultHorizontalGap = parent.mDefaultHorizontalGap;
             verticalGap = parent.getVerticalGap();
-            //now reading from the XML
-            SparseIntArray attributeIdMap = parent.attributeIdMap;
-            int[] remoteKeyboardLayoutStyleable = parent.remoteKeyboardLayoutStyleable;
-            TypedArray a = res.obtainAttributes(Xml.asAttributeSet(parser), remoteKeyboardLayoutStyleable);
-            int n = a.getIndexCount();
+            //now reading from the layout
+            final int n = attributes.size();
             for (int i = 0; i < n; i++) {
-                final int remoteIndex = a.getIndex(i);
-                final int localAttrId = attributeIdMap.get(remoteKeyboardLayoutStyleable[remoteIndex]);
                 try {
-                    switch (localAttrId) {
+                    switch (attributes.getAttrId(i)) {
                         case android.R.attr.keyWidth:
-                            defaultWidth = getDimensionOrFraction(a, remoteIndex,
+                            defaultWidth = getDimensionOrFraction(attributes, i, res,
                                     parent.mDisplayWidth, parent.mDefaultWidth);
                             break;
                         case android.R.attr.keyHeight:
-                            defaultHeightCode = getKeyHeightCode(a, remoteIndex, parent.mDefaultHeightCode);
+                            defaultHeightCode = getKeyHeightCode(attributes, i, parent.mDefaultHeightCode);
                             break;
                         case android.R.attr.horizontalGap:
-                            defaultHorizontalGap = getDimensionOrFraction(a, remoteIndex,
+                            defaultHorizontalGap = getDimensionOrFraction(attributes, i, res,
                                     parent.mDisplayWidth, parent.mDefaultHorizontalGap);
                             break;
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to set data from XML!", e);
-                }
-            }
-            a.recycle();
-            int[] remoteKeyboardRowLayoutStyleable = parent.remoteKeyboardRowLayoutStyleable;
-            a = res.obtainAttributes(Xml.asAttributeSet(parser), remoteKeyboardRowLayoutStyleable);
-            n = a.getIndexCount();
-            for (int i = 0; i < n; i++) {
-                final int remoteIndex = a.getIndex(i);
-                final int localAttrId = attributeIdMap.get(remoteKeyboardRowLayoutStyleable[remoteIndex]);
-                try {
-                    switch (localAttrId) {
                         case android.R.attr.rowEdgeFlags:
-                            rowEdgeFlags = a.getInt(remoteIndex, 0);
+                            rowEdgeFlags = attributes.getInt(i, 0);
                             break;
                         case android.R.attr.keyboardMode:
-                            mode = a.getResourceId(remoteIndex, 0);
+                            mode = attributes.getResourceId(i, 0);
                             break;
                     }
                 } catch (Exception e) {
                     Log.w(TAG, "Failed to set data from XML!", e);
                 }
             }
-            a.recycle();
         }
     }
 
@@ -424,19 +393,19 @@ public abstract class Keyboard {
 
         /**
          * Create a key with the given top-left coordinate and extract its
-         * attributes from the XML parser.
+         * attributes from the parsed layout.
          *
-         * @param parent the row that this key belongs to. The row must already
-         *               be attached to a {@link Keyboard}.
-         * @param x      the x coordinate of the top-left
-         * @param y      the y coordinate of the top-left
-         * @param parser the XML parser containing the attributes for this key
+         * @param parent     the row that this key belongs to. The row must already
+         *                   be attached to a {@link Keyboard}.
+         * @param x          the x coordinate of the top-left
+         * @param y          the y coordinate of the top-left
+         * @param attributes the parsed layout attributes for this key
          */
         public Key(Context askContext, Context keyboardContext, Row parent,
-                   KeyboardDimens keyboardDimens, int x, int y, XmlResourceParser parser) {
+                   KeyboardDimens keyboardDimens, int x, int y, ParsedLayout.Attributes attributes) {
             this(parent, keyboardDimens);
             final Resources askResources = askContext.getResources();
-            SparseIntArray attributeIdMap = parent.parent.attributeIdMap;
+            final Resources keyboardResources = keyboardContext.getResources();
             this.x = x;
             this.y = y;
 
@@ -454,92 +423,76 @@ public abstract class Keyboard {
             modifier = false;
             sticky = false;
 
-            //loading data from XML
-            int[] remoteKeyboardLayoutStyleable = parent.parent.remoteKeyboardLayoutStyleable;
-            TypedArray a = keyboardContext.obtainStyledAttributes(Xml.asAttributeSet(parser), remoteKeyboardLayoutStyleable);
-            int n = a.getIndexCount();
+            //loading data from the layout
+            final int n = attributes.size();
             for (int i = 0; i < n; i++) {
-                final int remoteIndex = a.getIndex(i);
-                final int localAttrId = attributeIdMap.get(remoteKeyboardLayoutStyleable[remoteIndex]);
-                setDataFromTypedArray(parent, keyboardDimens, askResources, a, remoteIndex, localAttrId);
+                setDataFromAttributes(parent, keyboardDimens, askResources, keyboardResources, attributes, i);
             }
-            a.recycle();
             this.x += gap;
 
-            int[] remoteKeyboardKeyLayoutStyleable = parent.parent.remoteKeyboardKeyLayoutStyleable;
-            a = keyboardContext.obtainStyledAttributes(Xml.asAttributeSet(parser),
-                    remoteKeyboardKeyLayoutStyleable);
-            n = a.getIndexCount();
-            for (int i = 0; i < n; i++) {
-                final int remoteIndex = a.getIndex(i);
-                final int localAttrId = attributeIdMap.get(remoteKeyboardKeyLayoutStyleable[remoteIndex]);
-                setDataFromTypedArray(parent, keyboardDimens, askResources, a, remoteIndex, localAttrId);
-            }
             externalResourcePopupLayout = popupResId != 0;
             if (codes == null && !TextUtils.isEmpty(label)) {
                 codes = new int[]{ label.charAt(0) };
             }
-            a.recycle();
         }
 
-        private void setDataFromTypedArray(Row parent, KeyboardDimens keyboardDimens, Resources askResources, TypedArray a, int remoteIndex, int localAttrId) {
+        private void setDataFromAttributes(Row parent, KeyboardDimens keyboardDimens, Resources askResources, Resources keyboardResources, ParsedLayout.Attributes a, int index) {
             try {
-                switch (localAttrId) {
+                switch (a.getAttrId(index)) {
                     case android.R.attr.keyWidth:
-                        width = getDimensionOrFraction(a,
-                                remoteIndex,
+                        width = getDimensionOrFraction(a, index, keyboardResources,
                                 keyboard.mDisplayWidth, parent.defaultWidth);
                         width = Math.min(keyboardDimens.getKeyMaxWidth(), width);
                         break;
                     case android.R.attr.keyHeight:
-                        int heightCode = getKeyHeightCode(a, remoteIndex, parent.defaultHeightCode);
+                        int heightCode = getKeyHeightCode(a, index, parent.defaultHeightCode);
                         height = KeyboardSupport.getKeyHeightFromHeightCode(keyboardDimens, heightCode, askResources.getConfiguration().orientation);
                         break;
                     case android.R.attr.horizontalGap:
-                        gap = getDimensionOrFraction(a, remoteIndex,
+                        gap = getDimensionOrFraction(a, index, keyboardResources,
                             keyboard.mDisplayWidth, parent.defaultHorizontalGap);
                         break;
                     case android.R.attr.codes:
-                        codes = KeyboardSupport.getKeyCodesFromTypedArray(a, remoteIndex);
+                        codes = a.getKeyCodes(index);
                         break;
                     case android.R.attr.iconPreview:
-                        iconPreview = a.getDrawable(remoteIndex);
+                        iconPreview = a.getDrawable(index, keyboardResources);
                         KeyboardSupport.updateDrawableBounds(iconPreview);
                         break;
                     case android.R.attr.popupCharacters:
-                        popupCharacters = a.getText(remoteIndex);
+                        popupCharacters = a.getText(index);
                         break;
                     case android.R.attr.popupKeyboard:
-                        popupResId = a.getResourceId(remoteIndex, 0);
+                        popupResId = a.getResourceId(index, 0);
                         break;
                     case android.R.attr.isRepeatable:
-                        repeatable = a.getBoolean(remoteIndex, false);
+                        repeatable = a.getBoolean(index, false);
                         break;
                     case R.attr.showPreview:
-                        showPreview = a.getBoolean(remoteIndex, true);
+                        showPreview = a.getBoolean(index, true);
                         break;
                     case R.attr.keyDynamicEmblem:
-                        dynamicEmblem = a.getInt(remoteIndex, KEY_EMBLEM_NONE);
+                        dynamicEmblem = a.getInt(index, KEY_EMBLEM_NONE);
                         break;
                     case android.R.attr.isModifier:
-                        modifier = a.getBoolean(remoteIndex, false);
+                        modifier = a.getBoolean(index, false);
                         break;
                     case android.R.attr.isSticky:
-                        sticky = a.getBoolean(remoteIndex, false);
+                        sticky = a.getBoolean(index, false);
                         break;
                     case android.R.attr.keyEdgeFlags:
-                        edgeFlags = a.getInt(remoteIndex, 0);
+                        edgeFlags = a.getInt(index, 0);
                         edgeFlags |= parent.rowEdgeFlags;
                         break;
                     case android.R.attr.keyIcon:
-                        icon = a.getDrawable(remoteIndex);
+                        icon = a.getDrawable(index, keyboardResources);
                         KeyboardSupport.updateDrawableBounds(icon);
                         break;
                     case android.R.attr.keyLabel:
-                        label = a.getText(remoteIndex);
+                        label = a.getText(index);
                         break;
                     case android.R.attr.keyOutputText:
-                        text = a.getText(remoteIndex);
+                        text = a.getText(index);
                         break;
                 }
             } catch(Exception e){
@@ -663,14 +616,15 @@ public abstract class Keyboard {
         this(askContext, context, xmlLayoutResId, 0);
     }
 
-    protected static int getKeyHeightCode(TypedArray a, int remoteIndex, int defaultHeightCode) {
-        TypedValue value = a.peekValue(remoteIndex);
-        if (value == null) {
+    protected static int getKeyHeightCode(ParsedLayout.Attributes a, int index, int defaultHeightCode) {
+        final int type = a.getType(index);
+        final int data = a.getData(index);
+        if (type == TypedValue.TYPE_NULL) {
             // means that it was not provided. So I take my parent's
             return defaultHeightCode;
-        } else if (value.type >= TypedValue.TYPE_FIRST_INT && value.type <= TypedValue.TYPE_LAST_INT &&
-                value.data <= 0 && value.data >= -3) {
-            return value.data;
+        } else if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT &&
+                data <= 0 && data >= -3) {
+            return data;
         } else {
             Log.w(TAG, "Key height attribute is incorrectly set! Defaulting to regular height.");
             return -1;
@@ -758,31 +712,7 @@ public abstract class Keyboard {
     }
 
     protected final void computeNearestNeighbors() {
-        // Round-up so we don't have any pixels outside the grid
-        mCellWidth = (getMinWidth() + GRID_WIDTH - 1) / GRID_WIDTH;
-        mCellHeight = (getHeight() + GRID_HEIGHT - 1) / GRID_HEIGHT;
-        mGridNeighbors = new int[GRID_SIZE][];
-        int[] indices = new int[mKeys.size()];
-        final int gridWidth = GRID_WIDTH * mCellWidth;
-        final int gridHeight = GRID_HEIGHT * mCellHeight;
-        for (int x = 0; x < gridWidth; x += mCellWidth) {
-            for (int y = 0; y < gridHeight; y += mCellHeight) {
-                int count = 0;
-                for (int i = 0; i < mKeys.size(); i++) {
-                    final Key key = mKeys.get(i);
-                    if (key.squaredDistanceFrom(x, y) < mProximityThreshold ||
-                            key.squaredDistanceFrom(x + mCellWidth - 1, y) < mProximityThreshold ||
-                            key.squaredDistanceFrom(x + mCellWidth - 1, y + mCellHeight - 1)
-                                    < mProximityThreshold ||
-                            key.squaredDistanceFrom(x, y + mCellHeight - 1) < mProximityThreshold) {
-                        indices[count++] = i;
-                    }
-                }
-                int[] cell = new int[count];
-                System.arraycopy(indices, 0, cell, 0, count);
-                mGridNeighbors[(y / mCellHeight) * GRID_WIDTH + (x / mCellWidth)] = cell;
-            }
-        }
+        mProximityGrid = new ProximityGrid(mKeys, getMinWidth(), getHeight(), mProximityThreshold);
     }
 
     /**
@@ -791,29 +721,24 @@ public abstract class Keyboard {
      * @param x the x-coordinate of the point
      * @param y the y-coordinate of the point
      * @return the array of integer indices for the nearest keys to the given
-     *         point. If the given point is out of range, then an array of size
-     *         zero is returned.
+     *         point, ordered by their distance from the point's grid cell. If the
+     *         given point is out of range, then an array of size zero is returned.
+     *         The array should not be modified.
      */
     public int[] getNearestKeys(int x, int y) {
-        if (mGridNeighbors == null)
+        if (mProximityGrid == null)
             computeNearestNeighbors();
-        if (x >= 0 && x < getMinWidth() && y >= 0 && y < getHeight()) {
-            int index = (y / mCellHeight) * GRID_WIDTH + (x / mCellWidth);
-            if (index < GRID_SIZE) {
-                return mGridNeighbors[index];
-            }
-        }
-        return new int[0];
+        return mProximityGrid.getNearestKeys(x, y);
     }
 
     protected Row createRowFromXml(Context askContext, Resources res,
-                                   XmlResourceParser parser) {
-        return new Row(askContext, res, this, parser);
+                                   ParsedLayout.Attributes attributes) {
+        return new Row(askContext, res, this, attributes);
     }
 
     protected abstract Key createKeyFromXml(Context askContext, Context keyboardContext,
                                             Row parent, KeyboardDimens keyboardDimens, int x, int y,
-                                            XmlResourceParser parser);
+                                            ParsedLayout.Attributes attributes);
 
     public void loadKeyboard(final KeyboardDimens keyboardDimens) {
         mDisplayWidth = keyboardDimens.getKeyboardMaxWidth();
@@ -824,10 +749,8 @@ public abstract class Keyboard {
         mDefaultWidth = mDisplayWidth / 10;
         mDefaultHeightCode = -1;
 
-        XmlResourceParser parser = mKeyboardContext.getResources().getXml(mLayoutResId);
-        boolean inKey = false;
-        boolean inRow = false;
-        boolean inUnknown = false;
+        //usually, this will not touch the XML at all.
+        final ParsedLayout layout = ParsedLayoutCache.getLayout(this, mASKContext, mKeyboardContext, mLayoutResId);
         int row = 0;
         float x = 0;
         float y = rowVerticalGap;// starts with a gap
@@ -835,29 +758,24 @@ public abstract class Keyboard {
         Key key = null;
         Row currentRow = null;
         Resources res = mKeyboardContext.getResources();
-        boolean skipRow = false;
         int lastVerticalGap = 0;
 
         try {
-            int event;
-            while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
-                if (event == XmlResourceParser.START_TAG) {
-                    String tag = parser.getName();
-                    if (TAG_ROW.equals(tag)) {
-                        inRow = true;
+            final int elementsCount = layout.getElementsCount();
+            for (int elementIndex = 0; elementIndex < elementsCount; elementIndex++) {
+                switch (layout.getElement(elementIndex)) {
+                    case ParsedLayout.ELEMENT_ROW:
                         x = 0;
                         rowHeight = 0;
-                        currentRow = createRowFromXml(mASKContext, res, parser);
-                        skipRow = currentRow.mode != 0 && currentRow.mode != mKeyboardMode;
-                        if (skipRow) {
-                            skipToEndOfRow(parser);
-                            inRow = false;
+                        currentRow = createRowFromXml(mASKContext, res, layout.getAttributes(elementIndex));
+                        if (currentRow.mode != 0 && currentRow.mode != mKeyboardMode) {
+                            elementIndex = layout.getEndOfRow(elementIndex);
                         }
-                    } else if (TAG_KEY.equals(tag)) {
-                        inKey = true;
+                        break;
+                    case ParsedLayout.ELEMENT_KEY:
                         x += (keyHorizontalGap / 2);
                         key = createKeyFromXml(mASKContext, mKeyboardContext, currentRow, keyboardDimens,
-                                (int) x, (int) y, parser);
+                                (int) x, (int) y, layout.getAttributes(elementIndex));
                         rowHeight = Math.max(rowHeight, key.height);
                         key.width -= keyHorizontalGap;// the gap is on both
                         // sides
@@ -869,31 +787,30 @@ public abstract class Keyboard {
                         } else if (key.codes[0] == KeyCodes.ALT) {
                             mModifierKeys.add(key);
                         }
-                    } else if (TAG_KEYBOARD.equals(tag)) {
-                        parseKeyboardAttributes(mASKContext, res, parser);
-                    } else {
-                        inUnknown = true;
-                        onUnknownTagStart(mKeyboardContext, res, tag, parser);
-                    }
-                } else if (event == XmlResourceParser.END_TAG) {
-                    if (inKey) {
-                        inKey = false;
+                        break;
+                    case ParsedLayout.ELEMENT_KEYBOARD:
+                        parseKeyboardAttributes(mASKContext, res, layout.getAttributes(elementIndex));
+                        break;
+                    case ParsedLayout.ELEMENT_KEY_END:
                         x += key.gap + key.width;
                         x += (keyHorizontalGap / 2);
                         if (x > mTotalWidth) {
                             mTotalWidth = (int) x;
                         }
-                    } else if (inRow) {
-                        inRow = false;
+                        break;
+                    case ParsedLayout.ELEMENT_ROW_END:
                         lastVerticalGap = currentRow.verticalGap;
                         y += currentRow.verticalGap;
                         y += rowHeight;
                         y += rowVerticalGap;
                         row++;
-                    } else if (inUnknown) {
-                        inUnknown = false;
+                        break;
+                    case ParsedLayout.ELEMENT_UNKNOWN:
+                        onUnknownTagStart(mKeyboardContext, res, layout.getUnknownTag(elementIndex), layout.getAttributes(elementIndex));
+                        break;
+                    case ParsedLayout.ELEMENT_UNKNOWN_END:
                         onUnknownTagEnd();
-                    }
+                        break;
                 }
             }
         } catch (Exception e) {
@@ -906,24 +823,16 @@ public abstract class Keyboard {
     protected void onUnknownTagEnd() {
     }
 
-    protected void onUnknownTagStart(Context context, Resources res, String tag2,
-                                     XmlResourceParser parser) {
-    }
-
-    private void skipToEndOfRow(XmlResourceParser parser)
-            throws XmlPullParserException, IOException {
-        int event;
-        while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
-            if (event == XmlResourceParser.END_TAG
-                    && parser.getName().equals(TAG_ROW)) {
-                break;
-            }
-        }
+    /**
+     * Called for layout elements which are not a Keyboard, Row or Key.
+     *
+     * @param attributes the element's values of the keyboard, row and key attributes.
+     */
+    protected void onUnknownTagStart(Context context, Resources res, String tag, ParsedLayout.Attributes attributes) {
     }
 
     private void parseKeyboardAttributes(Context askContext, Resources res,
-                                         XmlResourceParser parser) {
-        TypedArray a = res.obtainAttributes(Xml.asAttributeSet(parser), remoteKeyboardLayoutStyleable);
+                                         ParsedLayout.Attributes a) {
         Resources askRes = askContext.getResources();
         //some defaults
         mDefaultWidth = mDisplayWidth / 10;
@@ -931,20 +840,18 @@ public abstract class Keyboard {
         mDefaultHorizontalGap = 0;
         mDefaultVerticalGap = askRes.getDimensionPixelOffset(R.dimen.default_key_vertical_gap);
         //now reading from XML
-        int n = a.getIndexCount();
+        final int n = a.size();
         for (int i = 0; i < n; i++) {
-            final int remoteIndex = a.getIndex(i);
-            final int localAttrId = attributeIdMap.get(remoteKeyboardLayoutStyleable[remoteIndex]);
             try {
-                switch (localAttrId) {
+                switch (a.getAttrId(i)) {
                     case android.R.attr.keyWidth:
-                        mDefaultWidth = getDimensionOrFraction(a, remoteIndex, mDisplayWidth, mDisplayWidth / 10);
+                        mDefaultWidth = getDimensionOrFraction(a, i, res, mDisplayWidth, mDisplayWidth / 10);
                         break;
                     case android.R.attr.keyHeight:
-                        mDefaultHeightCode = getKeyHeightCode(a, remoteIndex, -1);
+                        mDefaultHeightCode = getKeyHeightCode(a, i, -1);
                         break;
                     case android.R.attr.horizontalGap:
-                        mDefaultHorizontalGap = getDimensionOrFraction(a, remoteIndex,
+                        mDefaultHorizontalGap = getDimensionOrFraction(a, i, res,
                             mDisplayWidth, 0);
                         break;
                     /*vertical gap is part of the Theme, not the keyboard.*/
@@ -956,22 +863,19 @@ public abstract class Keyboard {
                 Log.w(TAG, "Failed to set data from XML!", e);
             }
         }
-        a.recycle();
 
         mProximityThreshold = (int) (mDefaultWidth * SEARCH_DISTANCE);
         // Square it for comparison
         mProximityThreshold = mProximityThreshold * mProximityThreshold;
     }
 
-    static int getDimensionOrFraction(TypedArray a, int index, int base, int defValue) {
-        TypedValue value = a.peekValue(index);
-        if (value == null)
-            return defValue;
-        if (value.type == TypedValue.TYPE_DIMENSION) {
-            return a.getDimensionPixelOffset(index, defValue);
-        } else if (value.type == TypedValue.TYPE_FRACTION) {
+    static int getDimensionOrFraction(ParsedLayout.Attributes a, int index, Resources res, int base, int defValue) {
+        final int type = a.getType(index);
+        if (type == TypedValue.TYPE_DIMENSION) {
+            return TypedValue.complexToDimensionPixelOffset(a.getData(index), res.getDisplayMetrics());
+        } else if (type == TypedValue.TYPE_FRACTION) {
             // Round it to avoid values like 47.9999 from getting truncated
-            return Math.round(a.getFraction(index, base, base, defValue));
+            return Math.round(TypedValue.complexToFraction(a.getData(index), base, base));
         }
         return defValue;
     }
@@ -3,11 +3,9 @@ package com.anysoftkeyboard.keyboards;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.util.SparseIntArray;
-import android.util.TypedValue;
 
 import com.anysoftkeyboard.utils.Log;
 import com.menny.android.anysoftkeyboard.AnyApplication;
@@ -54,20 +52,6 @@ public class KeyboardSupport {
         icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
     }
 
-    public static int[] getKeyCodesFromTypedArray(TypedArray typedArray, int index) {
-        TypedValue codesValue = new TypedValue();
-        typedArray.getValue(index, codesValue);
-
-        if (codesValue.type == TypedValue.TYPE_INT_DEC || codesValue.type == TypedValue.TYPE_INT_HEX) {
-            return new int[]{ codesValue.data };
-        } else if (codesValue.type == TypedValue.TYPE_STRING) {
-            return parseCSV(codesValue.string.toString());
-        } else {
-            return null;
-        }
-
-    }
-
     /**
      * Creates a mapping between the local styleable and the remote.
      * @param localStyleableArray the local styleable to map against
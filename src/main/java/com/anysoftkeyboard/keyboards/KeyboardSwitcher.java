@@ -705,6 +705,7 @@ public class KeyboardSwitcher {
     }
 
     public void onLowMemory() {
+        ParsedLayoutCache.clearMemoryCache();
         if (mSymbolsKeyboardsArray != null) {
             for (int index = 0; index < mSymbolsKeyboardsArray.length; index++) {
                 AnyKeyboard current = mSymbolsKeyboardsArray[index];
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.keyboards;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.SparseIntArray;
+import android.util.TypedValue;
+import android.util.Xml;
+
+import com.anysoftkeyboard.utils.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A keyboard layout XML, parsed into a compact form which can be stored, and replayed without
+ * going through the XML parser (and the attributes resolution) again.
+ * <p/>
+ * Attribute values are kept raw (as they were in the {@link TypedValue}), and are keyed by the local (ASK) attribute id,
+ * so the same parsed layout can be used with any {@link KeyboardDimens} and keyboard mode.
+ */
+public final class ParsedLayout {
+    private static final String TAG = "ASK ParsedLayout";
+
+    private static final String TAG_KEYBOARD = "Keyboard";
+    private static final String TAG_ROW = "Row";
+    private static final String TAG_KEY = "Key";
+
+    static final byte ELEMENT_KEYBOARD = 1;
+    static final byte ELEMENT_ROW = 2;
+    static final byte ELEMENT_KEY = 3;
+    static final byte ELEMENT_ROW_END = 4;
+    static final byte ELEMENT_KEY_END = 5;
+    //any other tag, for the keyboard's unknown-tag hooks
+    static final byte ELEMENT_UNKNOWN = 6;
+    static final byte ELEMENT_UNKNOWN_END = 7;
+
+    private final byte[] mElements;
+    private final Attributes[] mAttributes;
+    private final String[] mUnknownTags;
+    private final boolean mComplete;
+
+    ParsedLayout(byte[] elements, Attributes[] attributes, boolean complete) {
+        this(elements, attributes, new String[elements.length], complete);
+    }
+
+    ParsedLayout(byte[] elements, Attributes[] attributes, String[] unknownTags, boolean complete) {
+        mElements = elements;
+        mAttributes = attributes;
+        mUnknownTags = unknownTags;
+        mComplete = complete;
+    }
+
+    int getElementsCount() {
+        return mElements.length;
+    }
+
+    byte getElement(int index) {
+        return mElements[index];
+    }
+
+    /**
+     * The attributes of a start element, or null for end elements.
+     */
+    Attributes getAttributes(int index) {
+        return mAttributes[index];
+    }
+
+    /**
+     * The tag name of an {@link #ELEMENT_UNKNOWN} element, or null for other elements.
+     */
+    String getUnknownTag(int index) {
+        return mUnknownTags[index];
+    }
+
+    /**
+     * @return the index of the end element of the row which starts at the given index.
+     */
+    int getEndOfRow(int rowIndex) {
+        int index = rowIndex + 1;
+        while (index < mElements.length && mElements[index] != ELEMENT_ROW_END) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Was the entire XML parsed successfully. Partial layouts should not be stored.
+     */
+    boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Parses the layout XML, resolving the attributes exactly as the keyboard would have.
+     */
+    static ParsedLayout parse(Context layoutContext, int layoutResId, SparseIntArray attributeIdMap,
+                              int[] layoutStyleable, int[] rowStyleable, int[] keyStyleable) {
+        final Resources res = layoutContext.getResources();
+        final XmlResourceParser parser = res.getXml(layoutResId);
+        final ArrayList<Byte> elements = new ArrayList<>();
+        final ArrayList<Attributes> attributes = new ArrayList<>();
+        final ArrayList<String> unknownTags = new ArrayList<>();
+        boolean complete = true;
+        try {
+            int event;
+            while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
+                if (event == XmlResourceParser.START_TAG) {
+                    final String tag = parser.getName();
+                    final AttributeSet attrs = Xml.asAttributeSet(parser);
+                    if (TAG_ROW.equals(tag)) {
+                        elements.add(ELEMENT_ROW);
+                        Attributes.Builder builder = new Attributes.Builder();
+                        builder.addAll(res.obtainAttributes(attrs, layoutStyleable), layoutStyleable, attributeIdMap);
+                        builder.addAll(res.obtainAttributes(attrs, rowStyleable), rowStyleable, attributeIdMap);
+                        attributes.add(builder.build());
+                    } else if (TAG_KEY.equals(tag)) {
+                        elements.add(ELEMENT_KEY);
+                        Attributes.Builder builder = new Attributes.Builder();
+                        builder.addAll(layoutContext.obtainStyledAttributes(attrs, layoutStyleable), layoutStyleable, attributeIdMap);
+                        builder.addAll(layoutContext.obtainStyledAttributes(attrs, keyStyleable), keyStyleable, attributeIdMap);
+                        attributes.add(builder.build());
+                    } else if (TAG_KEYBOARD.equals(tag)) {
+                        elements.add(ELEMENT_KEYBOARD);
+                        Attributes.Builder builder = new Attributes.Builder();
+                        builder.addAll(res.obtainAttributes(attrs, layoutStyleable), layoutStyleable, attributeIdMap);
+                        attributes.add(builder.build());
+                    } else {
+                        elements.add(ELEMENT_UNKNOWN);
+                        //resolved against everything a layout may have
+                        Attributes.Builder builder = new Attributes.Builder();
+                        builder.addAll(res.obtainAttributes(attrs, layoutStyleable), layoutStyleable, attributeIdMap);
+                        builder.addAll(res.obtainAttributes(attrs, rowStyleable), rowStyleable, attributeIdMap);
+                        builder.addAll(res.obtainAttributes(attrs, keyStyleable), keyStyleable, attributeIdMap);
+                        attributes.add(builder.build());
+                        unknownTags.add(tag);
+                        continue;
+                    }
+                    unknownTags.add(null);
+                } else if (event == XmlResourceParser.END_TAG) {
+                    final String tag = parser.getName();
+                    if (TAG_ROW.equals(tag)) {
+                        elements.add(ELEMENT_ROW_END);
+                    } else if (TAG_KEY.equals(tag)) {
+                        elements.add(ELEMENT_KEY_END);
+                    } else if (!TAG_KEYBOARD.equals(tag)) {
+                        elements.add(ELEMENT_UNKNOWN_END);
+                    } else {
+                        continue;
+                    }
+                    attributes.add(null);
+                    unknownTags.add(null);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Parse error:" + e);
+            e.printStackTrace();
+            complete = false;
+        } finally {
+            parser.close();
+        }
+
+        final byte[] elementsArray = new byte[elements.size()];
+        for (int i = 0; i < elementsArray.length; i++) {
+            elementsArray[i] = elements.get(i);
+        }
+        return new ParsedLayout(elementsArray, attributes.toArray(new Attributes[attributes.size()]),
+                unknownTags.toArray(new String[unknownTags.size()]), complete);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mElements.length);
+        for (int i = 0; i < mElements.length; i++) {
+            out.writeByte(mElements[i]);
+            if (mElements[i] == ELEMENT_UNKNOWN) out.writeUTF(mUnknownTags[i]);
+            final Attributes attributes = mAttributes[i];
+            if (attributes == null) {
+                out.writeShort(-1);
+            } else {
+                attributes.writeTo(out);
+            }
+        }
+    }
+
+    static ParsedLayout readFrom(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid elements count " + count);
+        final byte[] elements = new byte[count];
+        final Attributes[] attributes = new Attributes[count];
+        final String[] unknownTags = new String[count];
+        for (int i = 0; i < count; i++) {
+            elements[i] = in.readByte();
+            if (elements[i] == ELEMENT_UNKNOWN) unknownTags[i] = in.readUTF();
+            attributes[i] = Attributes.readFrom(in);
+        }
+        return new ParsedLayout(elements, attributes, unknownTags, true);
+    }
+
+    /**
+     * The attribute values of one layout element. The accessors behave like their {@link TypedArray} counterparts.
+     */
+    public static final class Attributes {
+        private final int[] mAttrIds;
+        private final int[] mTypes;
+        private final int[] mData;
+        private final int[] mResourceIds;
+        private final String[] mStrings;
+
+        private Attributes(int[] attrIds, int[] types, int[] data, int[] resourceIds, String[] strings) {
+            mAttrIds = attrIds;
+            mTypes = types;
+            mData = data;
+            mResourceIds = resourceIds;
+            mStrings = strings;
+        }
+
+        int size() {
+            return mAttrIds.length;
+        }
+
+        /**
+         * @return the local (ASK) attribute id of the value at the given index.
+         */
+        int getAttrId(int index) {
+            return mAttrIds[index];
+        }
+
+        int getType(int index) {
+            return mTypes[index];
+        }
+
+        int getData(int index) {
+            return mData[index];
+        }
+
+        int getResourceId(int index, int defValue) {
+            if (mTypes[index] == TypedValue.TYPE_NULL || mResourceIds[index] == 0) return defValue;
+            return mResourceIds[index];
+        }
+
+        int getInt(int index, int defValue) {
+            final int type = mTypes[index];
+            if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT) {
+                return mData[index];
+            } else if (type == TypedValue.TYPE_STRING && mStrings[index] != null) {
+                try {
+                    return Integer.decode(mStrings[index]);
+                } catch (NumberFormatException e) {
+                    return defValue;
+                }
+            }
+            return defValue;
+        }
+
+        boolean getBoolean(int index, boolean defValue) {
+            final int type = mTypes[index];
+            if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT) {
+                return mData[index] != 0;
+            } else if (type == TypedValue.TYPE_STRING && mStrings[index] != null) {
+                return Boolean.parseBoolean(mStrings[index]);
+            }
+            return defValue;
+        }
+
+        CharSequence getText(int index) {
+            final int type = mTypes[index];
+            if (type == TypedValue.TYPE_NULL) {
+                return null;
+            } else if (type == TypedValue.TYPE_STRING) {
+                return mStrings[index];
+            }
+            return TypedValue.coerceToString(type, mData[index]);
+        }
+
+        String getString(int index) {
+            final CharSequence text = getText(index);
+            return text == null ? null : text.toString();
+        }
+
+        Drawable getDrawable(int index, Resources res) {
+            final int type = mTypes[index];
+            if (type >= TypedValue.TYPE_FIRST_COLOR_INT && type <= TypedValue.TYPE_LAST_COLOR_INT) {
+                return new ColorDrawable(mData[index]);
+            } else if (type != TypedValue.TYPE_NULL && mResourceIds[index] != 0) {
+                return res.getDrawable(mResourceIds[index]);
+            }
+            return null;
+        }
+
+        int[] getKeyCodes(int index) {
+            final int type = mTypes[index];
+            if (type == TypedValue.TYPE_INT_DEC || type == TypedValue.TYPE_INT_HEX) {
+                return new int[]{mData[index]};
+            } else if (type == TypedValue.TYPE_STRING && mStrings[index] != null) {
+                return KeyboardSupport.parseCSV(mStrings[index]);
+            } else {
+                return null;
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeShort(mAttrIds.length);
+            for (int i = 0; i < mAttrIds.length; i++) {
+                out.writeInt(mAttrIds[i]);
+                out.writeInt(mTypes[i]);
+                out.writeInt(mData[i]);
+                out.writeInt(mResourceIds[i]);
+                out.writeBoolean(mStrings[i] != null);
+                if (mStrings[i] != null) out.writeUTF(mStrings[i]);
+            }
+        }
+
+        private static Attributes readFrom(DataInputStream in) throws IOException {
+            final int count = in.readShort();
+            if (count < 0) return null;
+            final int[] attrIds = new int[count];
+            final int[] types = new int[count];
+            final int[] data = new int[count];
+            final int[] resourceIds = new int[count];
+            final String[] strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                attrIds[i] = in.readInt();
+                types[i] = in.readInt();
+                data[i] = in.readInt();
+                resourceIds[i] = in.readInt();
+                if (in.readBoolean()) strings[i] = in.readUTF();
+            }
+            return new Attributes(attrIds, types, data, resourceIds, strings);
+        }
+
+        static class Builder {
+            private final ArrayList<TypedValue> mValues = new ArrayList<>();
+            private final ArrayList<Integer> mAttrIds = new ArrayList<>();
+
+            /**
+             * Adds all the values in the given (remote) typed-array, and recycles it.
+             */
+            void addAll(TypedArray a, int[] remoteStyleable, SparseIntArray attributeIdMap) {
+                final int n = a.getIndexCount();
+                for (int i = 0; i < n; i++) {
+                    final int remoteIndex = a.getIndex(i);
+                    TypedValue value = new TypedValue();
+                    if (!a.getValue(remoteIndex, value)) continue;
+                    add(attributeIdMap.get(remoteStyleable[remoteIndex]), value);
+                }
+                a.recycle();
+            }
+
+            Builder add(int localAttrId, TypedValue value) {
+                mAttrIds.add(localAttrId);
+                mValues.add(value);
+                return this;
+            }
+
+            Attributes build() {
+                final int count = mValues.size();
+                final int[] attrIds = new int[count];
+                final int[] types = new int[count];
+                final int[] data = new int[count];
+                final int[] resourceIds = new int[count];
+                final String[] strings = new String[count];
+                for (int i = 0; i < count; i++) {
+                    final TypedValue value = mValues.get(i);
+                    attrIds[i] = mAttrIds.get(i);
+                    types[i] = value.type;
+                    data[i] = value.data;
+                    resourceIds[i] = value.resourceId;
+                    strings[i] = value.string == null ? null : value.string.toString();
+                }
+                return new Attributes(attrIds, types, data, resourceIds, strings);
+            }
+        }
+    }
+}
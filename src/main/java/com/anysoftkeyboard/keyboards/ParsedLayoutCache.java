@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.keyboards;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.anysoftkeyboard.utils.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps parsed keyboard layouts in memory, and in the app's cache folder, so re-creating a keyboard does
+ * not parse its XML again.
+ * <p/>
+ * A layout is identified by its package, resource id and the resources configuration (which may select
+ * a different XML). Stored layouts are only used if both the layout's package APK and ASK's APK have not
+ * changed since they were stored.
+ * <p/>
+ * Stored layouts are named after the layout and the versions of both packages. Storing a layout deletes the
+ * stored layouts of the package's other versions, and the oldest layouts above {@link #MAX_STORED_LAYOUTS}.
+ */
+final class ParsedLayoutCache {
+    private static final String TAG = "ASK ParsedLayoutCache";
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String CACHE_FOLDER_NAME = "parsed_layouts";
+    private static final int MAX_LAYOUTS_IN_MEMORY = 12;
+    static final int MAX_STORED_LAYOUTS = 48;
+    //not allowed in package names
+    private static final String NAME_SEPARATOR = "#";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final Map<String, CachedLayout> msLayouts = new LinkedHashMap<String, CachedLayout>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CachedLayout> eldest) {
+            return size() > MAX_LAYOUTS_IN_MEMORY;
+        }
+    };
+
+    private static ExecutorService msWriter;
+
+    private static class CachedLayout {
+        final String mStamp;
+        final ParsedLayout mLayout;
+
+        CachedLayout(String stamp, ParsedLayout layout) {
+            mStamp = stamp;
+            mLayout = layout;
+        }
+    }
+
+    private ParsedLayoutCache() {
+    }
+
+    /**
+     * Returns the parsed layout, from memory, from storage, or by parsing the XML (using the keyboard's current attributes mapping).
+     */
+    static ParsedLayout getLayout(Keyboard keyboard, Context askContext, Context layoutContext, int layoutResId) {
+        final String key = layoutContext.getPackageName() + "_" + layoutResId + "_" + layoutContext.getResources().getConfiguration().hashCode();
+        final String stamp = getApkStamp(askContext) + "|" + getApkStamp(layoutContext);
+        synchronized (msLayouts) {
+            CachedLayout cached = msLayouts.get(key);
+            if (cached != null && cached.mStamp.equals(stamp)) return cached.mLayout;
+        }
+
+        final File file = new File(getStorageFolder(askContext), getStoredLayoutName(askContext, layoutContext, layoutResId));
+        ParsedLayout layout = readLayout(file, stamp);
+        if (layout == null) {
+            Log.d(TAG, "Parsing layout " + key);
+            layout = ParsedLayout.parse(layoutContext, layoutResId, keyboard.attributeIdMap,
+                    keyboard.remoteKeyboardLayoutStyleable, keyboard.remoteKeyboardRowLayoutStyleable, keyboard.remoteKeyboardKeyLayoutStyleable);
+            if (!layout.isComplete()) return layout;//will not cache a broken layout
+            writeLayoutInBackground(file, stamp, layout);
+        }
+        synchronized (msLayouts) {
+            msLayouts.put(key, new CachedLayout(stamp, layout));
+        }
+        return layout;
+    }
+
+    static void clearMemoryCache() {
+        synchronized (msLayouts) {
+            msLayouts.clear();
+        }
+    }
+
+    static File getStorageFolder(Context askContext) {
+        return new File(askContext.getCacheDir(), CACHE_FOLDER_NAME);
+    }
+
+    /**
+     * package#resource-id#configuration#package-version#ASK-version
+     */
+    static String getStoredLayoutName(Context askContext, Context layoutContext, int layoutResId) {
+        return layoutContext.getPackageName() + NAME_SEPARATOR + layoutResId +
+                NAME_SEPARATOR + layoutContext.getResources().getConfiguration().hashCode() +
+                NAME_SEPARATOR + getPackageVersion(layoutContext) + NAME_SEPARATOR + getPackageVersion(askContext);
+    }
+
+    private static int getPackageVersion(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Could not find the version of package " + context.getPackageName());
+            return 0;
+        }
+    }
+
+    /**
+     * Blocks until all the layouts which are being stored, were stored.
+     */
+    static void waitForStoredLayouts() throws InterruptedException {
+        try {
+            getWriter().submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Identifies the installed APK of the context's package. Changes on every install or update.
+     */
+    private static String getApkStamp(Context context) {
+        final File apk = new File(context.getPackageResourcePath());
+        return apk.getPath() + ":" + apk.lastModified() + ":" + apk.length();
+    }
+
+    private static ParsedLayout readLayout(File file, String stamp) {
+        if (!file.exists()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !stamp.equals(in.readUTF())) {
+                Log.d(TAG, "Stored layout " + file.getName() + " is outdated.");
+                return null;
+            }
+            return ParsedLayout.readFrom(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read stored layout " + file.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do here.
+                }
+            }
+        }
+    }
+
+    private static void writeLayoutInBackground(final File file, final String stamp, final ParsedLayout layout) {
+        getWriter().execute(new Runnable() {
+            @Override
+            public void run() {
+                final File folder = file.getParentFile();
+                if (!folder.exists() && !folder.mkdirs()) {
+                    Log.w(TAG, "Failed to create layouts folder " + folder);
+                    return;
+                }
+                final File tempFile = new File(folder, file.getName() + TEMP_FILE_SUFFIX);
+                DataOutputStream out = null;
+                try {
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(stamp);
+                    layout.writeTo(out);
+                    out.close();
+                    out = null;
+                    if (tempFile.renameTo(file))
+                        deleteStaleLayouts(folder, file.getName());
+                    else
+                        Log.w(TAG, "Failed to store layout " + file.getName());
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to store layout " + file.getName() + ": " + e.getMessage());
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            //nothing to do here.
+                        }
+                    }
+                    //it is either renamed, or should not be left behind
+                    tempFile.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the stored layouts of the stored layout's package from other versions (of that package or of ASK),
+     * layouts in an unknown format, and the oldest layouts above {@link #MAX_STORED_LAYOUTS}.
+     */
+    private static void deleteStaleLayouts(File folder, String storedName) {
+        final File[] files = folder.listFiles();
+        if (files == null) return;
+        final String[] storedParts = storedName.split(NAME_SEPARATOR);
+        int kept = 0;
+        for (int i = 0; i < files.length; i++) {
+            final String[] parts = files[i].getName().split(NAME_SEPARATOR);
+            final boolean stale;
+            if (parts.length != storedParts.length || files[i].getName().endsWith(TEMP_FILE_SUFFIX)) {
+                //older naming, or a left-over temporary file
+                stale = true;
+            } else {
+                stale = parts[0].equals(storedParts[0]) &&
+                        (!parts[3].equals(storedParts[3]) || !parts[4].equals(storedParts[4]));
+            }
+            if (stale) {
+                Log.d(TAG, "Deleting stale stored layout " + files[i].getName());
+                if (!files[i].delete()) Log.w(TAG, "Failed to delete stale stored layout " + files[i].getName());
+            } else {
+                files[kept++] = files[i];
+            }
+        }
+        if (kept <= MAX_STORED_LAYOUTS) return;
+        final File[] keptFiles = new File[kept];
+        System.arraycopy(files, 0, keptFiles, 0, kept);
+        //newest first
+        Arrays.sort(keptFiles, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? 1 : (lhsModified == rhsModified ? 0 : -1);
+            }
+        });
+        for (int i = MAX_STORED_LAYOUTS; i < keptFiles.length; i++) {
+            if (keptFiles[i].getName().equals(storedName)) continue;
+            if (!keptFiles[i].delete()) Log.w(TAG, "Failed to delete stored layout " + keptFiles[i].getName());
+        }
+    }
+
+    private static synchronized ExecutorService getWriter() {
+        if (msWriter == null) {
+            msWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ASK layouts writer");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return msWriter;
+    }
+}
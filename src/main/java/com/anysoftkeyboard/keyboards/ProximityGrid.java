@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.keyboards;
+
+import com.anysoftkeyboard.keyboards.Keyboard.Key;
+
+import java.util.List;
+
+/**
+ * A spatial index of the keyboard's keys. The keyboard is divided into cells about the size of its smallest key,
+ * and each cell holds the keys which could be within the proximity threshold of any point in it,
+ * ordered by their distance from the cell (closest first).
+ */
+final class ProximityGrid {
+    static final int MIN_GRID_WIDTH = 10;
+    static final int MIN_GRID_HEIGHT = 5;
+    static final int MAX_GRID_WIDTH = 32;
+    static final int MAX_GRID_HEIGHT = 16;
+
+    private static final int[] EMPTY_CELL = new int[0];
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mGridWidth;
+    private final int mGridHeight;
+    private final int mCellWidth;
+    private final int mCellHeight;
+    private final int[][] mCells;
+
+    ProximityGrid(List<Key> keys, int width, int height, int proximityThresholdSquare) {
+        mWidth = width;
+        mHeight = height;
+        int smallestKeyWidth = Integer.MAX_VALUE;
+        int smallestKeyHeight = Integer.MAX_VALUE;
+        for (Key key : keys) {
+            if (key.width > 0) smallestKeyWidth = Math.min(smallestKeyWidth, key.width);
+            if (key.height > 0) smallestKeyHeight = Math.min(smallestKeyHeight, key.height);
+        }
+        mGridWidth = getGridSize(width, smallestKeyWidth, MIN_GRID_WIDTH, MAX_GRID_WIDTH);
+        mGridHeight = getGridSize(height, smallestKeyHeight, MIN_GRID_HEIGHT, MAX_GRID_HEIGHT);
+        // Round-up so we don't have any pixels outside the grid
+        mCellWidth = Math.max(1, (width + mGridWidth - 1) / mGridWidth);
+        mCellHeight = Math.max(1, (height + mGridHeight - 1) / mGridHeight);
+        mCells = new int[mGridWidth * mGridHeight][];
+
+        final int keysCount = keys.size();
+        final int[] indices = new int[keysCount];
+        final int[] distances = new int[keysCount];
+        for (int row = 0; row < mGridHeight; row++) {
+            final int top = row * mCellHeight;
+            final int bottom = top + mCellHeight - 1;
+            for (int column = 0; column < mGridWidth; column++) {
+                final int left = column * mCellWidth;
+                final int right = left + mCellWidth - 1;
+                int count = 0;
+                for (int keyIndex = 0; keyIndex < keysCount; keyIndex++) {
+                    final Key key = keys.get(keyIndex);
+                    final int distance = squaredDistanceBetween(key, left, top, right, bottom);
+                    if (distance != 0 && distance >= proximityThresholdSquare) continue;
+                    // insertion sort, there are only a few keys in each cell
+                    int position = count;
+                    while (position > 0 && distances[position - 1] > distance) {
+                        distances[position] = distances[position - 1];
+                        indices[position] = indices[position - 1];
+                        position--;
+                    }
+                    distances[position] = distance;
+                    indices[position] = keyIndex;
+                    count++;
+                }
+                final int[] cell = new int[count];
+                System.arraycopy(indices, 0, cell, 0, count);
+                mCells[row * mGridWidth + column] = cell;
+            }
+        }
+    }
+
+    private static int getGridSize(int length, int smallestKeyLength, int min, int max) {
+        if (smallestKeyLength == Integer.MAX_VALUE) return min;
+        final int size = (length + smallestKeyLength - 1) / smallestKeyLength;
+        return Math.max(min, Math.min(max, size));
+    }
+
+    /**
+     * The square of the distance between the key and the closest point in the given rectangle.
+     */
+    private static int squaredDistanceBetween(Key key, int left, int top, int right, int bottom) {
+        final int dx = Math.max(0, Math.max(key.x - right, left - (key.x + key.width)));
+        final int dy = Math.max(0, Math.max(key.y - bottom, top - (key.y + key.height)));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return the indices of the keys near the given point, ordered by their distance from the point's cell.
+     *         Points outside the keyboard have no keys.
+     */
+    int[] getNearestKeys(int x, int y) {
+        if (x >= 0 && x < mWidth && y >= 0 && y < mHeight) {
+            return mCells[(y / mCellHeight) * mGridWidth + (x / mCellWidth)];
+        }
+        return EMPTY_CELL;
+    }
+
+    int getGridWidth() {
+        return mGridWidth;
+    }
+
+    int getGridHeight() {
+        return mGridHeight;
+    }
+}
@@ -205,27 +205,25 @@ public class AnyKeyboardBaseView extends View implements
 
     // Drawing
     /**
-     * Whether the keyboard bitmap needs to be redrawn before it's blitted. *
-     */
-    private boolean mDrawPending;
-    /**
-     * The dirty region in the keyboard bitmap
+     * The dirty region of the keyboard, used when drawing on a software canvas.
      */
     private final Rect mDirtyRect = new Rect();
     /**
-     * The keyboard bitmap for faster updates
+     * Keys are rendered once into these bitmaps, and then blitted on every draw.
+     * Takes at most 1/KEY_RENDER_CACHE_HEAP_FRACTION of the heap.
      */
-    private Bitmap mBuffer;
+    private static final int KEY_RENDER_CACHE_HEAP_FRACTION = 16;
+    private final KeyRenderCache mKeyRenderCache = new KeyRenderCache(
+            (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / KEY_RENDER_CACHE_HEAP_FRACTION));
+    // reused for every key lookup, so drawing does not allocate
+    private final KeyRenderCache.Appearance mKeyAppearance = new KeyRenderCache.Appearance();
+    private final Canvas mKeyRenderCanvas = new Canvas();
+    private final FrameTimeTracker mFrameTimeTracker = new FrameTimeTracker(TAG);
     /**
-     * Notes if the keyboard just changed, so that we could possibly reallocate
-     * the mBuffer.
+     * Notes if the keyboard just changed, so that all of it will be redrawn.
      */
     protected boolean mKeyboardChanged;
     private Key mInvalidatedKey;
-    /**
-     * The canvas for the above mutable keyboard bitmap
-     */
-    // private Canvas mCanvas;
     protected final Paint mPaint;
     private final Rect mKeyBackgroundPadding;
     private final Rect mClipRegion = new Rect(0, 0, 0, 0);
@@ -1368,20 +1366,6 @@ public class AnyKeyboardBaseView extends View implements
                 .setProximityThreshold((int) (dimensionSum * 1.4f / length));
     }
 
-    @Override
-    public void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        // Release the buffer, if any and it will be reallocated on the next
-        // draw
-        releaseDrawBuffer();
-    }
-
-    protected void releaseDrawBuffer() {
-        if (mBuffer != null)
-            mBuffer.recycle();
-        mBuffer = null;
-    }
-
     private static class KeyboardDrawOperation implements MemRelatedOperation {
 
         private final AnyKeyboardBaseView mView;
@@ -1396,7 +1380,7 @@ public class AnyKeyboardBaseView extends View implements
         }
 
         public void operation() {
-            mView.onBufferDraw(mCanvas);
+            mView.drawKeyboard(mCanvas, false);
         }
     }
 
@@ -1407,27 +1391,37 @@ public class AnyKeyboardBaseView extends View implements
     @Override
     public void onDraw(final Canvas canvas) {
         super.onDraw(canvas);
-        mDrawOperation.setCanvas(canvas);
-
-        if (mDrawPending || mBuffer == null || mKeyboardChanged) {
+        if (AnyApplication.getDeviceSpecific().isHardwareAcceleratedCanvas(canvas)) {
+            // the canvas records the view's entire display-list, so all the keys are
+            // drawn (each is a blit of its rendered bitmap), no matter which key was invalidated.
+            // There is nothing large to allocate here, so no memory retry.
+            drawKeyboard(canvas, true);
+        } else {
+            mDrawOperation.setCanvas(canvas);
             GCUtils.getInstance().peformOperationWithMemRetry(TAG, mDrawOperation, true);
         }
-        // maybe there is no buffer, since drawing was not done.
-        if (mBuffer != null)
-            canvas.drawBitmap(mBuffer, 0.0f, 0.0f, null);
     }
 
-    private void onBufferDraw(Canvas canvas) {
+    /**
+     * Draws the keys onto the view's canvas.
+     *
+     * @param drawAllKeys true if all the keys should be drawn, false to draw only the keys in the canvas' clip.
+     */
+    private void drawKeyboard(Canvas canvas, boolean drawAllKeys) {
         if (mKeyboardChanged) {
-            invalidateAllKeys();
+            drawAllKeys = true;
             mKeyboardChanged = false;
         }
-
-        canvas.getClipBounds(mDirtyRect);
+        if (drawAllKeys) {
+            mDirtyRect.set(0, 0, getWidth(), getHeight());
+        } else {
+            canvas.getClipBounds(mDirtyRect);
+        }
 
         if (mKeyboard == null)
             return;
 
+        final long frameStartTime = System.nanoTime();
         final boolean drawKeyboardNameText = (mKeyboardNameTextSize > 1f)
                 && AnyApplication.getConfig().getShowKeyboardNameText();
 
@@ -1467,7 +1461,6 @@ public class AnyKeyboardBaseView extends View implements
                 .getCustomHintVAlign() : mHintLabelVAlign;
 
         final Paint paint = mPaint;
-        final Drawable keyBackground = mKeyBackground;
         final Rect clipRegion = mClipRegion;
         final int kbdPaddingLeft = getPaddingLeft();
         final int kbdPaddingTop = getPaddingTop();
@@ -1475,7 +1468,7 @@ public class AnyKeyboardBaseView extends View implements
         final Key invalidKey = mInvalidatedKey;
 
         boolean drawSingleKey = false;
-        if (invalidKey != null && canvas.getClipBounds(clipRegion)) {
+        if (!drawAllKeys && invalidKey != null && canvas.getClipBounds(clipRegion)) {
             // TODO we should use Rect.inset and Rect.contains here.
             // Is clipRegion completely contained within the invalidated key?
             if (invalidKey.x + kbdPaddingLeft - 1 <= clipRegion.left
@@ -1485,289 +1478,41 @@ public class AnyKeyboardBaseView extends View implements
                 drawSingleKey = true;
             }
         }
+        final KeyRenderCache.Appearance appearance = mKeyAppearance;
+        int keysDrawn = 0;
+        int keysRendered = 0;
         final int keyCount = keys.length;
         for (int i = 0; i < keyCount; i++) {
             final AnyKey key = (AnyKey) keys[i];
-            final boolean keyIsSpace = isSpaceKey(key);
 
             if (drawSingleKey && (invalidKey != key)) {
                 continue;
             }
-            if (!mDirtyRect.intersects(key.x + kbdPaddingLeft, key.y
-                    + kbdPaddingTop, key.x + key.width + kbdPaddingLeft, key.y
-                    + key.height + kbdPaddingTop)) {
+            final int keyX = key.x + kbdPaddingLeft;
+            final int keyY = key.y + kbdPaddingTop;
+            if (!mDirtyRect.intersects(keyX, keyY, keyX + key.width, keyY + key.height)) {
                 continue;
             }
-            int[] drawableState = key.getCurrentDrawableState(mDrawableStatesProvider);
-
-            if (keyIsSpace)
-                paint.setColor(mKeyboardNameTextColor.getColorForState(
-                        drawableState, 0xFF000000));
-            else
-                paint.setColor(keyTextColor.getColorForState(drawableState,
-                        0xFF000000));
-            keyBackground.setState(drawableState);
-
-            // Switch the character to uppercase if shift is pressed
-            CharSequence label = key.label == null ? null : adjustCase(key).toString();
-
-            final Rect bounds = keyBackground.getBounds();
-            if ((key.width != bounds.right) || (key.height != bounds.bottom)) {
-                keyBackground.setBounds(0, 0, key.width, key.height);
-            }
-            canvas.translate(key.x + kbdPaddingLeft, key.y + kbdPaddingTop);
-            keyBackground.draw(canvas);
-
-            if (TextUtils.isEmpty(label)) {
-                Drawable iconToDraw = getIconToDrawForKey(key, false);
-                if (iconToDraw != null/* && shouldDrawIcon */) {
-                    //http://developer.android.com/reference/android/graphics/drawable/Drawable.html#getCurrent()
-                    //http://stackoverflow.com/a/103600/1324235
-                    final boolean is9Patch = iconToDraw.getCurrent() instanceof NinePatchDrawable;
-
-                    // Special handing for the upper-right number hint icons
-                    final int drawableWidth;
-                    final int drawableHeight;
-                    final int drawableX;
-                    final int drawableY;
-
-                    drawableWidth = is9Patch? key.width : iconToDraw.getIntrinsicWidth();
-                    drawableHeight = is9Patch? key.height : iconToDraw.getIntrinsicHeight();
-                    drawableX = (key.width + mKeyBackgroundPadding.left
-                            - mKeyBackgroundPadding.right - drawableWidth) / 2;
-                    drawableY = (key.height + mKeyBackgroundPadding.top
-                            - mKeyBackgroundPadding.bottom - drawableHeight) / 2;
-
-                    canvas.translate(drawableX, drawableY);
-                    iconToDraw.setBounds(0, 0, drawableWidth, drawableHeight);
-                    iconToDraw.draw(canvas);
-                    canvas.translate(-drawableX, -drawableY);
-                    if (keyIsSpace && drawKeyboardNameText) {
-                        // now a little hack, I'll set the label now, so it get
-                        // drawn.
-                        label = mKeyboardName;
-                    }
-                } else {
-                    // ho... no icon.
-                    // I'll try to guess the text
-                    label = guessLabelForKey(key.codes[0]);
-                    if (TextUtils.isEmpty(label)) {
-                        Log.w(TAG, "That's unfortunate, for key "
-                                + key.codes[0] + " at (" + key.x + ", " + key.y
-                                + ") there is no icon nor label. Action ID is "
-                                + mKeyboardActionType);
-                    }
+            setKeyAppearance(key, drawKeyboardNameText, drawHintText, hintVAlign, appearance);
+            keysDrawn++;
+
+            Bitmap keyBitmap = mKeyRenderCache.get(appearance);
+            if (keyBitmap == null) {
+                keysRendered++;
+                keyBitmap = mKeyRenderCache.create(appearance);
+                if (keyBitmap != null) {
+                    mKeyRenderCanvas.setBitmap(keyBitmap);
+                    drawKey(mKeyRenderCanvas, appearance, keyTextColor, hintColor, hintAlign, hintVAlign);
                 }
             }
-
-            if (label != null) {
-                // For characters, use large font. For labels like "Done", use
-                // small font.
-                final FontMetrics fm;
-                if (keyIsSpace) {
-                    paint.setTextSize(mKeyboardNameTextSize);
-                    paint.setTypeface(Typeface.DEFAULT_BOLD);
-                    if (mKeyboardNameFM == null)
-                        mKeyboardNameFM = paint.getFontMetrics();
-                    fm = mKeyboardNameFM;
-                } else if (label.length() > 1 && key.codes.length < 2) {
-                    paint.setTextSize(mLabelTextSize);
-                    paint.setTypeface(Typeface.DEFAULT_BOLD);
-                    if (mLabelFM == null)
-                        mLabelFM = paint.getFontMetrics();
-                    fm = mLabelFM;
-                } else {
-                    fm = setPaintToKeyText(paint);
-                }
-
-                final float labelHeight = -fm.top;
-                // Draw a drop shadow for the text
-                paint.setShadowLayer(mShadowRadius, mShadowOffsetX,
-                        mShadowOffsetY, mShadowColor);
-
-                // (+)This is the trick to get RTL/LTR text correct
-                // no matter what: StaticLayout
-                // this should be in the top left corner of the key
-                float textWidth = paint.measureText(label, 0, label.length());
-                // I'm going to try something if the key is too small for the
-                // text:
-                // 1) divide the text size by 1.5
-                // 2) if still too large, divide by 2.5
-                // 3) show no text
-                if (textWidth > key.width) {
-                    Log.d(TAG, "Label '"
-                            + label
-                            + "' is too large for the key. Reducing by 1.5.");
-                    paint.setTextSize(mKeyTextSize / 1.5f);
-                    textWidth = paint.measureText(label, 0, label.length());
-                    if (textWidth > key.width) {
-                        Log.d(TAG,
-                                "Label '"
-                                        + label
-                                        + "' is too large for the key. Reducing by 2.5.");
-                        paint.setTextSize(mKeyTextSize / 2.5f);
-                        textWidth = paint.measureText(label, 0, label.length());
-                        if (textWidth > key.width) {
-                            Log.d(TAG,
-                                    "Label '"
-                                            + label
-                                            + "' is too large for the key. Showing no text.");
-                            paint.setTextSize(0f);
-                            textWidth = paint.measureText(label, 0,
-                                    label.length());
-                        }
-                    }
-                }
-
-                // the center of the drawable space, which is value used
-                // previously for vertically
-                // positioning the key label
-                final float centerY = mKeyBackgroundPadding.top
-                        + ((key.height - mKeyBackgroundPadding.top - mKeyBackgroundPadding.bottom) / (keyIsSpace ? 3
-                        : 2));// the label on the space is a bit higher
-
-                // the X coordinate for the center of the main label text is
-                // unaffected by the hints
-                final float centerX = mKeyBackgroundPadding.left
-                        + (key.width - mKeyBackgroundPadding.left - mKeyBackgroundPadding.right)
-                        / 2;
-
-                final float textX = centerX;
-                final float textY;
-                // Some devices (mostly pre-Honeycomb, have issues with RTL text
-                // drawing.
-                // Of course, there is no issue with a single character :)
-                // so, we'll use the RTL secured drawing (via StaticLayout) for
-                // labels.
-                if (label.length() > 1
-                        && !AnyApplication.getConfig().workaround_alwaysUseDrawText()) {
-                    // calculate Y coordinate of top of text based on center
-                    // location
-                    textY = centerY - ((labelHeight - paint.descent()) / 2);
-                    canvas.translate(textX, textY);
-                    Log.d(TAG, "Using RTL fix for key draw '" + label + "'");
-                    // RTL fix. But it costs, let do it when in need (more than
-                    // 1 character)
-                    StaticLayout labelText = new StaticLayout(label,
-                            new TextPaint(paint), (int) textWidth,
-                            Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
-                    labelText.draw(canvas);
-                } else {
-                    // to get Y coordinate of baseline from center of text,
-                    // first add half the height (to get to
-                    // bottom of text), then subtract the part below the
-                    // baseline. Note that fm.top is negative.
-                    textY = centerY + ((labelHeight - paint.descent()) / 2);
-                    canvas.translate(textX, textY);
-                    canvas.drawText(label, 0, label.length(), 0, 0, paint);
-                }
-                canvas.translate(-textX, -textY);
-                // (-)
-
-                // Turn off drop shadow
-                paint.setShadowLayer(0, 0, 0, 0);
-            }
-
-            if (drawHintText) {
-                if ((key.popupCharacters != null && key.popupCharacters
-                        .length() > 0)
-                        || (key.popupResId != 0)
-                        || (key.longPressCode != 0)) {
-                    Paint.Align oldAlign = paint.getTextAlign();
-
-                    String hintText = null;
-
-                    if (key.hintLabel != null && key.hintLabel.length() > 0) {
-                        hintText = key.hintLabel.toString();
-                        // it is the responsibility of the keyboard layout
-                        // designer to ensure that they do
-                        // not put too many characters in the hint label...
-                    } else if (key.longPressCode != 0) {
-                        if (Character.isLetterOrDigit(key.longPressCode))
-                            hintText = Character
-                                    .toString((char) key.longPressCode);
-                    } else if (key.popupCharacters != null) {
-                        final String hintString = key.popupCharacters
-                                .toString();
-                        final int hintLength = hintString.length();
-                        if (hintLength <= 3)
-                            hintText = hintString;
-                    }
-
-                    // if hintText is still null, it means it didn't fit one of
-                    // the above
-                    // cases, so we should provide the hint using the default
-                    if (hintText == null) {
-                        if (mHintOverflowLabel != null)
-                            hintText = mHintOverflowLabel.toString();
-                        else {
-                            // theme does not provide a defaultHintLabel
-                            // use ˙˙˙ if hints are above, ... if hints are
-                            // below
-                            // (to avoid being too close to main label/icon)
-                            if (hintVAlign == Gravity.TOP)
-                                hintText = "˙˙˙";
-                            else
-                                hintText = "...";
-                        }
-                    }
-
-                    if (mKeyboard.isShifted())
-                        hintText = hintText.toUpperCase();
-
-                    // now draw hint
-                    paint.setTypeface(Typeface.DEFAULT);
-                    paint.setColor(hintColor.getColorForState(drawableState,
-                            0xFF000000));
-                    paint.setTextSize(mHintTextSize);
-                    // get the hint text font metrics so that we know the size
-                    // of the hint when
-                    // we try to position the main label (to try to make sure
-                    // they don't overlap)
-                    if (mHintTextFM == null) {
-                        mHintTextFM = paint.getFontMetrics();
-                    }
-
-                    final float hintX;
-                    final float hintY;
-
-                    // the (float) 0.5 value is added or subtracted to just give
-                    // a little more room
-                    // in case the theme designer didn't account for the hint
-                    // label location
-                    if (hintAlign == Gravity.LEFT) {
-                        // left
-                        paint.setTextAlign(Paint.Align.LEFT);
-                        hintX = mKeyBackgroundPadding.left + (float) 0.5;
-                    } else if (hintAlign == Gravity.CENTER) {
-                        // center
-                        paint.setTextAlign(Paint.Align.CENTER);
-                        hintX = mKeyBackgroundPadding.left
-                                + (key.width - mKeyBackgroundPadding.left - mKeyBackgroundPadding.right)
-                                / 2;
-                    } else {
-                        // right
-                        paint.setTextAlign(Paint.Align.RIGHT);
-                        hintX = key.width - mKeyBackgroundPadding.right
-                                - (float) 0.5;
-                    }
-
-                    if (hintVAlign == Gravity.TOP) {
-                        // above
-                        hintY = mKeyBackgroundPadding.top - mHintTextFM.top
-                                + (float) 0.5;
-                    } else {
-                        // below
-                        hintY = key.height - mKeyBackgroundPadding.bottom
-                                - mHintTextFM.bottom - (float) 0.5;
-                    }
-
-                    canvas.drawText(hintText, hintX, hintY, paint);
-                    paint.setTextAlign(oldAlign);
-                }
+            if (keyBitmap != null) {
+                canvas.drawBitmap(keyBitmap, keyX, keyY, null);
+            } else {
+                // the key can not be cached, drawing it directly
+                canvas.translate(keyX, keyY);
+                drawKey(canvas, appearance, keyTextColor, hintColor, hintAlign, hintVAlign);
+                canvas.translate(-keyX, -keyY);
             }
-
-            canvas.translate(-key.x - kbdPaddingLeft, -key.y - kbdPaddingTop);
         }
         mInvalidatedKey = null;
         // Overlay a dark rectangle to dim the keyboard
@@ -1796,10 +1541,329 @@ public class AnyKeyboardBaseView extends View implements
             }
         }
 
-        mDrawPending = false;
+        mFrameTimeTracker.onFrameDrawn(System.nanoTime() - frameStartTime, keysDrawn, keysRendered);
         mDirtyRect.setEmpty();
     }
 
+    /**
+     * Sets everything which affects how the key looks into the given appearance.
+     */
+    private void setKeyAppearance(AnyKey key, boolean drawKeyboardNameText, boolean drawHintText,
+                                  int hintVAlign, KeyRenderCache.Appearance appearance) {
+        final boolean keyIsSpace = isSpaceKey(key);
+        appearance.mWidth = key.width;
+        appearance.mHeight = key.height;
+        appearance.mDrawableState = key.getCurrentDrawableState(mDrawableStatesProvider);
+        appearance.mIsSpace = keyIsSpace;
+
+        // Switch the character to uppercase if shift is pressed
+        CharSequence label = key.label == null ? null : adjustCase(key).toString();
+        Drawable icon = null;
+        if (TextUtils.isEmpty(label)) {
+            icon = getIconToDrawForKey(key, false);
+            if (icon != null/* && shouldDrawIcon */) {
+                if (keyIsSpace && drawKeyboardNameText) {
+                    // now a little hack, I'll set the label now, so it get
+                    // drawn.
+                    label = mKeyboardName;
+                }
+            } else {
+                // ho... no icon.
+                // I'll try to guess the text
+                label = guessLabelForKey(key.codes[0]);
+                if (TextUtils.isEmpty(label)) {
+                    Log.w(TAG, "That's unfortunate, for key "
+                            + key.codes[0] + " at (" + key.x + ", " + key.y
+                            + ") there is no icon nor label. Action ID is "
+                            + mKeyboardActionType);
+                }
+            }
+        }
+        appearance.mLabel = label;
+        appearance.mIcon = icon;
+        appearance.mIconState = icon == null ? null : icon.getState();
+        // For characters, use large font. For labels like "Done", use
+        // small font.
+        if (keyIsSpace)
+            appearance.mLabelStyle = KeyRenderCache.Appearance.LABEL_STYLE_KEYBOARD_NAME;
+        else if (label != null && label.length() > 1 && key.codes.length < 2)
+            appearance.mLabelStyle = KeyRenderCache.Appearance.LABEL_STYLE_LABEL;
+        else
+            appearance.mLabelStyle = KeyRenderCache.Appearance.LABEL_STYLE_KEY;
+        appearance.mHintText = drawHintText ? getHintText(key, hintVAlign) : null;
+        appearance.computeHash();
+    }
+
+    /**
+     * @return the hint to draw on the key, or null if the key has nothing to hint.
+     */
+    private String getHintText(AnyKey key, int hintVAlign) {
+        if ((key.popupCharacters == null || key.popupCharacters.length() == 0)
+                && (key.popupResId == 0)
+                && (key.longPressCode == 0)) {
+            return null;
+        }
+        String hintText = null;
+
+        if (key.hintLabel != null && key.hintLabel.length() > 0) {
+            hintText = key.hintLabel.toString();
+            // it is the responsibility of the keyboard layout
+            // designer to ensure that they do
+            // not put too many characters in the hint label...
+        } else if (key.longPressCode != 0) {
+            if (Character.isLetterOrDigit(key.longPressCode))
+                hintText = Character
+                        .toString((char) key.longPressCode);
+        } else if (key.popupCharacters != null) {
+            final String hintString = key.popupCharacters
+                    .toString();
+            final int hintLength = hintString.length();
+            if (hintLength <= 3)
+                hintText = hintString;
+        }
+
+        // if hintText is still null, it means it didn't fit one of
+        // the above
+        // cases, so we should provide the hint using the default
+        if (hintText == null) {
+            if (mHintOverflowLabel != null)
+                hintText = mHintOverflowLabel.toString();
+            else {
+                // theme does not provide a defaultHintLabel
+                // use ˙˙˙ if hints are above, ... if hints are
+                // below
+                // (to avoid being too close to main label/icon)
+                if (hintVAlign == Gravity.TOP)
+                    hintText = "˙˙˙";
+                else
+                    hintText = "...";
+            }
+        }
+
+        if (mKeyboard.isShifted())
+            hintText = hintText.toUpperCase();
+
+        return hintText;
+    }
+
+    /**
+     * Draws the key, as described by the appearance, with its top-left corner at the canvas' origin.
+     */
+    private void drawKey(Canvas canvas, KeyRenderCache.Appearance appearance,
+                         ColorStateList keyTextColor, ColorStateList hintColor, int hintAlign, int hintVAlign) {
+        final Paint paint = mPaint;
+        final Drawable keyBackground = mKeyBackground;
+        final int keyWidth = appearance.mWidth;
+        final int keyHeight = appearance.mHeight;
+        final int[] drawableState = appearance.mDrawableState;
+        final boolean keyIsSpace = appearance.mIsSpace;
+
+        if (keyIsSpace)
+            paint.setColor(mKeyboardNameTextColor.getColorForState(
+                    drawableState, 0xFF000000));
+        else
+            paint.setColor(keyTextColor.getColorForState(drawableState,
+                    0xFF000000));
+        keyBackground.setState(drawableState);
+
+        final Rect bounds = keyBackground.getBounds();
+        if ((keyWidth != bounds.right) || (keyHeight != bounds.bottom)) {
+            keyBackground.setBounds(0, 0, keyWidth, keyHeight);
+        }
+        keyBackground.draw(canvas);
+
+        final Drawable iconToDraw = appearance.mIcon;
+        if (iconToDraw != null) {
+            //http://developer.android.com/reference/android/graphics/drawable/Drawable.html#getCurrent()
+            //http://stackoverflow.com/a/103600/1324235
+            final boolean is9Patch = iconToDraw.getCurrent() instanceof NinePatchDrawable;
+
+            // Special handing for the upper-right number hint icons
+            final int drawableWidth;
+            final int drawableHeight;
+            final int drawableX;
+            final int drawableY;
+
+            drawableWidth = is9Patch? keyWidth : iconToDraw.getIntrinsicWidth();
+            drawableHeight = is9Patch? keyHeight : iconToDraw.getIntrinsicHeight();
+            drawableX = (keyWidth + mKeyBackgroundPadding.left
+                    - mKeyBackgroundPadding.right - drawableWidth) / 2;
+            drawableY = (keyHeight + mKeyBackgroundPadding.top
+                    - mKeyBackgroundPadding.bottom - drawableHeight) / 2;
+
+            canvas.translate(drawableX, drawableY);
+            iconToDraw.setBounds(0, 0, drawableWidth, drawableHeight);
+            iconToDraw.draw(canvas);
+            canvas.translate(-drawableX, -drawableY);
+        }
+
+        final CharSequence label = appearance.mLabel;
+        if (label != null) {
+            final FontMetrics fm;
+            switch (appearance.mLabelStyle) {
+                case KeyRenderCache.Appearance.LABEL_STYLE_KEYBOARD_NAME:
+                    paint.setTextSize(mKeyboardNameTextSize);
+                    paint.setTypeface(Typeface.DEFAULT_BOLD);
+                    if (mKeyboardNameFM == null)
+                        mKeyboardNameFM = paint.getFontMetrics();
+                    fm = mKeyboardNameFM;
+                    break;
+                case KeyRenderCache.Appearance.LABEL_STYLE_LABEL:
+                    paint.setTextSize(mLabelTextSize);
+                    paint.setTypeface(Typeface.DEFAULT_BOLD);
+                    if (mLabelFM == null)
+                        mLabelFM = paint.getFontMetrics();
+                    fm = mLabelFM;
+                    break;
+                default:
+                    fm = setPaintToKeyText(paint);
+                    break;
+            }
+
+            final float labelHeight = -fm.top;
+            // Draw a drop shadow for the text
+            paint.setShadowLayer(mShadowRadius, mShadowOffsetX,
+                    mShadowOffsetY, mShadowColor);
+
+            // (+)This is the trick to get RTL/LTR text correct
+            // no matter what: StaticLayout
+            // this should be in the top left corner of the key
+            float textWidth = paint.measureText(label, 0, label.length());
+            // I'm going to try something if the key is too small for the
+            // text:
+            // 1) divide the text size by 1.5
+            // 2) if still too large, divide by 2.5
+            // 3) show no text
+            if (textWidth > keyWidth) {
+                Log.d(TAG, "Label '"
+                        + label
+                        + "' is too large for the key. Reducing by 1.5.");
+                paint.setTextSize(mKeyTextSize / 1.5f);
+                textWidth = paint.measureText(label, 0, label.length());
+                if (textWidth > keyWidth) {
+                    Log.d(TAG,
+                            "Label '"
+                                    + label
+                                    + "' is too large for the key. Reducing by 2.5.");
+                    paint.setTextSize(mKeyTextSize / 2.5f);
+                    textWidth = paint.measureText(label, 0, label.length());
+                    if (textWidth > keyWidth) {
+                        Log.d(TAG,
+                                "Label '"
+                                        + label
+                                        + "' is too large for the key. Showing no text.");
+                        paint.setTextSize(0f);
+                        textWidth = paint.measureText(label, 0,
+                                label.length());
+                    }
+                }
+            }
+
+            // the center of the drawable space, which is value used
+            // previously for vertically
+            // positioning the key label
+            final float centerY = mKeyBackgroundPadding.top
+                    + ((keyHeight - mKeyBackgroundPadding.top - mKeyBackgroundPadding.bottom) / (keyIsSpace ? 3
+                    : 2));// the label on the space is a bit higher
+
+            // the X coordinate for the center of the main label text is
+            // unaffected by the hints
+            final float centerX = mKeyBackgroundPadding.left
+                    + (keyWidth - mKeyBackgroundPadding.left - mKeyBackgroundPadding.right)
+                    / 2;
+
+            final float textX = centerX;
+            final float textY;
+            // Some devices (mostly pre-Honeycomb, have issues with RTL text
+            // drawing.
+            // Of course, there is no issue with a single character :)
+            // so, we'll use the RTL secured drawing (via StaticLayout) for
+            // labels.
+            if (label.length() > 1
+                    && !AnyApplication.getConfig().workaround_alwaysUseDrawText()) {
+                // calculate Y coordinate of top of text based on center
+                // location
+                textY = centerY - ((labelHeight - paint.descent()) / 2);
+                canvas.translate(textX, textY);
+                if (FeaturesSet.DEBUG_LOG) Log.d(TAG, "Using RTL fix for key draw '" + label + "'");
+                // RTL fix. But it costs, let do it when in need (more than
+                // 1 character). Since the key is rendered once, this is not done every frame.
+                StaticLayout labelText = new StaticLayout(label,
+                        new TextPaint(paint), (int) textWidth,
+                        Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+                labelText.draw(canvas);
+            } else {
+                // to get Y coordinate of baseline from center of text,
+                // first add half the height (to get to
+                // bottom of text), then subtract the part below the
+                // baseline. Note that fm.top is negative.
+                textY = centerY + ((labelHeight - paint.descent()) / 2);
+                canvas.translate(textX, textY);
+                canvas.drawText(label, 0, label.length(), 0, 0, paint);
+            }
+            canvas.translate(-textX, -textY);
+            // (-)
+
+            // Turn off drop shadow
+            paint.setShadowLayer(0, 0, 0, 0);
+        }
+
+        final CharSequence hintText = appearance.mHintText;
+        if (hintText != null) {
+            Paint.Align oldAlign = paint.getTextAlign();
+
+            // now draw hint
+            paint.setTypeface(Typeface.DEFAULT);
+            paint.setColor(hintColor.getColorForState(drawableState,
+                    0xFF000000));
+            paint.setTextSize(mHintTextSize);
+            // get the hint text font metrics so that we know the size
+            // of the hint when
+            // we try to position the main label (to try to make sure
+            // they don't overlap)
+            if (mHintTextFM == null) {
+                mHintTextFM = paint.getFontMetrics();
+            }
+
+            final float hintX;
+            final float hintY;
+
+            // the (float) 0.5 value is added or subtracted to just give
+            // a little more room
+            // in case the theme designer didn't account for the hint
+            // label location
+            if (hintAlign == Gravity.LEFT) {
+                // left
+                paint.setTextAlign(Paint.Align.LEFT);
+                hintX = mKeyBackgroundPadding.left + (float) 0.5;
+            } else if (hintAlign == Gravity.CENTER) {
+                // center
+                paint.setTextAlign(Paint.Align.CENTER);
+                hintX = mKeyBackgroundPadding.left
+                        + (keyWidth - mKeyBackgroundPadding.left - mKeyBackgroundPadding.right)
+                        / 2;
+            } else {
+                // right
+                paint.setTextAlign(Paint.Align.RIGHT);
+                hintX = keyWidth - mKeyBackgroundPadding.right
+                        - (float) 0.5;
+            }
+
+            if (hintVAlign == Gravity.TOP) {
+                // above
+                hintY = mKeyBackgroundPadding.top - mHintTextFM.top
+                        + (float) 0.5;
+            } else {
+                // below
+                hintY = keyHeight - mKeyBackgroundPadding.bottom
+                        - mHintTextFM.bottom - (float) 0.5;
+            }
+
+            canvas.drawText(hintText, 0, hintText.length(), hintX, hintY, paint);
+            paint.setTextAlign(oldAlign);
+        }
+    }
+
     protected FontMetrics setPaintToKeyText(final Paint paint) {
         final FontMetrics fm;
         paint.setTextSize(mKeyTextSize);
@@ -2190,15 +2254,12 @@ public class AnyKeyboardBaseView extends View implements
     }
 
     /**
-     * Requests a redraw of the entire keyboard. Calling {@link #invalidate} is
-     * not sufficient because the keyboard renders the keys to an off-screen
-     * buffer and an invalidate() only draws the cached buffer.
+     * Requests a redraw of the entire keyboard.
      *
      * @see #invalidateKey(Key)
      */
     public void invalidateAllKeys() {
         mDirtyRect.union(0, 0, getWidth(), getHeight());
-        mDrawPending = true;
         invalidate();
     }
 
@@ -2214,12 +2275,9 @@ public class AnyKeyboardBaseView extends View implements
         if (key == null)
             return;
         mInvalidatedKey = key;
-        // TODO we should clean up this and record key's region to use in
-        // onBufferDraw.
         mDirtyRect.union(key.x + getPaddingLeft(), key.y + getPaddingTop(),
                 key.x + key.width + getPaddingLeft(), key.y + key.height
                 + getPaddingTop());
-        // doOnBufferDrawWithMemProtection(mCanvas);
         invalidate(key.x + getPaddingLeft(), key.y + getPaddingTop(), key.x
                 + key.width + getPaddingLeft(), key.y + key.height
                 + getPaddingTop());
@@ -2668,6 +2726,7 @@ public class AnyKeyboardBaseView extends View implements
         }
         mKeysIcons.clear();
         mKeysIconBuilders.clear();
+        mKeyRenderCache.clear();
         unbindDrawable(mPreviewKeyBackground);
         unbindDrawable(mKeyBackground);
         mMiniKeyboardParent = null;
@@ -2708,7 +2767,18 @@ public class AnyKeyboardBaseView extends View implements
         mMiniKeyboardPopup
                 .setAnimationStyle((mAnimationLevel == AnimationsLevel.None) ? 0
                         : R.style.MiniKeyboardAnimation);
+        // hint and label drawing may have changed
+        mKeyRenderCache.clear();
+        invalidateAllKeys();
+    }
 
+    /**
+     * Releases the rendered keys. They will be rendered again when needed.
+     */
+    public void onLowMemory() {
+        mKeyRenderCache.clear();
+        if (mMiniKeyboard != null)
+            mMiniKeyboard.onLowMemory();
     }
 
     protected boolean isPopupShowing() {
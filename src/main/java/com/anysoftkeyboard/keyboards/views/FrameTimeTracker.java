@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.keyboards.views;
+
+import com.anysoftkeyboard.utils.Log;
+
+/**
+ * Collects the time it takes to draw the keyboard's keys, and how many of the keys had to be rendered (rather
+ * than blitted from the {@link KeyRenderCache}). A summary is logged every {@link #FRAMES_PER_SUMMARY} frames,
+ * and every frame which misses the frame budget is logged on its own.
+ */
+final class FrameTimeTracker {
+    static final long FRAME_BUDGET_NANOS = 16 * 1000 * 1000;
+    private static final int FRAMES_PER_SUMMARY = 50;
+
+    private final String mTag;
+
+    private int mFrames;
+    private int mSlowFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private int mKeysDrawn;
+    private int mKeysRendered;
+
+    FrameTimeTracker(String tag) {
+        mTag = tag;
+    }
+
+    void onFrameDrawn(long durationNanos, int keysDrawn, int keysRendered) {
+        mFrames++;
+        mTotalNanos += durationNanos;
+        mKeysDrawn += keysDrawn;
+        mKeysRendered += keysRendered;
+        if (durationNanos > mMaxNanos) mMaxNanos = durationNanos;
+        if (durationNanos > FRAME_BUDGET_NANOS) {
+            mSlowFrames++;
+            Log.d(mTag, "Slow keyboard frame: %d us, %d keys drawn, %d of them rendered.",
+                    durationNanos / 1000, keysDrawn, keysRendered);
+        }
+
+        if (mFrames == FRAMES_PER_SUMMARY) {
+            Log.d(mTag, "Keyboard frames: %d, average %d us, max %d us, %d over budget. Keys drawn %d, rendered %d.",
+                    mFrames, mTotalNanos / mFrames / 1000, mMaxNanos / 1000, mSlowFrames, mKeysDrawn, mKeysRendered);
+            reset();
+        }
+    }
+
+    void reset() {
+        mFrames = 0;
+        mSlowFrames = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mKeysDrawn = 0;
+        mKeysRendered = 0;
+    }
+}
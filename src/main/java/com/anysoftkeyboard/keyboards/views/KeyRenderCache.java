@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.keyboards.views;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+import com.anysoftkeyboard.utils.Log;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rendered key bitmaps, keyed by everything which affects how a key looks, so redrawing a key is a single
+ * bitmap blit. The theme is not part of the key: a cache belongs to a single view, and a view has a single theme.
+ * <p/>
+ * The cache is bounded by the number of bytes its bitmaps take, least recently drawn keys are evicted first.
+ */
+final class KeyRenderCache {
+    private static final String TAG = "ASK KeyRenderCache";
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * How a key looks. The drawable-states arrays are the constant arrays of the view's
+     * {@link KeyDrawableStateProvider}, so they are compared by identity.
+     */
+    static final class Appearance {
+        static final int LABEL_STYLE_KEY = 0;
+        static final int LABEL_STYLE_LABEL = 1;
+        static final int LABEL_STYLE_KEYBOARD_NAME = 2;
+
+        int mWidth;
+        int mHeight;
+        int[] mDrawableState;
+        boolean mIsSpace;
+        CharSequence mLabel;
+        int mLabelStyle;
+        Drawable mIcon;
+        int[] mIconState;
+        CharSequence mHintText;
+        private int mHash;
+
+        /**
+         * Must be called after the fields were set, and before using this instance as a key.
+         */
+        void computeHash() {
+            int hash = mWidth;
+            hash = 31 * hash + mHeight;
+            hash = 31 * hash + System.identityHashCode(mDrawableState);
+            hash = 31 * hash + (mIsSpace ? 1 : 0);
+            hash = 31 * hash + (mLabel == null ? 0 : mLabel.hashCode());
+            hash = 31 * hash + mLabelStyle;
+            hash = 31 * hash + System.identityHashCode(mIcon);
+            hash = 31 * hash + Arrays.hashCode(mIconState);
+            hash = 31 * hash + (mHintText == null ? 0 : mHintText.hashCode());
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Appearance)) return false;
+            final Appearance other = (Appearance) o;
+            return mHash == other.mHash
+                    && mWidth == other.mWidth
+                    && mHeight == other.mHeight
+                    && mDrawableState == other.mDrawableState
+                    && mIsSpace == other.mIsSpace
+                    && mLabelStyle == other.mLabelStyle
+                    && mIcon == other.mIcon
+                    && Arrays.equals(mIconState, other.mIconState)
+                    && textEquals(mLabel, other.mLabel)
+                    && textEquals(mHintText, other.mHintText);
+        }
+
+        private static boolean textEquals(CharSequence a, CharSequence b) {
+            if (a == null || b == null) return a == b;
+            return a.toString().equals(b.toString());
+        }
+
+        /**
+         * A copy which can be stored in the cache, while this instance is reused for lookups.
+         */
+        Appearance copy() {
+            Appearance copy = new Appearance();
+            copy.mWidth = mWidth;
+            copy.mHeight = mHeight;
+            copy.mDrawableState = mDrawableState;
+            copy.mIsSpace = mIsSpace;
+            copy.mLabel = mLabel == null ? null : mLabel.toString();
+            copy.mLabelStyle = mLabelStyle;
+            copy.mIcon = mIcon;
+            copy.mIconState = mIconState == null ? null : mIconState.clone();
+            copy.mHintText = mHintText == null ? null : mHintText.toString();
+            copy.mHash = mHash;
+            return copy;
+        }
+    }
+
+    private final LinkedHashMap<Appearance, Bitmap> mBitmaps = new LinkedHashMap<Appearance, Bitmap>(64, 0.75f, true);
+    private final int mMaxBytes;
+    private int mBytes;
+
+    private int mHits;
+    private int mMisses;
+
+    KeyRenderCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the rendered key, or null if it was not rendered yet.
+     */
+    Bitmap get(Appearance appearance) {
+        final Bitmap bitmap = mBitmaps.get(appearance);
+        if (bitmap == null) mMisses++;
+        else mHits++;
+        return bitmap;
+    }
+
+    /**
+     * Allocates a transparent bitmap for the given appearance, which the caller should render the key into.
+     *
+     * @return the new bitmap, or null if the key can not be cached (too large, or out of memory).
+     */
+    Bitmap create(Appearance appearance) {
+        final int bytes = getBytesCount(appearance.mWidth, appearance.mHeight);
+        if (bytes <= 0 || bytes > mMaxBytes) return null;
+        evict(mMaxBytes - bytes);
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(appearance.mWidth, appearance.mHeight, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Not enough memory to render a key. Clearing the cache.");
+            clear();
+            return null;
+        }
+        mBitmaps.put(appearance.copy(), bitmap);
+        mBytes += bytes;
+        return bitmap;
+    }
+
+    /**
+     * Evicts least recently drawn keys until the cache takes at most the given number of bytes.
+     * Evicted bitmaps are not recycled: a display-list may still be referencing them.
+     */
+    private void evict(int maxBytes) {
+        final Iterator<Map.Entry<Appearance, Bitmap>> iterator = mBitmaps.entrySet().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            final Appearance evicted = iterator.next().getKey();
+            iterator.remove();
+            mBytes -= getBytesCount(evicted.mWidth, evicted.mHeight);
+        }
+    }
+
+    void clear() {
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    private static int getBytesCount(int width, int height) {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    int getKeysCount() {
+        return mBitmaps.size();
+    }
+
+    int getBytesCount() {
+        return mBytes;
+    }
+
+    int getHits() {
+        return mHits;
+    }
+
+    int getMisses() {
+        return mMisses;
+    }
+}
@@ -17,12 +17,14 @@
 package com.anysoftkeyboard.keyboards.views;
 
 import android.content.res.Resources;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.view.MotionEvent;
 
 import com.anysoftkeyboard.keyboards.AnyKeyboard.AnyKey;
 import com.anysoftkeyboard.keyboards.Keyboard.Key;
 import com.anysoftkeyboard.keyboards.views.AnyKeyboardBaseView.UIHandler;
+import com.anysoftkeyboard.ui.dev.TypingLatency;
 import com.menny.android.anysoftkeyboard.AnyApplication;
 
 public class PointerTracker {
@@ -275,6 +277,7 @@ public class PointerTracker {
     }
 
     public void onDownEvent(int x, int y, long eventTime) {
+        final long probe = TypingLatency.start();
         debugLog("onDownEvent:", x, y);
         int keyIndex = mKeyState.onDownKey(x, y, eventTime);
         mKeyboardLayoutHasBeenChanged = false;
@@ -303,6 +306,7 @@ public class PointerTracker {
             startLongPressTimer(keyIndex);
         }
         showKeyPreviewAndUpdateKey(keyIndex);
+        TypingLatency.end(TypingLatency.STAGE_POINTER_DOWN, probe);
     }
 
     public void onMoveEvent(int x, int y, long eventTime) {
@@ -366,6 +370,7 @@ public class PointerTracker {
     }
 
     public void onUpEvent(int x, int y, long eventTime) {
+        final long probe = TypingLatency.start();
         debugLog("onUpEvent  :", x, y);
         mHandler.cancelKeyTimers();
         mHandler.cancelPopupPreview();
@@ -382,10 +387,12 @@ public class PointerTracker {
         }
         if (!mIsRepeatableKey) {
             detectAndSendKey(keyIndex, x, y, eventTime);
+            TypingLatency.record(TypingLatency.STAGE_TOUCH_UP_TO_HANDLED, (SystemClock.uptimeMillis() - eventTime) * 1000);
         }
 
         if (isValidKeyIndex(keyIndex))
             mProxy.invalidateKey(mKeys[keyIndex]);
+        TypingLatency.end(TypingLatency.STAGE_POINTER_UP, probe);
     }
 
     public void onCancelEvent(int x, int y, long eventTime) {
@@ -480,6 +487,7 @@ public class PointerTracker {
     }
 
     private void detectAndSendKey(int index, int x, int y, long eventTime) {
+        final long probe = TypingLatency.start();
         final OnKeyboardActionListener listener = mListener;
         final Key key = getKey(index);
 
@@ -526,6 +534,7 @@ public class PointerTracker {
             mLastSentIndex = index;
             mLastTapTime = eventTime;
         }
+        TypingLatency.end(TypingLatency.STAGE_DETECT_AND_SEND_KEY, probe);
     }
 
     /**
@@ -39,9 +39,10 @@ class ProximityKeyDetector extends KeyDetector {
         int primaryIndex = AnyKeyboardBaseView.NOT_A_KEY;
         int closestKey = AnyKeyboardBaseView.NOT_A_KEY;
         int closestKeyDist = mProximityThresholdSquare + 1;
-        int[] distances = mDistances;
-        Arrays.fill(distances, Integer.MAX_VALUE);
-        int[] nearestKeyIndices = mKeyboard.getNearestKeys(touchX, touchY);
+        final int[] distances = mDistances;
+        //how many slots in distances (and allKeys) are used
+        int nearbyCount = 0;
+        final int[] nearestKeyIndices = mKeyboard.getNearestKeys(touchX, touchY);
         final int keyCount = nearestKeyIndices.length;
         for (int i = 0; i < keyCount; i++) {
             final Key key = keys[nearestKeyIndices[i]];
@@ -56,8 +57,6 @@ class ProximityKeyDetector extends KeyDetector {
                     && (dist = key.squaredDistanceFrom(touchX, touchY)) < mProximityThresholdSquare)
                     || isInside)
                     && key.codes[0] > 32) {
-                // Find insertion point
-                final int nCodes = key.codes.length;
                 if (dist < closestKeyDist) {
                     closestKeyDist = dist;
                     closestKey = nearestKeyIndices[i];
@@ -65,18 +64,22 @@ class ProximityKeyDetector extends KeyDetector {
 
                 if (allKeys == null) continue;
 
-                for (int j = 0; j < distances.length; j++) {
-                    if (distances[j] > dist) {
-                        // Make space for nCodes codes
-                        System.arraycopy(distances, j, distances, j + nCodes,
-                                distances.length - j - nCodes);
-                        System.arraycopy(allKeys, j, allKeys, j + nCodes,
-                                allKeys.length - j - nCodes);
-                        System.arraycopy(key.codes, 0, allKeys, j, nCodes);
-                        Arrays.fill(distances, j, j + nCodes, dist);
-                        break;
-                    }
+                // Find insertion point, only within the used slots
+                int j = 0;
+                while (j < nearbyCount && distances[j] <= dist) {
+                    j++;
                 }
+                if (j >= MAX_NEARBY_KEYS) continue;
+                final int nCodes = Math.min(key.codes.length, MAX_NEARBY_KEYS - j);
+                // Make space for nCodes codes, dropping whatever is pushed out of the buffer
+                final int moved = Math.min(nearbyCount - j, MAX_NEARBY_KEYS - j - nCodes);
+                if (moved > 0) {
+                    System.arraycopy(distances, j, distances, j + nCodes, moved);
+                    System.arraycopy(allKeys, j, allKeys, j + nCodes, moved);
+                }
+                System.arraycopy(key.codes, 0, allKeys, j, nCodes);
+                Arrays.fill(distances, j, j + nCodes, dist);
+                nearbyCount = Math.min(MAX_NEARBY_KEYS, nearbyCount + nCodes);
             }
         }
         if (primaryIndex == AnyKeyboardBaseView.NOT_A_KEY) {
@@ -20,12 +20,17 @@ import android.annotation.TargetApi;
 import android.os.Build;
 import android.service.textservice.SpellCheckerService;
 import android.text.TextUtils;
+import android.view.textservice.SentenceSuggestionsInfo;
 import android.view.textservice.SuggestionsInfo;
 import android.view.textservice.TextInfo;
 
+import com.anysoftkeyboard.WordComposer;
 import com.anysoftkeyboard.utils.Log;
 import com.menny.android.anysoftkeyboard.FeaturesSet;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 /**
  * Service for spell checking, using ASK dictionaries and mechanisms.
  */
@@ -35,6 +40,12 @@ public class AnySpellCheckerService extends SpellCheckerService {
     static final boolean DBG = FeaturesSet.DEBUG_LOG;
     static final String[] EMPTY_STRING_ARRAY = new String[0];
 
+    private static final double SUGGESTION_THRESHOLD = 0.1;
+    private static final double LIKELY_THRESHOLD = 0.15;
+    private static final int MAX_CACHED_RESULTS_PER_SESSION = 512;
+
+    //locale -> the dictionaries shared by all the sessions of that locale
+    private final HashMap<String, SpellCheckerDictionaries> mDictionaries = new HashMap<>();
 
     @Override
     public void onCreate() {
@@ -46,17 +57,69 @@ public class AnySpellCheckerService extends SpellCheckerService {
         return new AnySpellCheckerSession();
     }
 
-    private static SuggestionsInfo getNotInDictEmptySuggestions() {
-        return new SuggestionsInfo(0, EMPTY_STRING_ARRAY);
+    @Override
+    public void onDestroy() {
+        synchronized (mDictionaries) {
+            for (SpellCheckerDictionaries dictionaries : mDictionaries.values())
+                dictionaries.close();
+            mDictionaries.clear();
+        }
+        super.onDestroy();
     }
 
-    private static SuggestionsInfo getInDictEmptySuggestions() {
-        return new SuggestionsInfo(
-                SuggestionsInfo.RESULT_ATTR_IN_THE_DICTIONARY,
-                EMPTY_STRING_ARRAY);
+    private SpellCheckerDictionaries acquireDictionaries(String locale) {
+        synchronized (mDictionaries) {
+            SpellCheckerDictionaries dictionaries = mDictionaries.get(locale);
+            if (dictionaries == null) {
+                Log.d(TAG, "Creating spell checker dictionaries for locale %s", locale);
+                dictionaries = SpellCheckerDictionaries.create(getApplicationContext(), locale);
+                mDictionaries.put(locale, dictionaries);
+            }
+            dictionaries.mSessionsCount++;
+            return dictionaries;
+        }
+    }
+
+    private void releaseDictionaries(SpellCheckerDictionaries dictionaries) {
+        synchronized (mDictionaries) {
+            dictionaries.mSessionsCount--;
+            if (dictionaries.mSessionsCount > 0) return;
+            Log.d(TAG, "No more sessions for locale %s. Closing its dictionaries.", dictionaries.getLocale());
+            mDictionaries.remove(dictionaries.getLocale());
+            dictionaries.close();
+        }
     }
 
-    private static class AnySpellCheckerSession extends Session {
+    /**
+     * Checks a single word, which was not filtered out, in the dictionaries.
+     */
+    static SpellingResultsCache.Result lookUp(SpellCheckerDictionaries dictionaries, String word, int suggestionsLimit) {
+        if (dictionaries.isValidWord(word))
+            return new SpellingResultsCache.Result(SuggestionsInfo.RESULT_ATTR_IN_THE_DICTIONARY, EMPTY_STRING_ARRAY, suggestionsLimit);
+        if (word.length() >= WordComposer.MAX_WORD_LENGTH)
+            return new SpellingResultsCache.Result(0, EMPTY_STRING_ARRAY, suggestionsLimit);
+
+        WordComposer composer = new WordComposer();
+        for (int i = 0; i < word.length(); i++) {
+            final char c = word.charAt(i);
+            composer.add(c, new int[]{Character.toLowerCase(c)});
+        }
+        SuggestionsGatherer gatherer = new SuggestionsGatherer(word, SUGGESTION_THRESHOLD, LIKELY_THRESHOLD, suggestionsLimit);
+        dictionaries.getWords(composer, gatherer);
+        final SuggestionsGatherer.Result gathered = gatherer.getResults(0);
+        final int attributes = SuggestionsInfo.RESULT_ATTR_LOOKS_LIKE_TYPO |
+                (gathered.mHasLikelySuggestions ? SuggestionsInfo.RESULT_ATTR_HAS_RECOMMENDED_SUGGESTIONS : 0);
+        return new SpellingResultsCache.Result(attributes,
+                gathered.mSuggestions == null ? EMPTY_STRING_ARRAY : gathered.mSuggestions, suggestionsLimit);
+    }
+
+    private static SuggestionsInfo getNotInDictEmptySuggestions() {
+        return new SuggestionsInfo(0, EMPTY_STRING_ARRAY);
+    }
+
+    private class AnySpellCheckerSession extends Session {
+        private final SpellingResultsCache mResultsCache = new SpellingResultsCache(MAX_CACHED_RESULTS_PER_SESSION);
+        private volatile SpellCheckerDictionaries mSessionDictionaries;
 
         AnySpellCheckerSession() {
         }
@@ -114,18 +177,41 @@ public class AnySpellCheckerService extends SpellCheckerService {
         @Override
         public SuggestionsInfo onGetSuggestions(final TextInfo textInfo,
                                                 final int suggestionsLimit) {
+            return onGetSuggestionsMultiple(new TextInfo[]{textInfo}, suggestionsLimit, false)[0];
+        }
 
+        /**
+         * Checks all the words, answering from the session's cache where possible, and looking up each
+         * distinct word once.
+         */
+        @Override
+        public SuggestionsInfo[] onGetSuggestionsMultiple(final TextInfo[] textInfos,
+                                                          final int suggestionsLimit, final boolean sequentialWords) {
+            final SuggestionsInfo[] results = new SuggestionsInfo[textInfos.length];
+            final SpellCheckerDictionaries dictionaries = mSessionDictionaries;
+            final int version = dictionaries == null ? 0 : dictionaries.getVersion();
+            for (int i = 0; i < textInfos.length; i++) {
+                results[i] = getSuggestions(dictionaries, version, textInfos[i].getText(), suggestionsLimit);
+                results[i].setCookieAndSequence(textInfos[i].getCookie(), textInfos[i].getSequence());
+            }
+            return results;
+        }
+
+        private SuggestionsInfo getSuggestions(SpellCheckerDictionaries dictionaries, int version, String text, int suggestionsLimit) {
             try {
-                final String text = textInfo.getText();
                 final boolean shouldFilterOut = shouldFilterOut(text);
 
-                Log.d(TAG, "onGetSuggestions for '" + text
-                        + "'. Should filter out? " + shouldFilterOut);
+                if (DBG) Log.d(TAG, "onGetSuggestions for '%s'. Should filter out? %s", text, shouldFilterOut);
+
+                if (shouldFilterOut || dictionaries == null)
+                    return getNotInDictEmptySuggestions();
 
-                if (!shouldFilterOut) {
-                    //TODO: let's see if the word is in my dictionaries
+                SpellingResultsCache.Result result = mResultsCache.get(text, suggestionsLimit, version);
+                if (result == null) {
+                    result = lookUp(dictionaries, text, suggestionsLimit);
+                    mResultsCache.put(text, version, result);
                 }
-                return getNotInDictEmptySuggestions();
+                return new SuggestionsInfo(result.mAttributes, result.mSuggestions);
             } catch (RuntimeException e) {
                 Log.e(TAG, "Exception caught in ASK SpellChecker!");
                 e.printStackTrace();
@@ -137,8 +223,66 @@ public class AnySpellCheckerService extends SpellCheckerService {
             }
         }
 
+        /**
+         * Splits each sentence into words, and checks all the words of all the sentences in a single batch.
+         */
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        @Override
+        public SentenceSuggestionsInfo[] onGetSentenceSuggestionsMultiple(final TextInfo[] textInfos,
+                                                                          final int suggestionsLimit) {
+            final ArrayList<TextInfo> words = new ArrayList<>();
+            final ArrayList<Integer> offsets = new ArrayList<>();
+            final int[] wordsPerSentence = new int[textInfos.length];
+            for (int sentence = 0; sentence < textInfos.length; sentence++) {
+                final TextInfo textInfo = textInfos[sentence];
+                final String text = textInfo.getText();
+                int wordStart = -1;
+                for (int i = 0; i <= text.length(); i++) {
+                    final boolean inWord = i < text.length() && isWordCharacter(text.charAt(i));
+                    if (inWord && wordStart < 0) {
+                        wordStart = i;
+                    } else if (!inWord && wordStart >= 0) {
+                        words.add(new TextInfo(text.substring(wordStart, i), textInfo.getCookie(), textInfo.getSequence()));
+                        offsets.add(wordStart);
+                        wordsPerSentence[sentence]++;
+                        wordStart = -1;
+                    }
+                }
+            }
+
+            final SuggestionsInfo[] wordsResults = onGetSuggestionsMultiple(words.toArray(new TextInfo[words.size()]), suggestionsLimit, true);
+            final SentenceSuggestionsInfo[] results = new SentenceSuggestionsInfo[textInfos.length];
+            int wordIndex = 0;
+            for (int sentence = 0; sentence < textInfos.length; sentence++) {
+                final int count = wordsPerSentence[sentence];
+                final SuggestionsInfo[] sentenceResults = new SuggestionsInfo[count];
+                final int[] sentenceOffsets = new int[count];
+                final int[] sentenceLengths = new int[count];
+                for (int i = 0; i < count; i++, wordIndex++) {
+                    sentenceResults[i] = wordsResults[wordIndex];
+                    sentenceOffsets[i] = offsets.get(wordIndex);
+                    sentenceLengths[i] = words.get(wordIndex).getText().length();
+                }
+                results[sentence] = new SentenceSuggestionsInfo(sentenceResults, sentenceOffsets, sentenceLengths);
+            }
+            return results;
+        }
+
+        private boolean isWordCharacter(char c) {
+            return Character.isLetter(c) || c == '\'';
+        }
+
         @Override
         public void onCreate() {
+            mSessionDictionaries = acquireDictionaries(getLocale());
+        }
+
+        @Override
+        public void onClose() {
+            final SpellCheckerDictionaries dictionaries = mSessionDictionaries;
+            mSessionDictionaries = null;
+            if (dictionaries != null) releaseDictionaries(dictionaries);
+            if (DBG) Log.d(TAG, "Session closed. Cache hits %d, misses %d.", mResultsCache.getHits(), mResultsCache.getMisses());
         }
     }
 }
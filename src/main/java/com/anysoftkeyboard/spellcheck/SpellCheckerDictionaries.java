@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.spellcheck;
+
+import android.content.Context;
+
+import com.anysoftkeyboard.WordComposer;
+import com.anysoftkeyboard.dictionaries.Dictionary;
+import com.anysoftkeyboard.dictionaries.DictionaryAddOnAndBuilder;
+import com.anysoftkeyboard.dictionaries.ExternalDictionaryFactory;
+import com.anysoftkeyboard.dictionaries.UserDictionary;
+import com.anysoftkeyboard.dictionaries.content.ContactsDictionary;
+import com.anysoftkeyboard.utils.Log;
+import com.menny.android.anysoftkeyboard.AnyApplication;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A read-only view of a locale's main, user and contacts dictionaries, shared by all the spell checker
+ * sessions of that locale. These are not the keyboard's dictionaries: the keyboard's Suggest is not reentrant.
+ * <p/>
+ * Many binder threads may look up words at the same time. Checking a word runs in parallel, since the
+ * dictionaries' validity checks are reentrant. Suggestions from the main dictionary are serialized,
+ * since it has a single set of lookup buffers (the other dictionaries serialize their lookups by themselves).
+ * Closing waits for the running lookups.
+ */
+final class SpellCheckerDictionaries {
+    private static final String TAG = "ASK_SPELL_DICTS";
+
+    //loading is done serially, so several sessions starting together will not load in parallel
+    private static ExecutorService msLoader;
+
+    private final String mLocale;
+    private final Dictionary mMainDictionary;
+    //main first
+    private final Dictionary[] mDictionaries;
+    private final Object mMainDictionaryLookupLock = new Object();
+    private final ReentrantReadWriteLock mCloseLock = new ReentrantReadWriteLock();
+    private boolean mClosed = false;
+    //the number of sessions using these dictionaries, guarded by the service.
+    int mSessionsCount = 0;
+
+    SpellCheckerDictionaries(String locale, Dictionary mainDictionary, Dictionary... otherDictionaries) {
+        mLocale = locale;
+        mMainDictionary = mainDictionary;
+        int count = mainDictionary != null ? 1 : 0;
+        for (Dictionary dictionary : otherDictionaries)
+            if (dictionary != null) count++;
+        mDictionaries = new Dictionary[count];
+        count = 0;
+        if (mainDictionary != null) mDictionaries[count++] = mainDictionary;
+        for (Dictionary dictionary : otherDictionaries)
+            if (dictionary != null) mDictionaries[count++] = dictionary;
+    }
+
+    /**
+     * Creates the dictionaries of the given locale (say, "en_US" or "en"), and loads them on a background thread.
+     */
+    static SpellCheckerDictionaries create(Context context, String locale) {
+        DictionaryAddOnAndBuilder builder = ExternalDictionaryFactory.getDictionaryBuilderByLocale(locale, context);
+        final int languageSeparator = locale.indexOf('_');
+        if (builder == null && languageSeparator > 0)
+            builder = ExternalDictionaryFactory.getDictionaryBuilderByLocale(locale.substring(0, languageSeparator), context);
+
+        Dictionary mainDictionary = null;
+        if (builder == null) {
+            Log.w(TAG, "There is no dictionary for locale %s. Only the user's words will be checked.", locale);
+        } else {
+            try {
+                mainDictionary = builder.createDictionary();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to create the dictionary of locale %s! Error: %s", locale, e.getMessage());
+            }
+        }
+        final String dictionariesLocale = builder != null ? builder.getLanguage() : locale;
+        Dictionary userDictionary = new UserDictionary(context, dictionariesLocale);
+        Dictionary contactsDictionary = AnyApplication.getConfig().useContactsDictionary() ?
+                new ContactsDictionary(context) : null;
+
+        final SpellCheckerDictionaries dictionaries = new SpellCheckerDictionaries(locale, mainDictionary, userDictionary, contactsDictionary);
+        getLoader().execute(new Runnable() {
+            @Override
+            public void run() {
+                dictionaries.load();
+            }
+        });
+        return dictionaries;
+    }
+
+    private static synchronized ExecutorService getLoader() {
+        if (msLoader == null) {
+            msLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ASK spell checker loader");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return msLoader;
+    }
+
+    void load() {
+        for (Dictionary dictionary : mDictionaries) {
+            //closing the dictionaries also stops their loading
+            if (dictionary.isClosed()) return;
+            final long startTime = System.currentTimeMillis();
+            dictionary.loadDictionary();
+            Log.d(TAG, "Loaded %s of locale %s in %d ms.", dictionary.getDictionaryName(), mLocale, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    String getLocale() {
+        return mLocale;
+    }
+
+    /**
+     * @return true if any of the dictionaries has the word. Words which were capitalized because they start
+     * a sentence are looked up in lower-case too.
+     */
+    boolean isValidWord(String word) {
+        mCloseLock.readLock().lock();
+        try {
+            if (mClosed) return false;
+            if (isValidInAny(word)) return true;
+            if (word.length() > 0 && Character.isUpperCase(word.charAt(0))) {
+                final String lowerCase = Character.toLowerCase(word.charAt(0)) + word.substring(1);
+                return isValidInAny(lowerCase);
+            }
+            return false;
+        } finally {
+            mCloseLock.readLock().unlock();
+        }
+    }
+
+    private boolean isValidInAny(String word) {
+        for (Dictionary dictionary : mDictionaries) {
+            if (dictionary.isValidWord(word)) return true;
+        }
+        return false;
+    }
+
+    void getWords(WordComposer composer, Dictionary.WordCallback callback) {
+        mCloseLock.readLock().lock();
+        try {
+            if (mClosed) return;
+            for (Dictionary dictionary : mDictionaries) {
+                if (dictionary == mMainDictionary) {
+                    synchronized (mMainDictionaryLookupLock) {
+                        dictionary.getWords(composer, callback);
+                    }
+                } else {
+                    dictionary.getWords(composer, callback);
+                }
+            }
+        } finally {
+            mCloseLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a number which changes whenever the words in any of the dictionaries change.
+     */
+    int getVersion() {
+        int version = 0;
+        for (Dictionary dictionary : mDictionaries)
+            version += dictionary.getVersion();
+        return version;
+    }
+
+    void close() {
+        mCloseLock.writeLock().lock();
+        try {
+            mClosed = true;
+            for (Dictionary dictionary : mDictionaries)
+                dictionary.close();
+        } finally {
+            mCloseLock.writeLock().unlock();
+        }
+    }
+}
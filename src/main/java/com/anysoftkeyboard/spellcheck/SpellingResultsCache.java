@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.spellcheck;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of a spell checker session's results, keyed by the checked word.
+ * The framework checks every word on screen, again and again while the user scrolls, so most of the
+ * lookups are answered here. The cache is bound to the dictionaries' version, and all the results are
+ * dropped when it changes.
+ * <p/>
+ * Binder threads may use the cache concurrently.
+ */
+final class SpellingResultsCache {
+    static final class Result {
+        final int mAttributes;
+        final String[] mSuggestions;
+        final int mSuggestionsLimit;
+
+        Result(int attributes, String[] suggestions, int suggestionsLimit) {
+            mAttributes = attributes;
+            mSuggestions = suggestions;
+            mSuggestionsLimit = suggestionsLimit;
+        }
+    }
+
+    private final LinkedHashMap<String, Result> mResults;
+    private int mVersion;
+    private int mHits;
+    private int mMisses;
+
+    SpellingResultsCache(final int maxResults) {
+        mResults = new LinkedHashMap<String, Result>(maxResults, 0.75f, true/*access order*/) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > maxResults;
+            }
+        };
+    }
+
+    /**
+     * @param version the current version of the dictionaries. If it differs from the cached results' version,
+     *                all the results are dropped.
+     * @return the cached result of the word, or null if there is no such result with the given suggestions limit.
+     */
+    synchronized Result get(String word, int suggestionsLimit, int version) {
+        setVersion(version);
+        final Result result = mResults.get(word);
+        if (result == null || result.mSuggestionsLimit != suggestionsLimit) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return result;
+    }
+
+    /**
+     * @param version the version of the dictionaries the result was looked up in (the one given to
+     *                {@link #get(String, int, int)} before the lookup).
+     */
+    synchronized void put(String word, int version, Result result) {
+        //the dictionaries may have changed while the word was looked up
+        if (mVersion == version)
+            mResults.put(word, result);
+    }
+
+    private void setVersion(int version) {
+        if (version == mVersion) return;
+        mVersion = version;
+        mResults.clear();
+    }
+
+    synchronized int getSize() {
+        return mResults.size();
+    }
+
+    synchronized int getHits() {
+        return mHits;
+    }
+
+    synchronized int getMisses() {
+        return mMisses;
+    }
+}
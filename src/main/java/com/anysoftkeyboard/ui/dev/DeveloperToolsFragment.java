@@ -78,6 +78,8 @@ public class DeveloperToolsFragment extends Fragment implements AsyncTaskWithPro
         view.findViewById(R.id.dev_share_trace_file).setOnClickListener(this);
         view.findViewById(R.id.show_logcat_button).setOnClickListener(this);
         view.findViewById(R.id.share_logcat_button).setOnClickListener(this);
+        view.findViewById(R.id.reset_typing_latency_button).setOnClickListener(this);
+        view.findViewById(R.id.share_typing_latency_button).setOnClickListener(this);
     }
 
     @Override
@@ -130,6 +132,12 @@ public class DeveloperToolsFragment extends Fragment implements AsyncTaskWithPro
             case R.id.share_logcat_button:
                 onUserClickedShareLogCat();
                 break;
+            case R.id.reset_typing_latency_button:
+                TypingLatency.reset();
+                break;
+            case R.id.share_typing_latency_button:
+                onUserClickedShareTypingLatency();
+                break;
         }
     }
 
@@ -239,6 +247,41 @@ public class DeveloperToolsFragment extends Fragment implements AsyncTaskWithPro
                 sb.toString());
     }
 
+    private void onUserClickedShareTypingLatency() {
+        DeveloperAsyncTask<Void, Void, File> task = new DeveloperAsyncTask<Void, Void, File>(
+                this) {
+
+            @Override
+            protected File doAsyncTask(Void[] params) throws Exception {
+                return DeveloperUtils.createTypingLatencyReport();
+            }
+
+            @Override
+            protected void applyResults(File result,
+                                        Exception backgroundException) {
+                Activity activity = getActivity();
+                if (activity == null)
+                    return;
+
+                if (backgroundException != null) {
+                    Toast.makeText(activity.getApplicationContext(),
+                            "Failed to create typing latency file: " + backgroundException.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                } else {
+                    StringBuilder sb = new StringBuilder("Hi! Here are the typing latency histograms for ");
+                    sb.append(DeveloperUtils.getAppDetails(activity.getApplicationContext()));
+                    sb.append(DeveloperUtils.NEW_LINE);
+                    sb.append(DeveloperUtils.getSysInfo());
+                    sb.append(DeveloperUtils.NEW_LINE);
+                    sb.append(TypingLatency.getReport());
+
+                    shareFile(result, "AnySoftKeyboard Typing Latency", sb.toString());
+                }
+            }
+        };
+        task.execute();
+    }
+
     private void shareFile(File fileToShare, String title, String message) {
         Intent sendMail = new Intent();
         sendMail.setAction(Intent.ACTION_SEND);
@@ -29,7 +29,10 @@ import com.menny.android.anysoftkeyboard.AnyApplication;
 import com.menny.android.anysoftkeyboard.R;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class DeveloperUtils {
 
@@ -38,6 +41,7 @@ public class DeveloperUtils {
     private static final String KEY_SDCARD_TRACING_ENABLED = "KEY_SDCARD_TRACING_ENABLED";
     private static final String ASK_TRACE_FILENAME = "AnySoftKeyboard_tracing.trace";
     private static final String ASK_MEM_DUMP_FILENAME = "ask_mem_dump.hprof";
+    private static final String ASK_TYPING_LATENCY_FILENAME = "ask_typing_latency.csv";
 
     public static File createMemoryDump() throws IOException,
             UnsupportedOperationException {
@@ -48,6 +52,18 @@ public class DeveloperUtils {
         return target;
     }
 
+    public static File createTypingLatencyReport() throws IOException {
+        File extFolder = Environment.getExternalStorageDirectory();
+        File target = new File(extFolder, ASK_TYPING_LATENCY_FILENAME);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(target, false), "UTF-8");
+        try {
+            writer.write(TypingLatency.getReport());
+        } finally {
+            writer.close();
+        }
+        return target;
+    }
+
     public static boolean hasTracingRequested(Context applicationContext) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(applicationContext);
         return prefs.getBoolean(KEY_SDCARD_TRACING_ENABLED, false);
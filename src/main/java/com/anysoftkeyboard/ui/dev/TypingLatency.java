@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.ui.dev;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Timing probes along the typing path: from the touch event reaching the keyboard view, to the character
+ * being committed and the suggestions shown.
+ * Each stage has a histogram of its durations, in microseconds. The histograms are allocated once, so
+ * recording a duration does not allocate, and costs about as much as reading the clock.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     final long probe = TypingLatency.start();
+ *     ...
+ *     TypingLatency.end(TypingLatency.STAGE_ON_KEY, probe);
+ * </pre>
+ */
+public final class TypingLatency {
+    public static final int STAGE_POINTER_DOWN = 0;
+    public static final int STAGE_POINTER_UP = 1;
+    public static final int STAGE_DETECT_AND_SEND_KEY = 2;
+    public static final int STAGE_ON_KEY = 3;
+    public static final int STAGE_HANDLE_CHARACTER = 4;
+    public static final int STAGE_INPUT_CONNECTION = 5;
+    public static final int STAGE_SUGGESTIONS_DELAY = 6;
+    public static final int STAGE_SUGGESTIONS_SHOWN = 7;
+    //from the time the finger was lifted (as reported in the MotionEvent) till the key was handled
+    public static final int STAGE_TOUCH_UP_TO_HANDLED = 8;
+
+    private static final String[] STAGE_NAMES = new String[]{
+            "PointerTracker.onDownEvent",
+            "PointerTracker.onUpEvent",
+            "PointerTracker.detectAndSendKey",
+            "AnySoftKeyboard.onKey",
+            "AnySoftKeyboard.handleCharacter",
+            "InputConnection",
+            "Suggestions delay",
+            "Suggestions request to shown",
+            "Touch up to key handled",
+    };
+    static final int STAGES_COUNT = STAGE_NAMES.length;
+
+    /*
+     * Durations under 16us get a bucket each, longer durations get 8 buckets per power of two, so
+     * a bucket's width is at most 12.5% of its values. The last bucket holds everything over ~134 seconds.
+     */
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int LINEAR_BITS = 4;
+    private static final int SUB_BUCKETS_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    private static final int MAX_HIGHEST_BIT = 26;
+    static final int BUCKETS_COUNT = LINEAR_BUCKETS + (MAX_HIGHEST_BIT - LINEAR_BITS + 1) * SUB_BUCKETS;
+
+    private static final AtomicIntegerArray msBuckets = new AtomicIntegerArray(STAGES_COUNT * BUCKETS_COUNT);
+
+    private TypingLatency() {
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void end(int stage, long startNanos) {
+        record(stage, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public static void record(int stage, long durationMicros) {
+        msBuckets.incrementAndGet(stage * BUCKETS_COUNT + getBucket(durationMicros));
+    }
+
+    public static void reset() {
+        for (int i = 0; i < msBuckets.length(); i++)
+            msBuckets.set(i, 0);
+    }
+
+    static int getBucket(long durationMicros) {
+        if (durationMicros < LINEAR_BUCKETS)
+            return durationMicros < 0 ? 0 : (int) durationMicros;
+        final int highestBit = 63 - Long.numberOfLeadingZeros(durationMicros);
+        if (highestBit > MAX_HIGHEST_BIT) return BUCKETS_COUNT - 1;
+        final int subBucket = (int) (durationMicros >> (highestBit - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (highestBit - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the longest duration (in microseconds) which falls into the given bucket.
+     */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        final int highestBit = LINEAR_BITS + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+        final int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final int shift = highestBit - SUB_BUCKETS_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    public static int getCount(int stage) {
+        int count = 0;
+        final int offset = stage * BUCKETS_COUNT;
+        for (int i = 0; i < BUCKETS_COUNT; i++)
+            count += msBuckets.get(offset + i);
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 (exclusive) and 100 (inclusive).
+     * @return the duration (in microseconds) which the given percent of the stage's durations do not exceed,
+     * or 0 if nothing was recorded for the stage.
+     */
+    public static long getPercentile(int stage, double percentile) {
+        final int offset = stage * BUCKETS_COUNT;
+        int[] counts = new int[BUCKETS_COUNT];
+        int total = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            counts[i] = msBuckets.get(offset + i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+        final long rank = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) return getBucketUpperBound(i);
+        }
+        return getBucketUpperBound(BUCKETS_COUNT - 1);
+    }
+
+    /**
+     * @return a table of all the stages, with their samples count and percentiles (in microseconds).
+     */
+    public static String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("stage,count,p50_us,p95_us,p99_us,max_us").append(DeveloperUtils.NEW_LINE);
+        for (int stage = 0; stage < STAGES_COUNT; stage++) {
+            sb.append(STAGE_NAMES[stage]).append(',')
+                    .append(getCount(stage)).append(',')
+                    .append(getPercentile(stage, 50)).append(',')
+                    .append(getPercentile(stage, 95)).append(',')
+                    .append(getPercentile(stage, 99)).append(',')
+                    .append(getPercentile(stage, 100))
+                    .append(DeveloperUtils.NEW_LINE);
+        }
+        return sb.toString();
+    }
+}
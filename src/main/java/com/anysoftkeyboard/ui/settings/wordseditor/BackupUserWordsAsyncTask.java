@@ -19,10 +19,10 @@ package com.anysoftkeyboard.ui.settings.wordseditor;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.Environment;
-import android.provider.UserDictionary.Words;
 import android.text.TextUtils;
 import android.widget.Toast;
 
+import com.anysoftkeyboard.dictionaries.BTreeDictionary;
 import com.anysoftkeyboard.dictionaries.UserDictionary;
 import com.anysoftkeyboard.dictionaries.WordsCursor;
 import com.anysoftkeyboard.utils.Log;
@@ -39,8 +39,6 @@ final class BackupUserWordsAsyncTask extends UserWordsEditorAsyncTask {
 
     ArrayList<String> mLocalesToSave = new ArrayList<String>();
 
-    private String mLocale;
-    private UserDictionary mDictionary;
     private final Context mAppContext;
 
     BackupUserWordsAsyncTask(
@@ -79,41 +77,31 @@ final class BackupUserWordsAsyncTask extends UserWordsEditorAsyncTask {
 
         output.writeEntity("userwordlist");
         for (String locale : mLocalesToSave) {
-            mLocale = locale;
-            synchronized (mLocale) {
-                Log.d(TAG, "Building dictionary for locale " + mLocale);
-                publishProgress();
-                // waiting for dictionary to be ready.
-                try {
-                    mLocale.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
             Log.d(TAG, "Reading words from user dictionary locale " + locale);
-            WordsCursor wordsCursor = mDictionary.getWordsCursor();
-
-            output.writeEntity("wordlist").writeAttribute("locale", locale);
-            Cursor cursor = wordsCursor.getCursor();
-            cursor.moveToFirst();
-            final int wordIndex = cursor.getColumnIndex(Words.WORD);
-            final int freqIndex = cursor.getColumnIndex(Words.FREQUENCY);
-
-            while (!cursor.isAfterLast()) {
-                String word = cursor.getString(wordIndex).trim();
-                int freq = cursor.getInt(freqIndex);
-                // <w f="128">Facebook</w>
-                output.writeEntity("w")
-                        .writeAttribute("f", Integer.toString(freq))
-                        .writeText(word).endEntity();
-                Log.d(TAG, "Storing word '" + word + "' with freq " + freq);
-                cursor.moveToNext();
+            //reading straight from the storage, there is no need to load the words into memory
+            BTreeDictionary storage = UserDictionary.openStorage(mAppContext, locale);
+            WordsCursor wordsCursor = storage.getWordsCursor();
+            int wordsCount = 0;
+            try {
+                output.writeEntity("wordlist").writeAttribute("locale", locale);
+                Cursor cursor = wordsCursor.getCursor();
+                cursor.moveToFirst();
+                while (!cursor.isAfterLast()) {
+                    String word = wordsCursor.getCurrentWord().trim();
+                    int freq = wordsCursor.getCurrentWordFrequency();
+                    // <w f="128">Facebook</w>
+                    output.writeEntity("w")
+                            .writeAttribute("f", Integer.toString(freq))
+                            .writeText(word).endEntity();
+                    wordsCount++;
+                    cursor.moveToNext();
+                }
+                output.endEntity();// wordlist
+            } finally {
+                wordsCursor.close();
+                storage.close();
             }
-
-            wordsCursor.close();
-            mDictionary.close();
-
-            output.endEntity();// wordlist
+            Log.d(TAG, "Stored %d words of locale %s.", wordsCount, locale);
         }
 
         output.endEntity();// userwordlist
@@ -122,16 +110,6 @@ final class BackupUserWordsAsyncTask extends UserWordsEditorAsyncTask {
         return null;
     }
 
-    @Override
-    protected void onProgressUpdate(Void... values) {
-        super.onProgressUpdate(values);
-        synchronized (mLocale) {
-            mDictionary = new UserDictionary(mAppContext, mLocale);
-            mDictionary.loadDictionary();
-            mLocale.notifyAll();
-        }
-    }
-
     @Override
     protected void applyResults(Void result, Exception backgroundException) {
         UserDictionaryEditorFragment a = getOwner();
@@ -18,10 +18,10 @@ package com.anysoftkeyboard.ui.settings.wordseditor;
 
 import android.content.Context;
 import android.os.Environment;
-import android.text.TextUtils;
 import android.view.WindowManager.BadTokenException;
 import android.widget.Toast;
 
+import com.anysoftkeyboard.dictionaries.BTreeDictionary;
 import com.anysoftkeyboard.dictionaries.UserDictionary;
 import com.anysoftkeyboard.utils.Log;
 import com.menny.android.anysoftkeyboard.R;
@@ -30,8 +30,12 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -41,8 +45,6 @@ final class RestoreUserWordsAsyncTask extends UserWordsEditorAsyncTask {
 
     private final Context mAppContext;
     private final String mFilename;
-    private String mLocale;
-    private UserDictionary mDictionary;
 
     RestoreUserWordsAsyncTask(
             UserDictionaryEditorFragment callingFragment, String filename) {
@@ -60,90 +62,86 @@ final class RestoreUserWordsAsyncTask extends UserWordsEditorAsyncTask {
 
         SAXParserFactory factory = SAXParserFactory.newInstance();
         SAXParser parser = factory.newSAXParser();
-        parser.parse(new FileInputStream(new File(targetFolder, mFilename)),
-                new DefaultHandler() {
-                    private boolean inWord = false;
-                    private int freq = 1;
-                    private String word = "";
-
-                    @Override
-                    public void characters(char[] ch, int start, int length)
-                            throws SAXException {
-                        super.characters(ch, start, length);
-                        if (inWord) {
-                            word += new String(ch, start, length);
-                        }
-                    }
-
-                    @Override
-                    public void startElement(String uri, String localName,
-                                             String qName, Attributes attributes)
-                            throws SAXException {
-                        super.startElement(uri, localName, qName, attributes);
-                        if (localName.equals("w")) {
-                            inWord = true;
-                            word = "";
-                            freq = Integer.parseInt(attributes.getValue("f"));
+        InputStream input = new BufferedInputStream(new FileInputStream(new File(targetFolder, mFilename)));
+        try {
+            parser.parse(input,
+                    new DefaultHandler() {
+                        private boolean inWord = false;
+                        private int freq = 1;
+                        private final StringBuilder word = new StringBuilder(BTreeDictionary.MAX_WORD_LENGTH);
+                        private String locale;
+                        //the words of the current locale, which are written together when the locale ends.
+                        //Duplicates are disallowed, the last one wins.
+                        private final Map<String, Integer> words = new LinkedHashMap<>();
+
+                        @Override
+                        public void characters(char[] ch, int start, int length)
+                                throws SAXException {
+                            super.characters(ch, start, length);
+                            if (inWord) {
+                                word.append(ch, start, length);
+                            }
                         }
 
-                        if (localName.equals("wordlist")) {
-                            mLocale = attributes.getValue("locale");
-                            synchronized (mLocale) {
-                                Log.d(TAG, "Building dictionary for locale "
-                                        + mLocale);
-                                publishProgress();
-                                // waiting for dictionary to be ready.
-                                try {
-                                    mLocale.wait();
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
+                        @Override
+                        public void startElement(String uri, String localName,
+                                                 String qName, Attributes attributes)
+                                throws SAXException {
+                            super.startElement(uri, localName, qName, attributes);
+                            if (localName.equals("w")) {
+                                inWord = true;
+                                word.setLength(0);
+                                freq = Integer.parseInt(attributes.getValue("f"));
                             }
 
-                            Log.d(TAG, "Starting restore to locale " + mLocale);
+                            if (localName.equals("wordlist")) {
+                                locale = attributes.getValue("locale");
+                                words.clear();
+                            }
                         }
-                    }
-
-                    @Override
-                    public void endElement(String uri, String localName,
-                                           String qName) throws SAXException {
-                        if (inWord && localName.equals("w")) {
-                            if (!TextUtils.isEmpty(word)) {
-                                Log.d(TAG, "Restoring word '" + word
-                                        + "' with freq " + freq);
-                                // Disallow duplicates
-                                mDictionary.deleteWord(word);
-                                mDictionary.addWord(word, freq);
+
+                        @Override
+                        public void endElement(String uri, String localName,
+                                               String qName) throws SAXException {
+                            if (inWord && localName.equals("w")) {
+                                // Safeguard against adding long words, same as adding a word to a dictionary.
+                                if (word.length() > 0 && word.length() < BTreeDictionary.MAX_WORD_LENGTH) {
+                                    final String restoredWord = word.toString();
+                                    words.remove(restoredWord);
+                                    words.put(restoredWord, freq);
+                                }
+
+                                inWord = false;
                             }
 
-                            inWord = false;
+                            if (localName.equals("wordlist")) {
+                                restoreWords(locale, words);
+                                words.clear();
+                            }
+                            super.endElement(uri, localName, qName);
                         }
-                        super.endElement(uri, localName, qName);
-                    }
-                });
+                    });
+        } finally {
+            input.close();
+        }
 
         return null;
     }
 
-    @Override
-    protected void onProgressUpdate(Void... values) {
-        super.onProgressUpdate(values);
-        synchronized (mLocale) {
-            if (mDictionary != null) {
-                mDictionary.close();
-            }
-            mDictionary = new UserDictionary(mAppContext, mLocale);
-            mDictionary.loadDictionary();
-            mLocale.notifyAll();
+    private void restoreWords(String locale, Map<String, Integer> words) {
+        final long startTime = System.currentTimeMillis();
+        //writing straight into the storage, the keyboard's dictionary will reload once it notices the change
+        BTreeDictionary storage = UserDictionary.openStorage(mAppContext, locale);
+        try {
+            storage.replaceWordsInStorage(words);
+        } finally {
+            storage.close();
         }
+        Log.d(TAG, "Restored %d words to locale %s in %d ms.", words.size(), locale, System.currentTimeMillis() - startTime);
     }
 
     @Override
     protected void applyResults(Void result, Exception backgroundException) {
-        if (mDictionary != null) {
-            mDictionary.close();
-        }
-
         UserDictionaryEditorFragment activity = getOwner();
 
         try {
@@ -25,52 +25,107 @@ import com.menny.android.anysoftkeyboard.BuildConfig;
 import com.menny.android.anysoftkeyboard.FeaturesSet;
 
 import java.util.ArrayList;
-
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Logging facade. Verbose and debug logs are compiled out of release builds: the fixed-arity overloads do not
+ * allocate an array for their arguments, and formatting happens only if the log is enabled.
+ * On hot paths, check {@link FeaturesSet#DEBUG_LOG} at the call site, so the arguments are not even evaluated.
+ * <p/>
+ * In debug builds, the latest lines of each thread are kept in that thread's ring (which is written without locking),
+ * for the developer tools and crash reports.
+ */
 public class Log {
     private static final boolean DEBUG = FeaturesSet.DEBUG_LOG;
 
-    private static final StringBuilder msFormatBuilder = new StringBuilder(1024);
-    private static final java.util.Formatter msFormatter =  new java.util.Formatter(msFormatBuilder);
+    private static final int LINES_PER_THREAD = 128;
+    //above this many rings, the rings of dead threads are dropped, oldest first. Live threads' rings are always kept.
+    private static final int MAX_THREADS = 16;
+
+    private static final CopyOnWriteArrayList<ThreadLogRing> msRings = new CopyOnWriteArrayList<ThreadLogRing>();
+
+    private static final ThreadLocal<ThreadLogRing> msThreadRing = new ThreadLocal<ThreadLogRing>() {
+        @Override
+        protected ThreadLogRing initialValue() {
+            ThreadLogRing ring = new ThreadLogRing(LINES_PER_THREAD);
+            msRings.add(ring);
+            if (msRings.size() > MAX_THREADS) dropDeadThreadsRings();
+            return ring;
+        }
+    };
+
+    private static void dropDeadThreadsRings() {
+        //iterating over a snapshot, oldest first
+        for (ThreadLogRing ring : msRings) {
+            if (msRings.size() <= MAX_THREADS) return;
+            if (!ring.isOwnerAlive()) msRings.remove(ring);
+        }
+    }
 
-    private static final String[] msLogs = new String[FeaturesSet.DEBUG_LOG ? 225 : 0];
-    private static int msLogIndex = 0;
+    private static final class ThreadFormatter {
+        final StringBuilder mBuilder = new StringBuilder(1024);
+        final Formatter mFormatter = new Formatter(mBuilder);
+    }
 
-    private synchronized static void addLog(String level, String tag, String message) {
+    //a Formatter is not thread-safe, so each thread has its own
+    private static final ThreadLocal<ThreadFormatter> msThreadFormatter = new ThreadLocal<ThreadFormatter>() {
+        @Override
+        protected ThreadFormatter initialValue() {
+            return new ThreadFormatter();
+        }
+    };
+
+    private static String format(String text, Object... args) {
+        if (args == null) return text;
+        final ThreadFormatter formatter = msThreadFormatter.get();
+        formatter.mBuilder.setLength(0);
+        formatter.mFormatter.format(text, args);
+        return formatter.mBuilder.toString();
+    }
+
+    private static void addLog(String level, String tag, String message) {
         if (DEBUG) {
-            msLogs[msLogIndex] = System.currentTimeMillis() + "-" + level + "-[" + tag + "] " + message;
-            msLogIndex = (msLogIndex + 1) % msLogs.length;
+            msThreadRing.get().add(System.currentTimeMillis() + "-" + level + "-[" + tag + "] " + message);
         }
     }
 
-    private synchronized static void addLog(String level, String tag, String message, Throwable t) {
+    private static void addLog(String level, String tag, String message, Throwable t) {
         if (DEBUG) {
             addLog(level, tag, message);
             addLog(level, tag, getStackTrace(t));
         }
     }
 
+    /**
+     * @return the logged lines of all threads, newest first.
+     */
     @NonNull
-    public synchronized static ArrayList<String> getAllLogLinesList() {
-        ArrayList<String> lines = new ArrayList<String>(msLogs.length);
-        if (msLogs.length > 0) {
-            int index = msLogIndex;
-            do {
-                index--;
-                if (index == -1) index = msLogs.length - 1;
-                String logLine = msLogs[index];
-                if (logLine == null)
-                    break;
-                lines.add(msLogs[index]);
+    public static ArrayList<String> getAllLogLinesList() {
+        ArrayList<ThreadLogRing.Line> logLines = new ArrayList<ThreadLogRing.Line>();
+        for (ThreadLogRing ring : msRings) {
+            ring.collectInto(logLines);
+        }
+        Collections.sort(logLines, new Comparator<ThreadLogRing.Line>() {
+            @Override
+            public int compare(ThreadLogRing.Line lhs, ThreadLogRing.Line rhs) {
+                return lhs.mSequence < rhs.mSequence ? 1 : (lhs.mSequence == rhs.mSequence ? 0 : -1);
             }
-            while (index != msLogIndex);
+        });
+        ArrayList<String> lines = new ArrayList<String>(logLines.size());
+        for (ThreadLogRing.Line line : logLines) {
+            lines.add(line.mText);
         }
         return lines;
     }
 
     @NonNull
-    public synchronized static String getAllLogLines() {
+    public static String getAllLogLines() {
         if (DEBUG) {
-            ArrayList<String> lines = getAllLogLinesList();
+            List<String> lines = getAllLogLinesList();
             //now to build the string
             StringBuilder sb = new StringBuilder("Log contains " + lines.size() + " lines:");
             final String newline = DeveloperUtils.NEW_LINE;
@@ -91,13 +146,29 @@ public class Log {
 
     private static String LVL_V = "V";
 
+    private static void logV(String TAG, String msg) {
+        android.util.Log.v(TAG, msg);
+        addLog(LVL_V, TAG, msg);
+    }
+
+    public static void v(String TAG, String text) {
+        if (DEBUG) logV(TAG, text);
+    }
+
+    public static void v(String TAG, String text, Object arg) {
+        if (DEBUG) logV(TAG, format(text, arg));
+    }
+
+    public static void v(String TAG, String text, Object arg1, Object arg2) {
+        if (DEBUG) logV(TAG, format(text, arg1, arg2));
+    }
+
+    public static void v(String TAG, String text, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG) logV(TAG, format(text, arg1, arg2, arg3));
+    }
+
     public static void v(String TAG, String text, Object... args) {
-        if (DEBUG) {
-            String msg = args == null? text : msFormatter.format(text, args).toString();
-            msFormatBuilder.setLength(0);
-            android.util.Log.v(TAG, msg);
-            addLog(LVL_V, TAG, msg);
-        }
+        if (DEBUG) logV(TAG, format(text, args));
     }
 
     public static void v(String TAG, String text, Throwable t) {
@@ -109,20 +180,29 @@ public class Log {
 
     private static String LVL_D = "D";
 
+    private static void logD(String TAG, String msg) {
+        android.util.Log.d(TAG, msg);
+        addLog(LVL_D, TAG, msg);
+    }
+
     public static void d(String TAG, String text) {
-        if (DEBUG) {
-            android.util.Log.d(TAG, text);
-            addLog(LVL_D, TAG, text);
-        }
+        if (DEBUG) logD(TAG, text);
+    }
+
+    public static void d(String TAG, String text, Object arg) {
+        if (DEBUG) logD(TAG, format(text, arg));
+    }
+
+    public static void d(String TAG, String text, Object arg1, Object arg2) {
+        if (DEBUG) logD(TAG, format(text, arg1, arg2));
+    }
+
+    public static void d(String TAG, String text, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG) logD(TAG, format(text, arg1, arg2, arg3));
     }
 
     public static void d(String TAG, String text, Object... args) {
-        if (DEBUG) {
-            String msg = args == null? text : msFormatter.format(text, args).toString();
-            msFormatBuilder.setLength(0);
-            android.util.Log.d(TAG, msg);
-            addLog(LVL_D, TAG, msg);
-        }
+        if (DEBUG) logD(TAG, format(text, args));
     }
 
     public static void d(String TAG, String text, Throwable t) {
@@ -135,8 +215,7 @@ public class Log {
     private static String LVL_I = "I";
 
     public static void i(String TAG, String text, Object... args) {
-        String msg = args == null? text : msFormatter.format(text, args).toString();
-        msFormatBuilder.setLength(0);
+        String msg = format(text, args);
         android.util.Log.i(TAG, msg);
         addLog(LVL_I, TAG, msg);
     }
@@ -149,8 +228,7 @@ public class Log {
     private static String LVL_W = "W";
 
     public static void w(String TAG, String text, Object... args) {
-        String msg = args == null? text : msFormatter.format(text, args).toString();
-        msFormatBuilder.setLength(0);
+        String msg = format(text, args);
         android.util.Log.w(TAG, msg);
         addLog(LVL_W, TAG, msg);
     }
@@ -163,8 +241,7 @@ public class Log {
     private static String LVL_E = "E";
 
     public static void e(String TAG, String text, Object... args) {
-        String msg = args == null? text : msFormatter.format(text, args).toString();
-        msFormatBuilder.setLength(0);
+        String msg = format(text, args);
         android.util.Log.e(TAG, msg);
         addLog(LVL_E, TAG, msg);
     }
@@ -176,8 +253,7 @@ public class Log {
     }
 
     public static void w(String TAG, Throwable e, String text, Object... args) {
-        String msg = args == null? text : msFormatter.format(text, args).toString();
-        msFormatBuilder.setLength(0);
+        String msg = format(text, args);
         android.util.Log.e(TAG, msg, e);
         addLog(LVL_E, TAG, msg);
     }
@@ -186,8 +262,7 @@ public class Log {
 
     @TargetApi(8)
     public static void wtf(String TAG, String text, Object... args) {
-        String msg = args == null? text : msFormatter.format(text, args).toString();
-        msFormatBuilder.setLength(0);
+        String msg = format(text, args);
         addLog(LVL_WTF, TAG, msg);
         if (Build.VERSION.SDK_INT >= 8)
             android.util.Log.wtf(TAG, msg);
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2013 Menny Even-Danan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anysoftkeyboard.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The latest log lines of a single thread. Only the owning thread adds lines, so adding does not lock.
+ * Readers may run concurrently, and will see either the replaced line or the new one.
+ */
+final class ThreadLogRing {
+    //orders the lines of all the threads
+    private static final AtomicLong msSequence = new AtomicLong();
+
+    static final class Line {
+        final long mSequence;
+        final String mText;
+
+        Line(long sequence, String text) {
+            mSequence = sequence;
+            mText = text;
+        }
+    }
+
+    private final AtomicReferenceArray<Line> mLines;
+    private final WeakReference<Thread> mOwner;
+    //only accessed by the owning thread
+    private int mNextIndex;
+
+    /**
+     * Creates the ring of the calling thread.
+     */
+    ThreadLogRing(int capacity) {
+        mLines = new AtomicReferenceArray<Line>(capacity);
+        mOwner = new WeakReference<Thread>(Thread.currentThread());
+    }
+
+    boolean isOwnerAlive() {
+        final Thread owner = mOwner.get();
+        return owner != null && owner.isAlive();
+    }
+
+    void add(String text) {
+        mLines.lazySet(mNextIndex, new Line(msSequence.getAndIncrement(), text));
+        mNextIndex = (mNextIndex + 1) % mLines.length();
+    }
+
+    void collectInto(List<Line> lines) {
+        final int length = mLines.length();
+        for (int i = 0; i < length; i++) {
+            final Line line = mLines.get(i);
+            if (line != null) lines.add(line);
+        }
+    }
+}
@@ -58,7 +58,8 @@ public class XmlWriter {
     }
 
     public XmlWriter(File outputFile) throws IOException {
-        this(new FileWriter(outputFile), true, 0, true);
+        //the header declares utf-8, and buffering saves a system call per written piece
+        this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8")), true, 0, true);
     }
 
     /**
@@ -178,6 +179,7 @@ public class XmlWriter {
 
     // from XmlW
     static public String escapeXml(String str) {
+        if (!needsEscaping(str)) return str;
         str = replaceString(str, "&", "&amp;");
         str = replaceString(str, "<", "&lt;");
         str = replaceString(str, ">", "&gt;");
@@ -186,6 +188,20 @@ public class XmlWriter {
         return str;
     }
 
+    private static boolean needsEscaping(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            switch (str.charAt(i)) {
+                case '&':
+                case '<':
+                case '>':
+                case '"':
+                case '\'':
+                    return true;
+            }
+        }
+        return false;
+    }
+
     // from StringW
     static public String replaceString(String text, String repl, String with) {
         return replaceString(text, repl, with, -1);
@@ -0,0 +1,218 @@
+package com.anysoftkeyboard;
+
+import android.text.Editable;
+import android.text.Selection;
+import android.text.SpannableStringBuilder;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class CachedInputConnectionTest {
+
+    private EditorInputConnection mEditor;
+    private CachedInputConnection mCachedInputConnection;
+
+    @Before
+    public void setup() throws Exception {
+        mEditor = new EditorInputConnection("hello world");
+        mCachedInputConnection = new CachedInputConnection();
+        mCachedInputConnection.wrap(mEditor);
+        mCachedInputConnection.onStartInput(11, 11, false);
+    }
+
+    @Test
+    public void testReadsAreAnsweredLocally() throws Exception {
+        Assert.assertEquals("world", mCachedInputConnection.getTextBeforeCursor(5, 0).toString());
+        Assert.assertEquals(1, mEditor.mReads);
+        Assert.assertEquals("ld", mCachedInputConnection.getTextBeforeCursor(2, 0).toString());
+        Assert.assertEquals(1, mEditor.mReads);
+        //the editor has less than requested, so the mirror knows the start of the text
+        Assert.assertEquals("hello world", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+        Assert.assertEquals("hello world", mCachedInputConnection.getTextBeforeCursor(1000, 0).toString());
+        Assert.assertEquals("", mCachedInputConnection.getTextAfterCursor(10, 0).toString());
+        Assert.assertEquals("", mCachedInputConnection.getTextAfterCursor(1, 0).toString());
+        Assert.assertEquals(3, mEditor.mReads);
+        Assert.assertEquals(3, mCachedInputConnection.getMisses());
+        Assert.assertEquals(3, mCachedInputConnection.getHits());
+    }
+
+    @Test
+    public void testEditsAreMirrored() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        mCachedInputConnection.getTextAfterCursor(100, 0);
+        final int reads = mEditor.mReads;
+
+        typeWord(" wor");
+        assertMirror();
+        typeWord("ds.");
+        mCachedInputConnection.finishComposingText();
+        reportSelection();
+        assertMirror();
+        mCachedInputConnection.commitText(" ", 1);
+        reportSelection();
+        assertMirror();
+        mCachedInputConnection.setComposingText("ab", 1);
+        reportSelection();
+        mCachedInputConnection.commitText("abc", 1);
+        reportSelection();
+        assertMirror();
+        mCachedInputConnection.deleteSurroundingText(2, 0);
+        reportSelection();
+        assertMirror();
+        Assert.assertEquals(reads, mEditor.mReads);
+    }
+
+    @Test
+    public void testBelatedSelectionUpdatesAreExpected() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        mCachedInputConnection.getTextAfterCursor(100, 0);
+        final int reads = mEditor.mReads;
+        final int firstCursor = 12;
+        mCachedInputConnection.commitText("a", 1);
+        mCachedInputConnection.commitText("b", 1);
+        mCachedInputConnection.commitText("c", 1);
+        //the editor reports these after all three were done
+        mCachedInputConnection.onUpdateSelection(firstCursor, firstCursor, -1, -1);
+        mCachedInputConnection.onUpdateSelection(firstCursor + 1, firstCursor + 1, -1, -1);
+        mCachedInputConnection.onUpdateSelection(firstCursor + 2, firstCursor + 2, -1, -1);
+        assertMirror();
+        Assert.assertEquals(reads, mEditor.mReads);
+    }
+
+    @Test
+    public void testUnexpectedSelectionDropsMirror() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        final int reads = mEditor.mReads;
+        //the user moved the cursor
+        Selection.setSelection(mEditor.mEditable, 5);
+        reportSelection();
+        Assert.assertEquals("hello", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+        Assert.assertEquals(reads + 1, mEditor.mReads);
+        //the editor changed its text
+        mEditor.mEditable.insert(0, "well, ");
+        reportSelection();
+        assertMirror();
+        Assert.assertEquals("well, hello", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+    }
+
+    @Test
+    public void testUnconfirmedEditsAreReadFromEditor() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        final int reads = mEditor.mReads;
+        mCachedInputConnection.commitText("!", 1);
+        //the editor did not report the new selection yet
+        Assert.assertEquals("hello world!", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+        Assert.assertEquals(reads + 1, mEditor.mReads);
+        reportSelection();
+        Assert.assertEquals("hello world!", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+        Assert.assertEquals(reads + 1, mEditor.mReads);
+    }
+
+    @Test
+    public void testRejectedCommitDropsMirror() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        mCachedInputConnection.getTextAfterCursor(100, 0);
+        //the editor filters out everything
+        mEditor.mRejectCommits = true;
+        mCachedInputConnection.commitText("abc", 1);
+        assertMirror();
+        //the cursor did not move, which is not what we expected
+        reportSelection();
+        assertMirror();
+        Assert.assertEquals("hello world", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+
+        mEditor.mRejectCommits = false;
+        mCachedInputConnection.commitText("!", 1);
+        reportSelection();
+        assertMirror();
+    }
+
+    @Test
+    public void testFilteredCommitDropsMirror() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        //the editor only takes the first character
+        mEditor.mMaxCommitLength = 1;
+        mCachedInputConnection.commitText("abc", 1);
+        reportSelection();
+        assertMirror();
+        Assert.assertEquals("hello worlda", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+    }
+
+    @Test
+    public void testInvalidateDropsMirror() throws Exception {
+        mCachedInputConnection.getTextBeforeCursor(100, 0);
+        final int reads = mEditor.mReads;
+        //the text was changed without going through the mirror
+        mEditor.mEditable.append("!");
+        Selection.setSelection(mEditor.mEditable, mEditor.mEditable.length());
+        mCachedInputConnection.invalidate();
+        Assert.assertEquals("hello world!", mCachedInputConnection.getTextBeforeCursor(100, 0).toString());
+        Assert.assertEquals(reads + 1, mEditor.mReads);
+    }
+
+    private void typeWord(String word) {
+        for (int i = 1; i <= word.length(); i++) {
+            mCachedInputConnection.setComposingText(word.substring(0, i), 1);
+            reportSelection();
+        }
+    }
+
+    private void reportSelection() {
+        final Editable editable = mEditor.mEditable;
+        mCachedInputConnection.onUpdateSelection(Selection.getSelectionStart(editable), Selection.getSelectionEnd(editable),
+                BaseInputConnection.getComposingSpanStart(editable), BaseInputConnection.getComposingSpanEnd(editable));
+    }
+
+    private void assertMirror() {
+        final Editable editable = mEditor.mEditable;
+        final int cursor = Selection.getSelectionEnd(editable);
+        for (int length = 1; length < editable.length() + 2; length++) {
+            Assert.assertEquals(editable.subSequence(Math.max(0, cursor - length), cursor).toString(),
+                    mCachedInputConnection.getTextBeforeCursor(length, 0).toString());
+            Assert.assertEquals(editable.subSequence(cursor, Math.min(editable.length(), cursor + length)).toString(),
+                    mCachedInputConnection.getTextAfterCursor(length, 0).toString());
+        }
+    }
+
+    private static class EditorInputConnection extends BaseInputConnection {
+        final Editable mEditable;
+        int mReads;
+        boolean mRejectCommits;
+        int mMaxCommitLength = Integer.MAX_VALUE;
+
+        EditorInputConnection(String text) {
+            super(new View(Robolectric.application), true);
+            mEditable = new SpannableStringBuilder(text);
+            Selection.setSelection(mEditable, text.length());
+        }
+
+        @Override
+        public Editable getEditable() {
+            return mEditable;
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            if (mRejectCommits) return true;
+            return super.commitText(text.subSequence(0, Math.min(text.length(), mMaxCommitLength)), newCursorPosition);
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int length, int flags) {
+            mReads++;
+            return super.getTextBeforeCursor(length, flags);
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int length, int flags) {
+            mReads++;
+            return super.getTextAfterCursor(length, flags);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.anysoftkeyboard;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.anysoftkeyboard.dictionaries.Dictionary;
+import com.anysoftkeyboard.dictionaries.Suggest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class SuggestionsWorkerTest {
+    private SuggestionsWorker mUnderTest;
+
+    @Before
+    public void setup() throws Exception {
+        Suggest suggest = new Suggest(Robolectric.application);
+        suggest.setUserDictionary(new FixedWordsDictionary("hello", "help", "helmet"));
+        mUnderTest = new SuggestionsWorker(suggest, new Handler(Looper.getMainLooper()), 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mUnderTest.shutdown();
+    }
+
+    @Test
+    public void testResultsAreReused() throws Exception {
+        SuggestionsWorker.Result first = mUnderTest.computeNow(createComposer("he"));
+        Assert.assertEquals("he", first.mTypedWord.toString());
+        Assert.assertEquals("he", first.mSuggestions.get(0).toString());
+        Assert.assertEquals("hello", first.mSuggestions.get(1).toString());
+        mUnderTest.onResultApplied(first, true);
+
+        SuggestionsWorker.Result second = mUnderTest.computeNow(createComposer("hel"));
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals("hel", second.mTypedWord.toString());
+        //the shown result was not touched
+        Assert.assertEquals("he", first.mTypedWord.toString());
+        Assert.assertEquals("he", first.mSuggestions.get(0).toString());
+        mUnderTest.onResultApplied(second, true);
+
+        //the first result is not shown anymore, so it is re-used
+        SuggestionsWorker.Result third = mUnderTest.computeNow(createComposer("help"));
+        Assert.assertSame(first, third);
+        Assert.assertEquals("help", third.mTypedWord.toString());
+        Assert.assertEquals("hel", second.mTypedWord.toString());
+    }
+
+    @Test
+    public void testDroppedResultIsReused() throws Exception {
+        SuggestionsWorker.Result shown = mUnderTest.computeNow(createComposer("he"));
+        mUnderTest.onResultApplied(shown, true);
+        SuggestionsWorker.Result dropped = mUnderTest.computeNow(createComposer("hel"));
+        mUnderTest.onResultApplied(dropped, false);
+
+        Assert.assertSame(dropped, mUnderTest.computeNow(createComposer("help")));
+        Assert.assertEquals("he", shown.mTypedWord.toString());
+    }
+
+    @Test
+    public void testBackgroundResultDoesNotOverwriteShownResult() throws Exception {
+        SuggestionsWorker.Result shown = mUnderTest.computeNow(createComposer("he"));
+        mUnderTest.onResultApplied(shown, true);
+
+        mUnderTest.requestSuggestions(createComposer("hel"));
+        SuggestionsWorker.Result background = takeLatestResult();
+        Assert.assertNotSame(shown, background);
+        Assert.assertEquals("hel", background.mTypedWord.toString());
+        Assert.assertEquals("he", shown.mTypedWord.toString());
+    }
+
+    @Test
+    public void testStaleResultIsNotTaken() throws Exception {
+        mUnderTest.requestSuggestions(createComposer("he"));
+        SuggestionsWorker.Result result = takeLatestResult();
+        final int sequence = result.mSequence;
+        mUnderTest.onResultApplied(result, false);
+        Assert.assertSame(result, mUnderTest.takeDeliveredResult(result, sequence));
+        mUnderTest.onResultApplied(result, false);
+
+        mUnderTest.cancel();
+        Assert.assertNull(mUnderTest.takeDeliveredResult(result, sequence));
+        Assert.assertNull(mUnderTest.takeLatestResult());
+    }
+
+    private SuggestionsWorker.Result takeLatestResult() throws InterruptedException {
+        final long endTime = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < endTime) {
+            //this will be null until the worker picks up the request
+            SuggestionsWorker.Result result = mUnderTest.takeLatestResult();
+            if (result != null) return result;
+            Thread.sleep(5);
+        }
+        Assert.fail("The worker did not compute the request.");
+        return null;
+    }
+
+    private static WordComposer createComposer(String typed) {
+        WordComposer composer = new WordComposer();
+        for (int i = 0; i < typed.length(); i++) {
+            final char c = typed.charAt(i);
+            composer.add(c, new int[]{c});
+        }
+        return composer;
+    }
+
+    private static class FixedWordsDictionary extends Dictionary {
+        private final char[][] mWords;
+
+        FixedWordsDictionary(String... words) {
+            super("FIXED");
+            mWords = new char[words.length][];
+            for (int i = 0; i < words.length; i++) {
+                mWords[i] = words[i].toCharArray();
+            }
+        }
+
+        @Override
+        public void getWords(WordComposer composer, WordCallback callback) {
+            for (int i = 0; i < mWords.length; i++) {
+                callback.addWord(mWords[i], 0, mWords[i].length, mWords.length - i, this);
+            }
+        }
+
+        @Override
+        public boolean isValidWord(CharSequence word) {
+            return false;
+        }
+
+        @Override
+        protected void closeAllResources() {
+        }
+
+        @Override
+        protected void loadAllResources() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.anysoftkeyboard;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class WordComposerTest {
+
+    @Test
+    public void testCodesLayout() throws Exception {
+        WordComposer composer = new WordComposer();
+        composer.add('h', new int[]{'h', 'g', 'j'});
+        composer.add('l', new int[]{'l', -1, 'k'});
+        //inserting in the middle of the word
+        composer.setCursorPostion(1);
+        composer.add('e', new int[]{'e', 'w'});
+        Assert.assertEquals("hel", composer.getTypedWord().toString());
+
+        final int[] codes = composer.getCodes();
+        assertCodesAt(codes, 0, 'h', 'g', 'j');
+        assertCodesAt(codes, 1, 'e', 'w');
+        //only the codes up to the first -1 are kept
+        assertCodesAt(codes, 2, 'l');
+        Assert.assertEquals(3, composer.getCodesCountAt(0));
+        Assert.assertEquals(1, composer.getCodesCountAt(2));
+
+        composer.deleteLast();
+        Assert.assertEquals("hl", composer.getTypedWord().toString());
+        assertCodesAt(codes, 1, 'l');
+        assertCodesAt(codes, 2);
+    }
+
+    @Test
+    public void testLongWordsGrowTheBuffer() throws Exception {
+        WordComposer composer = new WordComposer();
+        final int length = WordComposer.MAX_WORD_LENGTH * 2 + 3;
+        for (int i = 0; i < length; i++) {
+            final char c = (char) ('a' + (i % 26));
+            composer.add(c, new int[]{c});
+        }
+        Assert.assertEquals(length, composer.length());
+        assertCodesAt(composer.getCodes(), length - 1, 'a' + ((length - 1) % 26));
+    }
+
+    @Test
+    public void testSnapshotIsImmutableAndIndependent() throws Exception {
+        WordComposer composer = new WordComposer();
+        composer.add('h', new int[]{'h', 'g'});
+        composer.add('i', new int[]{'i', 'o'});
+        WordComposer snapshot = composer.snapshot();
+        composer.deleteLast();
+        composer.add('a', new int[]{'a'});
+
+        Assert.assertEquals("hi", snapshot.getTypedWord().toString());
+        assertCodesAt(snapshot.getCodes(), 1, 'i', 'o');
+        try {
+            snapshot.add('x', new int[]{'x'});
+            Assert.fail("A snapshot can not be changed");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+        //a copy is mutable
+        WordComposer copy = new WordComposer(snapshot);
+        copy.add('!', new int[]{'!'});
+        Assert.assertEquals("hi!", copy.getTypedWord().toString());
+    }
+
+    private static void assertCodesAt(int[] codes, int position, int... expected) {
+        final int offset = position * WordComposer.MAX_ALTERNATIVES;
+        for (int i = 0; i < WordComposer.MAX_ALTERNATIVES; i++) {
+            Assert.assertEquals("Code " + i + " at position " + position, i < expected.length ? expected[i] : -1, codes[offset + i]);
+        }
+    }
+}
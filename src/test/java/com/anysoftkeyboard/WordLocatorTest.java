@@ -0,0 +1,89 @@
+package com.anysoftkeyboard;
+
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class WordLocatorTest {
+
+    private static final WordLocator.Separators SPACES = new WordLocator.Separators() {
+        @Override
+        public boolean isWordSeparator(int code) {
+            return code == ' ' || code == '.';
+        }
+    };
+
+    @Test
+    public void testLocatesWordWithOneCallPerSide() throws Exception {
+        WordLocator locator = new WordLocator(SPACES);
+        //cursor is after "hell"
+        TextInputConnection ic = new TextInputConnection("say hello world", 8);
+        locator.locate(ic);
+        Assert.assertEquals("hell", locator.getLeft().toString());
+        Assert.assertEquals("o", locator.getRight().toString());
+        Assert.assertEquals(2, locator.getLastIpcCalls());
+        Assert.assertEquals(2, ic.mCalls);
+    }
+
+    @Test
+    public void testEdgesOfText() throws Exception {
+        WordLocator locator = new WordLocator(SPACES);
+        locator.locate(new TextInputConnection("fifteenletterss", 0));
+        Assert.assertEquals("", locator.getLeft().toString());
+        Assert.assertEquals("fifteenletterss", locator.getRight().toString());
+
+        locator.locate(new TextInputConnection("end of text", 11));
+        Assert.assertEquals("text", locator.getLeft().toString());
+        Assert.assertEquals("", locator.getRight().toString());
+
+        locator.locate(new TextInputConnection("in between. words", 11));
+        Assert.assertEquals("", locator.getLeft().toString());
+        Assert.assertEquals("", locator.getRight().toString());
+        Assert.assertEquals(2, locator.getLastIpcCalls());
+        Assert.assertEquals(6, locator.getTotalIpcCalls());
+    }
+
+    @Test
+    public void testGrowsWindowForLongWords() throws Exception {
+        StringBuilder longWord = new StringBuilder();
+        for (int i = 0; i < WordLocator.INITIAL_WINDOW * 3; i++) longWord.append((char) ('a' + (i % 26)));
+        final String text = "x " + longWord + " y";
+        final int cursor = 2 + WordLocator.INITIAL_WINDOW * 2;
+        WordLocator locator = new WordLocator(SPACES);
+        TextInputConnection ic = new TextInputConnection(text, cursor);
+        locator.locate(ic);
+        Assert.assertEquals(longWord.substring(0, WordLocator.INITIAL_WINDOW * 2), locator.getLeft().toString());
+        Assert.assertEquals(longWord.substring(WordLocator.INITIAL_WINDOW * 2), locator.getRight().toString());
+        //left: 32, 64, 128. right: 32, 64
+        Assert.assertEquals(5, locator.getLastIpcCalls());
+    }
+
+    private static class TextInputConnection extends BaseInputConnection {
+        private final String mText;
+        private final int mCursor;
+        int mCalls;
+
+        TextInputConnection(String text, int cursor) {
+            super(new View(Robolectric.application), false);
+            mText = text;
+            mCursor = cursor;
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int length, int flags) {
+            mCalls++;
+            return mText.substring(Math.max(0, mCursor - length), mCursor);
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int length, int flags) {
+            mCalls++;
+            return mText.substring(mCursor, Math.min(mText.length(), mCursor + length));
+        }
+    }
+}
@@ -25,6 +25,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -197,7 +200,7 @@ public class BTreeDictionaryTest {
         assetNodeArrayIsValid(mDictionaryUnderTest.getRoot());
     }
 
-    private void assetNodeArrayIsValid(BTreeDictionary.NodeArray root) {
+    private void assetNodeArrayIsValid(NodeArrayTrie.NodeArray root) {
         assertTrue(root.length >=0);
         assertTrue(root.length <= root.data.length);
         for (int i=0;i<root.length;i++) {
@@ -218,4 +221,20 @@ public class BTreeDictionaryTest {
         Assert.assertEquals(mDictionaryUnderTest.getWordFrequency((String)TestableBTreeDictionary.STORAGE[0][1]), 0);
         Assert.assertFalse(mDictionaryUnderTest.addWord("fail", 1));
     }
+
+	@Test
+	public void testReplaceWordsInStorageDoesNotChangeMemory() throws Exception {
+		mDictionaryUnderTest.loadDictionary();
+		Map<String, Integer> words = new LinkedHashMap<>();
+		words.put("restored", 100);
+		words.put("hello", 10);
+		mDictionaryUnderTest.replaceWordsInStorage(words);
+
+		Assert.assertEquals("hello", mDictionaryUnderTest.wordRequestedToBeDeletedFromStorage);
+		Assert.assertEquals("hello", mDictionaryUnderTest.wordRequestedToAddedToStorage);
+		Assert.assertEquals(10, mDictionaryUnderTest.wordFrequencyRequestedToAddedToStorage);
+		//the in-memory words will be changed when the storage is reloaded
+		Assert.assertFalse(mDictionaryUnderTest.isValidWord("restored"));
+		Assert.assertEquals(255, mDictionaryUnderTest.getWordFrequency("hello"));
+	}
 }
@@ -0,0 +1,225 @@
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.anysoftkeyboard.WordComposer;
+import com.anysoftkeyboard.ui.settings.MainSettingsActivity;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class CompactTrieTest {
+
+    private static final String[] EXTRA_WORDS = {"don't", "dont", "café", "cafe", "Hello", "help", "helping", "he", "Phoenix", "phonetic", "thin", "thing's", "areas", "ärger"};
+    private static final String[] TYPED_WORDS = {"he", "hel", "hello", "help", "ph", "pho", "phone", "an", "and", "any", "gm", "sh", "she", "th", "thi", "thing", "thongs", "dont", "caf", "cafe", "ar", "arg", "la", "me", "men", "xyz"};
+
+    private TestableBTreeDictionary mNodeArrayDictionary;
+    private TestableBTreeDictionary mCompactDictionary;
+
+    @Before
+    public void setup() throws Exception {
+        MainSettingsActivity activity = Robolectric.buildActivity(MainSettingsActivity.class).create().resume().get();
+        mNodeArrayDictionary = new TestableBTreeDictionary("NODES", activity, false);
+        mCompactDictionary = new TestableBTreeDictionary("COMPACT", activity, true);
+        mNodeArrayDictionary.loadDictionary();
+        mCompactDictionary.loadDictionary();
+    }
+
+    @Test
+    public void testSameResultsAfterLoad() throws Exception {
+        assertSameResults();
+    }
+
+    @Test
+    public void testSameResultsAfterAddingAndDeleting() throws Exception {
+        for (int i = 0; i < EXTRA_WORDS.length; i++) {
+            Assert.assertTrue(mNodeArrayDictionary.addWord(EXTRA_WORDS[i], 10 + i * 10));
+            Assert.assertTrue(mCompactDictionary.addWord(EXTRA_WORDS[i], 10 + i * 10));
+        }
+        assertSameResults();
+
+        //updating frequencies
+        mNodeArrayDictionary.addWord("help", 240);
+        mCompactDictionary.addWord("help", 240);
+        Assert.assertEquals(240, mCompactDictionary.getWordFrequency("help"));
+        assertSameResults();
+
+        //deleting a leaf, a word with children, a word in the middle of a branch and a missing word
+        final String[] toDelete = {"helping", "he", "thing", "dont", "missing", "Phoenix", "hello"};
+        for (String word : toDelete) {
+            mNodeArrayDictionary.deleteWord(word);
+            mCompactDictionary.deleteWord(word);
+            Assert.assertFalse(mCompactDictionary.isValidWord(word));
+            assertSameResults();
+        }
+        Assert.assertTrue(mCompactDictionary.isValidWord("help"));
+        Assert.assertTrue(mCompactDictionary.isValidWord("Hello"));
+        Assert.assertTrue(mCompactDictionary.isValidWord("thing's"));
+    }
+
+    @Test
+    public void testCompactingKeepsWords() throws Exception {
+        CompactTrie trie = new CompactTrie();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String word = Integer.toString(i * 7919, 26);
+            words.add(word);
+            trie.addWord(word, 1 + (i % 255));
+        }
+        //deleting most of the words, which will force the structure to re-pack itself
+        for (int i = 0; i < words.size(); i++) {
+            if (i % 4 != 0) trie.deleteWord(words.get(i));
+        }
+        for (int i = 0; i < words.size(); i++) {
+            final int expected = (i % 4 == 0) ? 1 + (i % 255) : 0;
+            Assert.assertEquals("Frequency for " + words.get(i), expected, trie.getWordFrequency(words.get(i)));
+        }
+        //and it is still editable
+        trie.addWord("zzzzz", 5);
+        Assert.assertEquals(5, trie.getWordFrequency("zzzzz"));
+        trie.compact();
+        Assert.assertEquals(5, trie.getWordFrequency("zzzzz"));
+        Assert.assertEquals(1, trie.getWordFrequency(words.get(0)));
+    }
+
+    @Test
+    public void testIncrementalSearchHasSameResultsAsFullSearch() throws Exception {
+        CompactTrie trie = createTrie();
+        WordComposer composer = new WordComposer();
+        final String typed = "helping";
+        for (int i = 0; i < typed.length(); i++) {
+            final char c = typed.charAt(i);
+            composer.add(c, new int[]{c, c + 1});
+            //a new structure has no frontier, so it will do a full search. Order should be the same too.
+            Assert.assertEquals("Results for typed '" + composer.getTypedWord() + "'", getWords(createTrie(), composer, false), getWords(trie, composer, false));
+        }
+        //backspace
+        composer.deleteLast();
+        Assert.assertEquals(getWords(createTrie(), composer, false), getWords(trie, composer, false));
+        composer.add('g', new int[]{'g', 'h'});
+        Assert.assertEquals(getWords(createTrie(), composer, false), getWords(trie, composer, false));
+        //changing the structure
+        trie.addWord("helpingly", 30);
+        composer.add('l', new int[]{'l'});
+        CompactTrie expectedTrie = createTrie();
+        expectedTrie.addWord("helpingly", 30);
+        List<String> words = getWords(trie, composer, false);
+        Assert.assertEquals(getWords(expectedTrie, composer, false), words);
+        Assert.assertEquals(1, words.size());
+        Assert.assertTrue(words.get(0).startsWith("helpingly:"));
+    }
+
+    @Test
+    public void testIncrementWordFrequency() throws Exception {
+        CompactTrie trie = createTrie();
+        Assert.assertEquals(3, trie.incrementWordFrequency("learning", 3));
+        Assert.assertEquals(4, trie.incrementWordFrequency("learning", 1));
+        Assert.assertEquals(4, trie.getWordFrequency("learning"));
+        //a prefix of an existing word, which was not a word itself
+        Assert.assertEquals(0, trie.getWordFrequency("learn"));
+        Assert.assertEquals(1, trie.incrementWordFrequency("learn", 1));
+        Assert.assertEquals(4, trie.getWordFrequency("learning"));
+        //an existing word
+        final int helpFrequency = trie.getWordFrequency("help");
+        Assert.assertEquals(helpFrequency + 3, trie.incrementWordFrequency("help", 3));
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        CompactTrie trie = createTrie();
+        trie.deleteWord("helping");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        trie.writeTo(out);
+        out.flush();
+
+        CompactTrie loaded = new CompactTrie();
+        loaded.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        for (String typed : TYPED_WORDS) {
+            WordComposer composer = createComposer(typed);
+            Assert.assertEquals("Results for typed '" + typed + "'", getWords(trie, composer, false), getWords(loaded, composer, false));
+        }
+        Assert.assertEquals(0, loaded.getWordFrequency("helping"));
+        //and it is still editable
+        loaded.addWord("helping", 77);
+        Assert.assertEquals(77, loaded.getWordFrequency("helping"));
+    }
+
+    private static CompactTrie createTrie() {
+        CompactTrie trie = new CompactTrie();
+        for (int i = 0; i < EXTRA_WORDS.length; i++) {
+            trie.addWord(EXTRA_WORDS[i], 10 + i * 10);
+        }
+        for (int row = 0; row < TestableBTreeDictionary.STORAGE.length; row++) {
+            trie.addWord((String) TestableBTreeDictionary.STORAGE[row][1], (Integer) TestableBTreeDictionary.STORAGE[row][2]);
+        }
+        return trie;
+    }
+
+    private void assertSameResults() {
+        for (int row = 0; row < TestableBTreeDictionary.STORAGE.length; row++) {
+            final String word = (String) TestableBTreeDictionary.STORAGE[row][1];
+            Assert.assertEquals(mNodeArrayDictionary.getWordFrequency(word), mCompactDictionary.getWordFrequency(word));
+        }
+        for (String word : EXTRA_WORDS) {
+            Assert.assertEquals(mNodeArrayDictionary.getWordFrequency(word), mCompactDictionary.getWordFrequency(word));
+        }
+
+        for (String typed : TYPED_WORDS) {
+            WordComposer composer = createComposer(typed);
+            //the compact trie visits children by character order, and not by insertion order,
+            //so the results are compared as sorted lists.
+            List<String> expected = getWords(mNodeArrayDictionary, composer);
+            List<String> actual = getWords(mCompactDictionary, composer);
+            Assert.assertEquals("Results for typed '" + typed + "'", expected, actual);
+        }
+    }
+
+    private static WordComposer createComposer(String typed) {
+        WordComposer composer = new WordComposer();
+        for (int i = 0; i < typed.length(); i++) {
+            final char c = typed.charAt(i);
+            //adding a near-by key, so the alternatives path will be used too
+            composer.add(c, new int[]{c, c + 1});
+        }
+        return composer;
+    }
+
+    private static List<String> getWords(Dictionary dictionary, WordComposer composer) {
+        final List<String> words = new ArrayList<>();
+        dictionary.getWords(composer, new WordsCollector(words));
+        Collections.sort(words);
+        return words;
+    }
+
+    private static List<String> getWords(CompactTrie trie, WordComposer composer, boolean sort) {
+        final List<String> words = new ArrayList<>();
+        trie.getWords(composer, new WordsCollector(words), null);
+        if (sort) Collections.sort(words);
+        return words;
+    }
+
+    private static class WordsCollector implements Dictionary.WordCallback {
+        private final List<String> mWords;
+
+        WordsCollector(List<String> words) {
+            mWords = words;
+        }
+
+        @Override
+        public boolean addWord(char[] word, int wordOffset, int wordLength, int frequency, Dictionary from) {
+            mWords.add(new String(word, wordOffset, wordLength) + ":" + frequency);
+            return true;
+        }
+    }
+}
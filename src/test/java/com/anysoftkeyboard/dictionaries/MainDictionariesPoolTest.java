@@ -0,0 +1,100 @@
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.anysoftkeyboard.WordComposer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class MainDictionariesPoolTest {
+
+    @Test
+    public void testReleasedDictionaryIsReused() throws Exception {
+        MainDictionariesPool pool = new MainDictionariesPool(2, 10000);
+        Assert.assertNull(pool.acquire("en"));
+        SizedDictionary english = new SizedDictionary(100);
+        pool.release("en", english);
+        Assert.assertSame(english, pool.acquire("en"));
+        Assert.assertFalse(english.isClosed());
+        //it is not in the pool anymore
+        Assert.assertNull(pool.acquire("en"));
+        //a closed dictionary is not re-used
+        english.close();
+        pool.release("en", english);
+        Assert.assertNull(pool.acquire("en"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsClosed() throws Exception {
+        MainDictionariesPool pool = new MainDictionariesPool(2, 10000);
+        SizedDictionary english = new SizedDictionary(100);
+        SizedDictionary hebrew = new SizedDictionary(100);
+        SizedDictionary french = new SizedDictionary(100);
+        pool.release("en", english);
+        pool.release("iw", hebrew);
+        pool.release("fr", french);
+        Assert.assertEquals(2, pool.getIdleCount());
+        Assert.assertTrue(english.isClosed());
+        Assert.assertFalse(hebrew.isClosed());
+        Assert.assertFalse(french.isClosed());
+        Assert.assertNull(pool.acquire("en"));
+    }
+
+    @Test
+    public void testBytesBudget() throws Exception {
+        MainDictionariesPool pool = new MainDictionariesPool(5, 1000);
+        SizedDictionary english = new SizedDictionary(600);
+        SizedDictionary hebrew = new SizedDictionary(600);
+        pool.release("en", english);
+        pool.release("iw", hebrew);
+        Assert.assertTrue(english.isClosed());
+        Assert.assertSame(hebrew, pool.acquire("iw"));
+        //unknown sizes are estimated
+        SizedDictionary unknown = new SizedDictionary(0);
+        new MainDictionariesPool(5, MainDictionariesPool.UNKNOWN_SIZE_ESTIMATE - 1).release("xx", unknown);
+        Assert.assertTrue(unknown.isClosed());
+    }
+
+    @Test
+    public void testCloseAll() throws Exception {
+        MainDictionariesPool pool = new MainDictionariesPool(2, 10000);
+        SizedDictionary english = new SizedDictionary(100);
+        pool.release("en", english);
+        pool.closeAll();
+        Assert.assertTrue(english.isClosed());
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    private static class SizedDictionary extends Dictionary {
+        private final int mSize;
+
+        SizedDictionary(int size) {
+            super("SIZED");
+            mSize = size;
+        }
+
+        @Override
+        public int getSizeInBytes() {
+            return mSize;
+        }
+
+        @Override
+        public void getWords(WordComposer composer, WordCallback callback) {
+        }
+
+        @Override
+        public boolean isValidWord(CharSequence word) {
+            return false;
+        }
+
+        @Override
+        protected void closeAllResources() {
+        }
+
+        @Override
+        protected void loadAllResources() {
+        }
+    }
+}
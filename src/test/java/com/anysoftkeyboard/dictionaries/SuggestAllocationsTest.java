@@ -0,0 +1,167 @@
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.anysoftkeyboard.WordComposer;
+import com.menny.android.anysoftkeyboard.R;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Verifies that the per-candidate paths of the suggestions pipeline do not create garbage, by counting
+ * the bytes the current thread allocates.
+ */
+@RunWith(RobolectricAPI18TestRunner.class)
+public class SuggestAllocationsTest {
+    private static final int ITERATIONS = 20000;
+    private static final String[] CANDIDATES = {"hello", "help", "helping", "hell", "helmet", "heliport", "helper", "helps", "hero", "herald", "he'll", "helo"};
+
+    private com.sun.management.ThreadMXBean mThreadMXBean;
+    private char[][] mCandidates;
+
+    @Before
+    public void setup() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        mThreadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mThreadMXBean.isThreadAllocatedMemorySupported());
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        mCandidates = new char[CANDIDATES.length][];
+        for (int i = 0; i < CANDIDATES.length; i++) {
+            mCandidates[i] = CANDIDATES[i].toCharArray();
+        }
+    }
+
+    @Test
+    public void testAddingCandidatesDoesNotAllocate() throws Exception {
+        final Suggest suggest = new Suggest(Robolectric.application);
+        WordComposer composer = new WordComposer();
+        for (char c : "HELX".toCharArray()) {
+            composer.add(c, new int[]{c});
+        }
+        //all upper-case, so the candidates will be upper-cased too
+        Assert.assertTrue(composer.isAllUpperCase());
+        suggest.getSuggestions(composer, false);
+
+        addCandidates(suggest);//warming up
+        final long allocated = measure(new Runnable() {
+            @Override
+            public void run() {
+                addCandidates(suggest);
+            }
+        });
+        Assert.assertTrue("Allocated " + allocated + " bytes for " + ITERATIONS + " candidates", allocated < ITERATIONS);
+    }
+
+    @Test
+    public void testCachedSuggestionsDoNotAllocate() throws Exception {
+        final Suggest suggest = new Suggest(Robolectric.application);
+        suggest.setUserDictionary(new CandidatesDictionary(mCandidates));
+        final WordComposer composer = new WordComposer();
+        for (char c : "Hel".toCharArray()) {
+            composer.add(c, new int[]{c, c + 1});
+        }
+        //warming up the cache, and the string pool
+        final String suggestions = suggest.getSuggestions(composer, false).toString();
+        Assert.assertEquals(0, suggest.getSuggestionsCacheHits());
+        Assert.assertEquals(suggestions, suggest.getSuggestions(composer, false).toString());
+        Assert.assertEquals(1, suggest.getSuggestionsCacheHits());
+
+        final long allocated = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    suggest.getSuggestions(composer, false);
+                }
+            }
+        });
+        Assert.assertEquals(1 + ITERATIONS, suggest.getSuggestionsCacheHits());
+        Assert.assertEquals(suggestions, suggest.getSuggestions(composer, false).toString());
+        Assert.assertTrue("Allocated " + allocated + " bytes for " + ITERATIONS + " look-ups", allocated < ITERATIONS);
+    }
+
+    @Test
+    public void testUpperCasingDoesNotAllocate() throws Exception {
+        final StringBuilder sb = new StringBuilder(64);
+        Suggest.appendUpperCase(sb, mCandidates[0], mCandidates[0].length);
+        Assert.assertEquals("HELLO", sb.toString());
+
+        final long allocated = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    final char[] word = mCandidates[i % mCandidates.length];
+                    sb.setLength(0);
+                    Suggest.appendUpperCase(sb, word, word.length);
+                }
+            }
+        });
+        Assert.assertTrue("Allocated " + allocated + " bytes for " + ITERATIONS + " words", allocated < ITERATIONS);
+    }
+
+    @Test
+    public void testAutoTextProbingDoesNotAllocate() throws Exception {
+        final AutoText autoText = new AutoText(Robolectric.application.getResources(), R.xml.en_autotext);
+        final StringBuilder suggestion = new StringBuilder("HeLLo");
+        Assert.assertNull(autoText.lookupLowerCase(suggestion, 0, suggestion.length()));
+
+        final long allocated = measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    autoText.lookupLowerCase(suggestion, 0, suggestion.length());
+                }
+            }
+        });
+        Assert.assertTrue("Allocated " + allocated + " bytes for " + ITERATIONS + " look-ups", allocated < ITERATIONS);
+    }
+
+    private void addCandidates(Suggest suggest) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            final char[] word = mCandidates[i % mCandidates.length];
+            suggest.addWord(word, 0, word.length, 1 + (i % 200), null);
+        }
+    }
+
+    private static class CandidatesDictionary extends Dictionary {
+        private final char[][] mWords;
+
+        CandidatesDictionary(char[][] words) {
+            super("CandidatesDictionary");
+            mWords = words;
+        }
+
+        @Override
+        public void getWords(WordComposer composer, WordCallback callback) {
+            for (int i = 0; i < mWords.length; i++) {
+                callback.addWord(mWords[i], 0, mWords[i].length, mWords.length - i, this);
+            }
+        }
+
+        @Override
+        public boolean isValidWord(CharSequence word) {
+            return false;
+        }
+
+        @Override
+        protected void closeAllResources() {
+        }
+
+        @Override
+        protected void loadAllResources() {
+        }
+    }
+
+    private long measure(Runnable runnable) {
+        final long threadId = Thread.currentThread().getId();
+        final long before = mThreadMXBean.getThreadAllocatedBytes(threadId);
+        runnable.run();
+        return mThreadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,109 @@
+package com.anysoftkeyboard.dictionaries;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.anysoftkeyboard.WordComposer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class SuggestionsCacheTest {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        SuggestionsCache cache = new SuggestionsCache(2);
+        cache.setState(new int[]{1, 1}, 2);
+        Assert.assertNull(cache.get(createComposer("hel")));
+        cache.put(createComposer("hel"), createSuggestions("hel", "hello", "help"), true);
+
+        SuggestionsCache.Entry entry = cache.get(createComposer("hel"));
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.mHaveCorrection);
+        Assert.assertEquals(3, entry.getSuggestionsCount());
+        Assert.assertEquals("hello", entry.getSuggestion(1).toString());
+        //different capitalization is a different key
+        WordComposer capitalized = createComposer("hel");
+        capitalized.setFirstCharCapitalized(true);
+        Assert.assertNull(cache.get(capitalized));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testDifferentAlternativesAreDifferentKeys() throws Exception {
+        SuggestionsCache cache = new SuggestionsCache(2);
+        cache.put(createComposer("he"), createSuggestions("he", "hey"), false);
+
+        WordComposer otherAlternatives = new WordComposer();
+        otherAlternatives.add('h', new int[]{'h', 'g'});
+        otherAlternatives.add('e', new int[]{'e', 'w'});
+        Assert.assertEquals("he", otherAlternatives.getTypedWord().toString());
+        Assert.assertNull(cache.get(otherAlternatives));
+        Assert.assertNotNull(cache.get(createComposer("he")));
+    }
+
+    @Test
+    public void testStoredSuggestionsAreCopied() throws Exception {
+        SuggestionsCache cache = new SuggestionsCache(2);
+        List<CharSequence> suggestions = createSuggestions("th", "the");
+        cache.put(createComposer("th"), suggestions, false);
+        //the list's items are recycled by Suggest
+        ((StringBuilder) suggestions.get(1)).setLength(0);
+        suggestions.clear();
+
+        SuggestionsCache.Entry entry = cache.get(createComposer("th"));
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(2, entry.getSuggestionsCount());
+        Assert.assertEquals("the", entry.getSuggestion(1).toString());
+    }
+
+    @Test
+    public void testStateChangeDropsEntries() throws Exception {
+        SuggestionsCache cache = new SuggestionsCache(2);
+        cache.setState(new int[]{1, 1}, 2);
+        cache.put(createComposer("th"), createSuggestions("th", "the"), false);
+        //same state
+        cache.setState(new int[]{1, 1}, 2);
+        Assert.assertNotNull(cache.get(createComposer("th")));
+        //a dictionary was edited
+        cache.setState(new int[]{1, 2}, 2);
+        Assert.assertNull(cache.get(createComposer("th")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        SuggestionsCache cache = new SuggestionsCache(2);
+        cache.put(createComposer("aa"), createSuggestions("aa"), false);
+        cache.put(createComposer("bb"), createSuggestions("bb"), false);
+        //touching "aa", so "bb" is the eldest
+        Assert.assertNotNull(cache.get(createComposer("aa")));
+        cache.put(createComposer("cc"), createSuggestions("cc"), false);
+        Assert.assertNotNull(cache.get(createComposer("aa")));
+        Assert.assertNull(cache.get(createComposer("bb")));
+        SuggestionsCache.Entry entry = cache.get(createComposer("cc"));
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("cc", entry.getSuggestion(0).toString());
+    }
+
+    private static WordComposer createComposer(String typed) {
+        WordComposer composer = new WordComposer();
+        for (int i = 0; i < typed.length(); i++) {
+            final char c = typed.charAt(i);
+            composer.add(c, new int[]{c, c + 1});
+        }
+        return composer;
+    }
+
+    private static List<CharSequence> createSuggestions(String... words) {
+        List<CharSequence> suggestions = new ArrayList<>();
+        for (String word : words) {
+            suggestions.add(new StringBuilder(word));
+        }
+        return suggestions;
+    }
+}
@@ -6,8 +6,6 @@ import android.database.AbstractCursor;
 import android.database.ContentObserver;
 import com.anysoftkeyboard.dictionaries.sqlite.WordsSQLiteConnection;
 
-import java.lang.reflect.Field;
-
 public class TestableBTreeDictionary extends BTreeDictionary{
     public static final Object[][] STORAGE = {
             {1, "hello", 255, "en"},
@@ -27,16 +25,16 @@ public class TestableBTreeDictionary extends BTreeDictionary{
     public int wordFrequencyRequestedToAddedToStorage = -1;
     public boolean storageIsClosed = false;
 
-    private Field mRootsField;
+    protected TestableBTreeDictionary(String dictionaryName, Context context) {
+        this(dictionaryName, context, false);
+    }
 
-    protected TestableBTreeDictionary(String dictionaryName, Context context) throws NoSuchFieldException {
-        super(dictionaryName, context);
-        mRootsField = BTreeDictionary.class.getDeclaredField("mRoots");
-        mRootsField.setAccessible(true);
+    protected TestableBTreeDictionary(String dictionaryName, Context context, boolean useCompactTrie) {
+        super(dictionaryName, context, useCompactTrie);
     }
 
-    public NodeArray getRoot() throws IllegalAccessException {
-        return (NodeArray) mRootsField.get(this);
+    public NodeArrayTrie.NodeArray getRoot() {
+        return ((NodeArrayTrie) getTrie()).getRoots();
     }
 
     @Override
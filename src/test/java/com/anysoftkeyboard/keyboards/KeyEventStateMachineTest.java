@@ -0,0 +1,88 @@
+package com.anysoftkeyboard.keyboards;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.anysoftkeyboard.keyboards.KeyEventStateMachine.State;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class KeyEventStateMachineTest {
+
+    private static final int SPECIAL_KEY = -1;
+
+    private static KeyEventStateMachine.Table createTable() {
+        KeyEventStateMachine.Builder builder = new KeyEventStateMachine.Builder();
+        //multi-tap on 'k'
+        builder.addSequence(new int[]{'k'}, 'a');
+        builder.addSequence(new int[]{'k', 'k'}, 'b');
+        builder.addSequence(new int[]{'k', 'k', 'k'}, KeyEventStateMachine.KEYCODE_FIRST_CHAR);
+
+        builder.addSequence(new int[]{'x', 'y'}, 'z');
+        builder.addSpecialKeySequence(new int[]{'x'}, SPECIAL_KEY, 'X');
+        return builder.build();
+    }
+
+    @Test
+    public void testCompiledStates() throws Exception {
+        //start, k, kk, kkk, x, xy, special, special-x
+        Assert.assertEquals(8, createTable().getStatesCount());
+    }
+
+    @Test
+    public void testMultiTapRewinds() throws Exception {
+        KeyEventStateMachine machine = new KeyEventStateMachine(createTable());
+        assertKey(machine, 'k', State.PART_MATCH, 'a', 1);
+        assertKey(machine, 'k', State.PART_MATCH, 'b', 2);
+        //back to the first character
+        assertKey(machine, 'k', State.PART_MATCH, 'a', 2);
+        assertKey(machine, 'k', State.PART_MATCH, 'b', 2);
+    }
+
+    @Test
+    public void testSequences() throws Exception {
+        KeyEventStateMachine machine = new KeyEventStateMachine(createTable());
+        assertKey(machine, 'x', State.NO_MATCH, 0, 0);
+        assertKey(machine, 'y', State.FULL_MATCH, 'z', 2);
+        assertKey(machine, 'q', State.RESET, 0, 0);
+
+        machine.reset();
+        assertKey(machine, SPECIAL_KEY, State.NO_MATCH, 0, 0);
+        //the special key is not visible
+        assertKey(machine, 'x', State.FULL_MATCH, 'X', 1);
+    }
+
+    @Test
+    public void testTableIsSharedBetweenMachines() throws Exception {
+        KeyEventStateMachine.Table table = createTable();
+        KeyEventStateMachine first = new KeyEventStateMachine(table);
+        KeyEventStateMachine second = new KeyEventStateMachine(table);
+        Assert.assertSame(table, second.getTable());
+
+        assertKey(first, 'k', State.PART_MATCH, 'a', 1);
+        assertKey(second, 'x', State.NO_MATCH, 0, 0);
+        assertKey(first, 'k', State.PART_MATCH, 'b', 2);
+        assertKey(second, 'y', State.FULL_MATCH, 'z', 2);
+    }
+
+    @Test
+    public void testHandlerCompilesOnce() throws Exception {
+        HardKeyboardSequenceHandler handler = new HardKeyboardSequenceHandler();
+        handler.addSequence(new int[]{'k'}, 'a');
+        KeyEventStateMachine.Table table = handler.compile();
+        Assert.assertSame(table, handler.compile());
+        try {
+            handler.addSequence(new int[]{'k', 'k'}, 'b');
+            Assert.fail("Sequences can not be added after compilation");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private static void assertKey(KeyEventStateMachine machine, int keyCode, State expectedState, int expectedCharacter, int expectedSequenceLength) {
+        Assert.assertEquals(expectedState, machine.addKeyCode(keyCode));
+        Assert.assertEquals(expectedCharacter, machine.getCharacter());
+        Assert.assertEquals(expectedSequenceLength, machine.getSequenceLength());
+    }
+}
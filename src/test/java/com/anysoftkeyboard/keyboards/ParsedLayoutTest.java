@@ -0,0 +1,180 @@
+package com.anysoftkeyboard.keyboards;
+
+import android.content.Context;
+import android.util.TypedValue;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.menny.android.anysoftkeyboard.R;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.List;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class ParsedLayoutTest {
+    private static final KeyboardDimens DIMENS = new KeyboardDimens() {
+        public int getKeyboardMaxWidth() { return 480; }
+        public int getKeyMaxWidth() { return 480; }
+        public float getKeyHorizontalGap() { return 2; }
+        public float getRowVerticalGap() { return 3; }
+        public int getNormalKeyHeight() { return 60; }
+        public int getSmallKeyHeight() { return 40; }
+        public int getLargeKeyHeight() { return 80; }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        ParsedLayoutCache.clearMemoryCache();
+        deleteStorageFolder();
+    }
+
+    private static void deleteStorageFolder() {
+        File folder = ParsedLayoutCache.getStorageFolder(Robolectric.application);
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testStoredLayoutIsTheSame() throws Exception {
+        ParsedLayout.Attributes rowAttributes = new ParsedLayout.Attributes.Builder()
+                .add(android.R.attr.rowEdgeFlags, value(TypedValue.TYPE_INT_HEX, Keyboard.EDGE_BOTTOM, 0, null))
+                .build();
+        ParsedLayout.Attributes keyAttributes = new ParsedLayout.Attributes.Builder()
+                .add(android.R.attr.codes, value(TypedValue.TYPE_STRING, 0, 0, "97,-5"))
+                .add(android.R.attr.keyLabel, value(TypedValue.TYPE_STRING, 0, 0, "a"))
+                .add(android.R.attr.isRepeatable, value(TypedValue.TYPE_INT_BOOLEAN, -1, 0, null))
+                .add(android.R.attr.popupKeyboard, value(TypedValue.TYPE_STRING, 0, 0x7f030001, "res/xml/popup.xml"))
+                .build();
+        ParsedLayout layout = new ParsedLayout(
+                new byte[]{ParsedLayout.ELEMENT_ROW, ParsedLayout.ELEMENT_KEY, ParsedLayout.ELEMENT_KEY_END, ParsedLayout.ELEMENT_ROW_END,
+                        ParsedLayout.ELEMENT_UNKNOWN, ParsedLayout.ELEMENT_UNKNOWN_END},
+                new ParsedLayout.Attributes[]{rowAttributes, keyAttributes, null, null, rowAttributes, null},
+                new String[]{null, null, null, null, "Extension", null}, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        layout.writeTo(new DataOutputStream(bytes));
+        ParsedLayout stored = ParsedLayout.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(6, stored.getElementsCount());
+        Assert.assertEquals(ParsedLayout.ELEMENT_KEY, stored.getElement(1));
+        Assert.assertNull(stored.getAttributes(2));
+        Assert.assertEquals(3, stored.getEndOfRow(0));
+        Assert.assertNull(stored.getUnknownTag(1));
+        Assert.assertEquals("Extension", stored.getUnknownTag(4));
+        Assert.assertEquals(ParsedLayout.ELEMENT_UNKNOWN_END, stored.getElement(5));
+
+        Assert.assertEquals(Keyboard.EDGE_BOTTOM, stored.getAttributes(0).getInt(0, 0));
+        ParsedLayout.Attributes key = stored.getAttributes(1);
+        Assert.assertEquals(4, key.size());
+        Assert.assertEquals(android.R.attr.codes, key.getAttrId(0));
+        Assert.assertArrayEquals(new int[]{97, -5}, key.getKeyCodes(0));
+        Assert.assertEquals("a", key.getText(1).toString());
+        Assert.assertTrue(key.getBoolean(2, false));
+        Assert.assertEquals(0x7f030001, key.getResourceId(3, 0));
+        //plain values have no resource
+        Assert.assertEquals(0, key.getResourceId(1, 0));
+    }
+
+    @Test
+    public void testKeyboardFromStoredLayoutIsTheSame() throws Exception {
+        final Context context = Robolectric.application;
+        final File stored = new File(ParsedLayoutCache.getStorageFolder(context), ParsedLayoutCache.getStoredLayoutName(context, context, R.xml.qwerty));
+        Keyboard parsed = loadKeyboard();
+        ParsedLayoutCache.waitForStoredLayouts();
+        Assert.assertTrue(stored.exists());
+
+        ParsedLayoutCache.clearMemoryCache();
+        Keyboard fromStorage = loadKeyboard();
+        Keyboard fromMemory = loadKeyboard();
+
+        Assert.assertTrue(parsed.getKeys().size() > 0);
+        assertSameKeyboard(parsed, fromStorage);
+        assertSameKeyboard(parsed, fromMemory);
+    }
+
+    @Test
+    public void testStoringDeletesStaleLayouts() throws Exception {
+        final Context context = Robolectric.application;
+        final File folder = ParsedLayoutCache.getStorageFolder(context);
+        Assert.assertTrue(folder.mkdirs() || folder.isDirectory());
+        final String storedName = ParsedLayoutCache.getStoredLayoutName(context, context, R.xml.qwerty);
+        final String[] parts = storedName.split("#");
+        //the same layout, from an older version of the package
+        final File olderVersion = new File(folder, parts[0] + "#" + parts[1] + "#" + parts[2] + "#" + (Integer.parseInt(parts[3]) - 1) + "#" + parts[4]);
+        //the older naming
+        final File olderNaming = new File(folder, parts[0] + "_" + parts[1] + "_" + parts[2]);
+        //another package's layout
+        final File otherPackage = new File(folder, "com.example.layouts#1#2#3#" + parts[4]);
+        Assert.assertTrue(olderVersion.createNewFile());
+        Assert.assertTrue(olderNaming.createNewFile());
+        Assert.assertTrue(otherPackage.createNewFile());
+
+        loadKeyboard();
+        ParsedLayoutCache.waitForStoredLayouts();
+
+        Assert.assertTrue(new File(folder, storedName).exists());
+        Assert.assertFalse(olderVersion.exists());
+        Assert.assertFalse(olderNaming.exists());
+        Assert.assertTrue(otherPackage.exists());
+    }
+
+    private static Keyboard loadKeyboard() {
+        Keyboard keyboard = new Keyboard(Robolectric.application, Robolectric.application, R.xml.qwerty) {
+            @Override
+            protected Key createKeyFromXml(Context askContext, Context keyboardContext, Row parent,
+                                           KeyboardDimens keyboardDimens, int x, int y, ParsedLayout.Attributes attributes) {
+                return new AnyKeyboard.AnyKey(askContext, keyboardContext, parent, keyboardDimens, x, y, attributes);
+            }
+        };
+        keyboard.loadKeyboard(DIMENS);
+        return keyboard;
+    }
+
+    private static void assertSameKeyboard(Keyboard expected, Keyboard actual) {
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        Assert.assertEquals(expected.getMinWidth(), actual.getMinWidth());
+        final List<Keyboard.Key> expectedKeys = expected.getKeys();
+        final List<Keyboard.Key> actualKeys = actual.getKeys();
+        Assert.assertEquals(expectedKeys.size(), actualKeys.size());
+        for (int i = 0; i < expectedKeys.size(); i++) {
+            final Keyboard.Key expectedKey = expectedKeys.get(i);
+            final Keyboard.Key actualKey = actualKeys.get(i);
+            final String message = "Key " + i;
+            Assert.assertArrayEquals(message, expectedKey.codes, actualKey.codes);
+            Assert.assertEquals(message, expectedKey.x, actualKey.x);
+            Assert.assertEquals(message, expectedKey.y, actualKey.y);
+            Assert.assertEquals(message, expectedKey.width, actualKey.width);
+            Assert.assertEquals(message, expectedKey.height, actualKey.height);
+            Assert.assertEquals(message, expectedKey.gap, actualKey.gap);
+            Assert.assertEquals(message, String.valueOf(expectedKey.label), String.valueOf(actualKey.label));
+            Assert.assertEquals(message, String.valueOf(expectedKey.text), String.valueOf(actualKey.text));
+            Assert.assertEquals(message, String.valueOf(expectedKey.popupCharacters), String.valueOf(actualKey.popupCharacters));
+            Assert.assertEquals(message, expectedKey.popupResId, actualKey.popupResId);
+            Assert.assertEquals(message, expectedKey.edgeFlags, actualKey.edgeFlags);
+            Assert.assertEquals(message, expectedKey.repeatable, actualKey.repeatable);
+            Assert.assertEquals(message, expectedKey.sticky, actualKey.sticky);
+            Assert.assertEquals(message, expectedKey.modifier, actualKey.modifier);
+            Assert.assertEquals(message, expectedKey.showPreview, actualKey.showPreview);
+        }
+    }
+
+    private static TypedValue value(int type, int data, int resourceId, String string) {
+        TypedValue value = new TypedValue();
+        value.type = type;
+        value.data = data;
+        value.resourceId = resourceId;
+        value.string = string;
+        return value;
+    }
+}
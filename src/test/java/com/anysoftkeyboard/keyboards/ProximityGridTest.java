@@ -0,0 +1,167 @@
+package com.anysoftkeyboard.keyboards;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class ProximityGridTest {
+    private static final int ROWS = 5;
+    private static final int COLUMNS = 11;
+    private static final int KEY_WIDTH = 98;
+    private static final int KEY_HEIGHT = 150;
+    private static final int WIDTH = KEY_WIDTH * COLUMNS;
+    private static final int HEIGHT = KEY_HEIGHT * ROWS;
+    private static final int THRESHOLD = (int) (KEY_WIDTH * 1.8f) * (int) (KEY_WIDTH * 1.8f);
+
+    private List<Keyboard.Key> mKeys;
+
+    @Before
+    public void setup() throws Exception {
+        Keyboard keyboard = new Keyboard(Robolectric.application, Robolectric.application, 0) {
+            @Override
+            protected Key createKeyFromXml(android.content.Context askContext, android.content.Context keyboardContext, Row parent,
+                                           KeyboardDimens keyboardDimens, int x, int y, ParsedLayout.Attributes attributes) {
+                return null;
+            }
+        };
+        Keyboard.Row row = new Keyboard.Row(keyboard);
+        KeyboardDimens dimens = new KeyboardDimens() {
+            public int getKeyboardMaxWidth() { return WIDTH; }
+            public int getKeyMaxWidth() { return WIDTH; }
+            public float getKeyHorizontalGap() { return 0; }
+            public float getRowVerticalGap() { return 0; }
+            public int getNormalKeyHeight() { return KEY_HEIGHT; }
+            public int getSmallKeyHeight() { return KEY_HEIGHT; }
+            public int getLargeKeyHeight() { return KEY_HEIGHT; }
+        };
+        mKeys = new ArrayList<>();
+        for (int rowIndex = 0; rowIndex < ROWS; rowIndex++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                Keyboard.Key key = new AnyKeyboard.AnyKey(row, dimens);
+                key.x = column * KEY_WIDTH;
+                key.y = rowIndex * KEY_HEIGHT;
+                key.width = KEY_WIDTH;
+                key.height = KEY_HEIGHT;
+                key.codes = new int[]{'a' + mKeys.size()};
+                key.edgeFlags = 0;
+                mKeys.add(key);
+            }
+        }
+    }
+
+    @Test
+    public void testCellsHoldAllKeysInProximityOrderedByDistance() throws Exception {
+        ProximityGrid grid = new ProximityGrid(mKeys, WIDTH, HEIGHT, THRESHOLD);
+        Assert.assertEquals(COLUMNS, grid.getGridWidth());
+        Assert.assertEquals(ROWS, grid.getGridHeight());
+        Random random = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            final int x = random.nextInt(WIDTH);
+            final int y = random.nextInt(HEIGHT);
+            final int[] nearest = grid.getNearestKeys(x, y);
+            for (int keyIndex = 0; keyIndex < mKeys.size(); keyIndex++) {
+                final Keyboard.Key key = mKeys.get(keyIndex);
+                if (key.isInside(x, y) || key.squaredDistanceFrom(x, y) < THRESHOLD)
+                    Assert.assertTrue("Key " + keyIndex + " is near " + x + "," + y, contains(nearest, keyIndex));
+            }
+        }
+        Assert.assertEquals(0, grid.getNearestKeys(-1, 10).length);
+        Assert.assertEquals(0, grid.getNearestKeys(10, HEIGHT).length);
+    }
+
+    @Test
+    public void testExaminesFewerKeysPerLookupThanFixedGrid() throws Exception {
+        final ProximityGrid grid = new ProximityGrid(mKeys, WIDTH, HEIGHT, THRESHOLD);
+        final int[][] fixedGrid = computeFixedGrid(mKeys, WIDTH, HEIGHT, THRESHOLD);
+
+        long lookups = 0;
+        long examined = 0;
+        long fixedExamined = 0;
+        int maxExamined = 0;
+        int fixedMaxExamined = 0;
+        for (int x = 0; x < WIDTH; x += 7) {
+            for (int y = 0; y < HEIGHT; y += 7) {
+                final int[] candidates = grid.getNearestKeys(x, y);
+                final int[] fixedCandidates = getFixedGridCell(fixedGrid, WIDTH, HEIGHT, x, y);
+                //both grids must find the same primary key
+                Assert.assertEquals(detect(fixedCandidates, x, y), detect(candidates, x, y));
+                lookups++;
+                examined += candidates.length;
+                fixedExamined += fixedCandidates.length;
+                maxExamined = Math.max(maxExamined, candidates.length);
+                fixedMaxExamined = Math.max(fixedMaxExamined, fixedCandidates.length);
+            }
+        }
+        Assert.assertTrue("Adaptive grid examines " + examined + " keys in " + lookups + " lookups, fixed grid examines " + fixedExamined,
+                examined < fixedExamined);
+        Assert.assertTrue("Adaptive grid examines up to " + maxExamined + " keys per lookup, fixed grid up to " + fixedMaxExamined,
+                maxExamined <= fixedMaxExamined);
+    }
+
+    /**
+     * What the detector does with each candidate: looks for the key under the point, and measures the distance.
+     */
+    private int detect(int[] candidates, int x, int y) {
+        int primary = -1;
+        int closestDistance = Integer.MAX_VALUE;
+        for (int index : candidates) {
+            final Keyboard.Key key = mKeys.get(index);
+            if (key.isInside(x, y)) primary = index;
+            closestDistance = Math.min(closestDistance, key.squaredDistanceFrom(x, y));
+        }
+        return closestDistance == 0 ? primary : -1;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int item : array) {
+            if (item == value) return true;
+        }
+        return false;
+    }
+
+    /*
+     * The previous implementation: a fixed 10x5 grid, with a cell's keys found by its corners.
+     */
+    private static final int FIXED_GRID_WIDTH = 10;
+    private static final int FIXED_GRID_HEIGHT = 5;
+
+    private static int[][] computeFixedGrid(List<Keyboard.Key> keys, int width, int height, int threshold) {
+        final int cellWidth = (width + FIXED_GRID_WIDTH - 1) / FIXED_GRID_WIDTH;
+        final int cellHeight = (height + FIXED_GRID_HEIGHT - 1) / FIXED_GRID_HEIGHT;
+        final int[][] grid = new int[FIXED_GRID_WIDTH * FIXED_GRID_HEIGHT][];
+        final int[] indices = new int[keys.size()];
+        for (int x = 0; x < FIXED_GRID_WIDTH * cellWidth; x += cellWidth) {
+            for (int y = 0; y < FIXED_GRID_HEIGHT * cellHeight; y += cellHeight) {
+                int count = 0;
+                for (int i = 0; i < keys.size(); i++) {
+                    final Keyboard.Key key = keys.get(i);
+                    if (key.squaredDistanceFrom(x, y) < threshold ||
+                            key.squaredDistanceFrom(x + cellWidth - 1, y) < threshold ||
+                            key.squaredDistanceFrom(x + cellWidth - 1, y + cellHeight - 1) < threshold ||
+                            key.squaredDistanceFrom(x, y + cellHeight - 1) < threshold) {
+                        indices[count++] = i;
+                    }
+                }
+                int[] cell = new int[count];
+                System.arraycopy(indices, 0, cell, 0, count);
+                grid[(y / cellHeight) * FIXED_GRID_WIDTH + (x / cellWidth)] = cell;
+            }
+        }
+        return grid;
+    }
+
+    private static int[] getFixedGridCell(int[][] grid, int width, int height, int x, int y) {
+        final int cellWidth = (width + FIXED_GRID_WIDTH - 1) / FIXED_GRID_WIDTH;
+        final int cellHeight = (height + FIXED_GRID_HEIGHT - 1) / FIXED_GRID_HEIGHT;
+        return grid[(y / cellHeight) * FIXED_GRID_WIDTH + (x / cellWidth)];
+    }
+}
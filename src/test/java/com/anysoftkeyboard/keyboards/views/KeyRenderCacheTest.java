@@ -0,0 +1,79 @@
+package com.anysoftkeyboard.keyboards.views;
+
+import android.graphics.Bitmap;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class KeyRenderCacheTest {
+
+    private static final int[] STATE_NORMAL = new int[]{};
+    private static final int[] STATE_PRESSED = new int[]{android.R.attr.state_pressed};
+
+    @Test
+    public void testAppearanceLookup() throws Exception {
+        KeyRenderCache cache = new KeyRenderCache(1024 * 1024);
+        KeyRenderCache.Appearance probe = createAppearance(new StringBuilder("a"), STATE_NORMAL, 10, 20);
+        Assert.assertNull(cache.get(probe));
+        Bitmap bitmap = cache.create(probe);
+        Assert.assertNotNull(bitmap);
+        Assert.assertEquals(10, bitmap.getWidth());
+        Assert.assertEquals(20, bitmap.getHeight());
+        //the stored key is a copy, changing the probe's label does not change it
+        ((StringBuilder) probe.mLabel).append("b");
+        probe.computeHash();
+        Assert.assertNull(cache.get(probe));
+
+        Assert.assertSame(bitmap, cache.get(createAppearance("a", STATE_NORMAL, 10, 20)));
+        //drawable states are compared by identity
+        Assert.assertNull(cache.get(createAppearance("a", new int[]{}, 10, 20)));
+        Assert.assertNull(cache.get(createAppearance("a", STATE_PRESSED, 10, 20)));
+        Assert.assertNull(cache.get(createAppearance("A", STATE_NORMAL, 10, 20)));
+        Assert.assertNull(cache.get(createAppearance("a", STATE_NORMAL, 11, 20)));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(6, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyDrawnKeys() throws Exception {
+        //room for three 10x10 keys
+        KeyRenderCache cache = new KeyRenderCache(10 * 10 * 4 * 3);
+        cache.create(createAppearance("a", STATE_NORMAL, 10, 10));
+        cache.create(createAppearance("b", STATE_NORMAL, 10, 10));
+        cache.create(createAppearance("c", STATE_NORMAL, 10, 10));
+        Assert.assertEquals(3, cache.getKeysCount());
+        //drawing "a" again, so "b" is the oldest
+        Assert.assertNotNull(cache.get(createAppearance("a", STATE_NORMAL, 10, 10)));
+
+        cache.create(createAppearance("d", STATE_NORMAL, 10, 10));
+        Assert.assertEquals(3, cache.getKeysCount());
+        Assert.assertEquals(10 * 10 * 4 * 3, cache.getBytesCount());
+        Assert.assertNull(cache.get(createAppearance("b", STATE_NORMAL, 10, 10)));
+        Assert.assertNotNull(cache.get(createAppearance("a", STATE_NORMAL, 10, 10)));
+        Assert.assertNotNull(cache.get(createAppearance("c", STATE_NORMAL, 10, 10)));
+
+        //larger than the whole cache
+        Assert.assertNull(cache.create(createAppearance("e", STATE_NORMAL, 100, 100)));
+        Assert.assertEquals(3, cache.getKeysCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getKeysCount());
+        Assert.assertEquals(0, cache.getBytesCount());
+    }
+
+    private static KeyRenderCache.Appearance createAppearance(CharSequence label, int[] state, int width, int height) {
+        KeyRenderCache.Appearance appearance = new KeyRenderCache.Appearance();
+        appearance.mLabel = label;
+        appearance.mDrawableState = state;
+        appearance.mWidth = width;
+        appearance.mHeight = height;
+        appearance.mLabelStyle = KeyRenderCache.Appearance.LABEL_STYLE_KEY;
+        appearance.computeHash();
+        return appearance;
+    }
+}
@@ -0,0 +1,54 @@
+package com.anysoftkeyboard.spellcheck;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class SpellingResultsCacheTest {
+
+    private static SpellingResultsCache.Result newResult(int suggestionsLimit) {
+        return new SpellingResultsCache.Result(0, new String[]{"word"}, suggestionsLimit);
+    }
+
+    @Test
+    public void testDropsLeastRecentlyUsed() throws Exception {
+        SpellingResultsCache cache = new SpellingResultsCache(2);
+        Assert.assertNull(cache.get("hello", 5, 1));
+        cache.put("hello", 1, newResult(5));
+        cache.put("world", 1, newResult(5));
+        Assert.assertNotNull(cache.get("hello", 5, 1));
+        cache.put("again", 1, newResult(5));
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertNotNull(cache.get("hello", 5, 1));
+        Assert.assertNull(cache.get("world", 5, 1));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testMissesOnOtherSuggestionsLimit() throws Exception {
+        SpellingResultsCache cache = new SpellingResultsCache(10);
+        cache.get("hello", 5, 1);
+        cache.put("hello", 1, newResult(5));
+        Assert.assertNull(cache.get("hello", 3, 1));
+        Assert.assertNotNull(cache.get("hello", 5, 1));
+    }
+
+    @Test
+    public void testDropsResultsOfOldVersion() throws Exception {
+        SpellingResultsCache cache = new SpellingResultsCache(10);
+        cache.get("hello", 5, 1);
+        cache.put("hello", 1, newResult(5));
+        Assert.assertNull(cache.get("hello", 5, 2));
+        Assert.assertEquals(0, cache.getSize());
+        //looked up before the version changed
+        cache.put("hello", 1, newResult(5));
+        Assert.assertEquals(0, cache.getSize());
+        cache.put("hello", 2, newResult(5));
+        Assert.assertNotNull(cache.get("hello", 5, 2));
+    }
+}
@@ -0,0 +1,57 @@
+package com.anysoftkeyboard.ui.dev;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class TypingLatencyTest {
+
+    @After
+    public void tearDown() throws Exception {
+        TypingLatency.reset();
+    }
+
+    @Test
+    public void testBucketsCoverAllDurations() throws Exception {
+        Assert.assertEquals(0, TypingLatency.getBucket(-5));
+        Assert.assertEquals(15, TypingLatency.getBucket(15));
+        int previousBucket = 0;
+        for (long micros = 1; micros < 100 * 1000 * 1000; micros += 1 + micros / 100) {
+            final int bucket = TypingLatency.getBucket(micros);
+            Assert.assertTrue(bucket >= previousBucket);
+            Assert.assertTrue(micros <= TypingLatency.getBucketUpperBound(bucket));
+            Assert.assertTrue(micros > TypingLatency.getBucketUpperBound(bucket - 1));
+            //buckets are no wider than 12.5%
+            Assert.assertTrue(TypingLatency.getBucketUpperBound(bucket) <= micros + micros / 8 + 1);
+            previousBucket = bucket;
+        }
+        Assert.assertEquals(TypingLatency.BUCKETS_COUNT - 1, TypingLatency.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        Assert.assertEquals(0, TypingLatency.getPercentile(TypingLatency.STAGE_ON_KEY, 50));
+        for (int i = 1; i <= 100; i++)
+            TypingLatency.record(TypingLatency.STAGE_ON_KEY, i);
+
+        Assert.assertEquals(100, TypingLatency.getCount(TypingLatency.STAGE_ON_KEY));
+        Assert.assertEquals(0, TypingLatency.getCount(TypingLatency.STAGE_POINTER_UP));
+        assertAbout(50, TypingLatency.getPercentile(TypingLatency.STAGE_ON_KEY, 50));
+        assertAbout(95, TypingLatency.getPercentile(TypingLatency.STAGE_ON_KEY, 95));
+        assertAbout(99, TypingLatency.getPercentile(TypingLatency.STAGE_ON_KEY, 99));
+        assertAbout(100, TypingLatency.getPercentile(TypingLatency.STAGE_ON_KEY, 100));
+
+        Assert.assertTrue(TypingLatency.getReport().contains("AnySoftKeyboard.onKey,100,"));
+        TypingLatency.reset();
+        Assert.assertEquals(0, TypingLatency.getCount(TypingLatency.STAGE_ON_KEY));
+    }
+
+    private static void assertAbout(long expectedMicros, long actualMicros) {
+        Assert.assertTrue("expected " + expectedMicros + " but was " + actualMicros,
+                actualMicros >= expectedMicros && actualMicros <= expectedMicros + expectedMicros / 8);
+    }
+}
@@ -0,0 +1,125 @@
+package com.anysoftkeyboard.utils;
+
+import com.anysoftkeyboard.RobolectricAPI18TestRunner;
+import com.menny.android.anysoftkeyboard.FeaturesSet;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(RobolectricAPI18TestRunner.class)
+public class LogTest {
+
+    @Test
+    public void testLinesOfAllThreadsNewestFirst() throws Exception {
+        Assume.assumeTrue(FeaturesSet.DEBUG_LOG);
+        Log.d("LogTest", "first %s", "line");
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Log.d("LogTest", "second line from %s and %s", "other", "thread");
+            }
+        });
+        other.start();
+        other.join();
+        Log.w("LogTest", "third %d", 3);
+
+        ArrayList<String> lines = Log.getAllLogLinesList();
+        Assert.assertTrue(lines.get(0).endsWith("-W-[LogTest] third 3"));
+        Assert.assertTrue(lines.get(1).endsWith("-D-[LogTest] second line from other and thread"));
+        Assert.assertTrue(lines.get(2).endsWith("-D-[LogTest] first line"));
+    }
+
+    @Test
+    public void testFormattingFromManyThreads() throws Exception {
+        Assume.assumeTrue(FeaturesSet.DEBUG_LOG);
+        final int threadsCount = 4;
+        final int linesPerThread = 100;
+        Thread[] threads = new Thread[threadsCount];
+        for (int i = 0; i < threadsCount; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int line = 0; line < linesPerThread; line++)
+                        Log.d("LogTest", "thread %s line %s", threadIndex, line);
+                }
+            });
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        int found = 0;
+        for (String line : Log.getAllLogLinesList()) {
+            if (line.contains("-D-[LogTest] thread ")) {
+                found++;
+                //no interleaving of formatted messages
+                Assert.assertTrue(line, line.matches(".*-D-\\[LogTest\\] thread \\d line \\d+"));
+            }
+        }
+        Assert.assertEquals(threadsCount * linesPerThread, found);
+    }
+
+    @Test
+    public void testKeepsLinesOfLiveThreads() throws Exception {
+        Assume.assumeTrue(FeaturesSet.DEBUG_LOG);
+        Log.d("LogTest", "line of the test thread");
+        //more threads than the rings Log keeps
+        final int threadsCount = 20;
+        for (int i = 0; i < threadsCount; i++) {
+            final int threadIndex = i;
+            Thread dead = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d("LogTest", "line of dead thread %s", threadIndex);
+                }
+            });
+            dead.start();
+            dead.join();
+        }
+
+        final CountDownLatch logged = new CountDownLatch(threadsCount);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Thread> liveThreads = new ArrayList<>();
+        for (int i = 0; i < threadsCount; i++) {
+            final int threadIndex = i;
+            Thread live = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d("LogTest", "line of live thread %s", threadIndex);
+                    logged.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            liveThreads.add(live);
+            live.start();
+        }
+        logged.await();
+
+        try {
+            ArrayList<String> lines = Log.getAllLogLinesList();
+            Assert.assertTrue(containsLineEndingWith(lines, "-D-[LogTest] line of the test thread"));
+            for (int i = 0; i < threadsCount; i++)
+                Assert.assertTrue(containsLineEndingWith(lines, "-D-[LogTest] line of live thread " + i));
+        } finally {
+            release.countDown();
+            for (Thread live : liveThreads) live.join();
+        }
+    }
+
+    private static boolean containsLineEndingWith(List<String> lines, String ending) {
+        for (String line : lines) {
+            if (line.endsWith(ending)) return true;
+        }
+        return false;
+    }
+}
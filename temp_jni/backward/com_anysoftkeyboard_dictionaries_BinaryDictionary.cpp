@@ -101,6 +101,44 @@ static int nativeime_BinaryDictionary_getSuggestions(
     return count;
 }
 
+/*
+ * The buffers are shared with the Java side for the lifetime of the dictionary object, so
+ * here we only reset the slots which were populated by the previous lookup.
+ */
+static int nativeime_BinaryDictionary_getSuggestionsFromBuffers(
+        JNIEnv *env, jobject object, jint dict, jobject inputBuffer, jint arraySize,
+        jobject outputBuffer, jobject frequencyBuffer, jint maxWordLength, jint maxWords,
+        jint maxAlternatives, jint missedCharactersThreshold)
+{
+    Dictionary *dictionary = (Dictionary*) dict;
+    if (dictionary == NULL) return 0;
+
+    int *inputCodes = (int*) env->GetDirectBufferAddress(inputBuffer);
+    unsigned short *outputChars = (unsigned short*) env->GetDirectBufferAddress(outputBuffer);
+    int *frequencies = (int*) env->GetDirectBufferAddress(frequencyBuffer);
+    if (inputCodes == NULL || outputChars == NULL || frequencies == NULL) return 0;
+
+    for (int i = 0; i < maxWords && frequencies[i] > 0; i++) {
+        frequencies[i] = 0;
+        outputChars[i * maxWordLength] = 0;
+    }
+
+    int count = dictionary->getSuggestions(inputCodes, arraySize, outputChars, frequencies,
+            maxWordLength, maxWords, maxAlternatives, -1);
+    // If there aren't sufficient suggestions, search for words by allowing wild cards at
+    // the different character positions.
+    if (count < missedCharactersThreshold) {
+        for (int skip = 0; skip < arraySize; skip++) {
+            int tempCount = dictionary->getSuggestions(inputCodes, arraySize, outputChars,
+                    frequencies, maxWordLength, maxWords, maxAlternatives, skip);
+            if (tempCount > count) count = tempCount;
+            if (tempCount > 0) break;
+        }
+    }
+
+    return count;
+}
+
 static jboolean nativeime_BinaryDictionary_isValidWord
         (JNIEnv *env, jobject object, jint dict, jcharArray wordArray, jint wordLength)
 {
@@ -122,13 +160,24 @@ static void nativeime_BinaryDictionary_close
     delete (Dictionary*) dict;
 }
 
+// Bit flags of the optional entry points this library has. Keep in sync with BinaryDictionary.java
+#define NATIVE_FEATURE_BUFFERS_BRIDGE 2
+
+static jint nativeime_BinaryDictionary_getNativeFeatures(JNIEnv *env, jclass clazz)
+{
+    return NATIVE_FEATURE_BUFFERS_BRIDGE;
+}
+
 // ----------------------------------------------------------------------------
 
 static JNINativeMethod gMethods[] = {
+    {"getNativeFeaturesNative", "()I",    (void*)nativeime_BinaryDictionary_getNativeFeatures},
     {"openNative",           "(Ljava/io/FileDescriptor;JJII)I",
                                           (void*)nativeime_BinaryDictionary_open},
     {"closeNative",          "(I)V",            (void*)nativeime_BinaryDictionary_close},
     {"getSuggestionsNative", "(I[II[C[IIIII)I",  (void*)nativeime_BinaryDictionary_getSuggestions},
+    {"getSuggestionsFromBuffersNative", "(ILjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;IIII)I",
+                                          (void*)nativeime_BinaryDictionary_getSuggestionsFromBuffers},
     {"isValidWordNative",    "(I[CI)Z",         (void*)nativeime_BinaryDictionary_isValidWord}
 };
 
@@ -16,9 +16,12 @@
 */
 
 #include <stdio.h>
+#include <stdint.h>
 #include <assert.h>
 #include <unistd.h>
 #include <fcntl.h>
+#include <errno.h>
+#include <sys/mman.h>
 
 #include <jni.h>
 #include "dictionary.h"
@@ -27,6 +30,14 @@
 
 using namespace nativeime;
 
+static jfieldID sDescriptorField;
+
+// The memory region a stitched dictionary lives in. Stored as the Dictionary's asset.
+struct MappedRegion {
+    void *address;
+    size_t size;
+};
+
 //
 // helper function to throw an exception
 //
@@ -53,6 +64,102 @@ static jint nativeime_ResourceBinaryDictionary_open
     return (jint) dictionary;
 }
 
+static bool readFully(int fd, unsigned char *target, off_t offset, size_t length)
+{
+    while (length > 0) {
+        ssize_t bytesRead = pread(fd, target, length, offset);
+        if (bytesRead < 0 && errno == EINTR) continue;
+        if (bytesRead <= 0) return false;
+        target += bytesRead;
+        offset += bytesRead;
+        length -= bytesRead;
+    }
+    return true;
+}
+
+// Places one part of the dictionary at its position in the region. If the part's position has the same
+// page-alignment as its offset in the file, its whole pages are mapped directly from the file (and will be
+// faulted-in on demand). Anything else (the partial pages at the edges, or a part which is not aligned) is read.
+static bool placePart(int fd, unsigned char *target, off_t fileOffset, size_t length, size_t pageSize)
+{
+    const uintptr_t start = (uintptr_t) target;
+    const uintptr_t end = start + length;
+    if ((start % pageSize) == (((uintptr_t) fileOffset) % pageSize)) {
+        const uintptr_t firstPage = (start + pageSize - 1) & ~(pageSize - 1);
+        const uintptr_t lastPageEnd = end & ~(pageSize - 1);
+        if (firstPage < lastPageEnd) {
+            void *mapped = mmap((void*) firstPage, lastPageEnd - firstPage, PROT_READ, MAP_PRIVATE | MAP_FIXED,
+                    fd, fileOffset + (firstPage - start));
+            if (mapped != MAP_FAILED) {
+                return readFully(fd, target, fileOffset, firstPage - start)
+                        && readFully(fd, (unsigned char*) lastPageEnd, fileOffset + (lastPageEnd - start), end - lastPageEnd);
+            }
+            fprintf(stderr, "DICT: Failed to map dictionary part, errno %d. Will read it.\n", errno);
+        }
+    }
+    return readFully(fd, target, fileOffset, length);
+}
+
+// Opens a dictionary which is stored (uncompressed) in several parts of the APK, without copying it into
+// a Java buffer. The parts are stitched into one contiguous region: a single anonymous reservation, with
+// each part mapped into its position. The region's start is shifted so the largest part can be mapped.
+static jint nativeime_ResourceBinaryDictionary_openMapped
+        (JNIEnv *env, jobject object, jobjectArray fileDescriptors, jlongArray offsetsArray, jlongArray lengthsArray,
+         jint typedLetterMultiplier, jint fullWordMultiplier)
+{
+    const int partsCount = env->GetArrayLength(fileDescriptors);
+    if (partsCount == 0) return 0;
+    const size_t pageSize = (size_t) sysconf(_SC_PAGESIZE);
+    jlong *offsets = env->GetLongArrayElements(offsetsArray, NULL);
+    jlong *lengths = env->GetLongArrayElements(lengthsArray, NULL);
+
+    size_t total = 0;
+    size_t largestPartPosition = 0;
+    int largestPart = 0;
+    for (int i = 0; i < partsCount; i++) {
+        if (lengths[i] > lengths[largestPart]) {
+            largestPart = i;
+            largestPartPosition = total;
+        }
+        total += (size_t) lengths[i];
+    }
+    const size_t shift = (size_t) ((((uintptr_t) offsets[largestPart]) - largestPartPosition) % pageSize);
+    const size_t regionSize = (shift + total + pageSize - 1) & ~(pageSize - 1);
+
+    jint result = 0;
+    void *region = mmap(NULL, regionSize, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if (region == MAP_FAILED) {
+        fprintf(stderr, "DICT: Failed to reserve %d bytes for dictionary, errno %d\n", (int) regionSize, errno);
+    } else {
+        unsigned char *dict = ((unsigned char*) region) + shift;
+        bool placed = true;
+        size_t position = 0;
+        for (int i = 0; i < partsCount && placed; i++) {
+            jobject fileDescriptor = env->GetObjectArrayElement(fileDescriptors, i);
+            const int fd = env->GetIntField(fileDescriptor, sDescriptorField);
+            env->DeleteLocalRef(fileDescriptor);
+            placed = placePart(fd, dict + position, (off_t) offsets[i], (size_t) lengths[i], pageSize);
+            position += (size_t) lengths[i];
+        }
+        if (placed) {
+            mprotect(region, regionSize, PROT_READ);
+            MappedRegion *mappedRegion = new MappedRegion();
+            mappedRegion->address = region;
+            mappedRegion->size = regionSize;
+            Dictionary *dictionary = new Dictionary(dict, typedLetterMultiplier, fullWordMultiplier);
+            dictionary->setAsset(mappedRegion);
+            result = (jint) dictionary;
+        } else {
+            fprintf(stderr, "DICT: Failed to read dictionary parts, errno %d\n", errno);
+            munmap(region, regionSize);
+        }
+    }
+
+    env->ReleaseLongArrayElements(offsetsArray, offsets, JNI_ABORT);
+    env->ReleaseLongArrayElements(lengthsArray, lengths, JNI_ABORT);
+    return result;
+}
+
 static int nativeime_ResourceBinaryDictionary_getSuggestions(
         JNIEnv *env, jobject object, jint dict, jintArray inputArray, jint arraySize,
         jcharArray outputArray, jintArray frequencyArray, jint maxWordLength, jint maxWords,
@@ -107,6 +214,44 @@ static int nativeime_ResourceBinaryDictionary_getBigrams
 }
 
 
+/*
+ * The buffers are shared with the Java side for the lifetime of the dictionary object, so
+ * here we only reset the slots which were populated by the previous lookup.
+ */
+static int nativeime_ResourceBinaryDictionary_getSuggestionsFromBuffers(
+        JNIEnv *env, jobject object, jint dict, jobject inputBuffer, jint arraySize,
+        jobject outputBuffer, jobject frequencyBuffer, jint maxWordLength, jint maxWords,
+        jint maxAlternatives, jint missedCharactersThreshold)
+{
+    Dictionary *dictionary = (Dictionary*) dict;
+    if (dictionary == NULL) return 0;
+
+    int *inputCodes = (int*) env->GetDirectBufferAddress(inputBuffer);
+    unsigned short *outputChars = (unsigned short*) env->GetDirectBufferAddress(outputBuffer);
+    int *frequencies = (int*) env->GetDirectBufferAddress(frequencyBuffer);
+    if (inputCodes == NULL || outputChars == NULL || frequencies == NULL) return 0;
+
+    for (int i = 0; i < maxWords && frequencies[i] > 0; i++) {
+        frequencies[i] = 0;
+        outputChars[i * maxWordLength] = 0;
+    }
+
+    int count = dictionary->getSuggestions(inputCodes, arraySize, outputChars, frequencies,
+            maxWordLength, maxWords, maxAlternatives, -1, NULL, 0);
+    // If there aren't sufficient suggestions, search for words by allowing wild cards at
+    // the different character positions.
+    if (count < missedCharactersThreshold) {
+        for (int skip = 0; skip < arraySize; skip++) {
+            int tempCount = dictionary->getSuggestions(inputCodes, arraySize, outputChars,
+                    frequencies, maxWordLength, maxWords, maxAlternatives, skip, NULL, 0);
+            if (tempCount > count) count = tempCount;
+            if (tempCount > 0) break;
+        }
+    }
+
+    return count;
+}
+
 static jboolean nativeime_ResourceBinaryDictionary_isValidWord
         (JNIEnv *env, jobject object, jint dict, jcharArray wordArray, jint wordLength)
 {
@@ -124,16 +269,35 @@ static void nativeime_ResourceBinaryDictionary_close
         (JNIEnv *env, jobject object, jint dict)
 {
     Dictionary *dictionary = (Dictionary*) dict;
-    delete (Dictionary*) dict;
+    MappedRegion *mappedRegion = dictionary != NULL ? (MappedRegion*) dictionary->getAsset() : NULL;
+    delete dictionary;
+    if (mappedRegion != NULL) {
+        munmap(mappedRegion->address, mappedRegion->size);
+        delete mappedRegion;
+    }
+}
+
+// Bit flags of the optional entry points this library has. Keep in sync with ResourceBinaryDictionary.java
+#define NATIVE_FEATURE_MAPPED_SPLIT_DICTIONARY 1
+#define NATIVE_FEATURE_BUFFERS_BRIDGE 2
+
+static jint nativeime_ResourceBinaryDictionary_getNativeFeatures(JNIEnv *env, jclass clazz)
+{
+    return NATIVE_FEATURE_MAPPED_SPLIT_DICTIONARY | NATIVE_FEATURE_BUFFERS_BRIDGE;
 }
 
 // ----------------------------------------------------------------------------
 
 static JNINativeMethod gMethods[] = {
+    {"getNativeFeaturesNative", "()I",    (void*)nativeime_ResourceBinaryDictionary_getNativeFeatures},
     {"openNative",           "(Ljava/nio/ByteBuffer;II)I",
                                           (void*)nativeime_ResourceBinaryDictionary_open},
+    {"openNativeMapped",     "([Ljava/io/FileDescriptor;[J[JII)I",
+                                          (void*)nativeime_ResourceBinaryDictionary_openMapped},
     {"closeNative",          "(I)V",            (void*)nativeime_ResourceBinaryDictionary_close},
     {"getSuggestionsNative", "(I[II[C[IIIII[II)I",  (void*)nativeime_ResourceBinaryDictionary_getSuggestions},
+    {"getSuggestionsFromBuffersNative", "(ILjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;IIII)I",
+                                          (void*)nativeime_ResourceBinaryDictionary_getSuggestionsFromBuffers},
     {"isValidWordNative",    "(I[CI)Z",         (void*)nativeime_ResourceBinaryDictionary_isValidWord}/*,
     {"getBigramsNative",    "(I[CI[II[C[IIII)I",         (void*)nativeime_ResourceBinaryDictionary_getBigrams}*/
 };
@@ -160,6 +324,14 @@ static int registerNativeMethods(JNIEnv* env, const char* className,
 static int registerNatives(JNIEnv *env)
 {
     const char* const kClassPathName = "com/anysoftkeyboard/dictionaries/jni/ResourceBinaryDictionary";
+    jclass clazz = env->FindClass("java/io/FileDescriptor");
+    if (clazz == NULL) {
+        fprintf(stderr, "Can't find %s", "java/io/FileDescriptor");
+        return JNI_FALSE;
+    }
+    sDescriptorField = env->GetFieldID(clazz, "descriptor", "I");
+    env->DeleteLocalRef(clazz);
+
     return registerNativeMethods(env,
             kClassPathName, gMethods, sizeof(gMethods) / sizeof(gMethods[0]));
 }
@@ -37,6 +37,7 @@ namespace nativeime {
 Dictionary::Dictionary(void *dict, int typedLetterMultiplier, int fullWordMultiplier)
 {
     mDict = (unsigned char*) dict;
+    mAsset = NULL;
     mTypedLetterMultiplier = typedLetterMultiplier;
     mFullWordMultiplier = fullWordMultiplier;
     getVersionNumber();